@@ -19,6 +19,8 @@
 package org.killbill.billing.account.api.svcs;
 
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -46,6 +48,8 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper.UnitOfWorkLoader;
 import org.killbill.billing.util.dao.NonEntityDao;
 
 import com.google.common.base.Function;
@@ -98,6 +102,7 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
         final MutableAccountData mutableAccountData = currentAccount.toMutableAccountData();
         mutableAccountData.setBillCycleDayLocal(bcd);
         final AccountModelDao accountToUpdate = new AccountModelDao(currentAccount.getId(), mutableAccountData);
+        UnitOfWorkCacheHelper.invalidate(UnitOfWorkCacheHelper.ACCOUNT_BCD, currentAccount.getId(), context);
         bcdCacheController.remove(currentAccount.getId());
         bcdCacheController.putIfAbsent(currentAccount.getId(), new Integer(bcd));
         accountDao.update(accountToUpdate, context);
@@ -105,8 +110,15 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
 
     @Override
     public int getBCD(final UUID accountId, final InternalTenantContext context) throws AccountApiException {
-        final CacheLoaderArgument arg = createBCDCacheLoaderArgument(context);
-        final Integer result = bcdCacheController.get(accountId, arg);
+        // Once set, the BCD cannot be changed: only a non-default value is memoized for the unit of work (null results aren't kept)
+        final Integer result = UnitOfWorkCacheHelper.getOrLoad(UnitOfWorkCacheHelper.ACCOUNT_BCD, accountId, context, new UnitOfWorkLoader<Integer, RuntimeException>() {
+            @Override
+            public Integer load() {
+                final CacheLoaderArgument arg = createBCDCacheLoaderArgument(context);
+                final Integer bcd = bcdCacheController.get(accountId, arg);
+                return bcd == null || bcd == DefaultMutableAccountData.DEFAULT_BILLING_CYCLE_DAY_LOCAL ? null : bcd;
+            }
+        });
         return result != null ? result : DefaultMutableAccountData.DEFAULT_BILLING_CYCLE_DAY_LOCAL;
     }
 
@@ -135,8 +147,13 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
 
     @Override
     public UUID getByRecordId(final Long recordId, final InternalTenantContext context) throws AccountApiException {
-        final AccountModelDao accountModelDao = getAccountModelDaoByRecordId(recordId, context);
-        return accountModelDao.getId();
+        return UnitOfWorkCacheHelper.getOrLoad(UnitOfWorkCacheHelper.ACCOUNT_ID_BY_RECORD_ID, recordId, context, new UnitOfWorkLoader<UUID, AccountApiException>() {
+            @Override
+            public UUID load() throws AccountApiException {
+                final AccountModelDao accountModelDao = getAccountModelDaoByRecordId(recordId, context);
+                return accountModelDao.getId();
+            }
+        });
     }
 
     @Override
@@ -185,4 +202,13 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
                                                                         }
                                                                     }));
     }
+
+    @Override
+    public SortedMap<Long, Account> getAccountsAfterRecordId(final Long lastAccountRecordId, final int limit, final InternalTenantContext context) {
+        final SortedMap<Long, Account> accounts = new TreeMap<Long, Account>();
+        for (final AccountModelDao accountModelDao : accountDao.getAccountsAfterRecordId(lastAccountRecordId, limit, context)) {
+            accounts.put(accountModelDao.getRecordId(), new DefaultAccount(accountModelDao));
+        }
+        return accounts;
+    }
 }
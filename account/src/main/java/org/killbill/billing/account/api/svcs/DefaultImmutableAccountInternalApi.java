@@ -33,7 +33,10 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.IdCacheKey;
 import org.killbill.billing.util.cache.ImmutableAccountCacheLoader.LoaderCallback;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper.UnitOfWorkLoader;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
@@ -49,7 +52,7 @@ public class DefaultImmutableAccountInternalApi implements ImmutableAccountInter
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
     private final NonEntityDao nonEntityDao;
     private final CacheController<Long, ImmutableAccountData> accountCacheController;
-    private final CacheController<String, Long> recordIdCacheController;
+    private final CacheController<IdCacheKey, Long> recordIdCacheController;
 
     @Inject
     public DefaultImmutableAccountInternalApi(final IDBI dbi,
@@ -65,14 +68,24 @@ public class DefaultImmutableAccountInternalApi implements ImmutableAccountInter
 
     @Override
     public ImmutableAccountData getImmutableAccountDataById(final UUID accountId, final InternalTenantContext context) throws AccountApiException {
-        final Long recordId = nonEntityDao.retrieveRecordIdFromObject(accountId, ObjectType.ACCOUNT, recordIdCacheController);
-        return getImmutableAccountDataByRecordId(recordId, context);
+        return UnitOfWorkCacheHelper.getOrLoad(UnitOfWorkCacheHelper.IMMUTABLE_ACCOUNT, accountId, context, new UnitOfWorkLoader<ImmutableAccountData, AccountApiException>() {
+            @Override
+            public ImmutableAccountData load() throws AccountApiException {
+                final Long recordId = nonEntityDao.retrieveRecordIdFromObject(accountId, ObjectType.ACCOUNT, recordIdCacheController);
+                return getImmutableAccountDataByRecordId(recordId, context);
+            }
+        });
     }
 
     @Override
     public ImmutableAccountData getImmutableAccountDataByRecordId(final Long recordId, final InternalTenantContext context) throws AccountApiException {
-        final CacheLoaderArgument arg = createImmutableAccountCacheLoaderArgument(context);
-        return accountCacheController.get(recordId, arg);
+        return UnitOfWorkCacheHelper.getOrLoad(UnitOfWorkCacheHelper.IMMUTABLE_ACCOUNT_BY_RECORD_ID, recordId, context, new UnitOfWorkLoader<ImmutableAccountData, AccountApiException>() {
+            @Override
+            public ImmutableAccountData load() {
+                final CacheLoaderArgument arg = createImmutableAccountCacheLoaderArgument(context);
+                return accountCacheController.get(recordId, arg);
+            }
+        });
     }
 
     private CacheLoaderArgument createImmutableAccountCacheLoaderArgument(final InternalTenantContext context) {
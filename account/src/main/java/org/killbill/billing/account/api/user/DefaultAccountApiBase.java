@@ -32,13 +32,14 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.IdCacheKey;
 import org.killbill.billing.util.dao.NonEntityDao;
 
 public class DefaultAccountApiBase {
 
     private final AccountDao accountDao;
     private final CacheController<Long, ImmutableAccountData> accountCacheController;
-    private final CacheController<String, Long> recordIdCacheController;
+    private final CacheController<IdCacheKey, Long> recordIdCacheController;
     private final NonEntityDao nonEntityDao;
 
     public DefaultAccountApiBase(final AccountDao accountDao,
@@ -54,4 +54,11 @@ public interface AccountDao extends EntityDao<AccountModelDao, Account, AccountA
     Integer getAccountBCD(UUID accountId, InternalTenantContext context);
 
     List<AccountModelDao> getAccountsByParentId(UUID parentAccountId, InternalTenantContext context);
+
+    /**
+     * @param lastAccountRecordId only accounts with a greater record id are returned
+     * @param limit               maximum number of accounts returned
+     * @return accounts of the tenant, in record id order
+     */
+    List<AccountModelDao> getAccountsAfterRecordId(Long lastAccountRecordId, int limit, InternalTenantContext context);
 }
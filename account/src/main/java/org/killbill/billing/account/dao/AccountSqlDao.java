@@ -63,6 +63,11 @@ public interface AccountSqlDao extends EntitySqlDao<AccountModelDao, Account> {
     List<AccountModelDao> getAccountsByParentId(@Bind("parentAccountId") UUID parentAccountId,
                                                 @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    List<AccountModelDao> getAccountsAfterRecordId(@Bind("lastAccountRecordId") Long lastAccountRecordId,
+                                                   @Bind("limit") int limit,
+                                                   @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public AccountModelDao luckySearch(@Bind("searchKey") final String searchKey,
                                        @SmartBindBean final InternalTenantContext context);
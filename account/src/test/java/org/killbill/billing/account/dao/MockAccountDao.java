@@ -22,6 +22,8 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.killbill.billing.BillingExceptionBase;
@@ -186,4 +188,16 @@ public class MockAccountDao extends MockEntityDaoBase<AccountModelDao, Account,
             }
         }));
     }
+
+    @Override
+    public List<AccountModelDao> getAccountsAfterRecordId(final Long lastAccountRecordId, final int limit, final InternalTenantContext context) {
+        final SortedMap<Long, AccountModelDao> accountsByRecordId = new TreeMap<Long, AccountModelDao>();
+        for (final Map<Long, AccountModelDao> accountRow : entities.values()) {
+            final Long recordId = accountRow.keySet().iterator().next();
+            if (recordId > lastAccountRecordId) {
+                accountsByRecordId.put(recordId, accountRow.get(recordId));
+            }
+        }
+        return ImmutableList.<AccountModelDao>copyOf(Iterables.<AccountModelDao>limit(accountsByRecordId.values(), limit));
+    }
 }
@@ -19,6 +19,7 @@
 package org.killbill.billing.account.dao;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -204,6 +205,29 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         Assert.assertEquals(accountId, account.getId());
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: page through the accounts in record id order")
+    public void testGetAccountsAfterRecordId() throws AccountApiException {
+        final List<AccountModelDao> accounts = new ArrayList<AccountModelDao>();
+        for (int i = 0; i < 5; i++) {
+            final AccountModelDao account = createTestAccount();
+            accountDao.create(account, internalCallContext);
+            accounts.add(accountDao.getById(account.getId(), internalCallContext));
+        }
+
+        final List<AccountModelDao> firstPage = accountDao.getAccountsAfterRecordId(0L, 3, internalCallContext);
+        Assert.assertEquals(firstPage.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(firstPage.get(i).getId(), accounts.get(i).getId());
+        }
+
+        final List<AccountModelDao> secondPage = accountDao.getAccountsAfterRecordId(firstPage.get(2).getRecordId(), 3, internalCallContext);
+        Assert.assertEquals(secondPage.size(), 2);
+        Assert.assertEquals(secondPage.get(0).getId(), accounts.get(3).getId());
+        Assert.assertEquals(secondPage.get(1).getId(), accounts.get(4).getId());
+
+        Assert.assertEquals(accountDao.getAccountsAfterRecordId(secondPage.get(1).getRecordId(), 3, internalCallContext).size(), 0);
+    }
+
     @Test(groups = "slow", expectedExceptions = AccountApiException.class, description = "Test Account DAO: retrieve by null externalKey throws an exception")
     public void testGetIdFromKeyForNullKey() throws AccountApiException {
         accountDao.getIdFromKey(null, internalCallContext);
@@ -19,6 +19,7 @@
 package org.killbill.billing.account.api;
 
 import java.util.List;
+import java.util.SortedMap;
 import java.util.UUID;
 
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -45,4 +46,7 @@ public interface AccountInternalApi extends ImmutableAccountInternalApi {
     UUID getByRecordId(Long recordId, InternalTenantContext context) throws AccountApiException;
 
     List<Account> getChildrenAccounts(UUID parentAccountId, InternalCallContext context) throws AccountApiException;
+
+    // Next page of accounts of the tenant, keyed (and sorted) by account record id: used by account sweeps
+    SortedMap<Long, Account> getAccountsAfterRecordId(Long lastAccountRecordId, int limit, InternalTenantContext context);
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.audit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.api.AuditLevel;
+import org.killbill.billing.util.audit.AuditLog;
+
+public interface AuditInternalApi {
+
+    /**
+     * Return the audit logs for a set of objects of the same type, in a single pass
+     *
+     * @param objectIds  the object ids
+     * @param objectType the object type
+     * @param auditLevel audit level (verbosity)
+     * @param context    the tenant context
+     * @return mapping object id -> audit logs (objects without audit logs are absent)
+     */
+    public Map<UUID, List<AuditLog>> getAuditLogs(Collection<UUID> objectIds, ObjectType objectType, AuditLevel auditLevel, InternalTenantContext context);
+}
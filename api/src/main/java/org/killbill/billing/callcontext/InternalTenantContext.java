@@ -34,6 +34,9 @@ public class InternalTenantContext extends TimeAwareContext {
     protected final Long tenantRecordId;
     protected final Long accountRecordId;
 
+    // Lazily created, scoped to this context instance (not part of equals/hashCode)
+    private volatile UnitOfWorkCache unitOfWorkCache;
+
     public InternalTenantContext(final Long tenantRecordId,
                                  @Nullable final Long accountRecordId,
                                  @Nullable final DateTimeZone fixedOffsetTimeZone,
@@ -59,6 +62,20 @@ public class InternalTenantContext extends TimeAwareContext {
         return tenantRecordId;
     }
 
+    public UnitOfWorkCache getUnitOfWorkCache() {
+        UnitOfWorkCache result = unitOfWorkCache;
+        if (result == null) {
+            synchronized (this) {
+                result = unitOfWorkCache;
+                if (result == null) {
+                    result = new UnitOfWorkCache();
+                    unitOfWorkCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
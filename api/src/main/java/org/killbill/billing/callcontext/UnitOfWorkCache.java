@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.callcontext;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes immutable (or versioned) lookups for the lifetime of a single internal context,
+ * i.e. one unit of work (API call, bus event, notification, ...).
+ * <p/>
+ * Internal use only
+ */
+public class UnitOfWorkCache {
+
+    private final ConcurrentMap<Key, Object> entries = new ConcurrentHashMap<Key, Object>(8);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public Object get(final String namespace, final Object id) {
+        final Object value = entries.get(new Key(namespace, id));
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void put(final String namespace, final Object id, final Object value) {
+        entries.put(new Key(namespace, id), value);
+    }
+
+    public void invalidate(final String namespace, final Object id) {
+        entries.remove(new Key(namespace, id));
+    }
+
+    public void invalidateAll(final String namespace) {
+        final Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().namespace.equals(namespace)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("UnitOfWorkCache{");
+        sb.append("size=").append(entries.size());
+        sb.append(", hits=").append(hits);
+        sb.append(", misses=").append(misses);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static final class Key {
+
+        private final String namespace;
+        private final Object id;
+
+        private Key(final String namespace, final Object id) {
+            this.namespace = namespace;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            return namespace.equals(key.namespace) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * namespace.hashCode() + id.hashCode();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PaymentTransaction;
 
 public interface InvoiceInternalApi {
 
@@ -35,6 +36,16 @@ public interface InvoiceInternalApi {
 
     public Collection<Invoice> getUnpaidInvoicesByAccountId(UUID accountId, LocalDate upToDate, InternalTenantContext context);
 
+    /**
+     * Bulk version of getUnpaidInvoicesByAccountId, used by account sweeps: the target date of the invoices isn't checked
+     * (each account has its own current date), callers should filter the result per account
+     *
+     * @param accountRecordIds the account record ids
+     * @param context          tenant callcontext (the account record id isn't used)
+     * @return the unpaid invoices of all these accounts
+     */
+    public Collection<Invoice> getUnpaidInvoicesByAccountRecordIds(Collection<Long> accountRecordIds, InternalTenantContext context);
+
     public BigDecimal getAccountBalance(UUID accountId, InternalTenantContext context);
 
     public void recordPaymentAttemptInit(UUID invoiceId, BigDecimal amountOutstanding, Currency currency, Currency processedCurrency, UUID paymentId, String transactionExternalKey, DateTime paymentDate, InternalCallContext context) throws InvoiceApiException;
@@ -74,7 +85,35 @@ public interface InvoiceInternalApi {
      */
     public void consumeExistingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context) throws InvoiceApiException;
 
+    /**
+     * Retrieve an invoice prior to paying it:
+     * rebalance CBA for the account, complete the incomplete payment attempt on that invoice (if the resolver found it
+     * went through) and return the up-to-date invoice. The resolver isn't invoked from within an invoice transaction.
+     *
+     * @param invoiceId invoice id
+     * @param resolver  used to look up the payment transaction behind an incomplete payment attempt
+     * @param context   the callcontext
+     * @return the sanitized invoice
+     * @throws InvoiceApiException
+     */
+    public Invoice getAndSanitizeInvoiceForPayment(UUID invoiceId, IncompletePaymentAttemptResolver resolver, InternalCallContext context) throws InvoiceApiException;
+
     public Map<UUID, BigDecimal> validateInvoiceItemAdjustments(final UUID paymentId, final Map<UUID, BigDecimal> idWithAmount, final InternalTenantContext context) throws InvoiceApiException;
 
     public void commitInvoice(UUID invoiceId, InternalCallContext context) throws InvoiceApiException;
+
+    /**
+     * Invoice, in the background, all the accounts of the tenant with a next billing date up to the run date
+     *
+     * @param runDate the run date
+     * @param context the tenant level call context
+     * @throws InvoiceApiException
+     */
+    public void scheduleBillRun(DateTime runDate, InternalCallContext context) throws InvoiceApiException;
+
+    public interface IncompletePaymentAttemptResolver {
+
+        // Return the successful payment transaction matching that (incomplete) payment attempt, if any
+        public PaymentTransaction getSuccessfulPaymentTransaction(InvoicePayment incompletePaymentAttempt);
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.junction;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,6 +29,9 @@ public interface BlockingInternalApi {
 
     public BlockingState getBlockingStateForService(UUID blockableId, BlockingStateType blockingStateType, String serviceName, InternalTenantContext context);
 
+    // Current state of that service for all the blockable objects of a set of accounts: used by account sweeps
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(Collection<Long> accountRecordIds, BlockingStateType blockingStateType, String serviceName, InternalTenantContext context);
+
     public List<BlockingState> getBlockingAllForAccount(InternalTenantContext context);
 
     public void setBlockingState(BlockingState state, InternalCallContext context);
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.overdue;
 
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.overdue.api.OverdueApiException;
 import org.killbill.billing.overdue.api.OverdueConfig;
@@ -28,4 +29,7 @@ public interface OverdueService extends KillbillService {
     public static final String OVERDUE_SERVICE_NAME = "overdue-service";
 
     public OverdueConfig getOverdueConfig(final InternalTenantContext internalTenantContext) throws OverdueApiException;
+
+    // Re-evaluates overdue for all the accounts of the tenant, in the background
+    public void scheduleOverdueSweep(final InternalCallContext context) throws OverdueApiException;
 }
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -43,6 +44,28 @@ public interface TagInternalApi {
 
     public List<Tag> getTagsForAccountType(ObjectType objectType, boolean includedDeleted, InternalTenantContext internalTenantContext);
 
+    /**
+     * Return the active tags of a given object type, for several accounts at once
+     *
+     * @param accountRecordIds the account record ids
+     * @param objectType       the object type
+     * @param context          tenant callcontext (the account record id isn't used)
+     * @return tags of all these accounts
+     */
+    public List<Tag> getTagsForAccountRecordIds(Collection<Long> accountRecordIds, ObjectType objectType, InternalTenantContext context);
+
+    /**
+     * Return the control (and system) tags set on a given object, as a bitset (see ControlTagBits)
+     * <p/>
+     * Control tags are cached per account, this should be preferred over getTags for control tag checks.
+     *
+     * @param objectId   the object id
+     * @param objectType the object type
+     * @param context    call callcontext
+     * @return bitset of the control tags
+     */
+    public long getControlTags(UUID objectId, ObjectType objectType, InternalTenantContext context);
+
     public void addTag(final UUID objectId, final ObjectType objectType, UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
 
     public void removeTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
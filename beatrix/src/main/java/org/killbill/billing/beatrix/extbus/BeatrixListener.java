@@ -69,11 +69,13 @@ import org.killbill.billing.util.callcontext.UserType;
 import org.killbill.bus.api.BusEvent;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
+import org.skife.jdbi.v2.IDBI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.google.common.eventbus.AllowConcurrentEvents;
@@ -83,19 +85,30 @@ public class BeatrixListener {
 
     private static final Logger log = LoggerFactory.getLogger(BeatrixListener.class);
 
-    private final PersistentBus externalBus;
+    private final ExternalBusEventBatcher externalBusEventBatcher;
     private final InternalCallContextFactory internalCallContextFactory;
 
     protected final ObjectMapper objectMapper;
 
+    // Writers are immutable and thread-safe: build them once instead of resolving the serializers for each event
+    private final ObjectWriter subscriptionMetadataWriter;
+    private final ObjectWriter blockingStateMetadataWriter;
+    private final ObjectWriter paymentMetadataWriter;
+    private final ObjectWriter broadcastMetadataWriter;
+
     @Inject
     public BeatrixListener(@Named(BusModule.EXTERNAL_BUS_NAMED) final PersistentBus externalBus,
+                           final IDBI dbi,
                            final InternalCallContextFactory internalCallContextFactory) {
-        this.externalBus = externalBus;
+        this.externalBusEventBatcher = new ExternalBusEventBatcher(externalBus, dbi);
         this.internalCallContextFactory = internalCallContextFactory;
         this.objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JodaModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.subscriptionMetadataWriter = objectMapper.writerFor(SubscriptionMetadata.class);
+        this.blockingStateMetadataWriter = objectMapper.writerFor(BlockingStateMetadata.class);
+        this.paymentMetadataWriter = objectMapper.writerFor(PaymentMetadata.class);
+        this.broadcastMetadataWriter = objectMapper.writerFor(BroadcastMetadata.class);
     }
 
     @AllowConcurrentEvents
@@ -105,7 +118,8 @@ public class BeatrixListener {
         try {
             final BusEvent externalEvent = computeExtBusEventEntryFromBusInternalEvent(event, internalContext);
             if (externalEvent != null) {
-                externalBus.post(externalEvent);
+                // Coalesced with the events concurrently generated by the other handler invocations
+                externalBusEventBatcher.post(externalEvent);
             }
         } catch (final EventBusException e) {
             //
@@ -163,7 +177,7 @@ public class BeatrixListener {
 
                 SubscriptionMetadata.ActionType actionType = (event instanceof EffectiveSubscriptionInternalEvent) ? ActionType.EFFECTIVE : ActionType.REQUESTED;
                 final SubscriptionMetadata subscriptionMetadataObj = new SubscriptionMetadata(actionType, realEventST.getBundleExternalKey());
-                metaData = objectMapper.writeValueAsString(subscriptionMetadataObj);
+                metaData = subscriptionMetadataWriter.writeValueAsString(subscriptionMetadataObj);
                 break;
 
             case BLOCKING_STATE:
@@ -193,7 +207,7 @@ public class BeatrixListener {
                     final BlockingStateMetadata metaDataObj = new BlockingStateMetadata(realEventBS.getBlockableId(), realEventBS.getService(), realEventBS.getStateName(), realEventBS.getBlockingType(), realEventBS.getEffectiveDate(),
                                                                                         realEventBS.isTransitionedToBlockedBilling(), realEventBS.isTransitionedToUnblockedBilling(),
                                                                                         realEventBS.isTransitionedToBlockedEntitlement(), realEventBS.isTransitionedToUnblockedEntitlement());
-                    metaData = objectMapper.writeValueAsString(metaDataObj);
+                    metaData = blockingStateMetadataWriter.writeValueAsString(metaDataObj);
                 }
                 break;
 
@@ -240,7 +254,7 @@ public class BeatrixListener {
                 objectId = realEventPay.getPaymentId();
                 eventBusType = ExtBusEventType.PAYMENT_SUCCESS;
                 final PaymentMetadata paymentInfoMetaDataObj = new PaymentMetadata(realEventPay.getPaymentTransactionId(), realEventPay.getAmount(), realEventPay.getCurrency(), realEventPay.getStatus(), realEventPay.getTransactionType(), realEventPay.getEffectiveDate());
-                metaData = objectMapper.writeValueAsString(paymentInfoMetaDataObj);
+                metaData = paymentMetadataWriter.writeValueAsString(paymentInfoMetaDataObj);
                 break;
 
             case PAYMENT_ERROR:
@@ -250,7 +264,7 @@ public class BeatrixListener {
                 eventBusType = ExtBusEventType.PAYMENT_FAILED;
                 accountId = realEventPayErr.getAccountId();
                 final PaymentMetadata paymentErrorMetaDataObj = new PaymentMetadata(realEventPayErr.getPaymentTransactionId(), realEventPayErr.getAmount(), realEventPayErr.getCurrency(), realEventPayErr.getStatus(), realEventPayErr.getTransactionType(), realEventPayErr.getEffectiveDate());
-                metaData = objectMapper.writeValueAsString(paymentErrorMetaDataObj);
+                metaData = paymentMetadataWriter.writeValueAsString(paymentErrorMetaDataObj);
                 break;
 
             case PAYMENT_PLUGIN_ERROR:
@@ -259,7 +273,7 @@ public class BeatrixListener {
                 objectId = realEventPayPluginErr.getPaymentId();
                 eventBusType = ExtBusEventType.PAYMENT_FAILED;
                 final PaymentMetadata pluginErrorMetaDataObj = new PaymentMetadata(realEventPayPluginErr.getPaymentTransactionId(), realEventPayPluginErr.getAmount(), realEventPayPluginErr.getCurrency(), realEventPayPluginErr.getStatus(), realEventPayPluginErr.getTransactionType(), realEventPayPluginErr.getEffectiveDate());
-                metaData = objectMapper.writeValueAsString(pluginErrorMetaDataObj);
+                metaData = paymentMetadataWriter.writeValueAsString(pluginErrorMetaDataObj);
                 break;
 
             case OVERDUE_CHANGE:
@@ -333,7 +347,7 @@ public class BeatrixListener {
                 objectId = null;
                 eventBusType = ExtBusEventType.BROADCAST_SERVICE;
                 final BroadcastMetadata metaDataObj = new BroadcastMetadata(realBroadcastEvent.getServiceName(), realBroadcastEvent.getType(), realBroadcastEvent.getJsonEvent());
-                metaData = objectMapper.writeValueAsString(metaDataObj);
+                metaData = broadcastMetadataWriter.writeValueAsString(metaDataObj);
                 break;
 
             default:
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.beatrix.extbus;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.killbill.bus.api.BusEvent;
+import org.killbill.bus.api.PersistentBus;
+import org.killbill.bus.api.PersistentBus.EventBusException;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+//
+// Group commit for the external bus: concurrent handler invocations (e.g. the burst of events generated by a bulk cancellation
+// or an invoice run) enqueue their external event and one of them inserts all pending events in a single transaction.
+//
+// Each caller only returns once its own event has been committed, so the at-least-once guarantee of the internal bus is preserved.
+// If the batch transaction fails, its events are posted again one by one: a single bad event only fails its own caller (and the
+// internal bus retries that event only).
+//
+public class ExternalBusEventBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ExternalBusEventBatcher.class);
+
+    @VisibleForTesting
+    static final int MAX_BATCH_SIZE = 100;
+
+    private final PersistentBus externalBus;
+    private final IDBI dbi;
+    private final int maxBatchSize;
+
+    private final LinkedList<PendingEvent> pendingEvents = new LinkedList<PendingEvent>();
+    private boolean isFlushing = false;
+
+    public ExternalBusEventBatcher(final PersistentBus externalBus, final IDBI dbi) {
+        this(externalBus, dbi, MAX_BATCH_SIZE);
+    }
+
+    @VisibleForTesting
+    ExternalBusEventBatcher(final PersistentBus externalBus, final IDBI dbi, final int maxBatchSize) {
+        this.externalBus = externalBus;
+        this.dbi = dbi;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void post(final BusEvent event) throws EventBusException {
+        final PendingEvent pendingEvent = new PendingEvent(event);
+
+        synchronized (pendingEvents) {
+            pendingEvents.add(pendingEvent);
+        }
+
+        boolean wasInterrupted = false;
+        while (true) {
+            final List<PendingEvent> batch;
+            synchronized (pendingEvents) {
+                if (pendingEvent.isDone) {
+                    break;
+                }
+
+                if (isFlushing) {
+                    // Another thread is inserting a batch: our event will be part of the next one
+                    try {
+                        pendingEvents.wait();
+                    } catch (final InterruptedException e) {
+                        if (pendingEvents.remove(pendingEvent)) {
+                            Thread.currentThread().interrupt();
+                            throw new EventBusException("Interrupted while waiting to post event " + event, e);
+                        }
+                        // Our event is part of the batch being inserted, wait for the outcome to avoid a duplicate on retry
+                        wasInterrupted = true;
+                    }
+                    continue;
+                }
+
+                isFlushing = true;
+                batch = new ArrayList<PendingEvent>(Math.min(pendingEvents.size(), maxBatchSize));
+                while (!pendingEvents.isEmpty() && batch.size() < maxBatchSize) {
+                    batch.add(pendingEvents.removeFirst());
+                }
+            }
+
+            try {
+                postBatch(batch);
+            } finally {
+                synchronized (pendingEvents) {
+                    for (final PendingEvent cur : batch) {
+                        cur.isDone = true;
+                    }
+                    isFlushing = false;
+                    pendingEvents.notifyAll();
+                }
+            }
+        }
+
+        if (wasInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (pendingEvent.failure != null) {
+            throw pendingEvent.failure;
+        }
+    }
+
+    // Records the outcome in each PendingEvent (published to the waiting callers once marked as done)
+    private void postBatch(final List<PendingEvent> batch) {
+        // A single event (no contention) is posted directly, without paying for an explicit transaction
+        if (batch.size() > 1) {
+            try {
+                postInTransaction(batch);
+                return;
+            } catch (final RuntimeException e) {
+                // JDBI wraps the exceptions thrown by the callback
+                log.warn("Failed to post batch of {} events, posting them one by one", batch.size(), e);
+            }
+        }
+
+        // Either a single event, or a batch whose transaction was rolled back as a whole (none of its events has been posted)
+        for (final PendingEvent pendingEvent : batch) {
+            try {
+                externalBus.post(pendingEvent.event);
+            } catch (final EventBusException e) {
+                pendingEvent.failure = e;
+            } catch (final RuntimeException e) {
+                pendingEvent.failure = new EventBusException("Failed to post event " + pendingEvent.event, e);
+            }
+        }
+    }
+
+    private void postInTransaction(final List<PendingEvent> batch) {
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                for (final PendingEvent pendingEvent : batch) {
+                    externalBus.postFromTransaction(pendingEvent.event, handle.getConnection());
+                }
+                return null;
+            }
+        });
+    }
+
+    private static final class PendingEvent {
+
+        private final BusEvent event;
+
+        // Guarded by pendingEvents (failure is set by the flushing thread before isDone)
+        private boolean isDone = false;
+        private EventBusException failure = null;
+
+        private PendingEvent(final BusEvent event) {
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.beatrix.extbus;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.beatrix.BeatrixTestSuiteNoDB;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.bus.api.BusEvent;
+import org.killbill.bus.api.PersistentBus;
+import org.killbill.bus.api.PersistentBus.EventBusException;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.TransactionFailedException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TestExternalBusEventBatcher extends BeatrixTestSuiteNoDB {
+
+    // Simulated cost of a commit in the bus table
+    private static final long COMMIT_DURATION_MILLIS = 1;
+
+    // Commits are serialized, as they would be on the database log
+    private final Object commitLock = new Object();
+
+    // Events posted from the current (simulated) transaction
+    private final ThreadLocal<List<BusEvent>> transactionEvents = new ThreadLocal<List<BusEvent>>() {
+        @Override
+        protected List<BusEvent> initialValue() {
+            return new ArrayList<BusEvent>();
+        }
+    };
+
+    private List<BusEvent> postedEvents;
+    private AtomicInteger nbTransactions;
+    private AtomicInteger nbCreatedEvents;
+    // When set, every n-th created event is rejected by the bus
+    private int poisonEventsPeriod;
+    private PersistentBus externalBus;
+    private IDBI dbi;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        postedEvents = Collections.synchronizedList(new ArrayList<BusEvent>());
+        nbTransactions = new AtomicInteger();
+        nbCreatedEvents = new AtomicInteger();
+        poisonEventsPeriod = 0;
+
+        // In-memory stand-in for the external bus: one transaction per post, unless the event is posted from an existing transaction
+        externalBus = Mockito.mock(PersistentBus.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final BusEvent event = (BusEvent) invocation.getArguments()[0];
+                try {
+                    checkNotPoison(event);
+                    postedEvents.add(event);
+                } finally {
+                    commit();
+                }
+                return null;
+            }
+        }).when(externalBus).post(Mockito.<BusEvent>any());
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final BusEvent event = (BusEvent) invocation.getArguments()[0];
+                checkNotPoison(event);
+                // Only kept if the transaction commits
+                transactionEvents.get().add(event);
+                return null;
+            }
+        }).when(externalBus).postFromTransaction(Mockito.<BusEvent>any(), Mockito.<Connection>any());
+
+        dbi = Mockito.mock(IDBI.class);
+        Mockito.when(dbi.inTransaction(Mockito.<TransactionCallback<Void>>any())).thenAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                final TransactionCallback<Void> callback = (TransactionCallback<Void>) invocation.getArguments()[0];
+                transactionEvents.get().clear();
+                try {
+                    final Void result = callback.inTransaction(Mockito.mock(Handle.class), Mockito.mock(TransactionStatus.class));
+                    postedEvents.addAll(transactionEvents.get());
+                    return result;
+                } catch (final Exception e) {
+                    throw new TransactionFailedException("Transaction failed", e);
+                } finally {
+                    transactionEvents.get().clear();
+                    commit();
+                }
+            }
+        });
+    }
+
+    @Test(groups = "fast")
+    public void testSingleEventIsPostedDirectly() throws Exception {
+        final ExternalBusEventBatcher batcher = new ExternalBusEventBatcher(externalBus, dbi);
+
+        final BusEvent event = createEvent();
+        batcher.post(event);
+
+        Assert.assertEquals(postedEvents, Collections.singletonList(event));
+        Assert.assertEquals(nbTransactions.get(), 1);
+        Mockito.verify(dbi, Mockito.never()).inTransaction(Mockito.<TransactionCallback<Void>>any());
+    }
+
+    @Test(groups = "fast")
+    public void testFailedBatchIsReportedToAllCallers() throws Exception {
+        Mockito.doThrow(new EventBusException("Bus is down")).when(externalBus).postFromTransaction(Mockito.<BusEvent>any(), Mockito.<Connection>any());
+        Mockito.doThrow(new EventBusException("Bus is down")).when(externalBus).post(Mockito.<BusEvent>any());
+
+        final ExternalBusEventBatcher batcher = new ExternalBusEventBatcher(externalBus, dbi);
+        final int nbFailures = postConcurrently(batcher, 8, 50);
+        Assert.assertEquals(nbFailures, 8 * 50);
+    }
+
+    @Test(groups = "fast")
+    public void testPoisonEventOnlyFailsItsCaller() throws Exception {
+        poisonEventsPeriod = 10;
+
+        final ExternalBusEventBatcher batcher = new ExternalBusEventBatcher(externalBus, dbi);
+        final int nbFailures = postConcurrently(batcher, 8, 50);
+        Assert.assertEquals(nbFailures, 8 * 50 / poisonEventsPeriod);
+        Assert.assertEquals(postedEvents.size(), 8 * 50 - nbFailures);
+        Assert.assertEquals(ImmutableSet.<BusEvent>copyOf(postedEvents).size(), postedEvents.size());
+    }
+
+    @Test(groups = "fast")
+    public void testBurstThroughput() throws Exception {
+        final int nbThreads = 8;
+        final int nbEventsPerThread = 200;
+
+        final long unbatchedStart = System.nanoTime();
+        Assert.assertEquals(postConcurrently(null, nbThreads, nbEventsPerThread), 0);
+        final long unbatchedNanos = System.nanoTime() - unbatchedStart;
+        final int unbatchedTransactions = nbTransactions.getAndSet(0);
+        Assert.assertEquals(postedEvents.size(), nbThreads * nbEventsPerThread);
+        postedEvents.clear();
+
+        final ExternalBusEventBatcher batcher = new ExternalBusEventBatcher(externalBus, dbi);
+        final long batchedStart = System.nanoTime();
+        Assert.assertEquals(postConcurrently(batcher, nbThreads, nbEventsPerThread), 0);
+        final long batchedNanos = System.nanoTime() - batchedStart;
+        final int batchedTransactions = nbTransactions.get();
+        Assert.assertEquals(postedEvents.size(), nbThreads * nbEventsPerThread);
+
+        log.info("Posted {} events: unbatched in {} ms ({} transactions), batched in {} ms ({} transactions)",
+                 nbThreads * nbEventsPerThread, unbatchedNanos / 1000000, unbatchedTransactions, batchedNanos / 1000000, batchedTransactions);
+
+        Assert.assertEquals(unbatchedTransactions, nbThreads * nbEventsPerThread);
+        Assert.assertTrue(batchedTransactions < unbatchedTransactions);
+    }
+
+    // Returns the number of failed posts
+    private int postConcurrently(final ExternalBusEventBatcher batcher, final int nbThreads, final int nbEventsPerThread) throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < nbThreads; i++) {
+                futures.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int nbFailures = 0;
+                        for (int j = 0; j < nbEventsPerThread; j++) {
+                            try {
+                                if (batcher == null) {
+                                    externalBus.post(createEvent());
+                                } else {
+                                    batcher.post(createEvent());
+                                }
+                            } catch (final EventBusException e) {
+                                nbFailures++;
+                            }
+                        }
+                        return nbFailures;
+                    }
+                }));
+            }
+
+            int nbFailures = 0;
+            for (final Future<Integer> future : futures) {
+                nbFailures += future.get();
+            }
+            return nbFailures;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void commit() throws InterruptedException {
+        synchronized (commitLock) {
+            nbTransactions.incrementAndGet();
+            Thread.sleep(COMMIT_DURATION_MILLIS);
+        }
+    }
+
+    private void checkNotPoison(final BusEvent event) throws EventBusException {
+        if (((DefaultBusExternalEvent) event).getEventType() == ExtBusEventType.BROADCAST_SERVICE) {
+            throw new EventBusException("Poison event " + event);
+        }
+    }
+
+    private BusEvent createEvent() {
+        final int eventNb = nbCreatedEvents.incrementAndGet();
+        final ExtBusEventType eventType = poisonEventsPeriod > 0 && eventNb % poisonEventsPeriod == 0 ? ExtBusEventType.BROADCAST_SERVICE : ExtBusEventType.SUBSCRIPTION_CANCEL;
+        return new DefaultBusExternalEvent(UUID.randomUUID(), ObjectType.SUBSCRIPTION, eventType, UUID.randomUUID(), UUID.randomUUID(), null, 1L, 1L, UUID.randomUUID());
+    }
+}
@@ -33,6 +33,8 @@ import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
 import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper.UnitOfWorkLoader;
 import org.killbill.billing.util.config.definition.CatalogConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,6 +103,13 @@ public class DefaultCatalogService implements KillbillService, CatalogService {
     }
 
     private VersionedCatalog getCatalog(final boolean useDefaultCatalog, final boolean filterTemplateCatalog, final InternalTenantContext context) throws CatalogApiException {
-        return catalogCache.getCatalog(useDefaultCatalog, filterTemplateCatalog, context);
+        // The catalog is versioned: within a unit of work, keep using the same snapshot
+        final String key = useDefaultCatalog + "-" + filterTemplateCatalog;
+        return UnitOfWorkCacheHelper.getOrLoad(UnitOfWorkCacheHelper.CATALOG, key, context, new UnitOfWorkLoader<VersionedCatalog, CatalogApiException>() {
+            @Override
+            public VersionedCatalog load() throws CatalogApiException {
+                return catalogCache.getCatalog(useDefaultCatalog, filterTemplateCatalog, context);
+            }
+        });
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+
+import javax.inject.Inject;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.killbill.billing.util.config.definition.CatalogConfig;
+import org.killbill.xmlloader.ValidationException;
+import org.killbill.xmlloader.XMLLoader;
+import org.killbill.xmlloader.XMLSchemaGenerator;
+import org.xml.sax.SAXException;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+//
+// Unmarshals tenant catalog versions. XMLLoader#getObjectFromStream rebuilds the JAXB context and regenerates
+// the XSD on each call, which dominates the cost of loading a catalog: both are thread-safe, so we build them once.
+//
+// We also remember the content hash of the versions which went through schema and semantic validation: since catalog
+// versions are immutable once uploaded, reloading a known version (cache eviction, new version uploaded, ...) only
+// needs to unmarshal and initialize it. Unknown (or evicted) hashes fall back to the fully validated path.
+//
+public class StandaloneCatalogUnmarshaller {
+
+    private final Cache<HashCode, Boolean> validatedCatalogs;
+
+    private volatile JAXBContext jaxbContext;
+    private volatile Schema schema;
+
+    @Inject
+    public StandaloneCatalogUnmarshaller(final CatalogConfig catalogConfig) {
+        this.validatedCatalogs = CacheBuilder.newBuilder()
+                                             .maximumSize(catalogConfig.getValidationCacheMaxSize())
+                                             .build();
+    }
+
+    public StandaloneCatalog unmarshal(final URI uri, final String catalogXML) throws JAXBException, SAXException, IOException, TransformerException, ValidationException {
+        final HashCode contentHash = Hashing.sha256().hashString(catalogXML, Charsets.UTF_8);
+        final boolean validated = validatedCatalogs.getIfPresent(contentHash) != null;
+
+        final Unmarshaller unmarshaller = getJAXBContext().createUnmarshaller();
+        if (!validated) {
+            unmarshaller.setSchema(getSchema());
+        }
+
+        final Object result = unmarshaller.unmarshal(new ByteArrayInputStream(catalogXML.getBytes()));
+        if (!(result instanceof StandaloneCatalog)) {
+            return null;
+        }
+
+        final StandaloneCatalog catalog = (StandaloneCatalog) result;
+        if (validated) {
+            catalog.initialize(catalog, uri);
+        } else {
+            try {
+                XMLLoader.initializeAndValidate(uri, catalog);
+            } catch (final ValidationException e) {
+                e.getErrors().log(XMLLoader.log);
+                throw e;
+            }
+            validatedCatalogs.put(contentHash, Boolean.TRUE);
+        }
+        return catalog;
+    }
+
+    @VisibleForTesting
+    boolean isValidated(final String catalogXML) {
+        return validatedCatalogs.getIfPresent(Hashing.sha256().hashString(catalogXML, Charsets.UTF_8)) != null;
+    }
+
+    @VisibleForTesting
+    void invalidateAll() {
+        validatedCatalogs.invalidateAll();
+    }
+
+    private JAXBContext getJAXBContext() throws JAXBException {
+        if (jaxbContext == null) {
+            synchronized (this) {
+                if (jaxbContext == null) {
+                    jaxbContext = JAXBContext.newInstance(StandaloneCatalog.class);
+                }
+            }
+        }
+        return jaxbContext;
+    }
+
+    private Schema getSchema() throws JAXBException, SAXException, IOException, TransformerException {
+        if (schema == null) {
+            synchronized (this) {
+                if (schema == null) {
+                    final SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                    schema = schemaFactory.newSchema(new StreamSource(XMLSchemaGenerator.xmlSchema(StandaloneCatalog.class)));
+                }
+            }
+        }
+        return schema;
+    }
+}
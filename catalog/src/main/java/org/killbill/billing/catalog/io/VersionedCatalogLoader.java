@@ -18,9 +18,7 @@
 
 package org.killbill.billing.catalog.io;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -36,7 +34,6 @@ import org.killbill.billing.catalog.StandaloneCatalog;
 import org.killbill.billing.catalog.StandaloneCatalogWithPriceOverride;
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.catalog.api.CatalogApiException;
-import org.killbill.billing.catalog.api.InvalidConfigException;
 import org.killbill.billing.catalog.override.PriceOverride;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.clock.Clock;
@@ -61,12 +58,14 @@ public class VersionedCatalogLoader implements CatalogLoader {
     private final Clock clock;
     private final PriceOverride priceOverride;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final StandaloneCatalogUnmarshaller standaloneCatalogUnmarshaller;
 
     @Inject
-    public VersionedCatalogLoader(final Clock clock, final PriceOverride priceOverride, final InternalCallContextFactory internalCallContextFactory) {
+    public VersionedCatalogLoader(final Clock clock, final PriceOverride priceOverride, final InternalCallContextFactory internalCallContextFactory, final StandaloneCatalogUnmarshaller standaloneCatalogUnmarshaller) {
         this.clock = clock;
         this.priceOverride = priceOverride;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.standaloneCatalogUnmarshaller = standaloneCatalogUnmarshaller;
     }
 
     @Override
@@ -121,8 +120,7 @@ public class VersionedCatalogLoader implements CatalogLoader {
         try {
             uri = new URI("/tenantCatalog");
             for (final String cur : catalogXMLs) {
-                final InputStream curCatalogStream = new ByteArrayInputStream(cur.getBytes());
-                final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(uri, curCatalogStream, StandaloneCatalog.class);
+                final StandaloneCatalog catalog = standaloneCatalogUnmarshaller.unmarshal(uri, cur);
                 if (!filterTemplateCatalog || !catalog.isTemplateCatalog()) {
                     result.add(new StandaloneCatalogWithPriceOverride(catalog, priceOverride, tenantRecordId, internalCallContextFactory));
                 }
@@ -148,9 +146,6 @@ public class VersionedCatalogLoader implements CatalogLoader {
         } catch (final SAXException e) {
             logger.warn("Failed to load catalog for tenantRecordId='{}'",  tenantRecordId, e);
             throw new IllegalStateException(e);
-        } catch (final InvalidConfigException e) {
-            logger.warn("Failed to load catalog for tenantRecordId='{}'",  tenantRecordId, e);
-            throw new IllegalStateException(e);
         }
     }
 
@@ -34,6 +34,11 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
                 return "versionedCatalog";
             }
 
+            @Override
+            public int getValidationCacheMaxSize() {
+                return 0;
+            }
+
         }, tenantInternalApi, catalogCache, cacheInvalidationCallback);
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog(true, true, internalCallContext));
@@ -48,6 +53,11 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
                 return "WeaponsHire.xml";
             }
 
+            @Override
+            public int getValidationCacheMaxSize() {
+                return 0;
+            }
+
         },  tenantInternalApi, catalogCache, cacheInvalidationCallback);
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog(true, true, internalCallContext));
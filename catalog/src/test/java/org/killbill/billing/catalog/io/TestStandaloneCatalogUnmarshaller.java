@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.CatalogTestSuiteNoDB;
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.killbill.billing.catalog.StandaloneCatalogWithPriceOverride;
+import org.killbill.billing.catalog.VersionedCatalog;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.Plan;
+import org.killbill.xmlloader.XMLLoader;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import com.google.inject.Inject;
+
+public class TestStandaloneCatalogUnmarshaller extends CatalogTestSuiteNoDB {
+
+    private static final int NB_VERSIONS = 50;
+
+    @Inject
+    private StandaloneCatalogUnmarshaller standaloneCatalogUnmarshaller;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() {
+        standaloneCatalogUnmarshaller.invalidateAll();
+    }
+
+    @Test(groups = "fast")
+    public void testValidationIsSkippedForKnownVersionsOnly() throws Exception {
+        final String xml = Resources.toString(Resources.getResource("SpyCarAdvanced.xml"), Charsets.UTF_8);
+        final String otherXml = withEffectiveDate(xml, new DateTime(2014, 1, 1, 0, 0, DateTimeZone.UTC));
+
+        final VersionedCatalog first = loader.load(ImmutableList.<String>of(xml), false, 1L);
+        Assert.assertTrue(standaloneCatalogUnmarshaller.isValidated(xml));
+        Assert.assertFalse(standaloneCatalogUnmarshaller.isValidated(otherXml));
+
+        final VersionedCatalog second = loader.load(ImmutableList.<String>of(xml, otherXml), false, 1L);
+        Assert.assertTrue(standaloneCatalogUnmarshaller.isValidated(otherXml));
+        Assert.assertEquals(second.getVersions().size(), 2);
+        assertSamePlans(second.getVersions().get(0), first.getVersions().get(0));
+        // Each load builds its own object graph, nothing is shared across loads
+        Assert.assertNotSame(second.getVersions().get(0).getCurrentPlans().iterator().next(), first.getVersions().get(0).getCurrentPlans().iterator().next());
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidVersionIsNotRemembered() throws Exception {
+        final String xml = Resources.toString(Resources.getResource("SpyCarAdvanced.xml"), Charsets.UTF_8);
+        final String invalidXml = xml.replace("<catalogName>SpyCarAdvanced</catalogName>", "<catalogName>SpyCarAdvanced</catalogName><unknownElement/>");
+
+        try {
+            loader.load(ImmutableList.<String>of(invalidXml), false, 1L);
+            Assert.fail("Schema validation should have failed");
+        } catch (final CatalogApiException e) {
+            Assert.assertFalse(standaloneCatalogUnmarshaller.isValidated(invalidXml));
+        }
+    }
+
+    @Test(groups = "fast", description = "Benchmark loading a 50-version catalog through XMLLoader and through the cached unmarshaller")
+    public void testLoadManyVersions() throws Exception {
+        final String xml = Resources.toString(Resources.getResource("SpyCarAdvanced.xml"), Charsets.UTF_8);
+        final List<String> catalogXMLs = new LinkedList<String>();
+        final DateTime firstEffectiveDate = new DateTime(2013, 2, 8, 0, 0, DateTimeZone.UTC);
+        for (int i = 0; i < NB_VERSIONS; i++) {
+            catalogXMLs.add(withEffectiveDate(xml, firstEffectiveDate.plusDays(i)));
+        }
+
+        long startNanos = System.nanoTime();
+        final VersionedCatalog xmlLoaderCatalog = loadWithXMLLoader(catalogXMLs);
+        final long xmlLoaderMs = (System.nanoTime() - startNanos) / 1000000;
+
+        startNanos = System.nanoTime();
+        loader.load(catalogXMLs, false, 1L);
+        final long coldMs = (System.nanoTime() - startNanos) / 1000000;
+
+        startNanos = System.nanoTime();
+        final VersionedCatalog warmCatalog = loader.load(catalogXMLs, false, 1L);
+        final long warmMs = (System.nanoTime() - startNanos) / 1000000;
+
+        log.info("Loaded {} catalog versions: XMLLoader={}ms, cold={}ms, validated={}ms", NB_VERSIONS, xmlLoaderMs, coldMs, warmMs);
+
+        Assert.assertEquals(warmCatalog.getVersions().size(), NB_VERSIONS);
+        for (int i = 0; i < NB_VERSIONS; i++) {
+            Assert.assertEquals(warmCatalog.getVersions().get(i).getEffectiveDate(), xmlLoaderCatalog.getVersions().get(i).getEffectiveDate());
+            assertSamePlans(warmCatalog.getVersions().get(i), xmlLoaderCatalog.getVersions().get(i));
+        }
+    }
+
+    // Loading path prior to StandaloneCatalogUnmarshaller
+    private VersionedCatalog loadWithXMLLoader(final Iterable<String> catalogXMLs) throws Exception {
+        final VersionedCatalog result = new VersionedCatalog(clock);
+        final URI uri = new URI("/tenantCatalog");
+        for (final String cur : catalogXMLs) {
+            final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(uri, new ByteArrayInputStream(cur.getBytes()), StandaloneCatalog.class);
+            result.add(new StandaloneCatalogWithPriceOverride(catalog, priceOverride, 1L, internalCallContextFactory));
+        }
+        XMLLoader.initializeAndValidate(uri, result);
+        return result;
+    }
+
+    private void assertSamePlans(final StandaloneCatalog actual, final StandaloneCatalog expected) {
+        final List<Plan> actualPlans = ImmutableList.<Plan>copyOf(actual.getCurrentPlans());
+        final List<Plan> expectedPlans = ImmutableList.<Plan>copyOf(expected.getCurrentPlans());
+        Assert.assertEquals(actualPlans.size(), expectedPlans.size());
+        for (int i = 0; i < expectedPlans.size(); i++) {
+            Assert.assertEquals(actualPlans.get(i).getName(), expectedPlans.get(i).getName());
+            Assert.assertEquals(actualPlans.get(i).getProduct().getName(), expectedPlans.get(i).getProduct().getName());
+            Assert.assertEquals(actualPlans.get(i).getAllPhases().length, expectedPlans.get(i).getAllPhases().length);
+        }
+    }
+
+    private String withEffectiveDate(final String xml, final DateTime effectiveDate) {
+        return xml.replace("<effectiveDate>2013-02-08T00:00:00+00:00</effectiveDate>", "<effectiveDate>" + effectiveDate.toString() + "</effectiveDate>");
+    }
+}
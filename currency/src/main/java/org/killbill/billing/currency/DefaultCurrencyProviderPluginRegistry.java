@@ -23,6 +23,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.killbill.billing.currency.api.CurrencyConversionCache;
 import org.killbill.billing.currency.plugin.api.CurrencyPluginApi;
 import org.killbill.billing.osgi.api.OSGIServiceDescriptor;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
@@ -34,21 +35,26 @@ public class DefaultCurrencyProviderPluginRegistry implements OSGIServiceRegistr
     private final static Logger log = LoggerFactory.getLogger(DefaultCurrencyProviderPluginRegistry.class);
 
     private final Map<String, CurrencyPluginApi> pluginsByName = new ConcurrentHashMap<String, CurrencyPluginApi>();
+    private final CurrencyConversionCache conversionCache;
 
     @Inject
-    public DefaultCurrencyProviderPluginRegistry() {
+    public DefaultCurrencyProviderPluginRegistry(final CurrencyConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
     }
 
     @Override
     public void registerService(final OSGIServiceDescriptor desc, final CurrencyPluginApi service) {
         log.info("Registering service='{}'", desc.getRegistrationName());
         pluginsByName.put(desc.getRegistrationName(), service);
+        // Cached rates may have been retrieved from a previous version of the plugin
+        conversionCache.invalidateAll();
     }
 
     @Override
     public void unregisterService(final String serviceName) {
         log.info("Unregistering service='{}'", serviceName);
         pluginsByName.remove(serviceName);
+        conversionCache.invalidateAll();
     }
 
     @Override
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.currency.api;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.util.config.definition.CurrencyConfig;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache of the conversions returned by the currency plugin, keyed by base currency and date bucket.
+ * <p/>
+ * Concurrent lookups for the same key result in a single plugin call. Conversions without any rate (e.g. unsupported base
+ * currency) are cached separately, for a shorter period of time. The cache is cleared when a currency plugin is (un)registered.
+ */
+public class CurrencyConversionCache {
+
+    private final long bucketMillis;
+    private final Cache<ConversionCacheKey, CurrencyConversion> conversions;
+    private final Cache<ConversionCacheKey, CurrencyConversion> missingConversions;
+
+    @Inject
+    public CurrencyConversionCache(final CurrencyConfig config) {
+        this.bucketMillis = config.getConversionCacheBucket().getMillis();
+        this.conversions = CacheBuilder.newBuilder()
+                                       .maximumSize(config.getConversionCacheMaxSize())
+                                       .expireAfterWrite(config.getConversionCacheTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                       .build();
+        this.missingConversions = CacheBuilder.newBuilder()
+                                              .maximumSize(config.getConversionCacheMaxSize())
+                                              .expireAfterWrite(config.getConversionCacheNegativeTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                              .build();
+    }
+
+    public DateTime getBucketStart(final DateTime dateConversion) {
+        if (bucketMillis <= 0) {
+            return dateConversion;
+        }
+        final long millis = dateConversion.getMillis();
+        return new DateTime(millis - ((millis % bucketMillis) + bucketMillis) % bucketMillis, DateTimeZone.UTC);
+    }
+
+    public CurrencyConversion getCurrencyConversion(final Currency baseCurrency, final DateTime bucketStart, final Callable<Set<Rate>> ratesLoader) {
+        final ConversionCacheKey cacheKey = new ConversionCacheKey(baseCurrency, bucketStart.getMillis());
+
+        final CurrencyConversion missingConversion = missingConversions.getIfPresent(cacheKey);
+        if (missingConversion != null) {
+            return missingConversion;
+        }
+
+        try {
+            return conversions.get(cacheKey, new Callable<CurrencyConversion>() {
+                @Override
+                public CurrencyConversion call() throws Exception {
+                    final Set<Rate> rates = ratesLoader.call();
+                    final CurrencyConversion conversion = new DefaultCurrencyConversion(baseCurrency, rates);
+                    if (rates == null || rates.isEmpty()) {
+                        missingConversions.put(cacheKey, conversion);
+                        // Don't keep it in the main cache: this is also seen by concurrent callers waiting on that load
+                        throw new MissingConversionException(conversion);
+                    }
+                    return conversion;
+                }
+            });
+        } catch (final ExecutionException e) {
+            return handleLoadingFailure(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            return handleLoadingFailure(e.getCause());
+        }
+    }
+
+    public void invalidateAll() {
+        conversions.invalidateAll();
+        missingConversions.invalidateAll();
+    }
+
+    private CurrencyConversion handleLoadingFailure(final Throwable cause) {
+        if (cause instanceof MissingConversionException) {
+            return ((MissingConversionException) cause).getConversion();
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static final class MissingConversionException extends Exception {
+
+        private final CurrencyConversion conversion;
+
+        private MissingConversionException(final CurrencyConversion conversion) {
+            this.conversion = conversion;
+        }
+
+        // Only used for control flow
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        public CurrencyConversion getConversion() {
+            return conversion;
+        }
+    }
+
+    private static final class ConversionCacheKey {
+
+        private final Currency baseCurrency;
+        private final long bucketStartMillis;
+
+        private ConversionCacheKey(final Currency baseCurrency, final long bucketStartMillis) {
+            this.baseCurrency = baseCurrency;
+            this.bucketStartMillis = bucketStartMillis;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ConversionCacheKey that = (ConversionCacheKey) o;
+            return bucketStartMillis == that.bucketStartMillis && baseCurrency == that.baseCurrency;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(baseCurrency, bucketStartMillis);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.killbill.billing.currency.api;
 
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
@@ -32,12 +33,13 @@ public class DefaultCurrencyConversionApi implements CurrencyConversionApi {
 
     private final CurrencyConfig config;
     private final OSGIServiceRegistration<CurrencyPluginApi> registry;
+    private final CurrencyConversionCache conversionCache;
 
     @Inject
-    public DefaultCurrencyConversionApi(final CurrencyConfig config, final OSGIServiceRegistration<CurrencyPluginApi> registry) {
+    public DefaultCurrencyConversionApi(final CurrencyConfig config, final OSGIServiceRegistration<CurrencyPluginApi> registry, final CurrencyConversionCache conversionCache) {
         this.config = config;
         this.registry = registry;
-
+        this.conversionCache = conversionCache;
     }
 
     private CurrencyPluginApi getPluginApi() throws CurrencyConversionException {
@@ -62,8 +64,14 @@ public class DefaultCurrencyConversionApi implements CurrencyConversionApi {
 
     @Override
     public CurrencyConversion getCurrencyConversion(final Currency baseCurrency, final DateTime dateConversion) throws CurrencyConversionException {
-        final Set<Rate> allRates = getPluginApi().getRates(baseCurrency, dateConversion);
-        return getCurrencyConversionInternal(baseCurrency, allRates);
+        final CurrencyPluginApi pluginApi = getPluginApi();
+        final DateTime bucketStart = conversionCache.getBucketStart(dateConversion);
+        return conversionCache.getCurrencyConversion(baseCurrency, bucketStart, new Callable<Set<Rate>>() {
+            @Override
+            public Set<Rate> call() {
+                return pluginApi.getRates(baseCurrency, bucketStart);
+            }
+        });
     }
 
     private CurrencyConversion getCurrencyConversionInternal(final Currency baseCurrency, final Set<Rate> allRates) {
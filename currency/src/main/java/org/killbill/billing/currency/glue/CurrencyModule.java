@@ -20,6 +20,7 @@ package org.killbill.billing.currency.glue;
 
 import org.killbill.billing.currency.DefaultCurrencyService;
 import org.killbill.billing.currency.api.CurrencyConversionApi;
+import org.killbill.billing.currency.api.CurrencyConversionCache;
 import org.killbill.billing.currency.api.CurrencyService;
 import org.killbill.billing.currency.api.DefaultCurrencyConversionApi;
 import org.killbill.billing.currency.plugin.api.CurrencyPluginApi;
@@ -42,6 +43,7 @@ public class CurrencyModule extends KillBillModule {
         final ConfigurationObjectFactory factory = new ConfigurationObjectFactory(skifeConfigSource);
         final CurrencyConfig currencyConfig = factory.build(CurrencyConfig.class);
         bind(CurrencyConfig.class).toInstance(currencyConfig);
+        bind(CurrencyConversionCache.class).asEagerSingleton();
 
         bind(new TypeLiteral<OSGIServiceRegistration<CurrencyPluginApi>>() {}).toProvider(DefaultCurrencyProviderPluginRegistryProvider.class).asEagerSingleton();
 
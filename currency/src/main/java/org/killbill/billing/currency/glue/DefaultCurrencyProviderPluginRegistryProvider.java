@@ -19,6 +19,7 @@ package org.killbill.billing.currency.glue;
 import javax.inject.Inject;
 
 import org.killbill.billing.currency.DefaultCurrencyProviderPluginRegistry;
+import org.killbill.billing.currency.api.CurrencyConversionCache;
 import org.killbill.billing.currency.plugin.api.CurrencyPluginApi;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 
@@ -26,14 +27,16 @@ import com.google.inject.Provider;
 
 public class DefaultCurrencyProviderPluginRegistryProvider implements Provider<OSGIServiceRegistration<CurrencyPluginApi>> {
 
+    private final CurrencyConversionCache conversionCache;
 
     @Inject
-    public DefaultCurrencyProviderPluginRegistryProvider() {
+    public DefaultCurrencyProviderPluginRegistryProvider(final CurrencyConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
     }
 
     @Override
     public OSGIServiceRegistration<CurrencyPluginApi> get() {
-        final DefaultCurrencyProviderPluginRegistry pluginRegistry = new DefaultCurrencyProviderPluginRegistry();
+        final DefaultCurrencyProviderPluginRegistry pluginRegistry = new DefaultCurrencyProviderPluginRegistry(conversionCache);
         return pluginRegistry;
     }
 }
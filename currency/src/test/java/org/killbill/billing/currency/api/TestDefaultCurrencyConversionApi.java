@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.currency.api;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.currency.DefaultCurrencyProviderPluginRegistry;
+import org.killbill.billing.currency.plugin.api.CurrencyPluginApi;
+import org.killbill.billing.osgi.api.OSGIServiceDescriptor;
+import org.killbill.billing.util.config.definition.CurrencyConfig;
+import org.skife.config.ConfigurationObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TestDefaultCurrencyConversionApi {
+
+    private static final String PLUGIN_NAME = "killbill-currency-plugin";
+
+    private DefaultCurrencyProviderPluginRegistry registry;
+    private DefaultCurrencyConversionApi currencyConversionApi;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        final CurrencyConfig config = new ConfigurationObjectFactory(new Properties()).build(CurrencyConfig.class);
+        final CurrencyConversionCache conversionCache = new CurrencyConversionCache(config);
+        registry = new DefaultCurrencyProviderPluginRegistry(conversionCache);
+        currencyConversionApi = new DefaultCurrencyConversionApi(config, registry, conversionCache);
+    }
+
+    @Test(groups = "fast")
+    public void testConversionsAreCachedPerDateBucket() throws Exception {
+        final CountingCurrencyPluginApi plugin = registerPlugin(null);
+
+        final CurrencyConversion conversion = currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+        Assert.assertEquals(conversion.getBaseCurrency(), Currency.USD);
+        Assert.assertEquals(conversion.getRates().size(), 1);
+        Assert.assertEquals(conversion.getRates().iterator().next().getConversionDate(), new DateTime(2018, 3, 1, 0, 0, DateTimeZone.UTC));
+
+        // Same day
+        Assert.assertSame(currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 22, 30, DateTimeZone.UTC)), conversion);
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 1);
+
+        // Other day, other base currency
+        currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 2, 10, 0, DateTimeZone.UTC));
+        currencyConversionApi.getCurrencyConversion(Currency.EUR, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testUnsupportedCurrenciesAreCached() throws Exception {
+        final CountingCurrencyPluginApi plugin = registerPlugin(null);
+
+        for (int i = 0; i < 10; i++) {
+            final CurrencyConversion conversion = currencyConversionApi.getCurrencyConversion(Currency.BTC, new DateTime(2018, 3, 1, i, 0, DateTimeZone.UTC));
+            Assert.assertEquals(conversion.getBaseCurrency(), Currency.BTC);
+            Assert.assertTrue(conversion.getRates().isEmpty());
+        }
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentLookupsResultInOnePluginCall() throws Exception {
+        final CountDownLatch releasePlugin = new CountDownLatch(1);
+        final CountingCurrencyPluginApi plugin = registerPlugin(releasePlugin);
+
+        final int nbThreads = 16;
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<CurrencyConversion>> futures = new ArrayList<Future<CurrencyConversion>>();
+            for (int i = 0; i < nbThreads; i++) {
+                futures.add(executor.submit(new Callable<CurrencyConversion>() {
+                    @Override
+                    public CurrencyConversion call() throws Exception {
+                        return currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+                    }
+                }));
+            }
+
+            // Give a chance to all threads to block on the load
+            Thread.sleep(200);
+            releasePlugin.countDown();
+
+            final CurrencyConversion conversion = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (final Future<CurrencyConversion> future : futures) {
+                Assert.assertSame(future.get(10, TimeUnit.SECONDS), conversion);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testCacheIsClearedWhenPluginIsRegistered() throws Exception {
+        final CountingCurrencyPluginApi plugin = registerPlugin(null);
+        currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+        currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 1);
+
+        registry.unregisterService(PLUGIN_NAME);
+        try {
+            currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+            Assert.fail("No currency plugin should be registered");
+        } catch (final CurrencyConversionException e) {
+            // Expected
+        }
+
+        final CountingCurrencyPluginApi newPlugin = registerPlugin(null);
+        currencyConversionApi.getCurrencyConversion(Currency.USD, new DateTime(2018, 3, 1, 10, 0, DateTimeZone.UTC));
+        Assert.assertEquals(plugin.getNbGetRatesCalls(), 1);
+        Assert.assertEquals(newPlugin.getNbGetRatesCalls(), 1);
+    }
+
+    private CountingCurrencyPluginApi registerPlugin(final CountDownLatch releasePlugin) {
+        final CountingCurrencyPluginApi plugin = new CountingCurrencyPluginApi(releasePlugin);
+        registry.registerService(new OSGIServiceDescriptor() {
+            @Override
+            public String getPluginSymbolicName() {
+                return PLUGIN_NAME;
+            }
+
+            @Override
+            public String getPluginName() {
+                return PLUGIN_NAME;
+            }
+
+            @Override
+            public String getRegistrationName() {
+                return PLUGIN_NAME;
+            }
+        }, plugin);
+        return plugin;
+    }
+
+    private static final class CountingCurrencyPluginApi implements CurrencyPluginApi {
+
+        private static final Set<Currency> BASE_CURRENCIES = ImmutableSet.<Currency>of(Currency.USD, Currency.EUR);
+
+        private final AtomicInteger nbGetRatesCalls = new AtomicInteger();
+        private final CountDownLatch releasePlugin;
+
+        private CountingCurrencyPluginApi(final CountDownLatch releasePlugin) {
+            this.releasePlugin = releasePlugin;
+        }
+
+        public int getNbGetRatesCalls() {
+            return nbGetRatesCalls.get();
+        }
+
+        @Override
+        public Set<Currency> getBaseCurrencies() {
+            return BASE_CURRENCIES;
+        }
+
+        @Override
+        public DateTime getLatestConversionDate(final Currency baseCurrency) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<DateTime> getConversionDates(final Currency baseCurrency) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<Rate> getCurrentRates(final Currency baseCurrency) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<Rate> getRates(final Currency baseCurrency, final DateTime conversionDate) {
+            nbGetRatesCalls.incrementAndGet();
+            if (releasePlugin != null) {
+                try {
+                    releasePlugin.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (!BASE_CURRENCIES.contains(baseCurrency)) {
+                return ImmutableSet.<Rate>of();
+            }
+            return ImmutableSet.<Rate>of(new Rate() {
+                @Override
+                public Currency getBaseCurrency() {
+                    return baseCurrency;
+                }
+
+                @Override
+                public Currency getCurrency() {
+                    return baseCurrency == Currency.USD ? Currency.EUR : Currency.USD;
+                }
+
+                @Override
+                public BigDecimal getValue() {
+                    return BigDecimal.ONE;
+                }
+
+                @Override
+                public DateTime getConversionDate() {
+                    return conversionDate;
+                }
+            });
+        }
+    }
+}
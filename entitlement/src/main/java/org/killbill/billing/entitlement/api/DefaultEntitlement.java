@@ -74,6 +74,7 @@ import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificatio
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import static org.killbill.billing.entitlement.logging.EntitlementLoggingHelper.logCancelEntitlement;
@@ -783,6 +784,24 @@ public class DefaultEntitlement extends EntityBase implements Entitlement {
         // Get the latest state from disk (we just got cancelled or changed plan)
         refresh(context);
 
+        return computeAddOnBlockingStatesForRefreshedEventsStream(effectiveDate, notificationEvents);
+    }
+
+    // Special signature for bulk operations, which rebuild the EventsStream objects in one go (see EventsStreamBuilder#buildForEntitlements)
+    public Collection<BlockingState> computeAddOnBlockingStates(final DateTime effectiveDate, final Collection<NotificationEvent> notificationEvents, final EventsStream refreshedEventsStream) {
+        // Optimization - bail early
+        if (!ProductCategory.BASE.equals(getSubscriptionBase().getCategory())) {
+            // Only base subscriptions have add-ons
+            return ImmutableList.<BlockingState>of();
+        }
+
+        Preconditions.checkState(getId().equals(refreshedEventsStream.getEntitlementId()), "EventsStream for entitlementId='%s' doesn't match entitlementId='%s'", refreshedEventsStream.getEntitlementId(), getId());
+        eventsStream = refreshedEventsStream;
+
+        return computeAddOnBlockingStatesForRefreshedEventsStream(effectiveDate, notificationEvents);
+    }
+
+    private Collection<BlockingState> computeAddOnBlockingStatesForRefreshedEventsStream(final DateTime effectiveDate, final Collection<NotificationEvent> notificationEvents) {
         // If cancellation/change occurs in the future, do nothing for now but add a notification entry.
         // This is to distinguish whether a future cancellation was requested by the user, or was a side effect
         // (e.g. base plan cancellation): future entitlement cancellations for add-ons on disk always reflect
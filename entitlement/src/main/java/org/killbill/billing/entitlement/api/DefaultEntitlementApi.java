@@ -266,15 +266,24 @@ public class DefaultEntitlementApi extends DefaultEntitlementApiBase implements
     }
 
     private List<Entitlement> buildEntitlementList(final UUID accountId, final Iterable<SubscriptionBaseWithAddOns> subscriptionsWithAddOns, final CallContext callContext) throws EntitlementApiException {
-        final List<Entitlement> result = new ArrayList<Entitlement>();
+        final List<UUID> entitlementIds = new ArrayList<UUID>();
         for (final SubscriptionBaseWithAddOns subscriptionWithAddOns : subscriptionsWithAddOns) {
             for (final SubscriptionBase subscriptionBase : subscriptionWithAddOns.getSubscriptionBaseList()) {
-                final Entitlement entitlement = new DefaultEntitlement(accountId, subscriptionBase.getId(), eventsStreamBuilder, entitlementApi, pluginExecution,
-                                                                       blockingStateDao, subscriptionBaseInternalApi, checker, notificationQueueService,
-                                                                       entitlementUtils, dateHelper, clock, securityApi, internalCallContextFactory, callContext);
-                result.add(entitlement);
+                entitlementIds.add(subscriptionBase.getId());
             }
         }
+
+        // Build all EventsStream objects from a single snapshot of the account
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(accountId, callContext);
+        final Map<UUID, EventsStream> eventsStreams = eventsStreamBuilder.buildForEntitlements(entitlementIds, internalTenantContext);
+
+        final List<Entitlement> result = new ArrayList<Entitlement>();
+        for (final EventsStream eventsStream : eventsStreams.values()) {
+            final Entitlement entitlement = new DefaultEntitlement(eventsStream, eventsStreamBuilder, entitlementApi, pluginExecution,
+                                                                   blockingStateDao, subscriptionBaseInternalApi, checker, notificationQueueService,
+                                                                   entitlementUtils, dateHelper, clock, securityApi, internalTenantContext, internalCallContextFactory);
+            result.add(entitlement);
+        }
         return result;
     }
 
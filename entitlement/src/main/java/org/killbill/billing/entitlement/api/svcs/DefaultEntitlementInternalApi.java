@@ -37,9 +37,11 @@ import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.billing.entitlement.DefaultEntitlementService;
 import org.killbill.billing.entitlement.EntitlementInternalApi;
 import org.killbill.billing.entitlement.EntitlementService;
+import org.killbill.billing.entitlement.EventsStream;
 import org.killbill.billing.entitlement.api.BaseEntitlementWithAddOnsSpecifier;
 import org.killbill.billing.entitlement.api.BlockingState;
 import org.killbill.billing.entitlement.api.BlockingStateType;
@@ -116,6 +118,8 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
         final Collection<EntitlementContext> pluginContexts = new LinkedList<EntitlementContext>();
         final List<WithEntitlementPlugin> callbacks = new LinkedList<WithEntitlementPlugin>();
         final List<SubscriptionBase> subscriptions = new LinkedList<SubscriptionBase>();
+        final List<UUID> baseEntitlementIds = new LinkedList<UUID>();
+        final Map<UUID, EventsStream> refreshedEventsStreams = new HashMap<UUID, EventsStream>();
 
         for (final Entitlement entitlement : entitlements) {
             if (entitlement.getState() == EntitlementState.CANCELLED) {
@@ -145,16 +149,24 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
             final WithEntitlementPlugin<Entitlement> cancelEntitlementWithPlugin = new WithDateOverrideBillingPolicyEntitlementCanceler((DefaultEntitlement) entitlement,
                                                                                                                                         blockingStates,
                                                                                                                                         notificationEvents,
+                                                                                                                                        refreshedEventsStreams,
                                                                                                                                         callContext,
                                                                                                                                         internalCallContext);
             callbacks.add(cancelEntitlementWithPlugin);
 
-            subscriptions.add(((DefaultEntitlement) entitlement).getSubscriptionBase());
+            final SubscriptionBase subscriptionBase = ((DefaultEntitlement) entitlement).getSubscriptionBase();
+            subscriptions.add(subscriptionBase);
+            // Only base entitlements need to be refreshed, to compute the blocking states of their add-ons
+            if (ProductCategory.BASE.equals(subscriptionBase.getCategory())) {
+                baseEntitlementIds.add(entitlement.getId());
+            }
         }
 
         final Callable<Void> preCallbacksCallback = new BulkSubscriptionBaseCancellation(subscriptions,
                                                                                          billingPolicy,
                                                                                          bcd,
+                                                                                         baseEntitlementIds,
+                                                                                         refreshedEventsStreams,
                                                                                          internalCallContext);
 
         pluginExecution.executeWithPlugin(preCallbacksCallback, callbacks, pluginContexts);
@@ -187,15 +199,21 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
         private final Iterable<SubscriptionBase> subscriptions;
         private final BillingActionPolicy billingPolicy;
         private final int accountBillCycleDayLocal;
+        private final Collection<UUID> baseEntitlementIds;
+        private final Map<UUID, EventsStream> refreshedEventsStreams;
         private final InternalCallContext callContext;
 
         public BulkSubscriptionBaseCancellation(final Iterable<SubscriptionBase> subscriptions,
                                                 final BillingActionPolicy billingPolicy,
                                                 final int accountBillCycleDayLocal,
+                                                final Collection<UUID> baseEntitlementIds,
+                                                final Map<UUID, EventsStream> refreshedEventsStreams,
                                                 final InternalCallContext callContext) {
             this.subscriptions = subscriptions;
             this.billingPolicy = billingPolicy;
             this.accountBillCycleDayLocal = accountBillCycleDayLocal;
+            this.baseEntitlementIds = baseEntitlementIds;
+            this.refreshedEventsStreams = refreshedEventsStreams;
             this.callContext = callContext;
         }
 
@@ -207,6 +225,9 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
                 throw new EntitlementApiException(e);
             }
 
+            // Get the latest state from disk for all base entitlements at once, instead of refreshing them one by one in the callbacks
+            refreshedEventsStreams.putAll(eventsStreamBuilder.buildForEntitlements(baseEntitlementIds, callContext));
+
             return null;
         }
     }
@@ -217,17 +238,20 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
         private final DefaultEntitlement entitlement;
         private final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates;
         private final Map<DateTime, Collection<NotificationEvent>> notificationEventsWithEffectiveDate;
+        private final Map<UUID, EventsStream> refreshedEventsStreams;
         private final CallContext callContext;
         private final InternalCallContext internalCallContext;
 
         public WithDateOverrideBillingPolicyEntitlementCanceler(final DefaultEntitlement entitlement,
                                                                 final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates,
                                                                 final Map<DateTime, Collection<NotificationEvent>> notificationEventsWithEffectiveDate,
+                                                                final Map<UUID, EventsStream> refreshedEventsStreams,
                                                                 final CallContext callContext,
                                                                 final InternalCallContext internalCallContext) {
             this.entitlement = entitlement;
             this.blockingStates = blockingStates;
             this.notificationEventsWithEffectiveDate = notificationEventsWithEffectiveDate;
+            this.refreshedEventsStreams = refreshedEventsStreams;
             this.callContext = callContext;
             this.internalCallContext = internalCallContext;
         }
@@ -253,7 +277,10 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
 
             final BlockingState newBlockingState = new DefaultBlockingState(entitlement.getId(), BlockingStateType.SUBSCRIPTION, DefaultEntitlementApi.ENT_STATE_CANCELLED, EntitlementService.ENTITLEMENT_SERVICE_NAME, true, true, false, effectiveDate);
             final Collection<NotificationEvent> notificationEvents = new ArrayList<NotificationEvent>();
-            final Collection<BlockingState> addOnsBlockingStates = entitlement.computeAddOnBlockingStates(effectiveDate, notificationEvents, callContext, internalCallContext);
+            final EventsStream refreshedEventsStream = refreshedEventsStreams.get(entitlement.getId());
+            final Collection<BlockingState> addOnsBlockingStates = refreshedEventsStream != null ?
+                                                                   entitlement.computeAddOnBlockingStates(effectiveDate, notificationEvents, refreshedEventsStream) :
+                                                                   entitlement.computeAddOnBlockingStates(effectiveDate, notificationEvents, callContext, internalCallContext);
 
             final Optional<UUID> bundleIdOptional = Optional.<UUID>fromNullable(entitlement.getBundleId());
             blockingStates.put(newBlockingState, bundleIdOptional);
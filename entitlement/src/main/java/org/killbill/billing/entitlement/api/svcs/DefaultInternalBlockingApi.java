@@ -16,6 +16,7 @@
 
 package org.killbill.billing.entitlement.api.svcs;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -50,6 +51,11 @@ public class DefaultInternalBlockingApi implements BlockingInternalApi {
         return dao.getBlockingStateForService(overdueableId, blockingStateType, serviceName, context);
     }
 
+    @Override
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(final Collection<Long> accountRecordIds, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+        return dao.getBlockingStatesForServiceByAccountRecordIds(accountRecordIds, blockingStateType, serviceName, context);
+    }
+
     @Override
     public List<BlockingState> getBlockingAllForAccount(final InternalTenantContext context) {
         return dao.getBlockingAllForAccountRecordId(context);
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.entitlement.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -45,6 +46,17 @@ public interface BlockingStateDao extends EntityDao<BlockingStateModelDao, Block
      */
     public BlockingState getBlockingStateForService(UUID blockableId, BlockingStateType blockingStateType, String serviceName, InternalTenantContext context);
 
+    /**
+     * Returns the current state for that specific service, for all the blockable objects of a set of accounts
+     *
+     * @param accountRecordIds  record ids of the accounts
+     * @param blockingStateType blockable object type
+     * @param serviceName       name of the service
+     * @param context           tenant context
+     * @return current blocking states for these blockable objects and service
+     */
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(Collection<Long> accountRecordIds, BlockingStateType blockingStateType, String serviceName, InternalTenantContext context);
+
     /**
      * Returns the current state across all the services
      *
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.entitlement.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -33,6 +34,7 @@ import org.skife.jdbi.v2.sqlobject.Bind;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 @KillBillSqlDaoStringTemplate
 public interface BlockingStateSqlDao extends EntitySqlDao<BlockingStateModelDao, BlockingState> {
@@ -43,6 +45,12 @@ public interface BlockingStateSqlDao extends EntitySqlDao<BlockingStateModelDao,
                                                                      @Bind("effectiveDate") Date effectiveDate,
                                                                      @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    public abstract List<BlockingStateModelDao> getBlockingStatesForServiceByAccountRecordIds(@BindIn("accountRecordIds") final Collection<Long> accountRecordIds,
+                                                                                              @Bind("service") String serviceName,
+                                                                                              @Bind("effectiveDate") Date effectiveDate,
+                                                                                              @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public abstract List<BlockingStateModelDao> getBlockingState(@Bind("blockableId") UUID blockableId,
                                                                  @Bind("effectiveDate") Date effectiveDate,
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -47,6 +48,7 @@ import org.killbill.billing.entitlement.engine.core.BlockingTransitionNotificati
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.dao.EntityDaoBase;
@@ -107,7 +109,7 @@ public class DefaultBlockingStateDao extends EntityDaoBase<BlockingStateModelDao
     private final Clock clock;
     private final NotificationQueueService notificationQueueService;
     private final PersistentBus eventBus;
-    private final CacheController<String, UUID> objectIdCacheController;
+    private final CacheController<RecordIdCacheKey, UUID> objectIdCacheController;
     private final NonEntityDao nonEntityDao;
 
     private final StatelessBlockingChecker statelessBlockingChecker = new StatelessBlockingChecker();
@@ -140,6 +142,36 @@ public class DefaultBlockingStateDao extends EntityDaoBase<BlockingStateModelDao
         });
     }
 
+    @Override
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(final Collection<Long> accountRecordIds, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+        if (accountRecordIds.isEmpty()) {
+            return ImmutableList.<BlockingState>of();
+        }
+
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<BlockingState>>() {
+            @Override
+            public List<BlockingState> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                // Upper bound time limit is now
+                final Date upTo = clock.getUTCNow().toDate();
+                final List<BlockingStateModelDao> models = entitySqlDaoWrapperFactory.become(BlockingStateSqlDao.class).getBlockingStatesForServiceByAccountRecordIds(accountRecordIds, serviceName, upTo, context);
+
+                // Rows are ordered by effective date: the last one for each blockable id is the current state
+                final Map<UUID, BlockingStateModelDao> currentStates = new LinkedHashMap<UUID, BlockingStateModelDao>();
+                for (final BlockingStateModelDao model : models) {
+                    currentStates.put(model.getBlockableId(), model);
+                }
+
+                final List<BlockingState> result = new ArrayList<BlockingState>(currentStates.size());
+                for (final BlockingStateModelDao model : currentStates.values()) {
+                    if (model.getType().equals(blockingStateType)) {
+                        result.add(BlockingStateModelDao.toBlockingState(model));
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
     @Override
     public List<BlockingState> getBlockingState(final UUID blockableId, final BlockingStateType blockingStateType, final DateTime upToDate, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<BlockingState>>() {
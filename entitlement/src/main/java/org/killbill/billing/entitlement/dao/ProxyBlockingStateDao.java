@@ -224,6 +224,11 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
         return delegate.getBlockingStateForService(blockableId, blockingStateType, serviceName, context);
     }
 
+    @Override
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(final Collection<Long> accountRecordIds, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+        return delegate.getBlockingStatesForServiceByAccountRecordIds(accountRecordIds, blockingStateType, serviceName, context);
+    }
+
     @Override
     public List<BlockingState> getBlockingState(final UUID blockableId, final BlockingStateType blockingStateType, final DateTime upToDate, final InternalTenantContext context) {
         return delegate.getBlockingState(blockableId, blockingStateType, upToDate, context);
@@ -20,16 +20,19 @@ package org.killbill.billing.entitlement.engine.core;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -69,6 +72,7 @@ import org.skife.jdbi.v2.IDBI;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
 @Singleton
@@ -132,6 +136,51 @@ public class EventsStreamBuilder {
 
     // Special signature for ProxyBlockingStateDao to save a DAO call
     public AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        return buildForAccount(subscriptions, null, internalTenantContext);
+    }
+
+    /**
+     * Build the EventsStream objects for a batch of entitlements of the same account.
+     * <p/>
+     * This is equivalent to calling buildForEntitlement for each of them, but the account, its subscriptions, bundles,
+     * blocking states and BCD are only retrieved once.
+     *
+     * @param entitlementIds        entitlement ids, all belonging to the account of the context
+     * @param internalTenantContext context with a valid account record id
+     * @return EventsStream objects per entitlement id, in the order of entitlementIds
+     * @throws EntitlementApiException if one of the entitlements cannot be found for that account
+     */
+    public Map<UUID, EventsStream> buildForEntitlements(final Collection<UUID> entitlementIds, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final Map<UUID, EventsStream> result = new LinkedHashMap<UUID, EventsStream>();
+        if (entitlementIds.isEmpty()) {
+            return result;
+        }
+
+        final Map<UUID, List<SubscriptionBase>> subscriptions;
+        try {
+            subscriptions = subscriptionInternalApi.getSubscriptionsForAccount(internalTenantContext);
+        } catch (SubscriptionBaseApiException e) {
+            throw new EntitlementApiException(e);
+        }
+
+        final AccountEventsStreams accountEventsStreams = buildForAccount(subscriptions, ImmutableSet.<UUID>copyOf(entitlementIds), internalTenantContext);
+        final Map<UUID, EventsStream> eventsStreamsPerEntitlementId = new HashMap<UUID, EventsStream>();
+        for (final EventsStream eventsStream : Iterables.<EventsStream>concat(accountEventsStreams.getEventsStreams().values())) {
+            eventsStreamsPerEntitlementId.put(eventsStream.getEntitlementId(), eventsStream);
+        }
+
+        for (final UUID entitlementId : entitlementIds) {
+            final EventsStream eventsStream = eventsStreamsPerEntitlementId.get(entitlementId);
+            if (eventsStream == null) {
+                throw new EntitlementApiException(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, entitlementId);
+            }
+            result.put(entitlementId, eventsStream);
+        }
+        return result;
+    }
+
+    // If entitlementIds is specified, only build the EventsStream objects for these entitlements
+    private AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions, @Nullable final Set<UUID> entitlementIds, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         // Retrieve the account
         final ImmutableAccountData account;
         try {
@@ -177,12 +226,18 @@ public class EventsStreamBuilder {
             }
         }
 
+        // Retrieve the BCD (shared by all EventsStream objects)
+        final int accountBCD = getAccountBCD(account, internalTenantContext);
+
         // Build the EventsStream objects
         final Map<UUID, Integer> bcdCache = new HashMap<UUID, Integer>();
         final Map<UUID, Collection<EventsStream>> entitlementsPerBundle = new HashMap<UUID, Collection<EventsStream>>();
         for (final UUID bundleId : subscriptions.keySet()) {
             final SubscriptionBaseBundle bundle = bundlesPerId.get(bundleId);
             final List<SubscriptionBase> allSubscriptionsForBundle = subscriptions.get(bundleId);
+            if (entitlementIds != null && !containsAny(allSubscriptionsForBundle, entitlementIds)) {
+                continue;
+            }
             final SubscriptionBase baseSubscription = findBaseSubscription(allSubscriptionsForBundle);
             final List<BlockingState> bundleBlockingStates = MoreObjects.firstNonNull(blockingStatesPerBundle.get(bundleId), ImmutableList.<BlockingState>of());
 
@@ -191,6 +246,10 @@ public class EventsStreamBuilder {
             }
 
             for (final SubscriptionBase subscription : allSubscriptionsForBundle) {
+                if (entitlementIds != null && !entitlementIds.contains(subscription.getId())) {
+                    continue;
+                }
+
                 final List<BlockingState> subscriptionBlockingStatesOnDisk = MoreObjects.firstNonNull(blockingStatesPerSubscription.get(subscription.getId()), ImmutableList.<BlockingState>of());
 
                 // We cannot always use blockingStatesForAccount here: we need subscriptionBlockingStates to contain the events not on disk when building an EventsStream
@@ -218,7 +277,7 @@ public class EventsStreamBuilder {
                 blockingStateSet.addAll(subscriptionBlockingStates);
                 final List<BlockingState> blockingStates = ProxyBlockingStateDao.sortedCopy(blockingStateSet);
 
-                final EventsStream eventStream = buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, bcdCache, internalTenantContext);
+                final EventsStream eventStream = buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, accountBCD, bcdCache, internalTenantContext);
                 entitlementsPerBundle.get(bundleId).add(eventStream);
             }
         }
@@ -323,7 +382,8 @@ public class EventsStreamBuilder {
         blockingStateSet.addAll(subscriptionBlockingStates);
         final List<BlockingState> blockingStates = ProxyBlockingStateDao.sortedCopy(blockingStateSet);
 
-        return buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, bcdCache, internalTenantContext);
+        final int accountBCD = getAccountBCD(account, internalTenantContext);
+        return buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, accountBCD, bcdCache, internalTenantContext);
     }
 
     private EventsStream buildForEntitlement(final ImmutableAccountData account,
@@ -332,12 +392,10 @@ public class EventsStreamBuilder {
                                              final SubscriptionBase subscription,
                                              final List<SubscriptionBase> allSubscriptionsForBundle,
                                              final List<BlockingState> blockingStates,
+                                             final int accountBCD,
                                              final Map<UUID, Integer> bcdCache,
                                              final InternalTenantContext internalTenantContext) throws EntitlementApiException {
-
-
         try {
-            int accountBCD = accountInternalApi.getBCD(account.getId(), internalTenantContext);
             int defaultAlignmentDay = subscriptionInternalApi.getDefaultBillCycleDayLocal(bcdCache, subscription, baseSubscription, createPlanPhaseSpecifier(subscription), accountBCD, clock.getUTCNow(), internalTenantContext);
             return new DefaultEventsStream(account,
                                            bundle,
@@ -351,11 +409,27 @@ public class EventsStreamBuilder {
                                            clock.getUTCNow());
         } catch (final SubscriptionBaseApiException e) {
             throw new EntitlementApiException(e);
+        }
+    }
+
+    private int getAccountBCD(final ImmutableAccountData account, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        try {
+            return accountInternalApi.getBCD(account.getId(), internalTenantContext);
         } catch (final AccountApiException e) {
             throw new EntitlementApiException(e);
         }
     }
 
+    private boolean containsAny(final Iterable<SubscriptionBase> subscriptions, final Set<UUID> entitlementIds) {
+        return Iterables.<SubscriptionBase>any(subscriptions,
+                                               new Predicate<SubscriptionBase>() {
+                                                   @Override
+                                                   public boolean apply(final SubscriptionBase input) {
+                                                       return entitlementIds.contains(input.getId());
+                                                   }
+                                               });
+    }
+
     private PlanPhaseSpecifier createPlanPhaseSpecifier(final SubscriptionBase subscription) {
 
         final String lastActiveProductName;
@@ -19,6 +19,7 @@
 package org.killbill.billing.entitlement.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +63,23 @@ public class MockBlockingStateDao extends MockEntityDaoBase<BlockingStateModelDa
         return filtered.size() == 0 ? null : filtered.get(filtered.size() - 1);
     }
 
+    @Override
+    public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(final Collection<Long> accountRecordIds, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+        final Map<UUID, BlockingState> currentStates = new HashMap<UUID, BlockingState>();
+        for (final Long accountRecordId : accountRecordIds) {
+            final List<BlockingState> states = blockingStatesPerAccountRecordId.get(accountRecordId);
+            if (states == null) {
+                continue;
+            }
+            for (final BlockingState cur : states) {
+                if (cur.getType() == blockingStateType && cur.getService().equals(serviceName)) {
+                    currentStates.put(cur.getBlockedId(), cur);
+                }
+            }
+        }
+        return new ArrayList<BlockingState>(currentStates.values());
+    }
+
     @Override
     public List<BlockingState> getBlockingState(final UUID blockableId, final BlockingStateType blockingStateType, final DateTime upToDate, final InternalTenantContext context) {
         final List<BlockingState> blockingStatesForId = blockingStates.get(blockableId);
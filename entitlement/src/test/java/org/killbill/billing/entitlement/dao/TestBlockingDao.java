@@ -34,6 +34,7 @@ import org.killbill.billing.entitlement.api.BlockingStateType;
 import org.killbill.billing.junction.DefaultBlockingState;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class TestBlockingDao extends EntitlementTestSuiteWithEmbeddedDB {
@@ -107,4 +108,47 @@ public class TestBlockingDao extends EntitlementTestSuiteWithEmbeddedDB {
         Assert.assertEquals(history2.get(0).getStateName(), overdueStateName);
         Assert.assertEquals(history2.get(1).getStateName(), overdueStateName2);
     }
+
+    @Test(groups = "slow", description = "Check the bulk lookup of the current blocking states by account record ids")
+    public void testGetBlockingStatesForServiceByAccountRecordIds() throws Exception {
+        final UUID uuid1 = UUID.randomUUID();
+        final UUID uuid2 = UUID.randomUUID();
+        final String service = "TEST";
+
+        clock.setDay(new LocalDate(2012, 4, 1));
+
+        testListener.pushExpectedEvents(NextEvent.BLOCK, NextEvent.BLOCK, NextEvent.BLOCK);
+        final BlockingState state1 = new DefaultBlockingState(uuid1, BlockingStateType.ACCOUNT, "OD1", service, false, false, false, clock.getUTCNow());
+        final BlockingState state2 = new DefaultBlockingState(uuid2, BlockingStateType.ACCOUNT, "OD1", service, false, false, false, clock.getUTCNow());
+        final BlockingState otherServiceState = new DefaultBlockingState(uuid2, BlockingStateType.ACCOUNT, "OTHER", "TEST2", false, false, false, clock.getUTCNow());
+        blockingStateDao.setBlockingStatesAndPostBlockingTransitionEvent(ImmutableMap.<BlockingState, Optional<UUID>>of(state1, Optional.<UUID>absent(),
+                                                                                                                        state2, Optional.<UUID>absent(),
+                                                                                                                        otherServiceState, Optional.<UUID>absent()),
+                                                                         internalCallContext);
+        assertListenerStatus();
+
+        clock.addDays(1);
+
+        testListener.pushExpectedEvent(NextEvent.BLOCK);
+        final BlockingState state1Bis = new DefaultBlockingState(uuid1, BlockingStateType.ACCOUNT, "OD2", service, false, false, false, clock.getUTCNow());
+        blockingStateDao.setBlockingStatesAndPostBlockingTransitionEvent(ImmutableMap.<BlockingState, Optional<UUID>>of(state1Bis, Optional.<UUID>absent()), internalCallContext);
+        assertListenerStatus();
+
+        final List<BlockingState> states = blockingStateDao.getBlockingStatesForServiceByAccountRecordIds(ImmutableList.<Long>of(internalCallContext.getAccountRecordId(), internalCallContext.getAccountRecordId() + 1000L),
+                                                                                                          BlockingStateType.ACCOUNT,
+                                                                                                          service,
+                                                                                                          internalCallContext);
+        Assert.assertEquals(states.size(), 2);
+        for (final BlockingState state : states) {
+            if (state.getBlockedId().equals(uuid1)) {
+                Assert.assertEquals(state.getStateName(), "OD2");
+            } else {
+                Assert.assertEquals(state.getBlockedId(), uuid2);
+                Assert.assertEquals(state.getStateName(), "OD1");
+            }
+        }
+
+        Assert.assertEquals(blockingStateDao.getBlockingStatesForServiceByAccountRecordIds(ImmutableList.<Long>of(internalCallContext.getAccountRecordId()), BlockingStateType.SUBSCRIPTION, service, internalCallContext).size(), 0);
+        Assert.assertEquals(blockingStateDao.getBlockingStatesForServiceByAccountRecordIds(ImmutableList.<Long>of(), BlockingStateType.ACCOUNT, service, internalCallContext).size(), 0);
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.DaoCallCounter;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.api.TestApiListener.NextEvent;
+import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.PriceListSet;
+import org.killbill.billing.entitlement.EntitlementInternalApi;
+import org.killbill.billing.entitlement.EntitlementTestSuiteWithEmbeddedDB;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.billing.entitlement.api.Entitlement;
+import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
+import org.killbill.billing.entitlement.api.EntitlementApiException;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+public class TestEventsStreamBuilder extends EntitlementTestSuiteWithEmbeddedDB {
+
+    private static final int NB_BUNDLES = 4;
+
+    @Inject
+    private EntitlementInternalApi entitlementInternalApi;
+
+    private final List<Entitlement> baseEntitlements = new ArrayList<Entitlement>();
+    private final List<Entitlement> addOnEntitlements = new ArrayList<Entitlement>();
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        clock.setDay(new LocalDate(2013, 8, 8));
+        final Account account = createAccount(getAccountData(7));
+
+        baseEntitlements.clear();
+        addOnEntitlements.clear();
+        final PlanPhaseSpecifier baseSpec = new PlanPhaseSpecifier("Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        final PlanPhaseSpecifier addOnSpec = new PlanPhaseSpecifier("Telescopic-Scope", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        for (int i = 0; i < NB_BUNDLES; i++) {
+            testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+            final Entitlement baseEntitlement = entitlementApi.createBaseEntitlement(account.getId(), baseSpec, UUID.randomUUID().toString(), null, null, null, false, ImmutableList.<PluginProperty>of(), callContext);
+            assertListenerStatus();
+            baseEntitlements.add(baseEntitlement);
+
+            testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+            addOnEntitlements.add(entitlementApi.addEntitlement(baseEntitlement.getBundleId(), addOnSpec, null, null, null, false, ImmutableList.<PluginProperty>of(), callContext));
+            assertListenerStatus();
+        }
+    }
+
+    @Test(groups = "slow", description = "Verify the batched build matches the per-entitlement one and needs a constant number of DAO calls")
+    public void testBuildForEntitlements() throws Exception {
+        final List<UUID> entitlementIds = new ArrayList<UUID>();
+        for (int i = 0; i < NB_BUNDLES; i++) {
+            entitlementIds.add(addOnEntitlements.get(i).getId());
+            entitlementIds.add(baseEntitlements.get(i).getId());
+        }
+
+        final Map<UUID, EventsStream> eventsStreams = eventsStreamBuilder.buildForEntitlements(entitlementIds, internalCallContext);
+        Assert.assertEquals(ImmutableList.<UUID>copyOf(eventsStreams.keySet()), entitlementIds);
+        for (final UUID entitlementId : entitlementIds) {
+            final EventsStream expected = eventsStreamBuilder.buildForEntitlement(entitlementId, internalCallContext);
+            final EventsStream actual = eventsStreams.get(entitlementId);
+            Assert.assertEquals(actual.getEntitlementId(), entitlementId);
+            Assert.assertEquals(actual.getBundleId(), expected.getBundleId());
+            Assert.assertEquals(actual.getBasePlanSubscriptionBase().getId(), expected.getBasePlanSubscriptionBase().getId());
+            Assert.assertEquals(actual.getEntitlementState(), EntitlementState.ACTIVE);
+            Assert.assertEquals(actual.getEntitlementEffectiveStartDate(), expected.getEntitlementEffectiveStartDate());
+            Assert.assertEquals(actual.getDefaultBillCycleDayLocal(), expected.getDefaultBillCycleDayLocal());
+            Assert.assertEquals(actual.getBlockingStates().size(), expected.getBlockingStates().size());
+        }
+
+        final int oneByOneDaoCalls = DaoCallCounter.countDaoCalls(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (final UUID entitlementId : entitlementIds) {
+                    eventsStreamBuilder.buildForEntitlement(entitlementId, internalCallContext);
+                }
+                return null;
+            }
+        });
+        final int singleDaoCalls = DaoCallCounter.countDaoCalls(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                eventsStreamBuilder.buildForEntitlements(ImmutableList.<UUID>of(entitlementIds.get(0)), internalCallContext);
+                return null;
+            }
+        });
+        final int batchDaoCalls = DaoCallCounter.countDaoCalls(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                eventsStreamBuilder.buildForEntitlements(entitlementIds, internalCallContext);
+                return null;
+            }
+        });
+        Assert.assertEquals(batchDaoCalls, singleDaoCalls);
+        Assert.assertTrue(batchDaoCalls < oneByOneDaoCalls, String.format("batchDaoCalls=%s, oneByOneDaoCalls=%s", batchDaoCalls, oneByOneDaoCalls));
+    }
+
+    @Test(groups = "slow", description = "Verify the batched build rejects unknown entitlements")
+    public void testBuildForEntitlementsWithUnknownId() throws Exception {
+        try {
+            eventsStreamBuilder.buildForEntitlements(ImmutableList.<UUID>of(baseEntitlements.get(0).getId(), UUID.randomUUID()), internalCallContext);
+            Assert.fail();
+        } catch (final EntitlementApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.SUB_INVALID_SUBSCRIPTION_ID.getCode());
+        }
+    }
+
+    @Test(groups = "slow", description = "Verify add-ons are cancelled when their base entitlements are cancelled in bulk")
+    public void testBulkCancellation() throws Exception {
+        for (int i = 0; i < NB_BUNDLES; i++) {
+            testListener.pushExpectedEvents(NextEvent.CANCEL, NextEvent.BLOCK, NextEvent.CANCEL, NextEvent.BLOCK);
+        }
+        entitlementInternalApi.cancel(baseEntitlements, clock.getUTCToday(), BillingActionPolicy.IMMEDIATE, ImmutableList.<PluginProperty>of(), internalCallContext);
+        assertListenerStatus();
+
+        for (final Entitlement entitlement : addOnEntitlements) {
+            Assert.assertEquals(entitlementApi.getEntitlementForId(entitlement.getId(), callContext).getState(), EntitlementState.CANCELLED);
+        }
+        for (final Entitlement entitlement : baseEntitlements) {
+            Assert.assertEquals(entitlementApi.getEntitlementForId(entitlement.getId(), callContext).getState(), EntitlementState.CANCELLED);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.invoice.api.DefaultInvoiceService;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.config.BillRunConfig;
+import org.killbill.billing.invoice.notification.BillRunNotificationKey;
+import org.killbill.billing.invoice.notification.DefaultNextBillingDateNotifier;
+import org.killbill.billing.invoice.notification.NextBillingDateNotificationKey;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+//
+// Invoices, for a given tenant, all the accounts which have a next billing date up to the run date.
+//
+// The run is split into shards (accountRecordId % nbShards), each one driven by its own notification: a notification
+// invoices the next chunk of accounts of its shard (in account record id order) in parallel, and then re-schedules itself
+// with the last account record id processed. Because the continuation goes at the back of the queue, concurrent runs for
+// different tenants are interleaved, and because the cursor is stored in the notification, an interrupted run resumes where
+// it stopped after a restart.
+//
+// The due accounts are read from the next billing date notifications once per run (and per node), and shared by the slices of
+// all the shards: accounts becoming due while the run is in progress are left to their regular notifications.
+//
+// Runs are scheduled through InvoiceInternalApi#scheduleBillRun (see the admin API).
+//
+public class BillRunScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(BillRunScheduler.class);
+
+    public static final String BILL_RUN_QUEUE = "bill-run-queue";
+
+    private static final String METRICS_PREFIX = "invoice.billRun";
+
+    private final NotificationQueueService notificationQueueService;
+    private final InvoiceDispatcher dispatcher;
+    private final AccountInternalApi accountApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final BillRunConfig billRunConfig;
+    private final Clock clock;
+
+    private final Meter accountsMeter;
+    private final Meter invoicesMeter;
+    private final Meter failuresMeter;
+    private final Meter completedShardsMeter;
+    private final Timer sliceTimer;
+
+    private final Cache<BillRunKey, DueAccounts> dueAccountsPerRun;
+
+    private NotificationQueue billRunQueue;
+    private ExecutorService executor;
+
+    @Inject
+    public BillRunScheduler(final NotificationQueueService notificationQueueService,
+                            final InvoiceDispatcher dispatcher,
+                            final AccountInternalApi accountApi,
+                            final InternalCallContextFactory internalCallContextFactory,
+                            final BillRunConfig billRunConfig,
+                            final Clock clock,
+                            final MetricRegistry metricRegistry) {
+        this.notificationQueueService = notificationQueueService;
+        this.dispatcher = dispatcher;
+        this.accountApi = accountApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.billRunConfig = billRunConfig;
+        this.clock = clock;
+        this.accountsMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "accounts"));
+        this.invoicesMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "invoices"));
+        this.failuresMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "failures"));
+        this.completedShardsMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "completedShards"));
+        this.sliceTimer = metricRegistry.timer(MetricRegistry.name(METRICS_PREFIX, "slice"));
+        // Idle runs (e.g. whose remaining shards are processed by other nodes) are eventually evicted
+        this.dueAccountsPerRun = CacheBuilder.newBuilder()
+                                             .expireAfterAccess(billRunConfig.getDueAccountsTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                             .build();
+    }
+
+    public void initialize() throws NotificationQueueAlreadyExists {
+        final NotificationQueueHandler notificationQueueHandler = new NotificationQueueHandler() {
+            @Override
+            public void handleReadyNotification(final NotificationEvent notificationKey, final DateTime eventDate, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
+                if (!(notificationKey instanceof BillRunNotificationKey)) {
+                    log.error("Invoice service received an unexpected event type {}", notificationKey.getClass().getName());
+                    return;
+                }
+                processBillRunSlice((BillRunNotificationKey) notificationKey, userToken, tenantRecordId);
+            }
+        };
+
+        billRunQueue = notificationQueueService.createNotificationQueue(DefaultInvoiceService.INVOICE_SERVICE_NAME,
+                                                                        BILL_RUN_QUEUE,
+                                                                        notificationQueueHandler);
+    }
+
+    public void start() {
+        executor = Executors.newFixedThreadPool(billRunConfig.getNbThreads(), "BillRun");
+        billRunQueue.startQueue();
+    }
+
+    public void stop() throws NoSuchNotificationQueue {
+        if (billRunQueue != null) {
+            billRunQueue.stopQueue();
+            notificationQueueService.deleteNotificationQueue(billRunQueue.getServiceName(), billRunQueue.getQueueName());
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public void scheduleBillRun(final DateTime runDate, final InternalCallContext context) throws InvoiceApiException {
+        final int nbShards = billRunConfig.getNbShards();
+        try {
+            for (int shard = 0; shard < nbShards; shard++) {
+                billRunQueue.recordFutureNotification(clock.getUTCNow(),
+                                                      new BillRunNotificationKey(runDate, shard, nbShards, null),
+                                                      context.getUserToken(),
+                                                      null,
+                                                      context.getTenantRecordId());
+            }
+        } catch (final IOException e) {
+            throw new InvoiceApiException(e, ErrorCode.UNEXPECTED_ERROR, "Failed to schedule bill run for runDate " + runDate);
+        }
+        log.info("Scheduled bill run for runDate='{}', tenantRecordId='{}', nbShards='{}'", runDate, context.getTenantRecordId(), nbShards);
+    }
+
+    void processBillRunSlice(final BillRunNotificationKey key, final UUID userToken, final Long tenantRecordId) {
+        final BillRunKey billRunKey = new BillRunKey(key.getRunDate(), key.getNbShards(), tenantRecordId);
+        final DueAccounts dueAccountsForRun = getDueAccounts(billRunKey);
+        final SortedMap<Long, DateTime> dueAccounts = dueAccountsForRun.getRemainingDueAccounts(key.getShard(), key.getLastAccountRecordId());
+
+        final List<Long> slice = new ArrayList<Long>(billRunConfig.getChunkSize());
+        final Iterator<Long> iterator = dueAccounts.keySet().iterator();
+        while (iterator.hasNext() && slice.size() < billRunConfig.getChunkSize()) {
+            slice.add(iterator.next());
+        }
+        // Note that the size of the (tail) map isn't used, as computing it means walking through the remaining accounts
+        final boolean hasRemainingAccounts = iterator.hasNext();
+
+        final Timer.Context timerContext = sliceTimer.time();
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(slice.size());
+            for (final Long accountRecordId : slice) {
+                final DateTime targetDate = dueAccounts.get(accountRecordId);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        processAccount(accountRecordId, targetDate, userToken, tenantRecordId);
+                    }
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Let the queue retry the notification: the accounts invoiced so far will be no-ops
+            throw new RuntimeException(String.format("Interrupted while processing bill run slice %s", key), e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(String.format("Failed to process bill run slice %s", key), e.getCause());
+        } finally {
+            timerContext.stop();
+        }
+
+        if (hasRemainingAccounts) {
+            final Long lastAccountRecordId = slice.get(slice.size() - 1);
+            log.info("Bill run for runDate='{}', tenantRecordId='{}', shard='{}/{}': processed {} accounts up to accountRecordId='{}'",
+                     key.getRunDate(), tenantRecordId, key.getShard(), key.getNbShards(), slice.size(), lastAccountRecordId);
+            try {
+                billRunQueue.recordFutureNotification(clock.getUTCNow(),
+                                                      new BillRunNotificationKey(key.getRunDate(), key.getShard(), key.getNbShards(), lastAccountRecordId),
+                                                      userToken,
+                                                      null,
+                                                      tenantRecordId);
+            } catch (final IOException e) {
+                throw new RuntimeException(String.format("Failed to reschedule bill run slice %s", key), e);
+            }
+        } else {
+            if (dueAccountsForRun.completeShard(key.getShard())) {
+                dueAccountsPerRun.invalidate(billRunKey);
+            }
+            completedShardsMeter.mark();
+            log.info("Bill run for runDate='{}', tenantRecordId='{}', shard='{}/{}' completed: processed {} accounts",
+                     key.getRunDate(), tenantRecordId, key.getShard(), key.getNbShards(), slice.size());
+        }
+    }
+
+    private void processAccount(final Long accountRecordId, final DateTime targetDate, final UUID userToken, final Long tenantRecordId) {
+        final InternalCallContext context = internalCallContextFactory.createInternalCallContext(tenantRecordId, accountRecordId, "Bill Run", CallOrigin.INTERNAL, UserType.SYSTEM, userToken);
+        try {
+            final UUID accountId = accountApi.getByRecordId(accountRecordId, context);
+            final Invoice invoice = dispatcher.processAccountFromNotificationOrBusEvent(accountId, context.toLocalDate(targetDate), null, context);
+            accountsMeter.mark();
+            if (invoice != null) {
+                invoicesMeter.mark();
+            }
+        } catch (final InvoiceApiException e) {
+            failuresMeter.mark();
+            log.warn("Bill run failed to invoice accountRecordId='{}', targetDate='{}'", accountRecordId, targetDate, e);
+        } catch (final AccountApiException e) {
+            failuresMeter.mark();
+            log.warn("Bill run failed to invoice accountRecordId='{}', targetDate='{}'", accountRecordId, targetDate, e);
+        }
+    }
+
+    private DueAccounts getDueAccounts(final BillRunKey billRunKey) {
+        try {
+            return dueAccountsPerRun.get(billRunKey, new Callable<DueAccounts>() {
+                @Override
+                public DueAccounts call() {
+                    return loadDueAccounts(billRunKey);
+                }
+            });
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(String.format("Failed to load the due accounts of bill run %s", billRunKey), e.getCause());
+        }
+    }
+
+    // Accounts of each shard, with their latest due billing date (the regular next billing date notifications will still fire
+    // afterwards, but won't generate anything new)
+    private DueAccounts loadDueAccounts(final BillRunKey billRunKey) {
+        final NotificationQueue nextBillingQueue;
+        try {
+            nextBillingQueue = notificationQueueService.getNotificationQueue(DefaultInvoiceService.INVOICE_SERVICE_NAME,
+                                                                             DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE);
+        } catch (final NoSuchNotificationQueue e) {
+            throw new IllegalStateException(e);
+        }
+
+        final List<SortedMap<Long, DateTime>> dueAccountsPerShard = new ArrayList<SortedMap<Long, DateTime>>(billRunKey.nbShards);
+        for (int shard = 0; shard < billRunKey.nbShards; shard++) {
+            dueAccountsPerShard.add(new TreeMap<Long, DateTime>());
+        }
+
+        final Iterable<NotificationEventWithMetadata<NextBillingDateNotificationKey>> notifications = nextBillingQueue.getFutureNotificationForSearchKey2(billRunKey.runDate, billRunKey.tenantRecordId);
+        for (final NotificationEventWithMetadata<NextBillingDateNotificationKey> notification : notifications) {
+            final Long accountRecordId = notification.getSearchKey1();
+            if (accountRecordId == null ||
+                (notification.getEvent().isDryRunForInvoiceNotification() != null && notification.getEvent().isDryRunForInvoiceNotification())) {
+                continue;
+            }
+
+            final SortedMap<Long, DateTime> dueAccounts = dueAccountsPerShard.get((int) (accountRecordId % billRunKey.nbShards));
+            final DateTime targetDate = notification.getEvent().getTargetDate() != null ? notification.getEvent().getTargetDate() : notification.getEffectiveDate();
+            final DateTime existingTargetDate = dueAccounts.get(accountRecordId);
+            if (existingTargetDate == null || targetDate.isAfter(existingTargetDate)) {
+                dueAccounts.put(accountRecordId, targetDate);
+            }
+        }
+        return new DueAccounts(dueAccountsPerShard);
+    }
+
+    private static final class BillRunKey {
+
+        private final DateTime runDate;
+        private final int nbShards;
+        private final Long tenantRecordId;
+
+        private BillRunKey(final DateTime runDate, final int nbShards, final Long tenantRecordId) {
+            this.runDate = runDate;
+            this.nbShards = nbShards;
+            this.tenantRecordId = tenantRecordId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final BillRunKey that = (BillRunKey) o;
+            // The run date may come back from the notification with a different time zone
+            return runDate.getMillis() == that.runDate.getMillis() &&
+                   nbShards == that.nbShards &&
+                   Objects.equal(tenantRecordId, that.tenantRecordId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(runDate.getMillis(), nbShards, tenantRecordId);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{runDate=%s, nbShards=%s, tenantRecordId=%s}", runDate, nbShards, tenantRecordId);
+        }
+    }
+
+    private static final class DueAccounts {
+
+        private final List<SortedMap<Long, DateTime>> dueAccountsPerShard;
+        private final Set<Integer> completedShards = new HashSet<Integer>();
+
+        private DueAccounts(final List<SortedMap<Long, DateTime>> dueAccountsPerShard) {
+            this.dueAccountsPerShard = dueAccountsPerShard;
+        }
+
+        // Accounts of the shard not yet processed, in account record id order
+        public SortedMap<Long, DateTime> getRemainingDueAccounts(final int shard, @Nullable final Long lastAccountRecordId) {
+            final SortedMap<Long, DateTime> dueAccounts = Collections.unmodifiableSortedMap(dueAccountsPerShard.get(shard));
+            return lastAccountRecordId == null ? dueAccounts : dueAccounts.tailMap(lastAccountRecordId + 1);
+        }
+
+        // Return true once all the shards have completed
+        public synchronized boolean completeShard(final int shard) {
+            completedShards.add(shard);
+            return completedShards.size() == dueAccountsPerShard.size();
+        }
+    }
+}
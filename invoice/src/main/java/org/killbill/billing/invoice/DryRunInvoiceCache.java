@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.api.DryRunType;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.config.DryRunInvoiceCacheConfig;
+import org.killbill.billing.invoice.dao.InvoiceDao;
+import org.killbill.billing.invoice.model.DefaultInvoice;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.clock.Clock;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Cache of the TARGET_DATE and UPCOMING_INVOICE dry-run invoices.
+ * <p/>
+ * Entries are keyed by the account state version, i.e. the latest audit log record id for the account: any subscription,
+ * invoice, payment or tag change on the account is audited, and makes existing entries unreachable (on all nodes), while
+ * catalog and per-tenant configuration changes invalidate the entries of the tenant. Entries also expire after a configurable
+ * TTL, which bounds the staleness for anything outside of these.
+ * <p/>
+ * The cache is disabled by default. Results are never cached while invoice plugins are registered, since their output
+ * (e.g. taxes) isn't reflected in the key. Each caller gets its own copy of the cached invoice.
+ */
+public class DryRunInvoiceCache {
+
+    private final InvoiceDao invoiceDao;
+    private final InvoicePluginDispatcher invoicePluginDispatcher;
+    private final Clock clock;
+    private final boolean isEnabled;
+    private final Cache<DryRunCacheKey, Optional<Invoice>> dryRunInvoices;
+
+    @Inject
+    public DryRunInvoiceCache(final InvoiceDao invoiceDao,
+                              final InvoicePluginDispatcher invoicePluginDispatcher,
+                              final TenantInternalApi tenantInternalApi,
+                              final DryRunInvoiceCacheConfig config,
+                              final Clock clock) {
+        this.invoiceDao = invoiceDao;
+        this.invoicePluginDispatcher = invoicePluginDispatcher;
+        this.clock = clock;
+        this.isEnabled = config.getTTL().getMillis() > 0;
+        this.dryRunInvoices = CacheBuilder.newBuilder()
+                                          .maximumSize(config.getMaxSize())
+                                          .expireAfterWrite(config.getTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                          .build();
+
+        final CacheInvalidationCallback cacheInvalidationCallback = new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                invalidateAll(tenantContext.getTenantRecordId());
+            }
+        };
+        tenantInternalApi.initializeCacheInvalidationCallback(TenantKey.CATALOG, cacheInvalidationCallback);
+        tenantInternalApi.initializeCacheInvalidationCallback(TenantKey.PER_TENANT_CONFIG, cacheInvalidationCallback);
+    }
+
+    /**
+     * @return the cache key for that dry-run, or null if the result shouldn't be cached
+     */
+    @Nullable
+    public DryRunCacheKey createCacheKey(@Nullable final LocalDate targetDate, @Nullable final DryRunArguments dryRunArguments, final InternalTenantContext context) {
+        if (!isEnabled ||
+            dryRunArguments == null ||
+            (dryRunArguments.getDryRunType() != DryRunType.TARGET_DATE && dryRunArguments.getDryRunType() != DryRunType.UPCOMING_INVOICE) ||
+            context.getAccountRecordId() == null ||
+            invoicePluginDispatcher.hasInvoicePlugins()) {
+            return null;
+        }
+
+        // Must be retrieved before the invoice is generated, so that concurrent changes end up in a newer version
+        final Long accountStateVersion = invoiceDao.getLatestAuditLogRecordIdForAccount(context);
+        if (accountStateVersion == null) {
+            return null;
+        }
+
+        return new DryRunCacheKey(context.getTenantRecordId(),
+                                  context.getAccountRecordId(),
+                                  accountStateVersion,
+                                  context.toLocalDate(clock.getUTCNow()),
+                                  targetDate,
+                                  dryRunArguments.getDryRunType(),
+                                  dryRunArguments.getSubscriptionId(),
+                                  dryRunArguments.getBundleId());
+    }
+
+    /**
+     * @return the cached result (which may be absent if there was nothing to invoice), or null if not cached
+     */
+    @Nullable
+    public Optional<Invoice> getIfPresent(final DryRunCacheKey cacheKey) {
+        final Optional<Invoice> cachedInvoice = dryRunInvoices.getIfPresent(cacheKey);
+        return cachedInvoice == null ? null : Optional.<Invoice>fromNullable(copy(cachedInvoice.orNull()));
+    }
+
+    public void put(final DryRunCacheKey cacheKey, @Nullable final Invoice invoice) {
+        dryRunInvoices.put(cacheKey, Optional.<Invoice>fromNullable(copy(invoice)));
+    }
+
+    public void invalidateAll(final Long tenantRecordId) {
+        for (final DryRunCacheKey cacheKey : dryRunInvoices.asMap().keySet()) {
+            if (cacheKey.tenantRecordId.equals(tenantRecordId)) {
+                dryRunInvoices.invalidate(cacheKey);
+            }
+        }
+    }
+
+    // Invoices are mutable (e.g. items can be added): callers never share an instance with the cache
+    private Invoice copy(@Nullable final Invoice invoice) {
+        return invoice == null ? null : (Invoice) ((DefaultInvoice) invoice).clone();
+    }
+
+    public static final class DryRunCacheKey {
+
+        private final Long tenantRecordId;
+        private final Long accountRecordId;
+        private final Long accountStateVersion;
+        private final LocalDate today;
+        private final LocalDate targetDate;
+        private final DryRunType dryRunType;
+        private final UUID subscriptionId;
+        private final UUID bundleId;
+
+        private DryRunCacheKey(final Long tenantRecordId, final Long accountRecordId, final Long accountStateVersion, final LocalDate today,
+                               @Nullable final LocalDate targetDate, final DryRunType dryRunType, @Nullable final UUID subscriptionId, @Nullable final UUID bundleId) {
+            this.tenantRecordId = tenantRecordId;
+            this.accountRecordId = accountRecordId;
+            this.accountStateVersion = accountStateVersion;
+            this.today = today;
+            this.targetDate = targetDate;
+            this.dryRunType = dryRunType;
+            this.subscriptionId = subscriptionId;
+            this.bundleId = bundleId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final DryRunCacheKey that = (DryRunCacheKey) o;
+            return Objects.equal(tenantRecordId, that.tenantRecordId) &&
+                   Objects.equal(accountRecordId, that.accountRecordId) &&
+                   Objects.equal(accountStateVersion, that.accountStateVersion) &&
+                   Objects.equal(today, that.today) &&
+                   Objects.equal(targetDate, that.targetDate) &&
+                   dryRunType == that.dryRunType &&
+                   Objects.equal(subscriptionId, that.subscriptionId) &&
+                   Objects.equal(bundleId, that.bundleId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantRecordId, accountRecordId, accountStateVersion, today, targetDate, dryRunType, subscriptionId, bundleId);
+        }
+    }
+}
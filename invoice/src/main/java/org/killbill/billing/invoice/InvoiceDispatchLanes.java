@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.config.InvoiceDispatchLanesConfig;
+import org.killbill.commons.concurrent.Executors;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Objects;
+import com.google.inject.Inject;
+
+//
+// Dispatches the invoice runs triggered by bus events and notifications onto serial lanes (accountRecordId % nbLanes), so that
+// runs for the same account never compete for the account lock on this node. A trigger arriving while a run for the same account,
+// target date and user token is still queued is merged into that run: the run hasn't started yet, so it will see the changes of
+// the trigger, and the invoice events it generates carry the user token the trigger's originator correlates on. Triggers with
+// different user tokens are never merged.
+//
+// The caller (e.g. a bus thread) still blocks until its run has completed, so a failure is reported to (and retried by) the bus
+// or notification queue: the lanes reduce lock contention and duplicate runs, not the time bus threads spend waiting.
+//
+public class InvoiceDispatchLanes {
+
+    private static final String METRICS_PREFIX = "invoice.lanes";
+
+    // Set on the lane threads, to run nested dispatches inline instead of deadlocking on our own lane
+    private static final ThreadLocal<Boolean> IN_LANE = new ThreadLocal<Boolean>();
+
+    private final InvoiceDispatchLanesConfig config;
+    private final ConcurrentMap<LaneKey, PendingRun> pendingRuns = new ConcurrentHashMap<LaneKey, PendingRun>();
+
+    private final Meter runsMeter;
+    private final Meter mergedTriggersMeter;
+
+    private volatile ExecutorService[] lanes;
+
+    public interface InvoiceRun {
+
+        void run() throws InvoiceApiException;
+    }
+
+    @Inject
+    public InvoiceDispatchLanes(final InvoiceDispatchLanesConfig config, final MetricRegistry metricRegistry) {
+        this.config = config;
+        this.runsMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "runs"));
+        this.mergedTriggersMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "mergedTriggers"));
+    }
+
+    public void start() {
+        final int nbLanes = config.getNbLanes();
+        if (nbLanes <= 0) {
+            return;
+        }
+
+        final ExecutorService[] newLanes = new ExecutorService[nbLanes];
+        for (int i = 0; i < nbLanes; i++) {
+            newLanes[i] = Executors.newSingleThreadExecutor("InvoiceLane-" + i);
+        }
+        lanes = newLanes;
+    }
+
+    public void stop() {
+        final ExecutorService[] currentLanes = lanes;
+        lanes = null;
+        if (currentLanes != null) {
+            for (final ExecutorService lane : currentLanes) {
+                lane.shutdown();
+            }
+        }
+    }
+
+    public void dispatch(@Nullable final Long accountRecordId, @Nullable final LocalDate targetDate, @Nullable final UUID userToken, final InvoiceRun invoiceRun) throws InvoiceApiException {
+        final ExecutorService[] currentLanes = lanes;
+        if (currentLanes == null || accountRecordId == null || IN_LANE.get() != null) {
+            runsMeter.mark();
+            invoiceRun.run();
+            return;
+        }
+
+        final LaneKey key = new LaneKey(accountRecordId, targetDate, userToken);
+        final PendingRun newRun = new PendingRun(key, invoiceRun);
+        final PendingRun existingRun = pendingRuns.putIfAbsent(key, newRun);
+
+        final PendingRun run;
+        if (existingRun != null) {
+            mergedTriggersMeter.mark();
+            run = existingRun;
+        } else {
+            runsMeter.mark();
+            run = newRun;
+            try {
+                currentLanes[(int) (accountRecordId % currentLanes.length)].execute(newRun);
+            } catch (final RejectedExecutionException e) {
+                // Shutting down
+                newRun.run();
+            }
+        }
+
+        try {
+            run.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted while waiting for the invoice run of accountRecordId='%s', targetDate='%s'", accountRecordId, targetDate), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof InvoiceApiException) {
+                throw (InvoiceApiException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private final class PendingRun extends FutureTask<Void> {
+
+        private final LaneKey key;
+
+        private PendingRun(final LaneKey key, final InvoiceRun invoiceRun) {
+            super(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    invoiceRun.run();
+                    return null;
+                }
+            });
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            // From now on, new triggers need a new run
+            pendingRuns.remove(key, this);
+
+            IN_LANE.set(Boolean.TRUE);
+            try {
+                super.run();
+            } finally {
+                IN_LANE.remove();
+            }
+        }
+    }
+
+    private static final class LaneKey {
+
+        private final Long accountRecordId;
+        private final LocalDate targetDate;
+        private final UUID userToken;
+
+        private LaneKey(final Long accountRecordId, @Nullable final LocalDate targetDate, @Nullable final UUID userToken) {
+            this.accountRecordId = accountRecordId;
+            this.targetDate = targetDate;
+            this.userToken = userToken;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final LaneKey that = (LaneKey) o;
+            return Objects.equal(accountRecordId, that.accountRecordId) &&
+                   Objects.equal(targetDate, that.targetDate) &&
+                   Objects.equal(userToken, that.userToken);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(accountRecordId, targetDate, userToken);
+        }
+    }
+}
@@ -53,6 +53,7 @@ import org.killbill.billing.entitlement.api.SubscriptionEventType;
 import org.killbill.billing.events.BusInternalEvent;
 import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
 import org.killbill.billing.events.InvoiceNotificationInternalEvent;
+import org.killbill.billing.invoice.DryRunInvoiceCache.DryRunCacheKey;
 import org.killbill.billing.invoice.api.DefaultInvoiceService;
 import org.killbill.billing.invoice.api.DryRunArguments;
 import org.killbill.billing.invoice.api.DryRunType;
@@ -93,6 +94,7 @@ import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.killbill.billing.util.globallocker.LeasingGlobalLocker;
 import org.killbill.billing.util.globallocker.LockerType;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
@@ -109,6 +111,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -141,6 +144,7 @@ public class InvoiceDispatcher {
     private final NotificationQueueService notificationQueueService;
     private final InvoiceConfig invoiceConfig;
     private final ParkedAccountsManager parkedAccountsManager;
+    private final DryRunInvoiceCache dryRunInvoiceCache;
 
     @Inject
     public InvoiceDispatcher(final InvoiceGenerator generator,
@@ -156,7 +160,8 @@ public class InvoiceDispatcher {
                              final NotificationQueueService notificationQueueService,
                              final InvoiceConfig invoiceConfig,
                              final Clock clock,
-                             final ParkedAccountsManager parkedAccountsManager) {
+                             final ParkedAccountsManager parkedAccountsManager,
+                             final DryRunInvoiceCache dryRunInvoiceCache) {
         this.generator = generator;
         this.billingApi = billingApi;
         this.subscriptionApi = SubscriptionApi;
@@ -171,6 +176,7 @@ public class InvoiceDispatcher {
         this.notificationQueueService = notificationQueueService;
         this.invoiceConfig = invoiceConfig;
         this.parkedAccountsManager = parkedAccountsManager;
+        this.dryRunInvoiceCache = dryRunInvoiceCache;
     }
 
     public void processSubscriptionForInvoiceGeneration(final EffectiveSubscriptionInternalEvent transition,
@@ -234,7 +240,7 @@ public class InvoiceDispatcher {
                                   final InternalCallContext context) throws InvoiceApiException {
         boolean parkedAccount = false;
         try {
-            parkedAccount = parkedAccountsManager.isParked(context);
+            parkedAccount = parkedAccountsManager.isParked(accountId, context);
             if (parkedAccount && !isApiCall) {
                 log.warn("Ignoring invoice generation process for accountId='{}', targetDate='{}', account is parked", accountId.toString(), targetDate);
                 return null;
@@ -243,11 +249,21 @@ public class InvoiceDispatcher {
             log.warn("Unable to determine parking state for accountId='{}'", accountId);
         }
 
+        final DryRunCacheKey dryRunCacheKey = dryRunInvoiceCache.createCacheKey(targetDate, dryRunArguments, context);
+        if (dryRunCacheKey != null) {
+            final Optional<Invoice> cachedDryRunInvoice = dryRunInvoiceCache.getIfPresent(dryRunCacheKey);
+            if (cachedDryRunInvoice != null) {
+                return cachedDryRunInvoice.orNull();
+            }
+        }
+
         GlobalLock lock = null;
         try {
-            lock = locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), invoiceConfig.getMaxGlobalLockRetries());
+            lock = dryRunArguments != null ?
+                   lockAccountForRead(accountId) :
+                   locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), invoiceConfig.getMaxGlobalLockRetries());
 
-            return processAccountWithLock(parkedAccount, accountId, targetDate, dryRunArguments, context);
+            return processAccountWithLock(parkedAccount, accountId, targetDate, dryRunArguments, dryRunCacheKey, context);
         } catch (final LockFailedException e) {
             log.warn("Failed to process invoice for accountId='{}', targetDate='{}'", accountId.toString(), targetDate, e);
         } finally {
@@ -259,10 +275,20 @@ public class InvoiceDispatcher {
     }
 
 
+    // Dry runs don't modify the account: when read/write separation is enabled, they neither wait for nor block the payments
+    private GlobalLock lockAccountForRead(final UUID accountId) throws LockFailedException {
+        if (locker instanceof LeasingGlobalLocker) {
+            return ((LeasingGlobalLocker) locker).lockForReadWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), invoiceConfig.getMaxGlobalLockRetries());
+        } else {
+            return locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), invoiceConfig.getMaxGlobalLockRetries());
+        }
+    }
+
     private Invoice processAccountWithLock(final boolean parkedAccount,
                                            final UUID accountId,
                                            @Nullable final LocalDate inputTargetDateMaybeNull,
                                            @Nullable final DryRunArguments dryRunArguments,
+                                           @Nullable final DryRunCacheKey dryRunCacheKey,
                                            final InternalCallContext context) throws InvoiceApiException {
         final boolean isDryRun = dryRunArguments != null;
         final boolean upcomingInvoiceDryRun = isDryRun && DryRunType.UPCOMING_INVOICE.equals(dryRunArguments.getDryRunType());
@@ -332,6 +358,11 @@ public class InvoiceDispatcher {
                 }  else /* DryRunType.TARGET_DATE, SUBSCRIPTION_ACTION */ {
                     invoice = processDryRun_TARGET_DATE_Invoice(accountId, inputTargetDate, allCandidateTargetDates, billingEvents, existingInvoices, context);
                 }
+
+                // Recorded usage isn't audited, so it wouldn't be reflected in the cache key
+                if (dryRunCacheKey != null && billingEvents.getUsages().isEmpty()) {
+                    dryRunInvoiceCache.put(dryRunCacheKey, invoice);
+                }
             }
             return invoice;
         } catch (final CatalogApiException e) {
@@ -21,6 +21,7 @@ package org.killbill.billing.invoice;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -28,6 +29,7 @@ import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.events.BlockingTransitionInternalEvent;
 import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
 import org.killbill.billing.events.InvoiceCreationInternalEvent;
+import org.killbill.billing.invoice.InvoiceDispatchLanes.InvoiceRun;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceAdjustmentEvent;
@@ -49,6 +51,7 @@ public class InvoiceListener {
     private static final Logger log = LoggerFactory.getLogger(InvoiceListener.class);
 
     private final InvoiceDispatcher dispatcher;
+    private final InvoiceDispatchLanes dispatchLanes;
     private final InternalCallContextFactory internalCallContextFactory;
     private final AccountInternalApi accountApi;
     private final InvoiceInternalApi invoiceApi;
@@ -57,9 +60,10 @@ public class InvoiceListener {
 
     @Inject
     public InvoiceListener(final AccountInternalApi accountApi, final Clock clock, final InternalCallContextFactory internalCallContextFactory,
-                           final InvoiceConfig invoiceConfig, final InvoiceDispatcher dispatcher, InvoiceInternalApi invoiceApi) {
+                           final InvoiceConfig invoiceConfig, final InvoiceDispatcher dispatcher, final InvoiceDispatchLanes dispatchLanes, InvoiceInternalApi invoiceApi) {
         this.accountApi = accountApi;
         this.dispatcher = dispatcher;
+        this.dispatchLanes = dispatchLanes;
         this.invoiceConfig = invoiceConfig;
         this.internalCallContextFactory = internalCallContextFactory;
         this.clock = clock;
@@ -77,7 +81,12 @@ public class InvoiceListener {
                 return;
             }
             final InternalCallContext context = internalCallContextFactory.createInternalCallContext(event.getSearchKey2(), event.getSearchKey1(), "SubscriptionBaseTransition", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
-            dispatcher.processSubscriptionForInvoiceGeneration(event, context);
+            dispatchLanes.dispatch(context.getAccountRecordId(), context.toLocalDate(event.getEffectiveTransitionTime()), context.getUserToken(), new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    dispatcher.processSubscriptionForInvoiceGeneration(event, context);
+                }
+            });
         } catch (InvoiceApiException e) {
             log.warn("Unable to process event {}", event, e);
         }
@@ -94,7 +103,12 @@ public class InvoiceListener {
         try {
             final InternalCallContext context = internalCallContextFactory.createInternalCallContext(event.getSearchKey2(), event.getSearchKey1(), "SubscriptionBaseTransition", CallOrigin.INTERNAL, UserType.SYSTEM, event.getUserToken());
             final UUID accountId = accountApi.getByRecordId(event.getSearchKey1(), context);
-            dispatcher.processAccountFromNotificationOrBusEvent(accountId, null, null, context);
+            dispatchLanes.dispatch(context.getAccountRecordId(), null, context.getUserToken(), new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    dispatcher.processAccountFromNotificationOrBusEvent(accountId, null, null, context);
+                }
+            });
         } catch (InvoiceApiException e) {
             log.warn("Unable to process event {}", event, e);
         } catch (AccountApiException e) {
@@ -105,7 +119,13 @@ public class InvoiceListener {
     public void handleNextBillingDateEvent(final UUID subscriptionId, final DateTime eventDateTime, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
         try {
             final InternalCallContext context = internalCallContextFactory.createInternalCallContext(tenantRecordId, accountRecordId, "Next Billing Date", CallOrigin.INTERNAL, UserType.SYSTEM, userToken);
-            dispatcher.processSubscriptionForInvoiceGeneration(subscriptionId, context.toLocalDate(eventDateTime), context);
+            final LocalDate targetDate = context.toLocalDate(eventDateTime);
+            dispatchLanes.dispatch(accountRecordId, targetDate, userToken, new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    dispatcher.processSubscriptionForInvoiceGeneration(subscriptionId, targetDate, context);
+                }
+            });
         } catch (InvoiceApiException e) {
             log.warn("Unable to process subscriptionId='{}', eventDateTime='{}'", subscriptionId, eventDateTime, e);
         }
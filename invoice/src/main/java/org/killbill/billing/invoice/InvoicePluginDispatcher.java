@@ -76,6 +76,10 @@ public class InvoicePluginDispatcher {
         return additionalInvoiceItems;
     }
 
+    public boolean hasInvoicePlugins() {
+        return !pluginRegistry.getAllServices().isEmpty();
+    }
+
     private void validateInvoiceItemFromPlugin(final InvoiceItem invoiceItem, final InvoicePluginApi invoicePlugin) throws InvoiceApiException {
         if (!ALLOWED_INVOICE_ITEM_TYPES.contains(invoiceItem.getInvoiceItemType())) {
             log.warn("Ignoring invoice item of type {} from InvoicePlugin {}: {}", invoiceItem.getInvoiceItemType(), invoicePlugin, invoiceItem);
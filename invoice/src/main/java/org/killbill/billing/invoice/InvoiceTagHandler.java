@@ -23,6 +23,7 @@ import java.util.UUID;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.events.ControlTagDeletionInternalEvent;
+import org.killbill.billing.invoice.InvoiceDispatchLanes.InvoiceRun;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.util.callcontext.CallOrigin;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
@@ -40,12 +41,15 @@ public class InvoiceTagHandler {
     private static final Logger log = LoggerFactory.getLogger(InvoiceTagHandler.class);
 
     private final InvoiceDispatcher dispatcher;
+    private final InvoiceDispatchLanes dispatchLanes;
     private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
     public InvoiceTagHandler(final InvoiceDispatcher dispatcher,
+                             final InvoiceDispatchLanes dispatchLanes,
                              final InternalCallContextFactory internalCallContextFactory) {
         this.dispatcher = dispatcher;
+        this.dispatchLanes = dispatchLanes;
         this.internalCallContextFactory = internalCallContextFactory;
     }
 
@@ -61,7 +65,12 @@ public class InvoiceTagHandler {
 
     private void processUnpaid_AUTO_INVOICING_OFF_invoices(final UUID accountId, final InternalCallContext context) {
         try {
-            dispatcher.processAccountFromNotificationOrBusEvent(accountId, null, null, context);
+            dispatchLanes.dispatch(context.getAccountRecordId(), null, context.getUserToken(), new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    dispatcher.processAccountFromNotificationOrBusEvent(accountId, null, null, context);
+                }
+            });
         } catch (final InvoiceApiException e) {
             log.warn("Failed to process tag removal AUTO_INVOICING_OFF for accountId='{}'", accountId, e);
         }
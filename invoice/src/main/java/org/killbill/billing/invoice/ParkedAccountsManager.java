@@ -25,6 +25,7 @@ import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.api.TagDefinitionApiException;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.Tag;
 
 import com.google.common.base.Predicate;
@@ -57,6 +58,10 @@ public class ParkedAccountsManager {
         tagApi.removeTag(accountId, ObjectType.ACCOUNT, PARK_TAG_DEFINITION_ID, internalCallContext);
     }
 
+    public boolean isParked(final UUID accountId, final InternalCallContext internalCallContext) throws TagApiException {
+        return ControlTagBits.isSet(tagApi.getControlTags(accountId, ObjectType.ACCOUNT, internalCallContext), PARK_TAG_DEFINITION_ID);
+    }
+
     public boolean isParked(final InternalCallContext internalCallContext) throws TagApiException {
         return Iterables.<Tag>tryFind(tagApi.getTagsForAccountType(ObjectType.ACCOUNT, false, internalCallContext),
                                       new Predicate<Tag>() {
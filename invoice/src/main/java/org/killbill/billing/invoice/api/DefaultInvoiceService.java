@@ -18,6 +18,8 @@
 
 package org.killbill.billing.invoice.api;
 
+import org.killbill.billing.invoice.BillRunScheduler;
+import org.killbill.billing.invoice.InvoiceDispatchLanes;
 import org.killbill.billing.invoice.notification.ParentInvoiceCommitmentNotifier;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.billing.invoice.InvoiceListener;
@@ -38,15 +40,20 @@ public class DefaultInvoiceService implements InvoiceService {
     private final InvoiceTagHandler tagHandler;
     private final PersistentBus eventBus;
     private final ParentInvoiceCommitmentNotifier parentInvoiceNotifier;
+    private final BillRunScheduler billRunScheduler;
+    private final InvoiceDispatchLanes dispatchLanes;
 
     @Inject
     public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus,
-                                 final NextBillingDateNotifier dateNotifier, final ParentInvoiceCommitmentNotifier parentInvoiceNotifier) {
+                                 final NextBillingDateNotifier dateNotifier, final ParentInvoiceCommitmentNotifier parentInvoiceNotifier,
+                                 final BillRunScheduler billRunScheduler, final InvoiceDispatchLanes dispatchLanes) {
         this.invoiceListener = invoiceListener;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
         this.dateNotifier = dateNotifier;
         this.parentInvoiceNotifier = parentInvoiceNotifier;
+        this.billRunScheduler = billRunScheduler;
+        this.dispatchLanes = dispatchLanes;
     }
 
     @Override
@@ -64,12 +71,16 @@ public class DefaultInvoiceService implements InvoiceService {
         }
         dateNotifier.initialize();
         parentInvoiceNotifier.initialize();
+        billRunScheduler.initialize();
     }
 
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
     public void start() {
+        // Before the notification queues, which dispatch onto the lanes
+        dispatchLanes.start();
         dateNotifier.start();
         parentInvoiceNotifier.start();
+        billRunScheduler.start();
     }
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
@@ -82,5 +93,7 @@ public class DefaultInvoiceService implements InvoiceService {
         }
         dateNotifier.stop();
         parentInvoiceNotifier.stop();
+        billRunScheduler.stop();
+        dispatchLanes.stop();
     }
 }
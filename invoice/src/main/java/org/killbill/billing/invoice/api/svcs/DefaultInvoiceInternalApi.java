@@ -32,6 +32,7 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.BillRunScheduler;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceApiHelper;
@@ -46,6 +47,7 @@ import org.killbill.billing.invoice.dao.InvoiceModelDao;
 import org.killbill.billing.invoice.dao.InvoicePaymentModelDao;
 import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.DefaultInvoicePayment;
+import org.killbill.billing.payment.api.PaymentTransaction;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.slf4j.Logger;
@@ -64,14 +66,17 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
     private final InvoiceDao dao;
     private final InvoiceApiHelper invoiceApiHelper;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final BillRunScheduler billRunScheduler;
 
     @Inject
     public DefaultInvoiceInternalApi(final InvoiceDao dao,
                                      final InvoiceApiHelper invoiceApiHelper,
-                                     final InternalCallContextFactory internalCallContextFactory) {
+                                     final InternalCallContextFactory internalCallContextFactory,
+                                     final BillRunScheduler billRunScheduler) {
         this.dao = dao;
         this.invoiceApiHelper = invoiceApiHelper;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.billRunScheduler = billRunScheduler;
     }
 
     @Override
@@ -89,6 +94,16 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         });
     }
 
+    @Override
+    public Collection<Invoice> getUnpaidInvoicesByAccountRecordIds(final Collection<Long> accountRecordIds, final InternalTenantContext context) {
+        return Collections2.transform(dao.getUnpaidInvoicesByAccountRecordIds(accountRecordIds, context), new Function<InvoiceModelDao, Invoice>() {
+            @Override
+            public Invoice apply(final InvoiceModelDao input) {
+                return new DefaultInvoice(input);
+            }
+        });
+    }
+
     @Override
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
         return dao.getAccountBalance(accountId, context);
@@ -160,6 +175,31 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         dao.consumeExstingCBAOnAccountWithUnpaidInvoices(accountId, context);
     }
 
+    @Override
+    public Invoice getAndSanitizeInvoiceForPayment(final UUID invoiceId, final IncompletePaymentAttemptResolver resolver, final InternalCallContext context) throws InvoiceApiException {
+        final InvoiceModelDao invoice = dao.getAndSanitizeInvoiceForPayment(invoiceId, new Function<InvoicePaymentModelDao, InvoicePaymentModelDao>() {
+            @Override
+            public InvoicePaymentModelDao apply(final InvoicePaymentModelDao incompleteAttempt) {
+                final PaymentTransaction successfulTransaction = resolver.getSuccessfulPaymentTransaction(new DefaultInvoicePayment(incompleteAttempt));
+                if (successfulTransaction == null) {
+                    return null;
+                }
+
+                final InvoicePayment completedAttempt = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT,
+                                                                                  successfulTransaction.getPaymentId(),
+                                                                                  invoiceId,
+                                                                                  successfulTransaction.getCreatedDate(),
+                                                                                  successfulTransaction.getAmount(),
+                                                                                  successfulTransaction.getCurrency(),
+                                                                                  successfulTransaction.getProcessedCurrency(),
+                                                                                  successfulTransaction.getExternalKey(),
+                                                                                  true);
+                return new InvoicePaymentModelDao(completedAttempt);
+            }
+        }, context);
+        return new DefaultInvoice(invoice);
+    }
+
     @Override
     public Map<UUID, BigDecimal> validateInvoiceItemAdjustments(final UUID paymentId, final Map<UUID, BigDecimal> idWithAmount, final InternalTenantContext context) throws InvoiceApiException {
         // We want to validate that only refund with invoice *item* adjustments are allowed (as opposed to refund with invoice adjustment)
@@ -187,4 +227,9 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
     public void commitInvoice(final UUID invoiceId, final InternalCallContext context) throws InvoiceApiException {
         dao.changeInvoiceStatus(invoiceId, InvoiceStatus.COMMITTED, context);
     }
+
+    @Override
+    public void scheduleBillRun(final DateTime runDate, final InternalCallContext context) throws InvoiceApiException {
+        billRunScheduler.scheduleBillRun(runDate, context);
+    }
 }
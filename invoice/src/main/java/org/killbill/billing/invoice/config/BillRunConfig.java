@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.config;
+
+import org.killbill.billing.util.config.definition.KillbillConfig;
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface BillRunConfig extends KillbillConfig {
+
+    @Config("org.killbill.invoice.billRun.nbThreads")
+    @Default("4")
+    @Description("Maximum number of accounts invoiced concurrently by bill runs")
+    public int getNbThreads();
+
+    @Config("org.killbill.invoice.billRun.nbShards")
+    @Default("8")
+    @Description("Number of shards a bill run is split into, each shard keeping track of its own progress")
+    public int getNbShards();
+
+    @Config("org.killbill.invoice.billRun.chunkSize")
+    @Default("200")
+    @Description("Number of accounts of a shard invoiced before yielding to other shards and tenants")
+    public int getChunkSize();
+
+    @Config("org.killbill.invoice.billRun.dueAccountsTTL")
+    @Default("1h")
+    @Description("Amount of time the due accounts of an idle bill run are kept in memory")
+    public TimeSpan getDueAccountsTTL();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.config;
+
+import org.killbill.billing.util.config.definition.KillbillConfig;
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface DryRunInvoiceCacheConfig extends KillbillConfig {
+
+    @Config("org.killbill.invoice.dryRun.cache.maxSize")
+    @Default("1000")
+    @Description("Maximum number of dry-run invoices kept in the cache")
+    public int getMaxSize();
+
+    @Config("org.killbill.invoice.dryRun.cache.ttl")
+    @Default("0s")
+    @Description("Maximum amount of time a dry-run invoice is kept in the cache (0, the default, disables the cache)")
+    public TimeSpan getTTL();
+}
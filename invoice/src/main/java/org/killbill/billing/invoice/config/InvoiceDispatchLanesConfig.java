@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.config;
+
+import org.killbill.billing.util.config.definition.KillbillConfig;
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+
+public interface InvoiceDispatchLanesConfig extends KillbillConfig {
+
+    @Config("org.killbill.invoice.lanes.nbLanes")
+    @Default("0")
+    @Description("Number of serial lanes the invoice runs triggered by bus events and notifications are dispatched to, by account (0 runs them on the caller thread)")
+    public int getNbLanes();
+}
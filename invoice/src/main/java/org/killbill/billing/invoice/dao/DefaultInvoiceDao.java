@@ -61,6 +61,7 @@ import org.killbill.billing.util.UUIDs;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.config.definition.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
@@ -116,7 +117,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
     private final CBADao cbaDao;
     private final InvoiceConfig invoiceConfig;
     private final Clock clock;
-    private final CacheController<String, UUID> objectIdCacheController;
+    private final CacheController<RecordIdCacheKey, UUID> objectIdCacheController;
     private final NonEntityDao nonEntityDao;
     private final ParentInvoiceCommitmentPoster parentInvoiceCommitmentPoster;
     private final TagInternalApi tagInternalApi;
@@ -483,6 +484,22 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceModelDao> getUnpaidInvoicesByAccountRecordIds(final Collection<Long> accountRecordIds, final InternalTenantContext context) {
+        if (accountRecordIds.isEmpty()) {
+            return ImmutableList.<InvoiceModelDao>of();
+        }
+
+        final List<Tag> invoicesTags = tagInternalApi.getTagsForAccountRecordIds(accountRecordIds, ObjectType.INVOICE, context);
+
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+            @Override
+            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return invoiceDaoHelper.getUnpaidInvoicesByAccountRecordIdsFromTransaction(accountRecordIds, invoicesTags, entitySqlDaoWrapperFactory, context);
+            }
+        });
+    }
+
     @Override
     public UUID getInvoiceIdByPaymentId(final UUID paymentId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<UUID>() {
@@ -808,49 +825,53 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
             @Override
             public Void inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
-                //
-                // In case of notifyOfPaymentInit we always want to record the row with success = false
-                // Otherwise, if the payment id is null, the payment wasn't attempted (e.g. no payment method so we don't record an attempt but send
-                // an event nonetheless (e.g. for Overdue)
-                //
-                if (!completion || invoicePayment.getPaymentId() != null) {
-                    //
-                    // extract entries by invoiceId (which is always set, as opposed to paymentId) and then filter based on type and
-                    // paymentCookieId = transactionExternalKey
-                    //
-                    final List<InvoicePaymentModelDao> invoicePayments = transactional.getAllPaymentsForInvoiceIncludedInit(invoicePayment.getInvoiceId().toString(), context);
-                    final InvoicePaymentModelDao existingAttempt = Iterables.tryFind(invoicePayments, new Predicate<InvoicePaymentModelDao>() {
-                        @Override
-                        public boolean apply(final InvoicePaymentModelDao input) {
-                            return input.getType() == InvoicePaymentType.ATTEMPT &&
-                                   input.getPaymentCookieId().equals(invoicePayment.getPaymentCookieId());
-                        }
-                    }).orNull();
+                notifyOfPaymentCompletionFromTransaction(invoicePayment, completion, entitySqlDaoWrapperFactory, context);
+                return null;
+            }
+        });
+    }
 
-                    if (existingAttempt == null) {
-                        createAndRefresh(transactional, invoicePayment, context);
-                    } else {
-                        transactional.updateAttempt(existingAttempt.getRecordId(),
-                                                    invoicePayment.getPaymentId().toString(),
-                                                    invoicePayment.getPaymentDate().toDate(),
-                                                    invoicePayment.getAmount(),
-                                                    invoicePayment.getCurrency(),
-                                                    invoicePayment.getProcessedCurrency(),
-                                                    invoicePayment.getPaymentCookieId(),
-                                                    null,
-                                                    invoicePayment.getSuccess(),
-                                                    context);
-                    }
+    private void notifyOfPaymentCompletionFromTransaction(final InvoicePaymentModelDao invoicePayment, final boolean completion, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalCallContext context) throws EntityPersistenceException {
+        final InvoicePaymentSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+        //
+        // In case of notifyOfPaymentInit we always want to record the row with success = false
+        // Otherwise, if the payment id is null, the payment wasn't attempted (e.g. no payment method so we don't record an attempt but send
+        // an event nonetheless (e.g. for Overdue)
+        //
+        if (!completion || invoicePayment.getPaymentId() != null) {
+            //
+            // extract entries by invoiceId (which is always set, as opposed to paymentId) and then filter based on type and
+            // paymentCookieId = transactionExternalKey
+            //
+            final List<InvoicePaymentModelDao> invoicePayments = transactional.getAllPaymentsForInvoiceIncludedInit(invoicePayment.getInvoiceId().toString(), context);
+            final InvoicePaymentModelDao existingAttempt = Iterables.tryFind(invoicePayments, new Predicate<InvoicePaymentModelDao>() {
+                @Override
+                public boolean apply(final InvoicePaymentModelDao input) {
+                    return input.getType() == InvoicePaymentType.ATTEMPT &&
+                           input.getPaymentCookieId().equals(invoicePayment.getPaymentCookieId());
                 }
+            }).orNull();
 
-                if (completion) {
-                    final UUID accountId = nonEntityDao.retrieveIdFromObjectInTransaction(context.getAccountRecordId(), ObjectType.ACCOUNT, objectIdCacheController, entitySqlDaoWrapperFactory.getHandle());
-                    notifyBusOfInvoicePayment(entitySqlDaoWrapperFactory, invoicePayment, accountId, context.getUserToken(), context);
-                }
-                return null;
+            if (existingAttempt == null) {
+                createAndRefresh(transactional, invoicePayment, context);
+            } else {
+                transactional.updateAttempt(existingAttempt.getRecordId(),
+                                            invoicePayment.getPaymentId().toString(),
+                                            invoicePayment.getPaymentDate().toDate(),
+                                            invoicePayment.getAmount(),
+                                            invoicePayment.getCurrency(),
+                                            invoicePayment.getProcessedCurrency(),
+                                            invoicePayment.getPaymentCookieId(),
+                                            null,
+                                            invoicePayment.getSuccess(),
+                                            context);
             }
-        });
+        }
+
+        if (completion) {
+            final UUID accountId = nonEntityDao.retrieveIdFromObjectInTransaction(context.getAccountRecordId(), ObjectType.ACCOUNT, objectIdCacheController, entitySqlDaoWrapperFactory.getHandle());
+            notifyBusOfInvoicePayment(entitySqlDaoWrapperFactory, invoicePayment, accountId, context.getUserToken(), context);
+        }
     }
 
     @Override
@@ -979,6 +1000,57 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public InvoiceModelDao getAndSanitizeInvoiceForPayment(final UUID invoiceId, final Function<InvoicePaymentModelDao, InvoicePaymentModelDao> incompleteAttemptResolver, final InternalCallContext context) throws InvoiceApiException {
+        final List<Tag> invoicesTags = getInvoicesTags(context);
+
+        final InvoiceModelDao invoice = transactionalSqlDao.execute(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
+            @Override
+            public InvoiceModelDao inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                // Rebalance first, so that the invoice we return reflects any CBA consumed
+                cbaDao.doCBAComplexityFromTransaction(invoicesTags, entitySqlDaoWrapperFactory, context);
+                return getInvoiceFromTransaction(invoiceId, invoicesTags, entitySqlDaoWrapperFactory, context);
+            }
+        });
+
+        // Look for an ATTEMPT that isn't successful and see if the payment actually went through
+        final InvoicePaymentModelDao incompleteAttempt = Iterables.tryFind(invoice.getInvoicePayments(), new Predicate<InvoicePaymentModelDao>() {
+            @Override
+            public boolean apply(final InvoicePaymentModelDao input) {
+                return input.getType() == InvoicePaymentType.ATTEMPT && !input.getSuccess();
+            }
+        }).orNull();
+        if (incompleteAttempt == null) {
+            return invoice;
+        }
+
+        // The resolver looks up payment data (i.e. uses its own connection), so it isn't invoked from within the invoice transaction
+        final InvoicePaymentModelDao completedAttempt = incompleteAttemptResolver.apply(incompleteAttempt);
+        if (completedAttempt == null) {
+            return invoice;
+        }
+
+        log.info("Detected an incomplete invoicePayment row for invoiceId='{}' and transactionExternalKey='{}', will correct status", invoiceId, completedAttempt.getPaymentCookieId());
+        return transactionalSqlDao.execute(InvoiceApiException.class, new EntitySqlDaoTransactionWrapper<InvoiceModelDao>() {
+            @Override
+            public InvoiceModelDao inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                notifyOfPaymentCompletionFromTransaction(completedAttempt, true, entitySqlDaoWrapperFactory, context);
+
+                // Rare enough: simply re-hydrate the repaired invoice
+                return getInvoiceFromTransaction(invoiceId, invoicesTags, entitySqlDaoWrapperFactory, context);
+            }
+        });
+    }
+
+    private InvoiceModelDao getInvoiceFromTransaction(final UUID invoiceId, final List<Tag> invoicesTags, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalCallContext context) throws InvoiceApiException {
+        final InvoiceModelDao invoice = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getById(invoiceId.toString(), context);
+        if (invoice == null) {
+            throw new InvoiceApiException(ErrorCode.INVOICE_NOT_FOUND, invoiceId);
+        }
+        invoiceDaoHelper.populateChildren(invoice, invoicesTags, entitySqlDaoWrapperFactory, context);
+        return invoice;
+    }
+
     private void notifyOfFutureBillingEvents(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID accountId,
                                              final FutureAccountNotifications callbackDateTimePerSubscriptions, final InternalCallContext internalCallContext) {
 
@@ -1282,6 +1354,16 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public Long getLatestAuditLogRecordIdForAccount(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Long>() {
+            @Override
+            public Long inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getLatestAuditLogRecordIdForAccount(context);
+            }
+        });
+    }
+
     // PERF: fetch tags once. See also https://github.com/killbill/killbill/issues/720.
     private List<Tag> getInvoicesTags(final InternalTenantContext context) {
         return tagInternalApi.getTagsForAccountType(ObjectType.INVOICE, false, context);
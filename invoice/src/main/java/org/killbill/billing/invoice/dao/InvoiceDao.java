@@ -19,6 +19,7 @@
 package org.killbill.billing.invoice.dao;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -37,6 +38,8 @@ import org.killbill.billing.invoice.api.InvoiceStatus;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.EntityDao;
 
+import com.google.common.base.Function;
+
 public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceApiException> {
 
     void createInvoice(final InvoiceModelDao invoice,
@@ -70,6 +73,9 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceModelDao> getUnpaidInvoicesByAccountId(UUID accountId, @Nullable LocalDate upToDate, InternalTenantContext context);
 
+    // Unpaid invoices of several accounts, regardless of their target date
+    List<InvoiceModelDao> getUnpaidInvoicesByAccountRecordIds(Collection<Long> accountRecordIds, InternalTenantContext context);
+
     // Include migrated invoices
     List<InvoiceModelDao> getAllInvoicesByAccount(InternalTenantContext context);
 
@@ -145,6 +151,17 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
      */
     public void consumeExstingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context);
 
+    /**
+     * Rebalance the account CBA and return the invoice, in a single transaction. If the invoice has an incomplete payment attempt,
+     * the resolver is invoked once that transaction has completed, and the attempt is completed (if possible) in a follow-up transaction.
+     *
+     * @param invoiceId                 the invoice about to be paid
+     * @param incompleteAttemptResolver returns the completed row for an incomplete payment attempt, or null if it cannot be completed
+     * @param context                   the callcontext
+     * @return the up-to-date invoice
+     */
+    public InvoiceModelDao getAndSanitizeInvoiceForPayment(UUID invoiceId, Function<InvoicePaymentModelDao, InvoicePaymentModelDao> incompleteAttemptResolver, InternalCallContext context) throws InvoiceApiException;
+
     /**
      * Update invoice status
      *
@@ -213,4 +230,12 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
      * @throws InvoiceApiException if any unexpected error occurs
      */
     List<InvoiceItemModelDao> getInvoiceItemsByParentInvoice(UUID parentInvoiceId, final InternalTenantContext context) throws InvoiceApiException;
+
+    /**
+     * Retrieve the latest audit log record id for the account, which changes whenever anything is modified on the account
+     *
+     * @param context the tenant context
+     * @return the latest audit log record id, or null if none
+     */
+    Long getLatestAuditLogRecordIdForAccount(InternalTenantContext context);
 }
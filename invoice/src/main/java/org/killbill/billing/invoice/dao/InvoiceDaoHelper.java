@@ -170,6 +170,20 @@ public class InvoiceDaoHelper {
         return getUnpaidInvoicesByAccountFromTransaction(invoices, upToDate);
     }
 
+    // Bulk version for several accounts: the invoices, items and payments of all these accounts are each loaded with a single query. The target
+    // date of the invoices isn't checked, as each account has its own current date.
+    public List<InvoiceModelDao> getUnpaidInvoicesByAccountRecordIdsFromTransaction(final Collection<Long> accountRecordIds, final List<Tag> invoicesTags, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
+        final List<InvoiceModelDao> invoices = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getByAccountRecordIds(accountRecordIds, context);
+        if (invoices.isEmpty()) {
+            return ImmutableList.<InvoiceModelDao>of();
+        }
+
+        final List<InvoiceItemModelDao> invoiceItems = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getByAccountRecordIds(accountRecordIds, context);
+        final List<InvoicePaymentModelDao> invoicePayments = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getByAccountRecordIds(accountRecordIds, context);
+        populateChildren(invoices, invoiceItems, invoicePayments, invoicesTags, entitySqlDaoWrapperFactory, context);
+        return getUnpaidInvoicesByAccountFromTransaction(invoices, null);
+    }
+
     public List<InvoiceModelDao> getUnpaidInvoicesByAccountFromTransaction(final List<InvoiceModelDao> invoices, @Nullable final LocalDate upToDate) {
         final Collection<InvoiceModelDao> unpaidInvoices = Collections2.filter(invoices, new Predicate<InvoiceModelDao>() {
             @Override
@@ -231,8 +245,15 @@ public class InvoiceDaoHelper {
             return;
         }
 
-        getInvoiceItemsWithinTransaction(invoices, entitySqlDaoWrapperFactory, context);
-        getInvoicePaymentsWithinTransaction(invoices, entitySqlDaoWrapperFactory, context);
+        final List<InvoiceItemModelDao> invoiceItems = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getByAccountRecordId(context);
+        final List<InvoicePaymentModelDao> invoicePayments = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getByAccountRecordId(context);
+        populateChildren(invoices, invoiceItems, invoicePayments, invoicesTags, entitySqlDaoWrapperFactory, context);
+    }
+
+    private void populateChildren(final Iterable<InvoiceModelDao> invoices, final List<InvoiceItemModelDao> invoiceItems, final List<InvoicePaymentModelDao> invoicePayments,
+                                  final List<Tag> invoicesTags, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
+        setInvoiceItems(invoices, invoiceItems);
+        setInvoicePayments(invoices, invoicePayments);
         setInvoicesWrittenOff(invoices, invoicesTags);
 
         final Iterable<InvoiceModelDao> nonParentInvoices = Iterables.<InvoiceModelDao>filter(invoices,
@@ -261,10 +282,7 @@ public class InvoiceDaoHelper {
         return amount == null ? BigDecimal.ZERO : amount;
     }
 
-    private void getInvoiceItemsWithinTransaction(final Iterable<InvoiceModelDao> invoices, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
-        final InvoiceItemSqlDao invoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
-        final List<InvoiceItemModelDao> invoiceItemsForAccount = invoiceItemSqlDao.getByAccountRecordId(context);
-
+    private void setInvoiceItems(final Iterable<InvoiceModelDao> invoices, final List<InvoiceItemModelDao> invoiceItemsForAccount) {
         final Map<UUID, List<InvoiceItemModelDao>> invoiceItemsPerInvoiceId = new HashMap<UUID, List<InvoiceItemModelDao>>();
         for (final InvoiceItemModelDao item : invoiceItemsForAccount) {
             if (invoiceItemsPerInvoiceId.get(item.getInvoiceId()) == null) {
@@ -281,10 +299,7 @@ public class InvoiceDaoHelper {
         }
     }
 
-    private void getInvoicePaymentsWithinTransaction(final Iterable<InvoiceModelDao> invoices, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
-        final InvoicePaymentSqlDao invoicePaymentSqlDao = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
-        final List<InvoicePaymentModelDao> invoicePaymentsForAccount = invoicePaymentSqlDao.getByAccountRecordId(context);
-
+    private void setInvoicePayments(final Iterable<InvoiceModelDao> invoices, final List<InvoicePaymentModelDao> invoicePaymentsForAccount) {
         final Map<UUID, List<InvoicePaymentModelDao>> invoicePaymentsPerInvoiceId = new HashMap<UUID, List<InvoicePaymentModelDao>>();
         for (final InvoicePaymentModelDao invoicePayment : invoicePaymentsForAccount) {
             if (invoicePaymentsPerInvoiceId.get(invoicePayment.getInvoiceId()) == null) {
@@ -311,13 +326,17 @@ public class InvoiceDaoHelper {
 
     private void setInvoicesWrittenOff(final Iterable<InvoiceModelDao> invoices, final List<Tag> invoicesTags) {
         final Iterable<Tag> writtenOffTags = filterForWrittenOff(invoicesTags);
+        if (Iterables.<Tag>isEmpty(writtenOffTags)) {
+            return;
+        }
+
+        // Invoices may span several accounts, avoid scanning them for each tag
+        final Map<UUID, InvoiceModelDao> invoicesById = new HashMap<UUID, InvoiceModelDao>();
+        for (final InvoiceModelDao invoice : invoices) {
+            invoicesById.put(invoice.getId(), invoice);
+        }
         for (final Tag cur : writtenOffTags) {
-            final InvoiceModelDao foundInvoice = Iterables.tryFind(invoices, new Predicate<InvoiceModelDao>() {
-                @Override
-                public boolean apply(final InvoiceModelDao input) {
-                    return input.getId().equals(cur.getObjectId());
-                }
-            }).orNull();
+            final InvoiceModelDao foundInvoice = invoicesById.get(cur.getObjectId());
             if (foundInvoice != null) {
                 foundInvoice.setIsWrittenOff(true);
             }
@@ -19,7 +19,10 @@
 package org.killbill.billing.invoice.glue;
 
 import org.killbill.billing.glue.InvoiceModule;
+import org.killbill.billing.invoice.BillRunScheduler;
+import org.killbill.billing.invoice.DryRunInvoiceCache;
 import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.InvoiceDispatchLanes;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
 import org.killbill.billing.invoice.ParkedAccountsManager;
@@ -35,6 +38,9 @@ import org.killbill.billing.invoice.api.formatters.ResourceBundleFactory;
 import org.killbill.billing.invoice.api.invoice.DefaultInvoicePaymentApi;
 import org.killbill.billing.invoice.api.svcs.DefaultInvoiceInternalApi;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceUserApi;
+import org.killbill.billing.invoice.config.BillRunConfig;
+import org.killbill.billing.invoice.config.DryRunInvoiceCacheConfig;
+import org.killbill.billing.invoice.config.InvoiceDispatchLanesConfig;
 import org.killbill.billing.invoice.config.MultiTenantInvoiceConfig;
 import org.killbill.billing.invoice.dao.CBADao;
 import org.killbill.billing.invoice.dao.DefaultInvoiceDao;
@@ -51,6 +57,7 @@ import org.killbill.billing.invoice.notification.NextBillingDateNotifier;
 import org.killbill.billing.invoice.notification.NextBillingDatePoster;
 import org.killbill.billing.invoice.notification.NullInvoiceNotifier;
 import org.killbill.billing.invoice.plugin.api.InvoicePluginApi;
+import org.killbill.billing.invoice.template.HtmlInvoiceGenerator;
 import org.killbill.billing.invoice.template.bundles.DefaultResourceBundleFactory;
 import org.killbill.billing.invoice.usage.RawUsageOptimizer;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
@@ -117,6 +124,12 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
         final TranslatorConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(TranslatorConfig.class);
         bind(TranslatorConfig.class).toInstance(config);
         bind(InvoiceFormatterFactory.class).to(config.getInvoiceFormatterFactoryClass()).asEagerSingleton();
+        bind(HtmlInvoiceGenerator.class).asEagerSingleton();
+    }
+
+    protected void installBillRunScheduler() {
+        bind(BillRunConfig.class).toInstance(new ConfigurationObjectFactory(skifeConfigSource).build(BillRunConfig.class));
+        bind(BillRunScheduler.class).asEagerSingleton();
     }
 
     protected void installInvoiceNotifier() {
@@ -128,7 +141,11 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
     }
 
     protected void installInvoiceDispatcher() {
+        bind(DryRunInvoiceCacheConfig.class).toInstance(new ConfigurationObjectFactory(skifeConfigSource).build(DryRunInvoiceCacheConfig.class));
+        bind(DryRunInvoiceCache.class).asEagerSingleton();
         bind(InvoiceDispatcher.class).asEagerSingleton();
+        bind(InvoiceDispatchLanesConfig.class).toInstance(new ConfigurationObjectFactory(skifeConfigSource).build(InvoiceDispatchLanesConfig.class));
+        bind(InvoiceDispatchLanes.class).asEagerSingleton();
     }
 
     protected void installInvoiceListener() {
@@ -157,6 +174,7 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
         installInvoiceService();
         installInvoiceNotifier();
         installNotifiers();
+        installBillRunScheduler();
         installInvoiceDispatcher();
         installInvoiceListener();
         installTagHandler();
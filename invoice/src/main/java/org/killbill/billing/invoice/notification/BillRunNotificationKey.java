@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import org.joda.time.DateTime;
+import org.killbill.notificationq.api.NotificationEvent;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BillRunNotificationKey implements NotificationEvent {
+
+    private final DateTime runDate;
+    private final int shard;
+    private final int nbShards;
+    // Highest account record id already invoiced by this shard (null when the shard hasn't started yet)
+    private final Long lastAccountRecordId;
+
+    @JsonCreator
+    public BillRunNotificationKey(@JsonProperty("runDate") final DateTime runDate,
+                                  @JsonProperty("shard") final int shard,
+                                  @JsonProperty("nbShards") final int nbShards,
+                                  @JsonProperty("lastAccountRecordId") final Long lastAccountRecordId) {
+        this.runDate = runDate;
+        this.shard = shard;
+        this.nbShards = nbShards;
+        this.lastAccountRecordId = lastAccountRecordId;
+    }
+
+    public DateTime getRunDate() {
+        return runDate;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getNbShards() {
+        return nbShards;
+    }
+
+    public Long getLastAccountRecordId() {
+        return lastAccountRecordId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BillRunNotificationKey{");
+        sb.append("runDate=").append(runDate);
+        sb.append(", shard=").append(shard);
+        sb.append(", nbShards=").append(nbShards);
+        sb.append(", lastAccountRecordId=").append(lastAccountRecordId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 
@@ -36,24 +38,38 @@ import org.killbill.billing.invoice.api.formatters.ResourceBundleFactory;
 import org.killbill.billing.invoice.api.formatters.ResourceBundleFactory.ResourceBundleType;
 import org.killbill.billing.invoice.template.translator.DefaultInvoiceTranslator;
 import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.util.LocaleUtils;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.email.templates.CompiledTemplate;
 import org.killbill.billing.util.email.templates.TemplateEngine;
 import org.killbill.billing.util.io.IOUtils;
 import org.killbill.billing.util.template.translation.TranslatorConfig;
 import org.killbill.xmlloader.UriAccessor;
 
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 public class HtmlInvoiceGenerator {
 
+    // Compiled templates and translators are cached per tenant and locale
+    private static final int MAX_CACHED_ENTRIES = 1000;
+
     private final InvoiceFormatterFactory factory;
     private final TranslatorConfig config;
     private final CurrencyConversionApi currencyConversionApi;
     private final TemplateEngine templateEngine;
     private final TenantInternalApi tenantApi;
     private final ResourceBundleFactory bundleFactory;
+    private final Cache<TemplateCacheKey, CompiledTemplate> templatesCache;
+    private final Cache<TemplateCacheKey, DefaultInvoiceTranslator> translatorsCache;
 
     @Inject
     public HtmlInvoiceGenerator(final InvoiceFormatterFactory factory,
@@ -68,6 +84,23 @@ public class HtmlInvoiceGenerator {
         this.templateEngine = templateEngine;
         this.bundleFactory = bundleFactory;
         this.tenantApi = tenantInternalApi;
+        this.templatesCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ENTRIES).build();
+        this.translatorsCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ENTRIES).build();
+
+        // Invalidated through the tenant broadcast mechanism when templates or translations are uploaded
+        final CacheInvalidationCallback cacheInvalidationCallback = new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                if (key == TenantKey.INVOICE_TRANSLATION_) {
+                    invalidate(translatorsCache, tenantContext.getTenantRecordId());
+                } else {
+                    invalidate(templatesCache, tenantContext.getTenantRecordId());
+                }
+            }
+        };
+        tenantApi.initializeCacheInvalidationCallback(TenantKey.INVOICE_TEMPLATE, cacheInvalidationCallback);
+        tenantApi.initializeCacheInvalidationCallback(TenantKey.INVOICE_MP_TEMPLATE, cacheInvalidationCallback);
+        tenantApi.initializeCacheInvalidationCallback(TenantKey.INVOICE_TRANSLATION_, cacheInvalidationCallback);
     }
 
     public HtmlInvoice generateInvoice(final Account account, @Nullable final Invoice invoice, final boolean manualPay, final InternalTenantContext context) throws IOException {
@@ -76,17 +109,44 @@ public class HtmlInvoiceGenerator {
             return null;
         }
 
-        final String accountLocale = Strings.emptyToNull(account.getLocale());
-        final Locale locale = accountLocale == null ? Locale.getDefault() : LocaleUtils.toLocale(accountLocale);
+        final Locale locale = getLocale(account);
+        return generateInvoice(account, invoice, locale, getTranslator(account, context), getTemplate(locale, manualPay, context), context);
+    }
 
+    /**
+     * Render many invoices for the same account through a single compiled template: the template and translations are resolved
+     * once, and invoices are rendered lazily as the returned Iterable is consumed, so that callers can stream the results.
+     *
+     * @param account   the account
+     * @param invoices  the invoices to render (null entries are skipped)
+     * @param manualPay whether the manual pay template should be used
+     * @param context   the tenant context
+     * @return the rendered invoices
+     * @throws IOException if the template cannot be retrieved
+     */
+    public Iterable<HtmlInvoice> generateInvoices(final Account account, final Iterable<Invoice> invoices, final boolean manualPay, final InternalTenantContext context) throws IOException {
+        final Locale locale = getLocale(account);
+        final DefaultInvoiceTranslator invoiceTranslator = getTranslator(account, context);
+        final CompiledTemplate template = getTemplate(locale, manualPay, context);
+
+        return Iterables.transform(Iterables.filter(invoices, Predicates.notNull()),
+                                   new Function<Invoice, HtmlInvoice>() {
+                                       @Override
+                                       public HtmlInvoice apply(final Invoice invoice) {
+                                           return generateInvoice(account, invoice, locale, invoiceTranslator, template, context);
+                                       }
+                                   });
+    }
+
+    private HtmlInvoice generateInvoice(final Account account,
+                                        final Invoice invoice,
+                                        final Locale locale,
+                                        final DefaultInvoiceTranslator invoiceTranslator,
+                                        final CompiledTemplate template,
+                                        final InternalTenantContext context) {
         final HtmlInvoice invoiceData = new HtmlInvoice();
         final Map<String, Object> data = new HashMap<String, Object>();
 
-        final ResourceBundle invoiceBundle = accountLocale != null ?
-                                             bundleFactory.createBundle(LocaleUtils.toLocale(accountLocale), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context) : null;
-        final ResourceBundle defaultInvoiceBundle = bundleFactory.createBundle(Locale.getDefault(), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context);
-        final DefaultInvoiceTranslator invoiceTranslator = new DefaultInvoiceTranslator(invoiceBundle, defaultInvoiceBundle);
-
         data.put("text", invoiceTranslator);
         data.put("account", account);
 
@@ -94,11 +154,39 @@ public class HtmlInvoiceGenerator {
         data.put("invoice", formattedInvoice);
 
         invoiceData.setSubject(invoiceTranslator.getInvoiceEmailSubject());
-        final String templateText = getTemplateText(locale, manualPay, context);
-        invoiceData.setBody(templateEngine.executeTemplateText(templateText, data));
+        invoiceData.setBody(template.execute(data));
         return invoiceData;
     }
 
+    private Locale getLocale(final Account account) {
+        final String accountLocale = Strings.emptyToNull(account.getLocale());
+        return accountLocale == null ? Locale.getDefault() : LocaleUtils.toLocale(accountLocale);
+    }
+
+    private DefaultInvoiceTranslator getTranslator(final Account account, final InternalTenantContext context) throws IOException {
+        final String accountLocale = Strings.emptyToNull(account.getLocale());
+        final TemplateCacheKey cacheKey = new TemplateCacheKey(context.getTenantRecordId(), accountLocale, false);
+        return getOrLoad(translatorsCache, cacheKey, new Callable<DefaultInvoiceTranslator>() {
+            @Override
+            public DefaultInvoiceTranslator call() {
+                final ResourceBundle invoiceBundle = accountLocale != null ?
+                                                     bundleFactory.createBundle(LocaleUtils.toLocale(accountLocale), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context) : null;
+                final ResourceBundle defaultInvoiceBundle = bundleFactory.createBundle(Locale.getDefault(), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context);
+                return new DefaultInvoiceTranslator(invoiceBundle, defaultInvoiceBundle);
+            }
+        });
+    }
+
+    private CompiledTemplate getTemplate(final Locale locale, final boolean manualPay, final InternalTenantContext context) throws IOException {
+        final TemplateCacheKey cacheKey = new TemplateCacheKey(context.getTenantRecordId(), locale.toString(), manualPay);
+        return getOrLoad(templatesCache, cacheKey, new Callable<CompiledTemplate>() {
+            @Override
+            public CompiledTemplate call() throws IOException {
+                return templateEngine.compileTemplate(getTemplateText(locale, manualPay, context));
+            }
+        });
+    }
+
     private String getTemplateText(final Locale locale, final boolean manualPay, final InternalTenantContext context) throws IOException {
 
         if (InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID.equals(context.getTenantRecordId())) {
@@ -120,4 +208,55 @@ public class HtmlInvoiceGenerator {
             throw new IOException(e);
         }
     }
+
+    private static <V> V getOrLoad(final Cache<TemplateCacheKey, V> cache, final TemplateCacheKey cacheKey, final Callable<V> loader) throws IOException {
+        try {
+            return cache.get(cacheKey, loader);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void invalidate(final Cache<TemplateCacheKey, ?> cache, final Long tenantRecordId) {
+        for (final TemplateCacheKey cacheKey : cache.asMap().keySet()) {
+            if (cacheKey.tenantRecordId.equals(tenantRecordId)) {
+                cache.invalidate(cacheKey);
+            }
+        }
+    }
+
+    private static final class TemplateCacheKey {
+
+        private final Long tenantRecordId;
+        private final String locale;
+        private final boolean manualPay;
+
+        private TemplateCacheKey(final Long tenantRecordId, @Nullable final String locale, final boolean manualPay) {
+            this.tenantRecordId = tenantRecordId;
+            this.locale = locale;
+            this.manualPay = manualPay;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TemplateCacheKey that = (TemplateCacheKey) o;
+            return manualPay == that.manualPay &&
+                   Objects.equal(tenantRecordId, that.tenantRecordId) &&
+                   Objects.equal(locale, that.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantRecordId, locale, manualPay);
+        }
+    }
 }
@@ -111,6 +111,8 @@ public abstract class InvoiceTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     protected InvoiceConfig invoiceConfig;
     @Inject
     protected ParkedAccountsManager parkedAccountsManager;
+    @Inject
+    protected DryRunInvoiceCache dryRunInvoiceCache;
 
     @Override
     protected KillbillConfigSource getConfigSource() {
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.api.DefaultInvoiceService;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.config.BillRunConfig;
+import org.killbill.billing.invoice.notification.BillRunNotificationKey;
+import org.killbill.billing.invoice.notification.DefaultNextBillingDateNotifier;
+import org.killbill.billing.invoice.notification.NextBillingDateNotificationKey;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.jackson.ObjectMapper;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+
+public class TestBillRunScheduler extends InvoiceTestSuiteNoDB {
+
+    private static final int NB_ACCOUNTS = 21;
+    private static final int NB_SHARDS = 2;
+    private static final int CHUNK_SIZE = 4;
+
+    private Long tenantRecordId;
+
+    private DateTime runDate;
+    private List<NotificationEventWithMetadata<NextBillingDateNotificationKey>> nextBillingDateNotifications;
+    private NotificationQueue nextBillingQueue;
+    private LinkedList<BillRunNotificationKey> pendingBillRunKeys;
+    private Map<UUID, List<LocalDate>> invoicedAccounts;
+    private BillRunScheduler billRunScheduler;
+
+    @BeforeMethod(groups = "fast")
+    public void setUpBillRunScheduler() throws Exception {
+        tenantRecordId = internalCallContext.getTenantRecordId();
+        runDate = clock.getUTCNow();
+        nextBillingDateNotifications = new ArrayList<NotificationEventWithMetadata<NextBillingDateNotificationKey>>();
+        pendingBillRunKeys = new LinkedList<BillRunNotificationKey>();
+        invoicedAccounts = new HashMap<UUID, List<LocalDate>>();
+
+        for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+            addNextBillingDateNotification(accountRecordId, runDate.minusDays(3), false);
+            if (accountRecordId % 3 == 0) {
+                // Several subscriptions due: the latest target date should be used
+                addNextBillingDateNotification(accountRecordId, runDate.minusDays(1), false);
+            }
+        }
+        // Dry-run notifications are ignored
+        addNextBillingDateNotification(NB_ACCOUNTS + 1L, runDate.minusDays(2), true);
+
+        nextBillingQueue = Mockito.mock(NotificationQueue.class);
+        Mockito.doReturn(nextBillingDateNotifications).when(nextBillingQueue).getFutureNotificationForSearchKey2(runDate, tenantRecordId);
+
+        final NotificationQueue billRunQueue = Mockito.mock(NotificationQueue.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                Assert.assertNull(invocation.getArguments()[3]);
+                Assert.assertEquals(invocation.getArguments()[4], tenantRecordId);
+                pendingBillRunKeys.add((BillRunNotificationKey) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(billRunQueue).recordFutureNotification(Mockito.<DateTime>any(), Mockito.<NotificationEvent>any(), Mockito.<UUID>any(), Mockito.<Long>any(), Mockito.<Long>any());
+
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.createNotificationQueue(Mockito.eq(DefaultInvoiceService.INVOICE_SERVICE_NAME), Mockito.eq(BillRunScheduler.BILL_RUN_QUEUE), Mockito.<NotificationQueueHandler>any()))
+               .thenReturn(billRunQueue);
+        Mockito.when(notificationQueueService.getNotificationQueue(DefaultInvoiceService.INVOICE_SERVICE_NAME, DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE))
+               .thenReturn(nextBillingQueue);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.eq(tenantRecordId), Mockito.anyLong(), Mockito.anyString(), Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(internalCallContext);
+
+        final AccountInternalApi accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getByRecordId(Mockito.anyLong(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<UUID>() {
+            @Override
+            public UUID answer(final InvocationOnMock invocation) throws Throwable {
+                return getAccountId((Long) invocation.getArguments()[0]);
+            }
+        });
+
+        final InvoiceDispatcher invoiceDispatcher = Mockito.mock(InvoiceDispatcher.class);
+        Mockito.when(invoiceDispatcher.processAccountFromNotificationOrBusEvent(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any()))
+               .thenAnswer(new Answer<Object>() {
+                   @Override
+                   public Object answer(final InvocationOnMock invocation) throws Throwable {
+                       synchronized (invoicedAccounts) {
+                           final UUID accountId = (UUID) invocation.getArguments()[0];
+                           if (invoicedAccounts.get(accountId) == null) {
+                               invoicedAccounts.put(accountId, new ArrayList<LocalDate>());
+                           }
+                           invoicedAccounts.get(accountId).add((LocalDate) invocation.getArguments()[1]);
+                       }
+                       return null;
+                   }
+               });
+
+        final BillRunConfig billRunConfig = Mockito.mock(BillRunConfig.class);
+        Mockito.when(billRunConfig.getNbThreads()).thenReturn(3);
+        Mockito.when(billRunConfig.getNbShards()).thenReturn(NB_SHARDS);
+        Mockito.when(billRunConfig.getChunkSize()).thenReturn(CHUNK_SIZE);
+        Mockito.when(billRunConfig.getDueAccountsTTL()).thenReturn(new TimeSpan("1h"));
+
+        billRunScheduler = new BillRunScheduler(notificationQueueService, invoiceDispatcher, accountInternalApi, internalCallContextFactory, billRunConfig, clock, new MetricRegistry());
+        billRunScheduler.initialize();
+        billRunScheduler.start();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDownBillRunScheduler() throws Exception {
+        billRunScheduler.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testBillRunInvoicesEachDueAccountOnce() throws Exception {
+        billRunScheduler.scheduleBillRun(runDate, internalCallContext);
+        Assert.assertEquals(pendingBillRunKeys.size(), NB_SHARDS);
+
+        int nbSlices = 0;
+        while (!pendingBillRunKeys.isEmpty()) {
+            billRunScheduler.processBillRunSlice(pendingBillRunKeys.poll(), internalCallContext.getUserToken(), tenantRecordId);
+            nbSlices++;
+        }
+        // 11 accounts in shard 1 and 10 in shard 0, i.e. 3 slices each
+        Assert.assertEquals(nbSlices, 6);
+        // The due accounts are only loaded once for the whole run
+        Mockito.verify(nextBillingQueue, Mockito.times(1)).getFutureNotificationForSearchKey2(runDate, tenantRecordId);
+
+        Assert.assertEquals(invoicedAccounts.size(), NB_ACCOUNTS);
+        for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+            final LocalDate expectedTargetDate = internalCallContext.toLocalDate(accountRecordId % 3 == 0 ? runDate.minusDays(1) : runDate.minusDays(3));
+            Assert.assertEquals(invoicedAccounts.get(getAccountId(accountRecordId)), ImmutableList.<LocalDate>of(expectedTargetDate));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testDueAccountsAreReloadedForTheNextRun() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            billRunScheduler.scheduleBillRun(runDate, internalCallContext);
+            while (!pendingBillRunKeys.isEmpty()) {
+                billRunScheduler.processBillRunSlice(pendingBillRunKeys.poll(), internalCallContext.getUserToken(), tenantRecordId);
+            }
+        }
+
+        // Once all its shards have completed, the due accounts of a run are dropped
+        Mockito.verify(nextBillingQueue, Mockito.times(2)).getFutureNotificationForSearchKey2(runDate, tenantRecordId);
+        for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+            Assert.assertEquals(invoicedAccounts.get(getAccountId(accountRecordId)).size(), 2);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testBillRunResumesFromCursor() throws Exception {
+        billRunScheduler.processBillRunSlice(new BillRunNotificationKey(runDate, 0, NB_SHARDS, 14L), internalCallContext.getUserToken(), tenantRecordId);
+
+        // Accounts 16, 18 and 20 are left in shard 0
+        Assert.assertEquals(invoicedAccounts.size(), 3);
+        Assert.assertTrue(invoicedAccounts.containsKey(getAccountId(16L)));
+        Assert.assertTrue(invoicedAccounts.containsKey(getAccountId(18L)));
+        Assert.assertTrue(invoicedAccounts.containsKey(getAccountId(20L)));
+        Assert.assertTrue(pendingBillRunKeys.isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testNotificationKeySerialization() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        final BillRunNotificationKey key = new BillRunNotificationKey(runDate, 3, 8, 1234L);
+
+        final BillRunNotificationKey result = mapper.readValue(mapper.writeValueAsString(key), BillRunNotificationKey.class);
+        Assert.assertEquals(result.getRunDate().compareTo(runDate), 0);
+        Assert.assertEquals(result.getShard(), 3);
+        Assert.assertEquals(result.getNbShards(), 8);
+        Assert.assertEquals(result.getLastAccountRecordId(), (Long) 1234L);
+    }
+
+    private void addNextBillingDateNotification(final Long accountRecordId, final DateTime targetDate, final boolean isDryRun) {
+        final NextBillingDateNotificationKey key = new NextBillingDateNotificationKey(null, ImmutableList.<UUID>of(UUID.randomUUID()), targetDate, isDryRun);
+        nextBillingDateNotifications.add(new NotificationEventWithMetadata<NextBillingDateNotificationKey>((long) nextBillingDateNotifications.size(), null, runDate, accountRecordId, tenantRecordId, key, null, targetDate, DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE));
+    }
+
+    private UUID getAccountId(final Long accountRecordId) {
+        return new UUID(0L, accountRecordId);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.catalog.MockPlan;
+import org.killbill.billing.catalog.MockPlanPhase;
+import org.killbill.billing.catalog.api.BillingMode;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.TestInvoiceHelper.DryRunFutureDateArguments;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.config.DryRunInvoiceCacheConfig;
+import org.killbill.billing.invoice.notification.NullInvoiceNotifier;
+import org.killbill.billing.junction.BillingEventSet;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.inject.Inject;
+
+public class TestDryRunInvoiceCache extends InvoiceTestSuiteWithEmbeddedDB {
+
+    @Inject
+    private TenantInternalApi tenantInternalApi;
+
+    private Account account;
+    private InternalCallContext context;
+    private DryRunInvoiceCache cache;
+    private InvoiceDispatcher dispatcher;
+    private AtomicInteger nbGenerations;
+
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        account = invoiceUtil.createAccount(callContext);
+        final SubscriptionBase subscription = invoiceUtil.createSubscription();
+        context = internalCallContextFactory.createInternalCallContext(account.getId(), callContext);
+
+        // The cache is disabled by default
+        cache = createDryRunInvoiceCache(invoicePluginDispatcher);
+        dispatcher = createInvoiceDispatcher(cache);
+
+        final BillingEventSet events = new MockBillingEventSet();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, clock.getUTCNow().minusDays(1), MockPlan.createBicycleNoTrialEvergreen1USD(), MockPlanPhase.create1USDMonthlyEvergreen(),
+                                                      null, BigDecimal.ONE, Currency.USD, BillingPeriod.MONTHLY, 1,
+                                                      BillingMode.IN_ADVANCE, "", 1L, SubscriptionBaseTransitionType.CREATE));
+
+        // Loading the billing events is the first step of each (non cached) invoice generation
+        nbGenerations = new AtomicInteger();
+        Mockito.doAnswer(new Answer<BillingEventSet>() {
+            @Override
+            public BillingEventSet answer(final InvocationOnMock invocation) throws Throwable {
+                nbGenerations.incrementAndGet();
+                return events;
+            }
+        }).when(billingApi).getBillingEventsForAccountAndUpdateAccountBCD(Mockito.<UUID>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any());
+    }
+
+    @Test(groups = "slow")
+    public void testCacheHitsAndInvalidation() throws Exception {
+        final LocalDate targetDate = clock.getUTCToday();
+
+        final Invoice dryRunInvoice = dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context);
+        Assert.assertNotNull(dryRunInvoice);
+        Assert.assertEquals(nbGenerations.get(), 1);
+
+        // Nothing changed on the account
+        assertSameDryRunInvoice(dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context), dryRunInvoice);
+        assertSameDryRunInvoice(dispatcher.processAccountFromNotificationOrBusEvent(account.getId(), targetDate, new DryRunFutureDateArguments(), context), dryRunInvoice);
+        Assert.assertEquals(nbGenerations.get(), 1);
+
+        // Different target date
+        Assert.assertNotNull(dispatcher.processAccount(true, account.getId(), targetDate.plusDays(1), new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 2);
+
+        // Subscription change on the account (audited like any other change)
+        insertSubscriptionEventAuditLog();
+        final Invoice dryRunInvoiceAfterSubscriptionChange = dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context);
+        Assert.assertNotNull(dryRunInvoiceAfterSubscriptionChange);
+        Assert.assertNotSame(dryRunInvoiceAfterSubscriptionChange, dryRunInvoice);
+        Assert.assertEquals(nbGenerations.get(), 3);
+
+        // Real invoice run: there is nothing left to invoice
+        Assert.assertNotNull(dispatcher.processAccount(true, account.getId(), targetDate, null, context));
+        Assert.assertEquals(nbGenerations.get(), 4);
+        Assert.assertNull(dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 5);
+        Assert.assertNull(dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 5);
+
+        // Catalog change for the tenant
+        cache.invalidateAll(context.getTenantRecordId());
+        Assert.assertNull(dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 6);
+    }
+
+    @Test(groups = "slow")
+    public void testNonCachedDryRuns() throws Exception {
+        final LocalDate targetDate = clock.getUTCToday();
+
+        // Dry-run notifications (i.e. not an API call) are cached as well
+        Assert.assertNotNull(dispatcher.processAccountFromNotificationOrBusEvent(account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 1);
+
+        // Real invoice runs are never cached
+        Assert.assertNotNull(dispatcher.processAccount(true, account.getId(), targetDate, null, context));
+        Assert.assertNull(dispatcher.processAccount(true, account.getId(), targetDate, null, context));
+        Assert.assertEquals(nbGenerations.get(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void testCallersDontShareInstances() throws Exception {
+        final LocalDate targetDate = clock.getUTCToday();
+
+        final Invoice dryRunInvoice = dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context);
+        final int nbItems = dryRunInvoice.getInvoiceItems().size();
+        dryRunInvoice.addInvoiceItem(dryRunInvoice.getInvoiceItems().get(0));
+
+        final Invoice cachedDryRunInvoice = dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context);
+        Assert.assertEquals(nbGenerations.get(), 1);
+        Assert.assertEquals(cachedDryRunInvoice.getInvoiceItems().size(), nbItems);
+        cachedDryRunInvoice.addInvoiceItem(cachedDryRunInvoice.getInvoiceItems().get(0));
+
+        Assert.assertEquals(dispatcher.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context).getInvoiceItems().size(), nbItems);
+        Assert.assertEquals(nbGenerations.get(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testNotCachedWhenDisabledOrWithInvoicePlugins() throws Exception {
+        final LocalDate targetDate = clock.getUTCToday();
+
+        // Default configuration
+        Assert.assertNull(dryRunInvoiceCache.createCacheKey(targetDate, new DryRunFutureDateArguments(), context));
+
+        // Plugins output (e.g. taxes) isn't part of the cache key
+        final InvoicePluginDispatcher invoicePluginDispatcherWithPlugins = Mockito.mock(InvoicePluginDispatcher.class);
+        Mockito.when(invoicePluginDispatcherWithPlugins.hasInvoicePlugins()).thenReturn(true);
+        final DryRunInvoiceCache cacheWithInvoicePlugins = createDryRunInvoiceCache(invoicePluginDispatcherWithPlugins);
+        Assert.assertNull(cacheWithInvoicePlugins.createCacheKey(targetDate, new DryRunFutureDateArguments(), context));
+
+        final InvoiceDispatcher dispatcherWithInvoicePlugins = createInvoiceDispatcher(cacheWithInvoicePlugins);
+        Assert.assertNotNull(dispatcherWithInvoicePlugins.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertNotNull(dispatcherWithInvoicePlugins.processAccount(true, account.getId(), targetDate, new DryRunFutureDateArguments(), context));
+        Assert.assertEquals(nbGenerations.get(), 2);
+    }
+
+    private void assertSameDryRunInvoice(final Invoice actual, final Invoice expected) {
+        Assert.assertNotSame(actual, expected);
+        Assert.assertEquals(actual.getId(), expected.getId());
+        Assert.assertEquals(actual.getInvoiceItems(), expected.getInvoiceItems());
+    }
+
+    private DryRunInvoiceCache createDryRunInvoiceCache(final InvoicePluginDispatcher invoicePluginDispatcher) {
+        final Properties properties = new Properties();
+        properties.setProperty("org.killbill.invoice.dryRun.cache.ttl", "5m");
+        final DryRunInvoiceCacheConfig config = new ConfigurationObjectFactory(properties).build(DryRunInvoiceCacheConfig.class);
+        return new DryRunInvoiceCache(invoiceDao, invoicePluginDispatcher, tenantInternalApi, config, clock);
+    }
+
+    private InvoiceDispatcher createInvoiceDispatcher(final DryRunInvoiceCache dryRunInvoiceCache) {
+        return new InvoiceDispatcher(generator, accountApi, billingApi, subscriptionApi, invoiceDao,
+                                     internalCallContextFactory, new NullInvoiceNotifier(), invoicePluginDispatcher, locker, busService.getBus(),
+                                     notificationQueueService, invoiceConfig, clock, parkedAccountsManager, dryRunInvoiceCache);
+    }
+
+    private void insertSubscriptionEventAuditLog() {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("insert into audit_log (id, target_record_id, table_name, change_type, created_date, created_by, account_record_id, tenant_record_id) values (?, ?, ?, ?, ?, ?, ?, ?)",
+                               UUID.randomUUID().toString(), 1L, "SUBSCRIPTION_EVENTS", "INSERT", clock.getUTCNow().toDate(), "test", context.getAccountRecordId(), context.getTenantRecordId());
+                return null;
+            }
+        });
+    }
+}
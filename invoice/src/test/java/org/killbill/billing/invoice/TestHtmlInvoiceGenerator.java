@@ -22,11 +22,13 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceItem;
@@ -34,27 +36,36 @@ import org.killbill.billing.invoice.api.formatters.InvoiceFormatterFactory;
 import org.killbill.billing.invoice.template.HtmlInvoice;
 import org.killbill.billing.invoice.template.HtmlInvoiceGenerator;
 import org.killbill.billing.invoice.template.formatters.DefaultInvoiceFormatterFactory;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.billing.util.email.templates.CompiledTemplate;
 import org.killbill.billing.util.email.templates.MustacheTemplateEngine;
-import org.killbill.billing.util.email.templates.TemplateEngine;
 import org.killbill.billing.util.template.translation.TranslatorConfig;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.skife.config.ConfigurationObjectFactory;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Iterables;
+
 public class TestHtmlInvoiceGenerator extends InvoiceTestSuiteNoDB {
 
+    private static final String TENANT_TEMPLATE = "Invoice {{invoice.invoiceNumber}} for {{account.name}}";
+
+    private TranslatorConfig config;
+    private InvoiceFormatterFactory factory;
     private HtmlInvoiceGenerator g;
 
     @Override
     @BeforeClass(groups = "fast")
     public void beforeClass() throws Exception {
         super.beforeClass();
-        final TranslatorConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(TranslatorConfig.class);
-        final TemplateEngine templateEngine = new MustacheTemplateEngine();
-        final InvoiceFormatterFactory factory = new DefaultInvoiceFormatterFactory();
-        g = new HtmlInvoiceGenerator(factory, templateEngine, config, null, resourceBundleFactory, null);
+        config = new ConfigurationObjectFactory(skifeConfigSource).build(TranslatorConfig.class);
+        factory = new DefaultInvoiceFormatterFactory();
+        g = new HtmlInvoiceGenerator(factory, new MustacheTemplateEngine(), config, null, resourceBundleFactory, Mockito.mock(TenantInternalApi.class));
     }
 
     @Test(groups = "fast")
@@ -80,6 +91,78 @@ public class TestHtmlInvoiceGenerator extends InvoiceTestSuiteNoDB {
         Assert.assertNull(output);
     }
 
+    @Test(groups = "fast")
+    public void testTemplatesAreCompiledOnceAndInvalidated() throws Exception {
+        final CountingTemplateEngine templateEngine = new CountingTemplateEngine();
+        final TenantInternalApi tenantInternalApi = Mockito.mock(TenantInternalApi.class);
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L);
+        Mockito.when(tenantInternalApi.getInvoiceTemplate(Mockito.<Locale>any(), Mockito.<InternalTenantContext>any())).thenReturn(TENANT_TEMPLATE);
+        final HtmlInvoiceGenerator generator = new HtmlInvoiceGenerator(factory, templateEngine, config, null, resourceBundleFactory, tenantInternalApi);
+
+        final ArgumentCaptor<CacheInvalidationCallback> callbackCaptor = ArgumentCaptor.forClass(CacheInvalidationCallback.class);
+        Mockito.verify(tenantInternalApi).initializeCacheInvalidationCallback(Mockito.eq(TenantKey.INVOICE_TEMPLATE), callbackCaptor.capture());
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(generator.generateInvoice(createAccount(), createInvoice(), false, tenantContext).getBody(), "Invoice 42 for Jim Smith");
+        }
+        Assert.assertEquals(templateEngine.getNbCompilations(), 1);
+        Mockito.verify(tenantInternalApi, Mockito.times(1)).getInvoiceTemplate(Mockito.<Locale>any(), Mockito.<InternalTenantContext>any());
+
+        // Other tenant
+        generator.generateInvoice(createAccount(), createInvoice(), false, new InternalTenantContext(2L));
+        Assert.assertEquals(templateEngine.getNbCompilations(), 2);
+
+        // New template uploaded for the first tenant
+        Mockito.when(tenantInternalApi.getInvoiceTemplate(Mockito.<Locale>any(), Mockito.<InternalTenantContext>any())).thenReturn("Updated {{invoice.invoiceNumber}}");
+        callbackCaptor.getValue().invalidateCache(TenantKey.INVOICE_TEMPLATE, null, tenantContext);
+        Assert.assertEquals(generator.generateInvoice(createAccount(), createInvoice(), false, tenantContext).getBody(), "Updated 42");
+        Assert.assertEquals(templateEngine.getNbCompilations(), 3);
+
+        // The other tenant wasn't impacted
+        generator.generateInvoice(createAccount(), createInvoice(), false, new InternalTenantContext(2L));
+        Assert.assertEquals(templateEngine.getNbCompilations(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testGenerateInvoicesInBulk() throws Exception {
+        final int nbInvoices = 10000;
+        final CountingTemplateEngine templateEngine = new CountingTemplateEngine();
+        final TenantInternalApi tenantInternalApi = Mockito.mock(TenantInternalApi.class);
+        Mockito.when(tenantInternalApi.getInvoiceTemplate(Mockito.<Locale>any(), Mockito.<InternalTenantContext>any())).thenReturn(TENANT_TEMPLATE);
+        final HtmlInvoiceGenerator generator = new HtmlInvoiceGenerator(factory, templateEngine, config, null, resourceBundleFactory, tenantInternalApi);
+
+        final List<Invoice> fixture = new ArrayList<Invoice>();
+        for (int i = 0; i < 10; i++) {
+            fixture.add(createInvoice());
+        }
+        final Iterable<Invoice> invoices = Iterables.limit(Iterables.cycle(fixture), nbInvoices);
+
+        int nbRendered = 0;
+        for (final HtmlInvoice output : generator.generateInvoices(createAccount(), invoices, false, new InternalTenantContext(1L))) {
+            Assert.assertEquals(output.getBody(), "Invoice 42 for Jim Smith");
+            Assert.assertEquals(output.getSubject(), "Your invoice");
+            nbRendered++;
+        }
+        Assert.assertEquals(nbRendered, nbInvoices);
+        Assert.assertEquals(templateEngine.getNbCompilations(), 1);
+        Mockito.verify(tenantInternalApi, Mockito.times(1)).getInvoiceTemplate(Mockito.<Locale>any(), Mockito.<InternalTenantContext>any());
+    }
+
+    private static final class CountingTemplateEngine extends MustacheTemplateEngine {
+
+        private final AtomicInteger nbCompilations = new AtomicInteger();
+
+        @Override
+        public CompiledTemplate compileTemplate(final String templateText) {
+            nbCompilations.incrementAndGet();
+            return super.compileTemplate(templateText);
+        }
+
+        public int getNbCompilations() {
+            return nbCompilations.get();
+        }
+    }
+
     private Account createAccount() {
         final Account account = Mockito.mock(Account.class);
         Mockito.when(account.getExternalKey()).thenReturn("1234abcd");
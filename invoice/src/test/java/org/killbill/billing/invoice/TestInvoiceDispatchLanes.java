@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.invoice.InvoiceDispatchLanes.InvoiceRun;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.config.InvoiceDispatchLanesConfig;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+
+import static org.awaitility.Awaitility.await;
+
+public class TestInvoiceDispatchLanes extends InvoiceTestSuiteNoDB {
+
+    private static final int NB_TRIGGERS = 20;
+
+    private static final Long ACCOUNT_RECORD_ID = 12L;
+    private static final LocalDate TARGET_DATE = new LocalDate(2018, 5, 1);
+    private static final UUID USER_TOKEN = UUID.randomUUID();
+
+    @Test(groups = "fast", description = "Without lanes, each trigger of a burst is its own invoice run, competing for the account lock")
+    public void testBurstOfTriggersWithoutLanes() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final InvoiceDispatchLanes dispatchLanes = createDispatchLanes(0, metricRegistry);
+
+        final BlockingInvoiceRun invoiceRun = new BlockingInvoiceRun();
+        triggerBurst(dispatchLanes, invoiceRun, metricRegistry, 0);
+
+        Assert.assertEquals(invoiceRun.nbRuns.get(), NB_TRIGGERS + 1);
+        // These runs would have waited on the account lock
+        Assert.assertTrue(invoiceRun.maxConcurrentRuns.get() > 1);
+    }
+
+    @Test(groups = "fast", description = "With lanes, the triggers queued behind the run in progress are merged into a single run")
+    public void testBurstOfTriggersWithLanes() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final InvoiceDispatchLanes dispatchLanes = createDispatchLanes(4, metricRegistry);
+        try {
+            final BlockingInvoiceRun invoiceRun = new BlockingInvoiceRun();
+            triggerBurst(dispatchLanes, invoiceRun, metricRegistry, NB_TRIGGERS - 1);
+
+            Assert.assertEquals(invoiceRun.nbRuns.get(), 2);
+            Assert.assertEquals(invoiceRun.maxConcurrentRuns.get(), 1);
+            Assert.assertEquals(metricRegistry.meter("invoice.lanes.runs").getCount(), 2);
+            Assert.assertEquals(metricRegistry.meter("invoice.lanes.mergedTriggers").getCount(), NB_TRIGGERS - 1);
+        } finally {
+            dispatchLanes.stop();
+        }
+    }
+
+    @Test(groups = "fast", description = "Triggers are only merged into a run carrying the same user token, so each originator sees the invoice events of its own change")
+    public void testTriggersWithDifferentUserTokensAreNotMerged() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final InvoiceDispatchLanes dispatchLanes = createDispatchLanes(4, metricRegistry);
+        try {
+            final UUID otherUserToken = UUID.randomUUID();
+            final BlockingInvoiceRun invoiceRun = new BlockingInvoiceRun();
+            // One run for the first trigger, then one run per user token for the queued triggers
+            for (final Future<Void> future : startBurst(dispatchLanes, invoiceRun, metricRegistry, NB_TRIGGERS - 2, USER_TOKEN, otherUserToken)) {
+                future.get();
+            }
+
+            Assert.assertEquals(invoiceRun.nbRuns.get(), 3);
+            Assert.assertEquals(invoiceRun.maxConcurrentRuns.get(), 1);
+            Assert.assertEquals(invoiceRun.userTokens, ImmutableSet.<UUID>of(USER_TOKEN, otherUserToken));
+        } finally {
+            dispatchLanes.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testFailureIsReportedToMergedTriggers() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final InvoiceDispatchLanes dispatchLanes = createDispatchLanes(4, metricRegistry);
+        try {
+            final BlockingInvoiceRun invoiceRun = new BlockingInvoiceRun() {
+                @Override
+                protected void doRun(final int runNumber) throws InvoiceApiException {
+                    super.doRun(runNumber);
+                    if (runNumber == 2) {
+                        throw new InvoiceApiException(ErrorCode.UNEXPECTED_ERROR, "Failed run");
+                    }
+                }
+            };
+
+            final List<Future<Void>> futures = startBurst(dispatchLanes, invoiceRun, metricRegistry, NB_TRIGGERS - 1, USER_TOKEN);
+            Assert.assertNull(futures.get(0).get());
+            for (final Future<Void> future : futures.subList(1, futures.size())) {
+                try {
+                    future.get();
+                    Assert.fail("The failure of the merged run should be reported to each trigger");
+                } catch (final ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof InvoiceApiException);
+                }
+            }
+        } finally {
+            dispatchLanes.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testNestedDispatchRunsInline() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final InvoiceDispatchLanes dispatchLanes = createDispatchLanes(1, metricRegistry);
+        try {
+            final AtomicInteger nbRuns = new AtomicInteger();
+            dispatchLanes.dispatch(ACCOUNT_RECORD_ID, TARGET_DATE, USER_TOKEN, new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    nbRuns.incrementAndGet();
+                    // Would deadlock if queued on the (single) lane we're running on
+                    dispatchLanes.dispatch(ACCOUNT_RECORD_ID + 1, TARGET_DATE, USER_TOKEN, new InvoiceRun() {
+                        @Override
+                        public void run() {
+                            nbRuns.incrementAndGet();
+                        }
+                    });
+                }
+            });
+            Assert.assertEquals(nbRuns.get(), 2);
+        } finally {
+            dispatchLanes.stop();
+        }
+    }
+
+    private InvoiceDispatchLanes createDispatchLanes(final int nbLanes, final MetricRegistry metricRegistry) {
+        final InvoiceDispatchLanesConfig config = Mockito.mock(InvoiceDispatchLanesConfig.class);
+        Mockito.when(config.getNbLanes()).thenReturn(nbLanes);
+        final InvoiceDispatchLanes dispatchLanes = new InvoiceDispatchLanes(config, metricRegistry);
+        dispatchLanes.start();
+        return dispatchLanes;
+    }
+
+    private void triggerBurst(final InvoiceDispatchLanes dispatchLanes, final BlockingInvoiceRun invoiceRun, final MetricRegistry metricRegistry, final int expectedMergedTriggers) throws Exception {
+        for (final Future<Void> future : startBurst(dispatchLanes, invoiceRun, metricRegistry, expectedMergedTriggers, USER_TOKEN)) {
+            future.get();
+        }
+    }
+
+    // The first trigger starts a run, which is held until all the other triggers (e.g. for the other subscriptions of the account) have arrived.
+    // The triggers cycle through the user tokens.
+    private List<Future<Void>> startBurst(final InvoiceDispatchLanes dispatchLanes, final BlockingInvoiceRun invoiceRun, final MetricRegistry metricRegistry, final int expectedMergedTriggers, final UUID... userTokens) throws Exception {
+        // Stand-in for the bus threads
+        final ExecutorService busThreads = Executors.newFixedThreadPool(NB_TRIGGERS + 1);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            futures.add(busThreads.submit(new Trigger(dispatchLanes, invoiceRun, userTokens[0])));
+            Assert.assertTrue(invoiceRun.firstRunStarted.await(10, TimeUnit.SECONDS));
+
+            for (int i = 0; i < NB_TRIGGERS; i++) {
+                futures.add(busThreads.submit(new Trigger(dispatchLanes, invoiceRun, userTokens[i % userTokens.length])));
+            }
+
+            await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return metricRegistry.meter("invoice.lanes.mergedTriggers").getCount() == expectedMergedTriggers &&
+                           metricRegistry.meter("invoice.lanes.runs").getCount() == NB_TRIGGERS + 1 - expectedMergedTriggers;
+                }
+            });
+            invoiceRun.releaseFirstRun.countDown();
+
+            return futures;
+        } finally {
+            busThreads.shutdown();
+        }
+    }
+
+    private static final class Trigger implements Callable<Void> {
+
+        private final InvoiceDispatchLanes dispatchLanes;
+        private final BlockingInvoiceRun invoiceRun;
+        private final UUID userToken;
+
+        private Trigger(final InvoiceDispatchLanes dispatchLanes, final BlockingInvoiceRun invoiceRun, final UUID userToken) {
+            this.dispatchLanes = dispatchLanes;
+            this.invoiceRun = invoiceRun;
+            this.userToken = userToken;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            dispatchLanes.dispatch(ACCOUNT_RECORD_ID, TARGET_DATE, userToken, new InvoiceRun() {
+                @Override
+                public void run() throws InvoiceApiException {
+                    // Stand-in for the context captured by the trigger
+                    invoiceRun.userTokens.add(userToken);
+                    invoiceRun.run();
+                }
+            });
+            return null;
+        }
+    }
+
+    private static class BlockingInvoiceRun implements InvoiceRun {
+
+        private final CountDownLatch firstRunStarted = new CountDownLatch(1);
+        private final CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        private final AtomicInteger nbRuns = new AtomicInteger();
+        private final AtomicInteger nbConcurrentRuns = new AtomicInteger();
+        private final Set<UUID> userTokens = Collections.synchronizedSet(new HashSet<UUID>());
+        private final AtomicInteger maxConcurrentRuns = new AtomicInteger();
+
+        @Override
+        public void run() throws InvoiceApiException {
+            final int concurrentRuns = nbConcurrentRuns.incrementAndGet();
+            try {
+                int max = maxConcurrentRuns.get();
+                while (concurrentRuns > max && !maxConcurrentRuns.compareAndSet(max, concurrentRuns)) {
+                    max = maxConcurrentRuns.get();
+                }
+                doRun(nbRuns.incrementAndGet());
+            } finally {
+                nbConcurrentRuns.decrementAndGet();
+            }
+        }
+
+        protected void doRun(final int runNumber) throws InvoiceApiException {
+            if (runNumber == 1) {
+                firstRunStarted.countDown();
+                try {
+                    releaseFirstRun.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
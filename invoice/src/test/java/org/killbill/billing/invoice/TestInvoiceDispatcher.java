@@ -81,7 +81,7 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
         dispatcher = new InvoiceDispatcher(generator, accountApi, billingApi, subscriptionApi, invoiceDao,
                                            internalCallContextFactory, invoiceNotifier, invoicePluginDispatcher, locker, busService.getBus(),
-                                           notificationQueueService, invoiceConfig, clock, parkedAccountsManager);
+                                           notificationQueueService, invoiceConfig, clock, parkedAccountsManager, dryRunInvoiceCache);
 
     }
 
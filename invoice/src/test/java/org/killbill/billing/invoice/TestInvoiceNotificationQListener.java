@@ -33,8 +33,8 @@ public class TestInvoiceNotificationQListener extends InvoiceListener {
     UUID latestSubscriptionId = null;
 
     @Inject
-    public TestInvoiceNotificationQListener(final AccountInternalApi accountApi, final Clock clock, final InternalCallContextFactory internalCallContextFactory, final InvoiceDispatcher dispatcher, final InvoiceInternalApi invoiceApi) {
-        super(accountApi, clock, internalCallContextFactory, null, dispatcher, invoiceApi);
+    public TestInvoiceNotificationQListener(final AccountInternalApi accountApi, final Clock clock, final InternalCallContextFactory internalCallContextFactory, final InvoiceDispatcher dispatcher, final InvoiceDispatchLanes dispatchLanes, final InvoiceInternalApi invoiceApi) {
+        super(accountApi, clock, internalCallContextFactory, null, dispatcher, dispatchLanes, invoiceApi);
     }
 
     @Override
@@ -25,12 +25,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.killbill.billing.DaoCallCounter;
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.DefaultPrice;
@@ -70,6 +75,7 @@ import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.killbill.billing.util.currency.KillBillMoney;
+import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.clock.ClockMock;
 import org.mockito.Mockito;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
@@ -77,6 +83,7 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -1130,6 +1137,68 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(invoices.size(), 2);
     }
 
+    @Test(groups = "slow")
+    public void testGetUnpaidInvoicesByAccountRecordIds() throws Exception {
+        final UUID bundleId = UUID.randomUUID();
+        final LocalDate startDate = new LocalDate(2011, 3, 1);
+        final LocalDate endDate = startDate.plusMonths(1);
+
+        // First account: one unpaid invoice
+        final Invoice invoice1 = new DefaultInvoice(account.getId(), clock.getUTCToday(), new LocalDate(2011, 10, 6), Currency.USD);
+        invoiceUtil.createInvoice(invoice1, context);
+        invoiceUtil.createInvoiceItem(new RecurringInvoiceItem(invoice1.getId(), account.getId(), bundleId, UUID.randomUUID(), "test plan", "test phase A", startDate, endDate,
+                                                               TWENTY, TWENTY, Currency.USD), context);
+
+        // Second account: one partially paid invoice, one fully paid and one written off
+        final Account account2 = invoiceUtil.createAccount(callContext);
+        final InternalCallContext context2 = internalCallContextFactory.createInternalCallContext(account2.getId(), callContext);
+        final Invoice invoice2 = new DefaultInvoice(account2.getId(), clock.getUTCToday(), new LocalDate(2011, 10, 6), Currency.USD);
+        invoiceUtil.createInvoice(invoice2, context2);
+        invoiceUtil.createInvoiceItem(new RecurringInvoiceItem(invoice2.getId(), account2.getId(), bundleId, UUID.randomUUID(), "test plan", "test phase A", startDate, endDate,
+                                                               TWENTY, TWENTY, Currency.USD), context2);
+        invoiceUtil.createPayment(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), invoice2.getId(), clock.getUTCNow(), TEN, Currency.USD, Currency.USD, null, true), context2);
+
+        final Invoice invoice3 = new DefaultInvoice(account2.getId(), clock.getUTCToday(), new LocalDate(2011, 10, 6), Currency.USD);
+        invoiceUtil.createInvoice(invoice3, context2);
+        invoiceUtil.createInvoiceItem(new RecurringInvoiceItem(invoice3.getId(), account2.getId(), bundleId, UUID.randomUUID(), "test plan", "test phase B", startDate, endDate,
+                                                               TEN, TEN, Currency.USD), context2);
+        invoiceUtil.createPayment(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), invoice3.getId(), clock.getUTCNow(), TEN, Currency.USD, Currency.USD, null, true), context2);
+
+        final Invoice invoice4 = new DefaultInvoice(account2.getId(), clock.getUTCToday(), new LocalDate(2011, 10, 6), Currency.USD);
+        invoiceUtil.createInvoice(invoice4, context2);
+        invoiceUtil.createInvoiceItem(new RecurringInvoiceItem(invoice4.getId(), account2.getId(), bundleId, UUID.randomUUID(), "test plan", "test phase C", startDate, endDate,
+                                                               FIVE, FIVE, Currency.USD), context2);
+        tagUserApi.addTag(invoice4.getId(), ObjectType.INVOICE, ControlTagType.WRITTEN_OFF.getId(), callContext);
+
+        // Third account: not part of the query
+        final Account account3 = invoiceUtil.createAccount(callContext);
+        final InternalCallContext context3 = internalCallContextFactory.createInternalCallContext(account3.getId(), callContext);
+        final Invoice invoice5 = new DefaultInvoice(account3.getId(), clock.getUTCToday(), new LocalDate(2011, 10, 6), Currency.USD);
+        invoiceUtil.createInvoice(invoice5, context3);
+        invoiceUtil.createInvoiceItem(new RecurringInvoiceItem(invoice5.getId(), account3.getId(), bundleId, UUID.randomUUID(), "test plan", "test phase A", startDate, endDate,
+                                                               TWENTY, TWENTY, Currency.USD), context3);
+
+        final List<InvoiceModelDao> invoices = invoiceDao.getUnpaidInvoicesByAccountRecordIds(ImmutableList.<Long>of(context.getAccountRecordId(), context2.getAccountRecordId()),
+                                                                                               internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
+        assertEquals(invoices.size(), 2);
+        final Map<UUID, InvoiceModelDao> invoicesById = new HashMap<UUID, InvoiceModelDao>();
+        for (final InvoiceModelDao invoice : invoices) {
+            invoicesById.put(invoice.getId(), invoice);
+        }
+        assertEquals(InvoiceModelDaoHelper.getRawBalanceForRegularInvoice(invoicesById.get(invoice1.getId())).compareTo(TWENTY), 0);
+        assertEquals(InvoiceModelDaoHelper.getRawBalanceForRegularInvoice(invoicesById.get(invoice2.getId())).compareTo(TEN), 0);
+
+        // Same results as the per-account lookups
+        final List<InvoiceModelDao> unpaidForAccount1 = invoiceDao.getUnpaidInvoicesByAccountId(account.getId(), null, context);
+        final List<InvoiceModelDao> unpaidForAccount2 = invoiceDao.getUnpaidInvoicesByAccountId(account2.getId(), null, context2);
+        assertEquals(unpaidForAccount1.size(), 1);
+        assertEquals(unpaidForAccount1.get(0).getId(), invoice1.getId());
+        assertEquals(unpaidForAccount2.size(), 1);
+        assertEquals(unpaidForAccount2.get(0).getId(), invoice2.getId());
+
+        assertEquals(invoiceDao.getUnpaidInvoicesByAccountRecordIds(ImmutableList.<Long>of(), context).size(), 0);
+    }
+
     @Test(groups = "slow")
     public void testGetUnpaidInvoicesByAccountIdWithDraftInvoice() throws EntityPersistenceException {
         final UUID accountId = account.getId();
@@ -1747,6 +1816,69 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
     }
 
 
+    @Test(groups = "slow")
+    public void testGetAndSanitizeInvoiceForPayment() throws Exception {
+        final UUID accountId = account.getId();
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        invoiceUtil.createInvoice(invoice, context);
+
+        final int nbItems = 100;
+        for (int i = 0; i < nbItems; i++) {
+            final RecurringInvoiceItem item = new RecurringInvoiceItem(invoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test ZOO", clock.getUTCNow().plusMonths(-1).toLocalDate(), clock.getUTCNow().toLocalDate(),
+                                                                       BigDecimal.ONE, BigDecimal.ONE, Currency.USD);
+            invoiceUtil.createInvoiceItem(item, context);
+        }
+
+        final UUID paymentId = UUID.randomUUID();
+        final BigDecimal paymentAmount = new BigDecimal(nbItems);
+        final DefaultInvoicePayment incompleteAttempt = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoice.getId(), clock.getUTCNow(), paymentAmount, Currency.USD, Currency.USD, "cookie", false);
+        invoiceDao.notifyOfPaymentInit(new InvoicePaymentModelDao(incompleteAttempt), context);
+
+        // Sequence of calls previously done by the invoice payment control plugin
+        final int legacyDaoCalls = DaoCallCounter.countDaoCalls(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                invoiceDao.getById(invoice.getId(), context);
+                invoiceDao.consumeExstingCBAOnAccountWithUnpaidInvoices(accountId, context);
+                invoiceDao.getById(invoice.getId(), context);
+                return null;
+            }
+        });
+
+        final AtomicInteger nbResolutions = new AtomicInteger();
+        final AtomicReference<InvoiceModelDao> sanitizedInvoice = new AtomicReference<InvoiceModelDao>();
+        final int daoCalls = DaoCallCounter.countDaoCalls(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                sanitizedInvoice.set(invoiceDao.getAndSanitizeInvoiceForPayment(invoice.getId(), new Function<InvoicePaymentModelDao, InvoicePaymentModelDao>() {
+                    @Override
+                    public InvoicePaymentModelDao apply(final InvoicePaymentModelDao input) {
+                        nbResolutions.incrementAndGet();
+                        assertEquals(input.getPaymentCookieId(), "cookie");
+                        return null;
+                    }
+                }, context));
+                return null;
+            }
+        });
+        assertEquals(nbResolutions.get(), 1);
+        assertEquals(sanitizedInvoice.get().getInvoiceItems().size(), nbItems);
+        assertEquals(sanitizedInvoice.get().getInvoicePayments().size(), 1);
+        assertEquals(sanitizedInvoice.get().getInvoicePayments().get(0).getSuccess(), Boolean.FALSE);
+        assertTrue(daoCalls < legacyDaoCalls, String.format("daoCalls=%s, legacyDaoCalls=%s", daoCalls, legacyDaoCalls));
+
+        // The payment actually went through: the attempt is completed in a follow-up transaction
+        final InvoiceModelDao repairedInvoice = invoiceDao.getAndSanitizeInvoiceForPayment(invoice.getId(), new Function<InvoicePaymentModelDao, InvoicePaymentModelDao>() {
+            @Override
+            public InvoicePaymentModelDao apply(final InvoicePaymentModelDao input) {
+                return new InvoicePaymentModelDao(new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoice.getId(), clock.getUTCNow(), paymentAmount, Currency.USD, Currency.USD, "cookie", true));
+            }
+        }, context);
+        assertEquals(repairedInvoice.getInvoicePayments().size(), 1);
+        assertEquals(repairedInvoice.getInvoicePayments().get(0).getSuccess(), Boolean.TRUE);
+        assertEquals(InvoiceModelDaoHelper.getRawBalanceForRegularInvoice(repairedInvoice).compareTo(BigDecimal.ZERO), 0);
+    }
+
     private InvoiceItemModelDao createCredit(final UUID accountId, final LocalDate effectiveDate, final BigDecimal creditAmount, final boolean draft) {
         return createCredit(accountId, null, effectiveDate, creditAmount, draft);
     }
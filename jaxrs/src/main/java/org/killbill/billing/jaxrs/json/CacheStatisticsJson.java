@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import org.killbill.billing.util.cache.CacheStatistics;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class CacheStatisticsJson {
+
+    private final String cacheName;
+    private final Long hitCount;
+    private final Long missCount;
+    private final Long loadCount;
+    private final Long loadFailureCount;
+    private final Long coalescedLoadCount;
+    private final Double averageLoadTimeMillis;
+    private final Integer size;
+
+    @JsonCreator
+    public CacheStatisticsJson(@JsonProperty("cacheName") final String cacheName,
+                               @JsonProperty("hitCount") final Long hitCount,
+                               @JsonProperty("missCount") final Long missCount,
+                               @JsonProperty("loadCount") final Long loadCount,
+                               @JsonProperty("loadFailureCount") final Long loadFailureCount,
+                               @JsonProperty("coalescedLoadCount") final Long coalescedLoadCount,
+                               @JsonProperty("averageLoadTimeMillis") final Double averageLoadTimeMillis,
+                               @JsonProperty("size") final Integer size) {
+        this.cacheName = cacheName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.coalescedLoadCount = coalescedLoadCount;
+        this.averageLoadTimeMillis = averageLoadTimeMillis;
+        this.size = size;
+    }
+
+    public CacheStatisticsJson(final CacheStatistics statistics) {
+        this(statistics.getCacheType().getCacheName(),
+             statistics.getHitCount(),
+             statistics.getMissCount(),
+             statistics.getLoadCount(),
+             statistics.getLoadFailureCount(),
+             statistics.getCoalescedLoadCount(),
+             statistics.getAverageLoadTimeMillis(),
+             statistics.getSize());
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Long getHitCount() {
+        return hitCount;
+    }
+
+    public Long getMissCount() {
+        return missCount;
+    }
+
+    public Long getLoadCount() {
+        return loadCount;
+    }
+
+    public Long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public Long getCoalescedLoadCount() {
+        return coalescedLoadCount;
+    }
+
+    public Double getAverageLoadTimeMillis() {
+        return averageLoadTimeMillis;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatisticsJson{" +
+               "cacheName='" + cacheName + '\'' +
+               ", hitCount=" + hitCount +
+               ", missCount=" + missCount +
+               ", loadCount=" + loadCount +
+               ", loadFailureCount=" + loadFailureCount +
+               ", coalescedLoadCount=" + coalescedLoadCount +
+               ", averageLoadTimeMillis=" + averageLoadTimeMillis +
+               ", size=" + size +
+               '}';
+    }
+}
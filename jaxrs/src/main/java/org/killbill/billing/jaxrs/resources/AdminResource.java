@@ -49,10 +49,15 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.account.api.ImmutableAccountData;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.InvoiceUserApi;
+import org.killbill.billing.overdue.OverdueService;
+import org.killbill.billing.overdue.api.OverdueApiException;
 import org.killbill.billing.jaxrs.json.AdminPaymentJson;
+import org.killbill.billing.jaxrs.json.CacheStatisticsJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.AdminPaymentApi;
@@ -73,10 +78,14 @@ import org.killbill.billing.util.api.TagUserApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.TenantCacheKey;
 import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.config.tenant.PerTenantConfig;
 import org.killbill.billing.util.entity.Pagination;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.SystemTags;
 import org.killbill.bus.api.BusEvent;
@@ -112,6 +121,9 @@ public class AdminResource extends JaxRsResourceBase {
 
     private final AdminPaymentApi adminPaymentApi;
     private final InvoiceUserApi invoiceUserApi;
+    private final InvoiceInternalApi invoiceInternalApi;
+    private final OverdueService overdueService;
+    private final InternalCallContextFactory internalCallContextFactory;
     private final TenantUserApi tenantApi;
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final RecordIdApi recordIdApi;
@@ -124,10 +136,14 @@ public class AdminResource extends JaxRsResourceBase {
                          final TagUserApi tagUserApi,
                          final CustomFieldUserApi customFieldUserApi,
                          final AuditUserApi auditUserApi,
+                         final AuditInternalApi auditInternalApi,
                          final AccountUserApi accountUserApi,
                          final PaymentApi paymentApi,
                          final AdminPaymentApi adminPaymentApi,
                          final InvoiceUserApi invoiceUserApi,
+                         final InvoiceInternalApi invoiceInternalApi,
+                         final OverdueService overdueService,
+                         final InternalCallContextFactory internalCallContextFactory,
                          final CacheControllerDispatcher cacheControllerDispatcher,
                          final TenantUserApi tenantApi,
                          final RecordIdApi recordIdApi,
@@ -136,9 +152,12 @@ public class AdminResource extends JaxRsResourceBase {
                          final KillbillHealthcheck killbillHealthcheck,
                          final Clock clock,
                          final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, null, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, null, clock, context);
         this.adminPaymentApi = adminPaymentApi;
         this.invoiceUserApi = invoiceUserApi;
+        this.invoiceInternalApi = invoiceInternalApi;
+        this.overdueService = overdueService;
+        this.internalCallContextFactory = internalCallContextFactory;
         this.tenantApi = tenantApi;
         this.recordIdApi = recordIdApi;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
@@ -328,6 +347,78 @@ public class AdminResource extends JaxRsResourceBase {
                        .build();
     }
 
+    @POST
+    @Produces(APPLICATION_JSON)
+    @Path("/" + INVOICES + "/" + BILL_RUN)
+    @ApiOperation(value = "Trigger a bill run: invoice, in the background, all the accounts with a next billing date up to the run date")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid run date supplied")})
+    public Response triggerBillRun(@QueryParam(QUERY_RUN_DATE) final String runDateStr,
+                                   @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                   @HeaderParam(HDR_REASON) final String reason,
+                                   @HeaderParam(HDR_COMMENT) final String comment,
+                                   @javax.ws.rs.core.Context final HttpServletRequest request) throws InvoiceApiException {
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+
+        final DateTime runDate;
+        if (runDateStr == null) {
+            runDate = clock.getUTCNow();
+        } else {
+            try {
+                runDate = DATE_TIME_FORMATTER.parseDateTime(runDateStr).toDateTime(DateTimeZone.UTC);
+            } catch (final IllegalArgumentException e) {
+                return Response.status(Status.BAD_REQUEST).entity(String.format("Invalid runDate %s", runDateStr)).type("text/plain").build();
+            }
+            // Accounts would be invoiced ahead of their billing date
+            if (runDate.isAfter(clock.getUTCNow())) {
+                return Response.status(Status.BAD_REQUEST).entity(String.format("runDate %s is in the future", runDateStr)).type("text/plain").build();
+            }
+        }
+
+        invoiceInternalApi.scheduleBillRun(runDate, internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
+        return Response.status(Status.OK).build();
+    }
+
+    @POST
+    @Produces(APPLICATION_JSON)
+    @Path("/" + OVERDUE + "/" + SWEEP)
+    @ApiOperation(value = "Trigger an overdue sweep: re-evaluate, in the background, the overdue state of all the accounts")
+    @ApiResponses(value = {})
+    public Response triggerOverdueSweep(@HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                        @HeaderParam(HDR_REASON) final String reason,
+                                        @HeaderParam(HDR_COMMENT) final String comment,
+                                        @javax.ws.rs.core.Context final HttpServletRequest request) throws OverdueApiException {
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+        overdueService.scheduleOverdueSweep(internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
+        return Response.status(Status.OK).build();
+    }
+
+    @GET
+    @Path("/" + CACHE)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Retrieves the statistics of the given Cache if specified, otherwise of all caches", response = CacheStatisticsJson.class, responseContainer = "List")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Cache name does not exist or is not alive")})
+    public Response getCacheStatistics(@QueryParam("cacheName") final String cacheName,
+                                       @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final ImmutableList.Builder<CacheStatisticsJson> result = ImmutableList.<CacheStatisticsJson>builder();
+        if (null != cacheName && !cacheName.isEmpty()) {
+            final CacheType cacheType = CacheType.findByName(cacheName);
+            final CacheController<Object, Object> cacheController = cacheType != null ? cacheControllerDispatcher.<Object, Object>getCacheController(cacheType) : null;
+            if (cacheController == null) {
+                log.warn("Cache for specified cacheName='{}' does not exist or is not alive", cacheName);
+                return Response.status(Status.BAD_REQUEST).build();
+            }
+            result.add(new CacheStatisticsJson(cacheController.getStatistics()));
+        } else {
+            for (final CacheType cacheType : CacheType.values()) {
+                final CacheController<Object, Object> cacheController = cacheControllerDispatcher.getCacheController(cacheType);
+                if (cacheController != null) {
+                    result.add(new CacheStatisticsJson(cacheController.getStatistics()));
+                }
+            }
+        }
+        return Response.status(Status.OK).entity(result.build()).build();
+    }
+
     @DELETE
     @Path("/" + CACHE)
     @Produces(APPLICATION_JSON)
@@ -362,9 +453,9 @@ public class AdminResource extends JaxRsResourceBase {
         final UUID accountId = UUID.fromString(accountIdStr);
         final Long accountRecordId = recordIdApi.getRecordId(accountId, ObjectType.ACCOUNT, tenantContext);
 
-        // clear account-record-id cache by accountId (note: String!)
-        final CacheController<String, Long> accountRecordIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
-        accountRecordIdCacheController.remove(accountIdStr);
+        // clear account-record-id cache by accountId
+        final CacheController<IdCacheKey, Long> accountRecordIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
+        accountRecordIdCacheController.remove(IdCacheKey.of(accountId));
 
         // clear account-immutable cache by account record id
         final CacheController<Long, ImmutableAccountData> accountImmutableCacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_IMMUTABLE);
@@ -374,6 +465,10 @@ public class AdminResource extends JaxRsResourceBase {
         final CacheController<UUID, Integer> accountBCDCacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_BCD);
         accountBCDCacheController.remove(accountId);
 
+        // clear account-control-tags cache by account record id
+        final CacheController<Long, ControlTagBits> accountControlTagsCacheController = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
+        accountControlTagsCacheController.remove(accountRecordId);
+
         return Response.status(Status.OK).build();
     }
 
@@ -393,19 +488,19 @@ public class AdminResource extends JaxRsResourceBase {
         // getting Tenant Record Id
         final Long tenantRecordId = recordIdApi.getRecordId(tenantContext.getTenantId(), ObjectType.TENANT, tenantContext);
 
-        final Function<String, Boolean> tenantKeysMatcher = new Function<String, Boolean>() {
+        final Function<TenantCacheKey, Boolean> tenantKeysMatcher = new Function<TenantCacheKey, Boolean>() {
             @Override
-            public Boolean apply(@Nullable final String key) {
-                return key != null && key.endsWith("::" + tenantRecordId);
+            public Boolean apply(@Nullable final TenantCacheKey key) {
+                return key != null && key.getTenantRecordId() == tenantRecordId;
             }
         };
 
         // clear tenant-record-id cache by tenantId
-        final CacheController<String, Long> tenantRecordIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
-        tenantRecordIdCacheController.remove(currentTenant.getId().toString());
+        final CacheController<IdCacheKey, Long> tenantRecordIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
+        tenantRecordIdCacheController.remove(IdCacheKey.of(currentTenant.getId()));
 
         // clear tenant-payment-state-machine-config cache by tenantRecordId
-        final CacheController<String, Object> tenantPaymentStateMachineConfigCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_PAYMENT_STATE_MACHINE_CONFIG);
+        final CacheController<TenantCacheKey, Object> tenantPaymentStateMachineConfigCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_PAYMENT_STATE_MACHINE_CONFIG);
         tenantPaymentStateMachineConfigCacheController.remove(tenantKeysMatcher);
 
         // clear tenant cache by tenantApiKey
@@ -413,7 +508,7 @@ public class AdminResource extends JaxRsResourceBase {
         tenantCacheController.remove(currentTenant.getApiKey());
 
         // clear tenant-kv cache by tenantRecordId
-        final CacheController<String, String> tenantKVCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
+        final CacheController<TenantCacheKey, String> tenantKVCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
         tenantKVCacheController.remove(tenantKeysMatcher);
 
         // clear tenant-config cache by tenantRecordId
@@ -39,6 +39,7 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.catalog.StandaloneCatalog;
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.catalog.api.CatalogApiException;
@@ -97,13 +98,14 @@ public class CatalogResource extends JaxRsResourceBase {
                            final TagUserApi tagUserApi,
                            final CustomFieldUserApi customFieldUserApi,
                            final AuditUserApi auditUserApi,
+                           final AuditInternalApi auditInternalApi,
                            final AccountUserApi accountUserApi,
                            final PaymentApi paymentApi,
                            final CatalogUserApi catalogUserApi,
                            final SubscriptionApi subscriptionApi,
                            final Clock clock,
                            final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, null, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, null, clock, context);
         this.catalogUserApi = catalogUserApi;
         this.subscriptionApi = subscriptionApi;
     }
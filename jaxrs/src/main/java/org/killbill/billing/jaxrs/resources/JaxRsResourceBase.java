@@ -53,6 +53,7 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.entitlement.api.BlockingState;
 import org.killbill.billing.entitlement.api.BlockingStateType;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
@@ -127,6 +128,7 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
     protected final TagUserApi tagUserApi;
     protected final CustomFieldUserApi customFieldUserApi;
     protected final AuditUserApi auditUserApi;
+    protected final AuditInternalApi auditInternalApi;
     protected final AccountUserApi accountUserApi;
     protected final PaymentApi paymentApi;
     protected final SubscriptionApi subscriptionApi;
@@ -140,6 +142,7 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
                              final TagUserApi tagUserApi,
                              final CustomFieldUserApi customFieldUserApi,
                              final AuditUserApi auditUserApi,
+                             final AuditInternalApi auditInternalApi,
                              final AccountUserApi accountUserApi,
                              final PaymentApi paymentApi,
                              final SubscriptionApi subscriptionApi,
@@ -149,6 +152,7 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
         this.tagUserApi = tagUserApi;
         this.customFieldUserApi = customFieldUserApi;
         this.auditUserApi = auditUserApi;
+        this.auditInternalApi = auditInternalApi;
         this.accountUserApi = accountUserApi;
         this.paymentApi = paymentApi;
         this.subscriptionApi = subscriptionApi;
@@ -245,17 +249,31 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
         return createCustomFieldResponse(fields, auditMode, context);
     }
 
-    protected Response createCustomFieldResponse(final Iterable<CustomField> fields, final AuditMode auditMode, final TenantContext context) {
+    protected Response createCustomFieldResponse(final List<CustomField> fields, final AuditMode auditMode, final TenantContext context) {
+        final Map<UUID, List<AuditLog>> auditLogsByCustomFieldId = getAuditLogs(Lists.transform(fields, new Function<CustomField, UUID>() {
+            @Override
+            public UUID apply(final CustomField input) {
+                return input.getId();
+            }
+        }), ObjectType.CUSTOM_FIELD, auditMode, context);
+
         final Collection<CustomFieldJson> result = new LinkedList<CustomFieldJson>();
         for (final CustomField cur : fields) {
-            // TODO PIERRE - Bulk API
-            final List<AuditLog> auditLogs = auditUserApi.getAuditLogs(cur.getId(), ObjectType.CUSTOM_FIELD, auditMode.getLevel(), context);
-            result.add(new CustomFieldJson(cur, auditLogs));
+            result.add(new CustomFieldJson(cur, getAuditLogs(auditLogsByCustomFieldId, cur.getId())));
         }
 
         return Response.status(Response.Status.OK).entity(result).build();
     }
 
+    // Retrieve the audit logs of all objects at once, instead of one lookup per object
+    protected Map<UUID, List<AuditLog>> getAuditLogs(final Collection<UUID> objectIds, final ObjectType objectType, final AuditMode auditMode, final TenantContext tenantContext) {
+        return auditInternalApi.getAuditLogs(objectIds, objectType, auditMode.getLevel(), context.createInternalTenantContextWithoutAccountRecordId(tenantContext));
+    }
+
+    protected List<AuditLog> getAuditLogs(final Map<UUID, List<AuditLog>> auditLogsByObjectId, final UUID objectId) {
+        return MoreObjects.firstNonNull(auditLogsByObjectId.get(objectId), ImmutableList.<AuditLog>of());
+    }
+
     protected Response createCustomFields(final UUID id,
                                           final List<CustomFieldJson> customFields,
                                           final CallContext context,
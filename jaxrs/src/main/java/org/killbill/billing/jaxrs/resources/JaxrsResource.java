@@ -82,6 +82,7 @@ public interface JaxrsResource {
     public static final String QUERY_USE_REQUESTED_DATE_FOR_BILLING = "useRequestedDateForBilling";
     public static final String QUERY_CALL_TIMEOUT = "callTimeoutSec";
     public static final String QUERY_TARGET_DATE = "targetDate";
+    public static final String QUERY_RUN_DATE = "runDate";
     public static final String QUERY_BILLING_POLICY = "billingPolicy";
     public static final String QUERY_MIGRATED = "migrated";
     public static final String QUERY_ENTITLEMENT_POLICY = "entitlementPolicy";
@@ -285,10 +286,15 @@ public interface JaxrsResource {
     public static final String BCD = "bcd";
     public static final String TRANSFER_CREDIT = "transferCredit";
 
+    public static final String BILL_RUN = "billRun";
+    public static final String SWEEP = "sweep";
     public static final String CACHE = "cache";
     public static final String HEALTHCHECK = "healthcheck";
 
     public static final String QUERY_INCLUDED_DELETED = "includedDeleted";
 
+    // Request attribute set by the TenantFilter, see org.killbill.billing.jaxrs.util.Context
+    public static final String TENANT_RECORD_ID = "killbill_tenant_record_id";
+
 
 }
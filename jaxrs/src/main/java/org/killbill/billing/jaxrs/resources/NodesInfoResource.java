@@ -37,6 +37,7 @@ import javax.ws.rs.core.UriInfo;
 
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.entitlement.api.SubscriptionApiException;
 import org.killbill.billing.jaxrs.json.NodeCommandJson;
 import org.killbill.billing.jaxrs.json.NodeCommandPropertyJson;
@@ -82,12 +83,13 @@ public class NodesInfoResource extends JaxRsResourceBase {
                              final TagUserApi tagUserApi,
                              final CustomFieldUserApi customFieldUserApi,
                              final AuditUserApi auditUserApi,
+                             final AuditInternalApi auditInternalApi,
                              final AccountUserApi accountUserApi,
                              final PaymentApi paymentApi,
                              final KillbillNodesApi killbillInfoApi,
                              final Clock clock,
                              final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, null, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, null, clock, context);
         this.killbillInfoApi = killbillInfoApi;
     }
 
@@ -35,6 +35,7 @@ import javax.ws.rs.core.UriInfo;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.jaxrs.json.ComboHostedPaymentPageJson;
 import org.killbill.billing.jaxrs.json.GatewayNotificationJson;
 import org.killbill.billing.jaxrs.json.HostedPaymentPageFieldsJson;
@@ -77,12 +78,13 @@ public class PaymentGatewayResource extends ComboPaymentResource {
                                   final TagUserApi tagUserApi,
                                   final CustomFieldUserApi customFieldUserApi,
                                   final AuditUserApi auditUserApi,
+                                  final AuditInternalApi auditInternalApi,
                                   final AccountUserApi accountUserApi,
                                   final PaymentGatewayApi paymentGatewayApi,
                                   final PaymentApi paymentApi,
                                   final Clock clock,
                                   final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, clock, context);
         this.paymentGatewayApi = paymentGatewayApi;
     }
 
@@ -19,6 +19,7 @@ package org.killbill.billing.jaxrs.resources;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -38,6 +39,7 @@ import javax.ws.rs.core.UriInfo;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.jaxrs.json.TagDefinitionJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
@@ -52,6 +54,8 @@ import org.killbill.billing.util.tag.TagDefinition;
 import org.killbill.clock.Clock;
 import org.killbill.commons.metrics.TimedResource;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.swagger.annotations.Api;
@@ -71,11 +75,12 @@ public class TagDefinitionResource extends JaxRsResourceBase {
                                  final TagUserApi tagUserApi,
                                  final CustomFieldUserApi customFieldUserApi,
                                  final AuditUserApi auditUserApi,
+                                 final AuditInternalApi auditInternalApi,
                                  final AccountUserApi accountUserApi,
                                  final PaymentApi paymentApi,
                                  final Clock clock,
                                  final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, null, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, null, clock, context);
     }
 
     @TimedResource
@@ -87,11 +92,16 @@ public class TagDefinitionResource extends JaxRsResourceBase {
                                       @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode) {
         final TenantContext tenantContext = context.createContext(request);
         final List<TagDefinition> tagDefinitions = tagUserApi.getTagDefinitions(tenantContext);
+        final Map<UUID, List<AuditLog>> auditLogsByTagDefinitionId = getAuditLogs(Lists.transform(tagDefinitions, new Function<TagDefinition, UUID>() {
+            @Override
+            public UUID apply(final TagDefinition input) {
+                return input.getId();
+            }
+        }), ObjectType.TAG_DEFINITION, auditMode, tenantContext);
 
         final Collection<TagDefinitionJson> result = new LinkedList<TagDefinitionJson>();
         for (final TagDefinition tagDefinition : tagDefinitions) {
-            final List<AuditLog> auditLogs = auditUserApi.getAuditLogs(tagDefinition.getId(), ObjectType.TAG_DEFINITION, auditMode.getLevel(), tenantContext);
-            result.add(new TagDefinitionJson(tagDefinition, auditLogs));
+            result.add(new TagDefinitionJson(tagDefinition, getAuditLogs(auditLogsByTagDefinitionId, tagDefinition.getId())));
         }
 
         return Response.status(Status.OK).entity(result).build();
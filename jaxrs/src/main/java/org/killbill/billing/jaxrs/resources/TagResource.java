@@ -33,6 +33,7 @@ import javax.ws.rs.core.Response;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.payment.api.PaymentApi;
 import org.killbill.clock.Clock;
 import org.killbill.billing.jaxrs.json.TagJson;
@@ -69,11 +70,12 @@ public class TagResource extends JaxRsResourceBase {
                        final TagUserApi tagUserApi,
                        final CustomFieldUserApi customFieldUserApi,
                        final AuditUserApi auditUserApi,
+                       final AuditInternalApi auditInternalApi,
                        final AccountUserApi accountUserApi,
                        final PaymentApi paymentApi,
                        final Clock clock,
                        final Context context) {
-        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, null, clock, context);
+        super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, auditInternalApi, accountUserApi, paymentApi, null, clock, context);
     }
 
     @TimedResource
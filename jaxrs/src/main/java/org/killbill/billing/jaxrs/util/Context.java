@@ -22,6 +22,7 @@ import java.util.UUID;
 
 import javax.servlet.ServletRequest;
 
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.util.UUIDs;
@@ -59,7 +60,7 @@ public class Context {
             final CallContext callContext = contextFactory.createCallContext(tenant == null ? null : tenant.getId(), createdBy, origin, userType, reason,
                                                                              comment, getOrCreateUserToken());
 
-            populateMDCContext(callContext);
+            populateMDCContext(callContext, request);
 
             return callContext;
         } catch (final NullPointerException e) {
@@ -78,11 +79,15 @@ public class Context {
             tenantContext = contextFactory.createTenantContext(tenant.getId());
         }
 
-        populateMDCContext(tenantContext);
+        populateMDCContext(tenantContext, request);
 
         return tenantContext;
     }
 
+    public InternalTenantContext createInternalTenantContextWithoutAccountRecordId(final TenantContext tenantContext) {
+        return internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext);
+    }
+
     // Use REQUEST_ID_HEADER if this is provided and lloks like a UUID, if not allocate a random one.
     public static  UUID getOrCreateUserToken() {
         UUID userToken;
@@ -108,8 +113,24 @@ public class Context {
         }
     }
 
-    private void populateMDCContext(final TenantContext tenantContext) {
+    private Long getTenantRecordIdFromRequest(final ServletRequest request) {
+        // See org.killbill.billing.server.security.TenantFilter
+        final Object tenantRecordIdObject = request.getAttribute(JaxrsResource.TENANT_RECORD_ID);
+        if (tenantRecordIdObject == null) {
+            return null;
+        } else {
+            return (Long) tenantRecordIdObject;
+        }
+    }
+
+    private void populateMDCContext(final TenantContext tenantContext, final ServletRequest request) {
         // InternalCallContextFactory will do it for us
-        internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext);
+        final Long tenantRecordId = getTenantRecordIdFromRequest(request);
+        if (tenantRecordId != null) {
+            // Already resolved by the TenantFilter
+            internalCallContextFactory.createInternalTenantContext(tenantRecordId, null);
+        } else {
+            internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext);
+        }
     }
 }
@@ -21,6 +21,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
@@ -55,7 +56,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Ordering;
 import com.google.inject.Inject;
 
 public class BlockingCalculator {
@@ -98,10 +98,19 @@ public class BlockingCalculator {
         final Map<UUID, List<BlockingState>> perBundleBlockingEvents = getPerTypeBlockingEvents(BlockingStateType.SUBSCRIPTION_BUNDLE, blockingEvents);
         final Map<UUID, List<BlockingState>> perSubscriptionBlockingEvents = getPerTypeBlockingEvents(BlockingStateType.SUBSCRIPTION, blockingEvents);
 
+        // Single pass over the (sorted) billing events, instead of filtering them again for each subscription
+        final Map<UUID, List<BillingEvent>> perSubscriptionBillingEvents = getPerSubscriptionBillingEvents(billingEvents);
+
+        Catalog catalog = null;
         for (final UUID bundleId : bundleMap.keySet()) {
 
             final List<BlockingState> bundleBlockingEvents = perBundleBlockingEvents.get(bundleId) != null ? perBundleBlockingEvents.get(bundleId) : ImmutableList.<BlockingState>of();
 
+            // Durations coming from the bundle and account blocking states only, shared by the subscriptions of the bundle
+            // which don't have their own blocking states (computed lazily)
+            final List<BlockingState> aggregateBundleBlockingEvents = getAggregateBlockingEventsPerSubscription(null, ImmutableList.<BlockingState>of(), bundleBlockingEvents, accountBlockingEvents);
+            DisabledDurationIndex bundleDisabledDurations = null;
+
             for (final SubscriptionBase subscription : bundleMap.get(bundleId)) {
                 // Avoid inserting additional events for subscriptions that don't even have a START event
                 if (skippedSubscriptions.contains(subscription.getId())) {
@@ -109,15 +118,29 @@ public class BlockingCalculator {
                 }
 
                 final List<BlockingState> subscriptionBlockingEvents = perSubscriptionBlockingEvents.get(subscription.getId()) != null ? perSubscriptionBlockingEvents.get(subscription.getId()) : ImmutableList.<BlockingState>of();
-                final List<BlockingState> aggregateSubscriptionBlockingEvents = getAggregateBlockingEventsPerSubscription(subscription.getEndDate(), subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
-                final List<DisabledDuration> accountBlockingDurations = createBlockingDurations(aggregateSubscriptionBlockingEvents);
+                final DisabledDurationIndex disabledDurations;
+                if (subscriptionBlockingEvents.isEmpty() && isActiveUntilLastBlockingState(subscription.getEndDate(), aggregateBundleBlockingEvents)) {
+                    if (bundleDisabledDurations == null) {
+                        bundleDisabledDurations = createDisabledDurationIndex(aggregateBundleBlockingEvents);
+                    }
+                    disabledDurations = bundleDisabledDurations;
+                } else {
+                    final List<BlockingState> aggregateSubscriptionBlockingEvents = getAggregateBlockingEventsPerSubscription(subscription.getEndDate(), subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
+                    disabledDurations = createDisabledDurationIndex(aggregateSubscriptionBlockingEvents);
+                }
+                if (disabledDurations.isEmpty()) {
+                    continue;
+                }
 
-                final SortedSet<BillingEvent> subscriptionBillingEvents = filter(billingEvents, subscription);
+                final List<BillingEvent> subscriptionBillingEvents = perSubscriptionBillingEvents.get(subscription.getId());
 
-                final SortedSet<BillingEvent> newEvents = createNewEvents(accountBlockingDurations, subscriptionBillingEvents, context);
+                if (catalog == null) {
+                    catalog = catalogService.getFullCatalog(true, true, context);
+                }
+                final SortedSet<BillingEvent> newEvents = createNewEvents(disabledDurations.getDurations(), subscriptionBillingEvents, catalog, context);
                 billingEventsToAdd.addAll(newEvents);
 
-                final SortedSet<BillingEvent> removedEvents = eventsToRemove(accountBlockingDurations, subscriptionBillingEvents);
+                final SortedSet<BillingEvent> removedEvents = disabledDurations.eventsWithin(subscriptionBillingEvents);
                 billingEventsToRemove.addAll(removedEvents);
             }
         }
@@ -147,6 +170,13 @@ public class BlockingCalculator {
         return result;
     }
 
+    // True if filtering the blocking states by the subscription end date doesn't discard any of them
+    private boolean isActiveUntilLastBlockingState(@Nullable final DateTime subscriptionEndDate, final List<BlockingState> sortedBlockingEvents) {
+        return subscriptionEndDate == null ||
+               sortedBlockingEvents.isEmpty() ||
+               sortedBlockingEvents.get(sortedBlockingEvents.size() - 1).getEffectiveDate().compareTo(subscriptionEndDate) <= 0;
+    }
+
     final Map<UUID, List<BlockingState>> getPerTypeBlockingEvents(final BlockingStateType type, final List<BlockingState> blockingEvents) {
         final Iterable<BlockingState> bundleBlockingEvents = Iterables.filter(blockingEvents, new Predicate<BlockingState>() {
             @Override
@@ -167,26 +197,16 @@ public class BlockingCalculator {
 
     protected SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration,
                                                      final SortedSet<BillingEvent> subscriptionBillingEvents) {
-        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
-
-        for (final DisabledDuration duration : disabledDuration) {
-            for (final BillingEvent event : subscriptionBillingEvents) {
-                if (duration.getEnd() == null || event.getEffectiveDate().isBefore(duration.getEnd())) {
-                    if (!event.getEffectiveDate().isBefore(duration.getStart())) {
-                        result.add(event);
-                    }
-                } else { //after the last event of the pair no need to keep checking
-                    break;
-                }
-            }
-        }
-        return result;
+        return DisabledDurationIndex.of(disabledDuration).eventsWithin(subscriptionBillingEvents);
     }
 
     protected SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> subscriptionBillingEvents, final InternalTenantContext context) throws CatalogApiException {
+        final Catalog catalog = catalogService.getFullCatalog(true, true, context);
+        return createNewEvents(disabledDuration, ImmutableList.<BillingEvent>copyOf(subscriptionBillingEvents), catalog, context);
+    }
 
+    private SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final List<BillingEvent> subscriptionBillingEvents, final Catalog catalog, final InternalTenantContext context) throws CatalogApiException {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
-        final Catalog catalog = catalogService.getFullCatalog(true, true, context);
 
         for (final DisabledDuration duration : disabledDuration) {
             // The first one before the blocked duration
@@ -207,25 +227,30 @@ public class BlockingCalculator {
         return result;
     }
 
-
     protected BillingEvent precedingBillingEventForSubscription(final DateTime disabledDurationStart, final SortedSet<BillingEvent> subscriptionBillingEvents) {
+        return precedingBillingEventForSubscription(disabledDurationStart, ImmutableList.<BillingEvent>copyOf(subscriptionBillingEvents));
+    }
+
+    private BillingEvent precedingBillingEventForSubscription(@Nullable final DateTime disabledDurationStart, final List<BillingEvent> subscriptionBillingEvents) {
         if (disabledDurationStart == null) {
             return null;
         }
 
-        // We look for the first billingEvent strictly prior our disabledDurationStart or null if none
-        BillingEvent prev = null;
-        for (final BillingEvent event : subscriptionBillingEvents) {
-            if (!event.getEffectiveDate().isBefore(disabledDurationStart)) {
-                return prev;
+        // We look for the first billingEvent strictly prior our disabledDurationStart or null if none:
+        // the events of a subscription are ordered by effective date, so binary search for the first one on or after that date
+        int low = 0;
+        int high = subscriptionBillingEvents.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (subscriptionBillingEvents.get(mid).getEffectiveDate().isBefore(disabledDurationStart)) {
+                low = mid + 1;
             } else {
-                prev = event;
+                high = mid;
             }
         }
-        return prev;
+        return low == 0 ? null : subscriptionBillingEvents.get(low - 1);
     }
 
-
     protected SortedSet<BillingEvent> filter(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
         for (final BillingEvent event : billingEvents) {
@@ -236,6 +261,21 @@ public class BlockingCalculator {
         return result;
     }
 
+    // Billing events of each subscription, in the order of the (sorted) input
+    private Map<UUID, List<BillingEvent>> getPerSubscriptionBillingEvents(final SortedSet<BillingEvent> billingEvents) {
+        final Map<UUID, List<BillingEvent>> result = new HashMap<UUID, List<BillingEvent>>();
+        for (final BillingEvent event : billingEvents) {
+            final UUID subscriptionId = event.getSubscription().getId();
+            List<BillingEvent> subscriptionBillingEvents = result.get(subscriptionId);
+            if (subscriptionBillingEvents == null) {
+                subscriptionBillingEvents = new ArrayList<BillingEvent>();
+                result.put(subscriptionId, subscriptionBillingEvents);
+            }
+            subscriptionBillingEvents.add(event);
+        }
+        return result;
+    }
+
     protected BillingEvent createNewDisableEvent(final DateTime disabledDurationStart, final BillingEvent previousEvent, final Catalog catalog) throws CatalogApiException {
 
         final int billCycleDay = previousEvent.getBillCycleDayLocal();
@@ -282,6 +322,7 @@ public class BlockingCalculator {
 
     protected Hashtable<UUID, List<SubscriptionBase>> createBundleSubscriptionMap(final SortedSet<BillingEvent> billingEvents) {
         final Hashtable<UUID, List<SubscriptionBase>> result = new Hashtable<UUID, List<SubscriptionBase>>();
+        final Set<UUID> seenSubscriptionIds = new HashSet<UUID>();
         for (final BillingEvent event : billingEvents) {
             final UUID bundleId = event.getSubscription().getBundleId();
             List<SubscriptionBase> subs = result.get(bundleId);
@@ -289,7 +330,7 @@ public class BlockingCalculator {
                 subs = new ArrayList<SubscriptionBase>();
                 result.put(bundleId, subs);
             }
-            if (!result.get(bundleId).contains(event.getSubscription())) {
+            if (seenSubscriptionIds.add(event.getSubscription().getId())) {
                 subs.add(event.getSubscription());
             }
         }
@@ -298,9 +339,10 @@ public class BlockingCalculator {
 
     // In ascending order
     protected List<DisabledDuration> createBlockingDurations(final Iterable<BlockingState> inputBundleEvents) {
+        return createDisabledDurationIndex(inputBundleEvents).getDurations();
+    }
 
-        final List<DisabledDuration> result = new ArrayList<DisabledDuration>();
-
+    private DisabledDurationIndex createDisabledDurationIndex(final Iterable<BlockingState> inputBundleEvents) {
         final Set<String> services = ImmutableSet.copyOf(Iterables.transform(inputBundleEvents, new Function<BlockingState, String>() {
             @Override
             public String apply(final BlockingState input) {
@@ -324,27 +366,7 @@ public class BlockingCalculator {
             }
         }));
 
-        final List<DisabledDuration> sortedDisabledDuration = Ordering.natural().sortedCopy(unorderedDisabledDuration);
-
-        DisabledDuration prevDuration = null;
-        for (DisabledDuration d : sortedDisabledDuration) {
-            // isDisjoint
-            if (prevDuration == null) {
-                prevDuration = d;
-            } else {
-                if (prevDuration.isDisjoint(d)) {
-                    result.add(prevDuration);
-                    prevDuration = d;
-                } else {
-                    prevDuration = DisabledDuration.mergeDuration(prevDuration, d);
-                }
-            }
-        }
-        if (prevDuration != null) {
-            result.add(prevDuration);
-        }
-
-        return result;
+        return DisabledDurationIndex.of(unorderedDisabledDuration);
     }
 
     @VisibleForTesting
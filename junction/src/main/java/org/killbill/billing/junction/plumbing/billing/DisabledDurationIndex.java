@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.junction.BillingEvent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+//
+// Sorted and merged view of the disabled durations of a subscription: durations are pairwise disjoint
+// and ordered by start date (and therefore by end date), so they can be walked along sorted billing events
+// in a single pass.
+//
+class DisabledDurationIndex {
+
+    private static final DisabledDurationIndex EMPTY = new DisabledDurationIndex(ImmutableList.<DisabledDuration>of());
+
+    private final List<DisabledDuration> durations;
+
+    private DisabledDurationIndex(final List<DisabledDuration> durations) {
+        this.durations = durations;
+    }
+
+    public static DisabledDurationIndex of(final Iterable<DisabledDuration> unorderedDurations) {
+        final List<DisabledDuration> sortedDurations = Ordering.natural().sortedCopy(unorderedDurations);
+        if (sortedDurations.isEmpty()) {
+            return EMPTY;
+        }
+
+        final List<DisabledDuration> result = new ArrayList<DisabledDuration>(sortedDurations.size());
+        DisabledDuration prevDuration = null;
+        for (final DisabledDuration d : sortedDurations) {
+            if (prevDuration == null) {
+                prevDuration = d;
+            } else if (prevDuration.isDisjoint(d)) {
+                result.add(prevDuration);
+                prevDuration = d;
+            } else {
+                prevDuration = DisabledDuration.mergeDuration(prevDuration, d);
+            }
+        }
+        result.add(prevDuration);
+
+        return new DisabledDurationIndex(ImmutableList.<DisabledDuration>copyOf(result));
+    }
+
+    public List<DisabledDuration> getDurations() {
+        return durations;
+    }
+
+    public boolean isEmpty() {
+        return durations.isEmpty();
+    }
+
+    // Billing events (ordered by effective date) falling within [start, end) of one of the durations
+    public SortedSet<BillingEvent> eventsWithin(final Iterable<BillingEvent> sortedBillingEvents) {
+        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+
+        int i = 0;
+        for (final BillingEvent event : sortedBillingEvents) {
+            final DateTime effectiveDate = event.getEffectiveDate();
+            // Skip the durations ending before that event: they end before all the next ones too
+            while (i < durations.size() && durations.get(i).getEnd() != null && !effectiveDate.isBefore(durations.get(i).getEnd())) {
+                i++;
+            }
+            if (i == durations.size()) {
+                break;
+            }
+            if (!effectiveDate.isBefore(durations.get(i).getStart())) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+}
@@ -20,10 +20,12 @@ package org.killbill.billing.junction.plumbing.billing;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -47,6 +49,7 @@ import org.killbill.billing.entitlement.dao.MockBlockingStateDao;
 import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.DefaultBlockingState;
 import org.killbill.billing.junction.JunctionTestSuiteNoDB;
+import org.killbill.billing.mock.MockSubscription;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.mockito.Mockito;
@@ -148,6 +151,77 @@ public class TestBlockingCalculator extends JunctionTestSuiteNoDB {
         assertEquals(it3.next(), D);
     }
 
+    // Account with a long pause/resume history: every 10 days, billing is blocked on day 3 and resumed on day 5,
+    // while each subscription has a billing event every 7 days (some of them falling within the pauses)
+    @Test(groups = "fast", description = "Benchmark of insertBlockingEvents for an account with a large blocking history")
+    public void testInsertBlockingEventsWithLargeHistory() throws CatalogApiException {
+        final int nbBundles = 5;
+        final int nbSubscriptionsPerBundle = 10;
+        final int nbEventsPerSubscription = 120;
+        final int nbPauses = 80;
+        final DateTime startDate = new LocalDate(2012, 1, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC);
+
+        final Map<BlockingState, Optional<UUID>> blockingStates = new HashMap<BlockingState, Optional<UUID>>();
+        addPauses(blockingStates, account.getId(), BlockingStateType.ACCOUNT, startDate.plusDays(3), startDate.plusDays(5), nbPauses);
+
+        final SortedSet<BillingEvent> billingEvents = new TreeSet<BillingEvent>();
+        for (int i = 0; i < nbBundles; i++) {
+            final UUID bundleId = UUID.randomUUID();
+            for (int j = 0; j < nbSubscriptionsPerBundle; j++) {
+                // Not a Mockito mock, as the subscription is heavily used when comparing billing events
+                final SubscriptionBase subscription = new MockSubscription(UUID.randomUUID(), bundleId, null, startDate, startDate);
+                for (int k = 0; k < nbEventsPerSubscription; k++) {
+                    billingEvents.add(createRealEvent(startDate.plusDays(7 * k), subscription));
+                }
+                // Some subscriptions also have their own history, within the account pauses (so it doesn't change the result)
+                if (j == 0) {
+                    addPauses(blockingStates, subscription.getId(), BlockingStateType.SUBSCRIPTION, startDate.plusDays(3).plusHours(1), startDate.plusDays(4).plusHours(1), nbPauses);
+                }
+            }
+        }
+        blockingStateDao.setBlockingStatesAndPostBlockingTransitionEvent(blockingStates, internalCallContext);
+
+        int nbEventsWithinPauses = 0;
+        for (int k = 0; k < nbEventsPerSubscription; k++) {
+            final int day = 7 * k;
+            if (day / 10 < nbPauses && day % 10 >= 3 && day % 10 < 5) {
+                nbEventsWithinPauses++;
+            }
+        }
+        final int nbSubscriptions = nbBundles * nbSubscriptionsPerBundle;
+        final int expectedNbEvents = nbSubscriptions * (nbEventsPerSubscription + 2 * nbPauses - nbEventsWithinPauses);
+
+        // Warm-up
+        blockingCalculator.insertBlockingEvents(new TreeSet<BillingEvent>(billingEvents), new HashSet<UUID>(), internalCallContext);
+
+        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>(billingEvents);
+        final long startNanos = System.nanoTime();
+        blockingCalculator.insertBlockingEvents(result, new HashSet<UUID>(), internalCallContext);
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertEquals(result.size(), expectedNbEvents);
+        int nbDisabled = 0;
+        int nbReenabled = 0;
+        for (final BillingEvent event : result) {
+            if (event.getTransitionType() == SubscriptionBaseTransitionType.START_BILLING_DISABLED) {
+                nbDisabled++;
+            } else if (event.getTransitionType() == SubscriptionBaseTransitionType.END_BILLING_DISABLED) {
+                nbReenabled++;
+            }
+        }
+        assertEquals(nbDisabled, nbSubscriptions * nbPauses);
+        assertEquals(nbReenabled, nbSubscriptions * nbPauses);
+
+        log.info("insertBlockingEvents: {} billing events, {} blocking states, {} ms", billingEvents.size(), blockingStates.size(), elapsedNanos / 1000000);
+    }
+
+    private void addPauses(final Map<BlockingState, Optional<UUID>> blockingStates, final UUID blockedId, final BlockingStateType type, final DateTime firstPause, final DateTime firstResume, final int nbPauses) {
+        for (int k = 0; k < nbPauses; k++) {
+            blockingStates.put(new DefaultBlockingState(blockedId, type, DISABLED_BUNDLE, "test", true, true, true, firstPause.plusDays(10 * k)), Optional.<UUID>absent());
+            blockingStates.put(new DefaultBlockingState(blockedId, type, CLEAR_BUNDLE, "test", false, false, false, firstResume.plusDays(10 * k)), Optional.<UUID>absent());
+        }
+    }
+
     // Open ended duration with a previous event
     // --X--[----------------------------------
     @Test(groups = "fast")
@@ -28,4 +28,9 @@ public interface OverdueProperties extends KillbillConfig {
     @Default("NoOverdueConfig.xml")
     @Description("Overdue configuration location. Either in the classpath or in the filesystem")
     public String getConfigURI();
+
+    @Config("org.killbill.overdue.sweep.chunkSize")
+    @Default("500")
+    @Description("Number of accounts loaded and evaluated at once by an overdue sweep")
+    public int getSweepChunkSize();
 }
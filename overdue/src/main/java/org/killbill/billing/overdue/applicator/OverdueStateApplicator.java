@@ -67,8 +67,8 @@ import org.killbill.billing.util.email.DefaultEmailSender;
 import org.killbill.billing.util.email.EmailApiException;
 import org.killbill.billing.util.email.EmailConfig;
 import org.killbill.billing.util.email.EmailSender;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.ControlTagType;
-import org.killbill.billing.util.tag.Tag;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.clock.Clock;
 import org.slf4j.Logger;
@@ -124,7 +124,7 @@ public class OverdueStateApplicator {
                       final ImmutableAccountData account, final OverdueState previousOverdueState,
                       final OverdueState nextOverdueState, final InternalCallContext context) throws OverdueException, OverdueApiException {
         try {
-            if (isAccountTaggedWith_OVERDUE_ENFORCEMENT_OFF(context)) {
+            if (isAccountTaggedWith_OVERDUE_ENFORCEMENT_OFF(account.getId(), context)) {
                 log.debug("OverdueStateApplicator: apply returns because account (recordId={}) is set with OVERDUE_ENFORCEMENT_OFF", context.getAccountRecordId());
                 return;
             }
@@ -394,22 +394,9 @@ public class OverdueStateApplicator {
     }
 
     //
-    // Uses callcontext information to retrieve account matching the Overduable object and check whether we should do any overdue processing
+    // Check (through the cached control tag bits of the account) whether we should do any overdue processing
     //
-    private boolean isAccountTaggedWith_OVERDUE_ENFORCEMENT_OFF(final InternalCallContext context) throws OverdueException {
-
-        try {
-            final UUID accountId = accountApi.getByRecordId(context.getAccountRecordId(), context);
-
-            final List<Tag> accountTags = tagApi.getTags(accountId, ObjectType.ACCOUNT, context);
-            for (final Tag cur : accountTags) {
-                if (cur.getTagDefinitionId().equals(ControlTagType.OVERDUE_ENFORCEMENT_OFF.getId())) {
-                    return true;
-                }
-            }
-            return false;
-        } catch (final AccountApiException e) {
-            throw new OverdueException(e);
-        }
+    private boolean isAccountTaggedWith_OVERDUE_ENFORCEMENT_OFF(final UUID accountId, final InternalCallContext context) {
+        return ControlTagBits.isSet(tagApi.getControlTags(accountId, ObjectType.ACCOUNT, context), ControlTagType.OVERDUE_ENFORCEMENT_OFF);
     }
 }
@@ -70,7 +70,18 @@ public class BillingStateCalculator {
 
     public BillingState calculateBillingState(final ImmutableAccountData account, final InternalTenantContext context) throws OverdueException {
         final SortedSet<Invoice> unpaidInvoices = unpaidInvoicesForAccount(account.getId(), context);
+        final List<Tag> accountTags = tagApi.getTags(account.getId(), ObjectType.ACCOUNT, context);
+        return calculateBillingState(account, unpaidInvoices, accountTags);
+    }
 
+    // Used by sweeps, which load the unpaid invoices (up to the current date of the account) and the tags of many accounts at once
+    public BillingState calculateBillingState(final ImmutableAccountData account, final Collection<Invoice> invoices, final List<Tag> accountTags) {
+        final SortedSet<Invoice> unpaidInvoices = new TreeSet<Invoice>(new InvoiceDateComparator());
+        unpaidInvoices.addAll(invoices);
+        return calculateBillingState(account, unpaidInvoices, accountTags);
+    }
+
+    private BillingState calculateBillingState(final ImmutableAccountData account, final SortedSet<Invoice> unpaidInvoices, final List<Tag> accountTags) {
         final int numberOfUnpaidInvoices = unpaidInvoices.size();
         final BigDecimal unpaidInvoiceBalance = sumBalance(unpaidInvoices);
         LocalDate dateOfEarliestUnpaidInvoice = null;
@@ -81,7 +92,6 @@ public class BillingStateCalculator {
             idOfEarliestUnpaidInvoice = invoice.getId();
         }
         final PaymentResponse responseForLastFailedPayment = PaymentResponse.INSUFFICIENT_FUNDS; //TODO MDW
-        final List<Tag> accountTags = tagApi.getTags(account.getId(), ObjectType.ACCOUNT, context);
         final Tag[] tags = accountTags.toArray(new Tag[accountTags.size()]);
 
         return new BillingState(account.getId(), numberOfUnpaidInvoices, unpaidInvoiceBalance, dateOfEarliestUnpaidInvoice, idOfEarliestUnpaidInvoice, responseForLastFailedPayment, tags);
@@ -36,7 +36,9 @@ import org.killbill.billing.overdue.notification.OverdueCheckNotifier;
 import org.killbill.billing.overdue.notification.OverdueCheckPoster;
 import org.killbill.billing.overdue.notification.OverdueNotifier;
 import org.killbill.billing.overdue.notification.OverduePoster;
+import org.killbill.billing.overdue.notification.OverdueSweepNotifier;
 import org.killbill.billing.overdue.service.DefaultOverdueService;
+import org.killbill.billing.overdue.wrapper.OverdueBatchEvaluator;
 import org.killbill.billing.overdue.wrapper.OverdueWrapperFactory;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
@@ -74,6 +76,8 @@ public class DefaultOverdueModule extends KillBillModule implements OverdueModul
         bind(OverdueNotifier.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_CHECK_NAMED)).to(OverdueCheckNotifier.class).asEagerSingleton();
         bind(OverdueNotifier.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_ASYNC_BUS_NAMED)).to(OverdueAsyncBusNotifier.class).asEagerSingleton();
 
+        bind(OverdueSweepNotifier.class).asEagerSingleton();
+
         bind(OverduePoster.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_CHECK_NAMED)).to(OverdueCheckPoster.class).asEagerSingleton();
         bind(OverduePoster.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_ASYNC_BUS_NAMED)).to(OverdueAsyncBusPoster.class).asEagerSingleton();
     }
@@ -84,6 +88,7 @@ public class DefaultOverdueModule extends KillBillModule implements OverdueModul
 
     protected void installOverdueWrapperFactory() {
         bind(OverdueWrapperFactory.class).asEagerSingleton();
+        bind(OverdueBatchEvaluator.class).asEagerSingleton();
     }
 
     protected void installOverdueEmail() {
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.notification;
+
+import org.killbill.notificationq.api.NotificationEvent;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class OverdueSweepNotificationKey implements NotificationEvent {
+
+    // Highest account record id already evaluated by the sweep (null when the sweep hasn't started yet)
+    private final Long lastAccountRecordId;
+
+    @JsonCreator
+    public OverdueSweepNotificationKey(@JsonProperty("lastAccountRecordId") final Long lastAccountRecordId) {
+        this.lastAccountRecordId = lastAccountRecordId;
+    }
+
+    public Long getLastAccountRecordId() {
+        return lastAccountRecordId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("OverdueSweepNotificationKey{");
+        sb.append("lastAccountRecordId=").append(lastAccountRecordId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
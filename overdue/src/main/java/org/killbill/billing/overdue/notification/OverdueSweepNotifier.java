@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.notification;
+
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.overdue.OverdueProperties;
+import org.killbill.billing.overdue.api.OverdueApiException;
+import org.killbill.billing.overdue.listener.OverdueDispatcher;
+import org.killbill.billing.overdue.wrapper.OverdueBatchEvaluator;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.clock.Clock;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+//
+// Re-evaluates overdue for all the accounts of a tenant.
+//
+// Each notification evaluates the next chunk of accounts (in account record id order, see OverdueBatchEvaluator), and then
+// re-schedules itself with the last account record id processed: sweeps for different tenants are interleaved, and an
+// interrupted sweep resumes where it stopped after a restart.
+//
+// Sweeps are scheduled through OverdueService#scheduleOverdueSweep (see the admin API).
+//
+public class OverdueSweepNotifier extends DefaultOverdueNotifierBase implements OverdueNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueSweepNotifier.class);
+
+    public static final String OVERDUE_SWEEP_NOTIFIER_QUEUE = "overdue-sweep-queue";
+
+    private final AccountInternalApi accountApi;
+    private final OverdueBatchEvaluator batchEvaluator;
+    private final Clock clock;
+
+    @Inject
+    public OverdueSweepNotifier(final NotificationQueueService notificationQueueService, final OverdueProperties config,
+                                final InternalCallContextFactory internalCallContextFactory,
+                                final OverdueDispatcher dispatcher,
+                                final AccountInternalApi accountApi,
+                                final OverdueBatchEvaluator batchEvaluator,
+                                final Clock clock) {
+        super(notificationQueueService, config, internalCallContextFactory, dispatcher);
+        this.accountApi = accountApi;
+        this.batchEvaluator = batchEvaluator;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getQueueName() {
+        return OVERDUE_SWEEP_NOTIFIER_QUEUE;
+    }
+
+    public void scheduleSweep(final InternalCallContext context) throws OverdueApiException {
+        try {
+            recordSweepNotification(null, context.getUserToken(), context.getTenantRecordId());
+        } catch (final IOException e) {
+            throw new OverdueApiException(e, ErrorCode.UNEXPECTED_ERROR, "Failed to schedule overdue sweep");
+        }
+        log.info("Scheduled overdue sweep for tenantRecordId='{}'", context.getTenantRecordId());
+    }
+
+    @Override
+    public void handleReadyNotification(final NotificationEvent notificationKey, final DateTime eventDate, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
+        if (!(notificationKey instanceof OverdueSweepNotificationKey)) {
+            log.error("Overdue service received Unexpected notificationKey {}", notificationKey.getClass().getName());
+            return;
+        }
+
+        final OverdueSweepNotificationKey key = (OverdueSweepNotificationKey) notificationKey;
+        final InternalCallContext context = createCallContext(userToken, null, tenantRecordId);
+        final int chunkSize = config.getSweepChunkSize();
+
+        final SortedMap<Long, Account> accounts = accountApi.getAccountsAfterRecordId(key.getLastAccountRecordId(), chunkSize, context);
+        final int nbTransitions = batchEvaluator.processOverdueForAccounts(accounts, eventDate, context);
+
+        if (accounts.size() < chunkSize) {
+            log.info("Overdue sweep for tenantRecordId='{}' completed: evaluated {} accounts in the last chunk ({} transitions)",
+                     tenantRecordId, accounts.size(), nbTransitions);
+            return;
+        }
+
+        final Long lastAccountRecordId = accounts.lastKey();
+        log.info("Overdue sweep for tenantRecordId='{}': evaluated {} accounts up to accountRecordId='{}' ({} transitions)",
+                 tenantRecordId, accounts.size(), lastAccountRecordId, nbTransitions);
+        try {
+            recordSweepNotification(lastAccountRecordId, userToken, tenantRecordId);
+        } catch (final IOException e) {
+            throw new RuntimeException(String.format("Failed to reschedule overdue sweep %s", key), e);
+        }
+    }
+
+    private void recordSweepNotification(final Long lastAccountRecordId, final UUID userToken, final Long tenantRecordId) throws IOException {
+        overdueQueue.recordFutureNotification(clock.getUTCNow(), new OverdueSweepNotificationKey(lastAccountRecordId), userToken, null, tenantRecordId);
+    }
+}
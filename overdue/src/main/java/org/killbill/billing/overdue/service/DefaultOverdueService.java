@@ -20,6 +20,7 @@ package org.killbill.billing.overdue.service;
 
 import javax.inject.Named;
 
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.lifecycle.api.BusService;
 import org.killbill.billing.overdue.OverdueProperties;
@@ -30,6 +31,7 @@ import org.killbill.billing.overdue.caching.OverdueConfigCache;
 import org.killbill.billing.overdue.glue.DefaultOverdueModule;
 import org.killbill.billing.overdue.listener.OverdueListener;
 import org.killbill.billing.overdue.notification.OverdueNotifier;
+import org.killbill.billing.overdue.notification.OverdueSweepNotifier;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
 import org.killbill.billing.tenant.api.TenantInternalApi;
@@ -50,6 +52,7 @@ public class DefaultOverdueService implements OverdueService {
     private final OverdueProperties properties;
     private final OverdueNotifier asyncNotifier;
     private final OverdueNotifier checkNotifier;
+    private final OverdueSweepNotifier sweepNotifier;
     private final BusService busService;
     private final OverdueListener listener;
 
@@ -63,6 +66,7 @@ public class DefaultOverdueService implements OverdueService {
     public DefaultOverdueService(final OverdueProperties properties,
                                  @Named(DefaultOverdueModule.OVERDUE_NOTIFIER_CHECK_NAMED) final OverdueNotifier checkNotifier,
                                  @Named(DefaultOverdueModule.OVERDUE_NOTIFIER_ASYNC_BUS_NAMED) final OverdueNotifier asyncNotifier,
+                                 final OverdueSweepNotifier sweepNotifier,
                                  final BusService busService,
                                  final OverdueListener listener,
                                  final OverdueConfigCache overdueConfigCache,
@@ -71,6 +75,7 @@ public class DefaultOverdueService implements OverdueService {
         this.properties = properties;
         this.checkNotifier = checkNotifier;
         this.asyncNotifier = asyncNotifier;
+        this.sweepNotifier = sweepNotifier;
         this.busService = busService;
         this.listener = listener;
         this.isConfigLoaded = false;
@@ -101,6 +106,7 @@ public class DefaultOverdueService implements OverdueService {
         registerForBus();
         checkNotifier.initialize();
         asyncNotifier.initialize();
+        sweepNotifier.initialize();
         tenantInternalApi.initializeCacheInvalidationCallback(TenantKey.OVERDUE_CONFIG, overdueCacheInvalidationCallback);
     }
 
@@ -116,6 +122,7 @@ public class DefaultOverdueService implements OverdueService {
     public void start() {
         checkNotifier.start();
         asyncNotifier.start();
+        sweepNotifier.start();
     }
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
@@ -127,10 +134,16 @@ public class DefaultOverdueService implements OverdueService {
         }
         checkNotifier.stop();
         asyncNotifier.stop();
+        sweepNotifier.stop();
     }
 
     @Override
     public OverdueConfig getOverdueConfig(final InternalTenantContext internalTenantContext) throws OverdueApiException {
         return overdueConfigCache.getOverdueConfig(internalTenantContext);
     }
+
+    @Override
+    public void scheduleOverdueSweep(final InternalCallContext context) throws OverdueApiException {
+        sweepNotifier.scheduleSweep(context);
+    }
 }
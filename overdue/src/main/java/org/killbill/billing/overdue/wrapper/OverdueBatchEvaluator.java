@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.wrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.BillingExceptionBase;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.entitlement.api.BlockingStateType;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.junction.BlockingInternalApi;
+import org.killbill.billing.overdue.OverdueService;
+import org.killbill.billing.overdue.api.OverdueApiException;
+import org.killbill.billing.overdue.api.OverdueState;
+import org.killbill.billing.overdue.calculator.BillingStateCalculator;
+import org.killbill.billing.overdue.config.api.BillingState;
+import org.killbill.billing.overdue.config.api.OverdueException;
+import org.killbill.billing.overdue.config.api.OverdueStateSet;
+import org.killbill.billing.tag.TagInternalApi;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.tag.ControlTagType;
+import org.killbill.billing.util.tag.Tag;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+//
+// Evaluates overdue for a chunk of accounts of a tenant (see OverdueSweepNotifier).
+//
+// The billing state of the whole chunk is loaded with a handful of set-based queries (unpaid invoices, account tags and
+// current overdue states, by account record ids), and the next overdue state of each account is computed in memory. Only the
+// accounts whose state changes go through the regular (locked) OverdueWrapper refresh, which re-computes the state before
+// applying it; the other accounts are left untouched (including their pending overdue check notifications).
+//
+public class OverdueBatchEvaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueBatchEvaluator.class);
+
+    private static final String METRICS_PREFIX = "overdue.sweep";
+
+    private final OverdueWrapperFactory overdueWrapperFactory;
+    private final BillingStateCalculator billingStateCalculator;
+    private final InvoiceInternalApi invoiceApi;
+    private final TagInternalApi tagApi;
+    private final BlockingInternalApi blockingApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final Clock clock;
+
+    private final Meter accountsMeter;
+    private final Meter transitionsMeter;
+    private final Meter failuresMeter;
+    private final Timer chunkTimer;
+
+    @Inject
+    public OverdueBatchEvaluator(final OverdueWrapperFactory overdueWrapperFactory,
+                                 final BillingStateCalculator billingStateCalculator,
+                                 final InvoiceInternalApi invoiceApi,
+                                 final TagInternalApi tagApi,
+                                 final BlockingInternalApi blockingApi,
+                                 final InternalCallContextFactory internalCallContextFactory,
+                                 final Clock clock,
+                                 final MetricRegistry metricRegistry) {
+        this.overdueWrapperFactory = overdueWrapperFactory;
+        this.billingStateCalculator = billingStateCalculator;
+        this.invoiceApi = invoiceApi;
+        this.tagApi = tagApi;
+        this.blockingApi = blockingApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.clock = clock;
+        this.accountsMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "accounts"));
+        this.transitionsMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "transitions"));
+        this.failuresMeter = metricRegistry.meter(MetricRegistry.name(METRICS_PREFIX, "failures"));
+        this.chunkTimer = metricRegistry.timer(MetricRegistry.name(METRICS_PREFIX, "chunk"));
+    }
+
+    /**
+     * Evaluate overdue for a chunk of accounts
+     *
+     * @param accounts      accounts of the tenant, keyed by account record id
+     * @param effectiveDate effective date of the overdue transitions
+     * @param context       tenant level call context
+     * @return the number of accounts which transitioned to a new overdue state
+     */
+    public int processOverdueForAccounts(final SortedMap<Long, Account> accounts, final DateTime effectiveDate, final InternalCallContext context) {
+        if (accounts.isEmpty()) {
+            return 0;
+        }
+
+        final Timer.Context timerContext = chunkTimer.time();
+        try {
+            return processChunk(accounts, effectiveDate, context);
+        } finally {
+            timerContext.stop();
+        }
+    }
+
+    private int processChunk(final SortedMap<Long, Account> accounts, final DateTime effectiveDate, final InternalCallContext context) {
+        final OverdueStateSet overdueStateSet;
+        try {
+            overdueStateSet = overdueWrapperFactory.getOverdueStateSet(context);
+        } catch (final OverdueException e) {
+            failuresMeter.mark(accounts.size());
+            log.warn("Unable to retrieve the overdue configuration for tenantRecordId='{}'", context.getTenantRecordId(), e);
+            return 0;
+        }
+
+        if (overdueStateSet.size() < 1) { // No configuration available
+            accountsMeter.mark(accounts.size());
+            return 0;
+        }
+
+        final Collection<Long> accountRecordIds = accounts.keySet();
+        final Map<UUID, List<Invoice>> unpaidInvoicesPerAccount = new HashMap<UUID, List<Invoice>>();
+        for (final Invoice invoice : invoiceApi.getUnpaidInvoicesByAccountRecordIds(accountRecordIds, context)) {
+            getOrCreate(unpaidInvoicesPerAccount, invoice.getAccountId()).add(invoice);
+        }
+        final Map<UUID, List<Tag>> tagsPerAccount = new HashMap<UUID, List<Tag>>();
+        for (final Tag tag : tagApi.getTagsForAccountRecordIds(accountRecordIds, ObjectType.ACCOUNT, context)) {
+            getOrCreate(tagsPerAccount, tag.getObjectId()).add(tag);
+        }
+        final Map<UUID, String> overdueStatePerAccount = new HashMap<UUID, String>();
+        for (final BlockingState blockingState : blockingApi.getBlockingStatesForServiceByAccountRecordIds(accountRecordIds, BlockingStateType.ACCOUNT, OverdueService.OVERDUE_SERVICE_NAME, context)) {
+            overdueStatePerAccount.put(blockingState.getBlockedId(), blockingState.getStateName());
+        }
+
+        int nbTransitions = 0;
+        for (final Long accountRecordId : accountRecordIds) {
+            final Account account = accounts.get(accountRecordId);
+            final InternalCallContext accountContext = internalCallContextFactory.createInternalCallContext(account.getFixedOffsetTimeZone(), account.getReferenceTime(), accountRecordId, context);
+            try {
+                final List<Tag> accountTags = tagsPerAccount.containsKey(account.getId()) ? tagsPerAccount.get(account.getId()) : ImmutableList.<Tag>of();
+                final List<Invoice> unpaidInvoices = unpaidInvoicesPerAccount.containsKey(account.getId()) ? unpaidInvoicesPerAccount.get(account.getId()) : ImmutableList.<Invoice>of();
+                final String previousOverdueStateName = overdueStatePerAccount.containsKey(account.getId()) ? overdueStatePerAccount.get(account.getId()) : OverdueWrapper.CLEAR_STATE_NAME;
+                if (refreshIfChanged(account, overdueStateSet, unpaidInvoices, accountTags, previousOverdueStateName, effectiveDate, accountContext)) {
+                    nbTransitions++;
+                }
+                accountsMeter.mark();
+            } catch (final BillingExceptionBase e) {
+                failuresMeter.mark();
+                log.warn("Error processing Overdue for accountId='{}'", account.getId(), e);
+            } catch (final RuntimeException e) {
+                failuresMeter.mark();
+                log.warn("Error processing Overdue for accountId='{}'", account.getId(), e);
+            }
+        }
+        return nbTransitions;
+    }
+
+    private boolean refreshIfChanged(final Account account,
+                                     final OverdueStateSet overdueStateSet,
+                                     final List<Invoice> unpaidInvoices,
+                                     final List<Tag> accountTags,
+                                     final String previousOverdueStateName,
+                                     final DateTime effectiveDate,
+                                     final InternalCallContext context) throws OverdueException, OverdueApiException {
+        if (isTaggedWith(accountTags, ControlTagType.OVERDUE_ENFORCEMENT_OFF)) {
+            // The applicator would be a no-op
+            return false;
+        }
+
+        final LocalDate today = context.toLocalDate(clock.getUTCNow());
+        final OverdueWrapper wrapper = overdueWrapperFactory.createOverdueWrapperFor(account, overdueStateSet);
+
+        final BillingState billingState;
+        if (account.getParentAccountId() != null && account.isPaymentDelegatedToParent()) {
+            // The invoices are those of the parent account, which may not be part of this chunk
+            billingState = wrapper.billingState(context);
+        } else {
+            final List<Invoice> dueInvoices = new ArrayList<Invoice>(unpaidInvoices.size());
+            for (final Invoice invoice : unpaidInvoices) {
+                if (invoice.getTargetDate() == null || !invoice.getTargetDate().isAfter(today)) {
+                    dueInvoices.add(invoice);
+                }
+            }
+            billingState = billingStateCalculator.calculateBillingState(account, dueInvoices, accountTags);
+        }
+
+        final OverdueState nextOverdueState = overdueStateSet.calculateOverdueState(billingState, today);
+        if (previousOverdueStateName.equals(nextOverdueState.getName())) {
+            return false;
+        }
+
+        // The state is re-computed under the account lock, as it may have changed in the meantime
+        final OverdueState refreshedOverdueState = wrapper.refresh(effectiveDate, context);
+        if (refreshedOverdueState != null && !previousOverdueStateName.equals(refreshedOverdueState.getName())) {
+            transitionsMeter.mark();
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isTaggedWith(final Iterable<Tag> tags, final ControlTagType controlTagType) {
+        for (final Tag tag : tags) {
+            if (controlTagType.getId().equals(tag.getTagDefinitionId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> List<T> getOrCreate(final Map<UUID, List<T>> map, final UUID key) {
+        List<T> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<T>();
+            map.put(key, values);
+        }
+        return values;
+    }
+}
@@ -80,6 +80,11 @@ public class OverdueWrapperFactory {
         return new OverdueWrapper(blockable, api, getOverdueStateSet(context), locker, clock, billingStateCalculator, overdueStateApplicator, internalCallContextFactory);
     }
 
+    // The overdue state set is resolved once by the caller (e.g. once per chunk of accounts)
+    public OverdueWrapper createOverdueWrapperFor(final Account blockable, final OverdueStateSet overdueStateSet) {
+        return new OverdueWrapper(blockable, api, overdueStateSet, locker, clock, billingStateCalculator, overdueStateApplicator, internalCallContextFactory);
+    }
+
     public OverdueWrapper createOverdueWrapperFor(final UUID id, final InternalTenantContext context) throws OverdueException {
         try {
             final Account account = accountApi.getAccountById(id, context);
@@ -89,7 +94,7 @@ public class OverdueWrapperFactory {
         }
     }
 
-    private OverdueStateSet getOverdueStateSet(final InternalTenantContext context) throws OverdueException {
+    public OverdueStateSet getOverdueStateSet(final InternalTenantContext context) throws OverdueException {
         final OverdueConfig overdueConfig;
         try {
             overdueConfig = overdueConfigCache.getOverdueConfig(context);
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.overdue.glue;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -49,6 +50,7 @@ import org.killbill.billing.util.glue.ConfigModule;
 import org.killbill.billing.util.glue.CustomFieldModule;
 import org.killbill.billing.util.glue.MemoryGlobalLockerModule;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.name.Names;
 
 public class TestOverdueModule extends DefaultOverdueModule {
@@ -102,6 +104,15 @@ public class TestOverdueModule extends DefaultOverdueModule {
             }
         }
 
+        @Override
+        public List<BlockingState> getBlockingStatesForServiceByAccountRecordIds(final Collection<Long> accountRecordIds, final BlockingStateType blockingStateType, final String serviceName, final InternalTenantContext context) {
+            if (blockingState != null && blockingState.getType() == blockingStateType && blockingState.getService().equals(serviceName)) {
+                return ImmutableList.<BlockingState>of(blockingState);
+            } else {
+                return ImmutableList.<BlockingState>of();
+            }
+        }
+
         @Override
         public List<BlockingState> getBlockingAllForAccount(final InternalTenantContext context) {
             throw new UnsupportedOperationException();
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.notification;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.overdue.OverdueProperties;
+import org.killbill.billing.overdue.OverdueTestSuiteWithEmbeddedDB;
+import org.killbill.billing.overdue.wrapper.OverdueBatchEvaluator;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+public class TestOverdueSweepNotifier extends OverdueTestSuiteWithEmbeddedDB {
+
+    private static final int NB_ACCOUNTS = 5;
+    private static final int CHUNK_SIZE = 2;
+
+    private AtomicInteger nbEvaluatedAccounts;
+    private OverdueSweepNotifier sweepNotifier;
+
+    @Override
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        // We override the parent method on purpose, because we want to register a different OverdueSweepNotifier
+
+        cleanupAllTables();
+
+        final AccountInternalApi accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getAccountsAfterRecordId(Mockito.<Long>any(), Mockito.eq(CHUNK_SIZE), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<SortedMap<Long, Account>>() {
+            @Override
+            public SortedMap<Long, Account> answer(final InvocationOnMock invocation) throws Throwable {
+                final Long lastAccountRecordId = (Long) invocation.getArguments()[0];
+                final SortedMap<Long, Account> accounts = new TreeMap<Long, Account>();
+                for (long accountRecordId = lastAccountRecordId == null ? 1 : lastAccountRecordId + 1; accountRecordId <= NB_ACCOUNTS && accounts.size() < CHUNK_SIZE; accountRecordId++) {
+                    accounts.put(accountRecordId, Mockito.mock(Account.class));
+                }
+                return accounts;
+            }
+        });
+
+        nbEvaluatedAccounts = new AtomicInteger();
+        final OverdueBatchEvaluator batchEvaluator = Mockito.mock(OverdueBatchEvaluator.class);
+        Mockito.when(batchEvaluator.processOverdueForAccounts(Mockito.<SortedMap<Long, Account>>any(), Mockito.<DateTime>any(), Mockito.<InternalCallContext>any())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(final InvocationOnMock invocation) throws Throwable {
+                final SortedMap<Long, Account> accounts = (SortedMap<Long, Account>) invocation.getArguments()[0];
+                // Chunks are processed in order
+                Assert.assertEquals(accounts.firstKey(), (Long) (nbEvaluatedAccounts.get() + 1L));
+                nbEvaluatedAccounts.addAndGet(accounts.size());
+                return 0;
+            }
+        });
+
+        final OverdueProperties sweepProperties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(sweepProperties.getSweepChunkSize()).thenReturn(CHUNK_SIZE);
+
+        sweepNotifier = new OverdueSweepNotifier(notificationQueueService, sweepProperties, internalCallContextFactory, null, accountInternalApi, batchEvaluator, clock);
+        sweepNotifier.initialize();
+        sweepNotifier.start();
+    }
+
+    @Override
+    @AfterMethod(groups = "slow")
+    public void afterMethod() throws Exception {
+        sweepNotifier.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testSweepEvaluatesAllAccountsByChunks() throws Exception {
+        sweepNotifier.scheduleSweep(internalCallContext);
+
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return nbEvaluatedAccounts.get() == NB_ACCOUNTS;
+            }
+        });
+    }
+}
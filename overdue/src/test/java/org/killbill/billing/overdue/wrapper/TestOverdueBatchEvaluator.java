@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.wrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.overdue.OverdueTestSuiteWithEmbeddedDB;
+import org.killbill.billing.overdue.api.OverdueState;
+import org.killbill.billing.overdue.caching.MockOverdueConfigCache;
+import org.killbill.billing.overdue.config.DefaultOverdueConfig;
+import org.killbill.billing.overdue.glue.TestOverdueModule.ApplicatorBlockingApi;
+import org.killbill.billing.tag.TagInternalApi;
+import org.killbill.billing.util.tag.ControlTagType;
+import org.killbill.billing.util.tag.Tag;
+import org.killbill.xmlloader.XMLLoader;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+public class TestOverdueBatchEvaluator extends OverdueTestSuiteWithEmbeddedDB {
+
+    @Inject
+    protected OverdueBatchEvaluator overdueBatchEvaluator;
+    @Inject
+    protected TagInternalApi tagInternalApi;
+
+    private DefaultOverdueConfig config;
+    private List<Invoice> unpaidInvoices;
+    private List<Tag> accountTags;
+
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+
+        final InputStream is = new ByteArrayInputStream(testOverdueHelper.getConfigXml().getBytes());
+        config = XMLLoader.getObjectFromStreamNoValidation(is, DefaultOverdueConfig.class);
+        ((MockOverdueConfigCache) overdueConfigCache).loadOverwriteDefaultOverdueConfig(config);
+
+        Mockito.reset(invoiceApi, tagInternalApi);
+        unpaidInvoices = new ArrayList<Invoice>();
+        accountTags = new ArrayList<Tag>();
+        Mockito.when(invoiceApi.getUnpaidInvoicesByAccountRecordIds(Mockito.<Collection<Long>>any(), Mockito.<InternalTenantContext>any())).thenReturn(unpaidInvoices);
+        Mockito.when(tagInternalApi.getTagsForAccountRecordIds(Mockito.<Collection<Long>>any(), Mockito.eq(ObjectType.ACCOUNT), Mockito.<InternalTenantContext>any())).thenReturn(accountTags);
+    }
+
+    @Test(groups = "slow")
+    public void testOnlyChangedAccountsAreRefreshed() throws Exception {
+        final Account overdueAccount = createAccount(clock.getUTCToday().minusDays(41));
+        final Account upToDateAccount = createAccount(null);
+        // Old invoice, but with a target date in the future of the account (i.e. not considered yet)
+        final Account notYetDueAccount = createAccount(clock.getUTCToday().minusDays(41), clock.getUTCToday().plusDays(1));
+
+        final SortedMap<Long, Account> accounts = new TreeMap<Long, Account>();
+        accounts.put(1L, overdueAccount);
+        accounts.put(2L, upToDateAccount);
+        accounts.put(3L, notYetDueAccount);
+
+        // Only the overdue account transitions, and goes through the (per-account) refresh
+        Assert.assertEquals(overdueBatchEvaluator.processOverdueForAccounts(accounts, clock.getUTCNow(), internalCallContext), 1);
+        final OverdueState od2 = config.getOverdueStatesAccount().findState("OD2");
+        testOverdueHelper.checkStateApplied(od2);
+        Assert.assertEquals(((ApplicatorBlockingApi) blockingApi).getBlockingState().getBlockedId(), overdueAccount.getId());
+
+        Mockito.verify(invoiceApi, Mockito.times(1)).getUnpaidInvoicesByAccountRecordIds(Mockito.<Collection<Long>>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoiceApi, Mockito.times(1)).getUnpaidInvoicesByAccountId(Mockito.eq(overdueAccount.getId()), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoiceApi, Mockito.never()).getUnpaidInvoicesByAccountId(Mockito.eq(upToDateAccount.getId()), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(invoiceApi, Mockito.never()).getUnpaidInvoicesByAccountId(Mockito.eq(notYetDueAccount.getId()), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+
+        // Second pass: the overdue account is already in OD2, nothing changes
+        Assert.assertEquals(overdueBatchEvaluator.processOverdueForAccounts(accounts, clock.getUTCNow(), internalCallContext), 0);
+        Mockito.verify(invoiceApi, Mockito.times(1)).getUnpaidInvoicesByAccountId(Mockito.eq(overdueAccount.getId()), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+    }
+
+    @Test(groups = "slow")
+    public void testOverdueEnforcementOffAccountsAreSkipped() throws Exception {
+        final Account account = createAccount(clock.getUTCToday().minusDays(51));
+        final UUID accountId = account.getId();
+
+        final Tag tag = Mockito.mock(Tag.class);
+        Mockito.when(tag.getObjectId()).thenReturn(accountId);
+        Mockito.when(tag.getObjectType()).thenReturn(ObjectType.ACCOUNT);
+        Mockito.when(tag.getTagDefinitionId()).thenReturn(ControlTagType.OVERDUE_ENFORCEMENT_OFF.getId());
+        accountTags.add(tag);
+
+        final SortedMap<Long, Account> accounts = new TreeMap<Long, Account>();
+        accounts.put(1L, account);
+        Assert.assertEquals(overdueBatchEvaluator.processOverdueForAccounts(accounts, clock.getUTCNow(), internalCallContext), 0);
+        Mockito.verify(invoiceApi, Mockito.never()).getUnpaidInvoicesByAccountId(Mockito.eq(accountId), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+    }
+
+    // Unlike TestOverdueHelper#createAccount, the invoices are also returned by the bulk lookup
+    private Account createAccount(final LocalDate dateOfLastUnPaidInvoice) {
+        return createAccount(dateOfLastUnPaidInvoice, dateOfLastUnPaidInvoice);
+    }
+
+    private Account createAccount(final LocalDate dateOfLastUnPaidInvoice, final LocalDate targetDate) {
+        final UUID accountId = UUID.randomUUID();
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(accountId);
+        Mockito.when(account.getTimeZone()).thenReturn(DateTimeZone.UTC);
+        Mockito.when(account.getFixedOffsetTimeZone()).thenReturn(DateTimeZone.UTC);
+        Mockito.when(account.getReferenceTime()).thenReturn(clock.getUTCNow());
+
+        final List<Invoice> invoices = new ArrayList<Invoice>();
+        if (dateOfLastUnPaidInvoice != null) {
+            final Invoice invoice = Mockito.mock(Invoice.class);
+            Mockito.when(invoice.getId()).thenReturn(UUID.randomUUID());
+            Mockito.when(invoice.getAccountId()).thenReturn(accountId);
+            Mockito.when(invoice.getInvoiceDate()).thenReturn(dateOfLastUnPaidInvoice);
+            Mockito.when(invoice.getTargetDate()).thenReturn(targetDate);
+            Mockito.when(invoice.getBalance()).thenReturn(BigDecimal.TEN);
+            invoices.add(invoice);
+        }
+        unpaidInvoices.addAll(invoices);
+        final List<Invoice> dueInvoices = targetDate != null && targetDate.isAfter(clock.getUTCToday()) ? ImmutableList.<Invoice>of() : invoices;
+        Mockito.when(invoiceApi.getUnpaidInvoicesByAccountId(Mockito.eq(accountId), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(dueInvoices);
+        Mockito.when(tagInternalApi.getTags(Mockito.eq(accountId), Mockito.eq(ObjectType.ACCOUNT), Mockito.<InternalTenantContext>any())).thenReturn(ImmutableList.<Tag>of());
+
+        return account;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.caching;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.killbill.automaton.MissingEntryException;
+import org.killbill.automaton.State;
+import org.killbill.automaton.StateMachine;
+import org.killbill.automaton.StateMachineConfig;
+
+/**
+ * Payment state machine config with pre-computed lookup tables: DefaultStateMachineConfig resolves state machines
+ * and states by scanning all of them, on each payment transaction.
+ * <p/>
+ * The tables are derived from the wrapped config, so they are rebuilt lazily after deserialization.
+ */
+public class CompiledStateMachineConfig extends SerializableStateMachineConfig {
+
+    private static final long serialVersionUID = -3154711326826457201L;
+
+    private transient volatile LookupTables lookupTables;
+
+    // For deserialization
+    public CompiledStateMachineConfig() {}
+
+    public CompiledStateMachineConfig(final StateMachineConfig stateMachineConfig) {
+        super(stateMachineConfig);
+        this.lookupTables = new LookupTables(stateMachineConfig);
+    }
+
+    @Override
+    public StateMachine getStateMachineForState(final String stateName) throws MissingEntryException {
+        final StateMachine stateMachine = getLookupTables().stateMachinesByStateName.get(stateName);
+        // Let the underlying config throw for unknown entries
+        return stateMachine != null ? stateMachine : super.getStateMachineForState(stateName);
+    }
+
+    @Override
+    public StateMachine getStateMachine(final String stateMachineName) throws MissingEntryException {
+        final StateMachine stateMachine = getLookupTables().stateMachinesByName.get(stateMachineName);
+        return stateMachine != null ? stateMachine : super.getStateMachine(stateMachineName);
+    }
+
+    public State getState(final String stateName) throws MissingEntryException {
+        final State state = getLookupTables().statesByName.get(stateName);
+        return state != null ? state : super.getStateMachineForState(stateName).getState(stateName);
+    }
+
+    private LookupTables getLookupTables() {
+        if (lookupTables == null) {
+            lookupTables = new LookupTables(this);
+        }
+        return lookupTables;
+    }
+
+    private static final class LookupTables {
+
+        private final Map<String, StateMachine> stateMachinesByName = new HashMap<String, StateMachine>();
+        private final Map<String, StateMachine> stateMachinesByStateName = new HashMap<String, StateMachine>();
+        private final Map<String, State> statesByName = new HashMap<String, State>();
+
+        private LookupTables(final StateMachineConfig stateMachineConfig) {
+            // Keep the first match, as DefaultStateMachineConfig does
+            for (final StateMachine stateMachine : stateMachineConfig.getStateMachines()) {
+                if (!stateMachinesByName.containsKey(stateMachine.getName())) {
+                    stateMachinesByName.put(stateMachine.getName(), stateMachine);
+                }
+                for (final State state : stateMachine.getStates()) {
+                    if (!statesByName.containsKey(state.getName())) {
+                        statesByName.put(state.getName(), state);
+                        stateMachinesByStateName.put(state.getName(), stateMachine);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.killbill.billing.payment.caching;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -38,6 +40,7 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.TenantCacheKey;
 import org.killbill.billing.util.cache.TenantStateMachineConfigCacheLoader.LoaderCallback;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.xmlloader.XMLLoader;
@@ -51,11 +54,14 @@ public class EhCacheStateMachineConfigCache implements StateMachineConfigCache {
     private static final Logger logger = LoggerFactory.getLogger(EhCacheStateMachineConfigCache.class);
 
     private final TenantInternalApi tenantInternalApi;
-    private final CacheController<String, StateMachineConfig> cacheController;
+    private final CacheController<TenantCacheKey, StateMachineConfig> cacheController;
     private final CacheInvalidationCallback cacheInvalidationCallback;
     private final LoaderCallback loaderCallback;
 
-    private StateMachineConfig defaultPaymentStateMachineConfig;
+    // Cache keys are immutable: memoize them per tenant and plugin to avoid building the key string on each payment
+    private final ConcurrentMap<Long, ConcurrentMap<String, TenantCacheKey>> cacheKeys = new ConcurrentHashMap<Long, ConcurrentMap<String, TenantCacheKey>>();
+
+    private CompiledStateMachineConfig defaultPaymentStateMachineConfig;
 
     @Inject
     public EhCacheStateMachineConfigCache(final TenantInternalApi tenantInternalApi,
@@ -72,7 +78,7 @@ public class EhCacheStateMachineConfigCache implements StateMachineConfigCache {
                 try {
                     final InputStream stream = new ByteArrayInputStream(stateMachineConfigXML.getBytes());
                     final DefaultStateMachineConfig defaultStateMachineConfig = XMLLoader.getObjectFromStream(new URI("dummy"), stream, DefaultStateMachineConfig.class);
-                    return new SerializableStateMachineConfig(defaultStateMachineConfig);
+                    return new CompiledStateMachineConfig(defaultStateMachineConfig);
                 } catch (final Exception e) {
                     // TODO 0.17 proper error code
                     throw new PaymentApiException(e, ErrorCode.PAYMENT_INTERNAL_ERROR, "Invalid payment state machine config");
@@ -85,7 +91,7 @@ public class EhCacheStateMachineConfigCache implements StateMachineConfigCache {
     public void loadDefaultPaymentStateMachineConfig(final String url) throws PaymentApiException {
         if (url != null) {
             try {
-                defaultPaymentStateMachineConfig = XMLLoader.getObjectFromString(Resources.getResource(url).toExternalForm(), DefaultStateMachineConfig.class);
+                defaultPaymentStateMachineConfig = new CompiledStateMachineConfig(XMLLoader.getObjectFromString(Resources.getResource(url).toExternalForm(), DefaultStateMachineConfig.class));
             } catch (final Exception e) {
                 // TODO 0.17 proper error code
                 throw new PaymentApiException(e, ErrorCode.PAYMENT_INTERNAL_ERROR, "Invalid default payment state machine config");
@@ -94,15 +100,15 @@ public class EhCacheStateMachineConfigCache implements StateMachineConfigCache {
     }
 
     @Override
-    public StateMachineConfig getPaymentStateMachineConfig(final String pluginName, final InternalTenantContext tenantContext) throws PaymentApiException {
+    public CompiledStateMachineConfig getPaymentStateMachineConfig(final String pluginName, final InternalTenantContext tenantContext) throws PaymentApiException {
         if (InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID.equals(tenantContext.getTenantRecordId()) || cacheController == null) {
             return defaultPaymentStateMachineConfig;
         }
 
-        final String pluginConfigKey = getCacheKeyName(pluginName, tenantContext);
+        final TenantCacheKey pluginConfigKey = getCacheKeyName(pluginName, tenantContext);
         final CacheLoaderArgument cacheLoaderArgument = createCacheLoaderArgument(pluginName);
         try {
-            StateMachineConfig pluginPaymentStateMachineConfig = cacheController.get(pluginConfigKey, cacheLoaderArgument);
+            CompiledStateMachineConfig pluginPaymentStateMachineConfig = (CompiledStateMachineConfig) cacheController.get(pluginConfigKey, cacheLoaderArgument);
             // It means we are using the default state machine config in a multi-tenant deployment
             if (pluginPaymentStateMachineConfig == null) {
                 pluginPaymentStateMachineConfig = defaultPaymentStateMachineConfig;
@@ -116,18 +122,25 @@ public class EhCacheStateMachineConfigCache implements StateMachineConfigCache {
     }
 
     // See also DefaultTenantUserApi - we use the same conventions as the main XML cache (so we can re-use the invalidation code)
-    private String getCacheKeyName(final String pluginName, final InternalTenantContext internalContext) {
-        final StringBuilder tenantKey = new StringBuilder(TenantKey.PLUGIN_PAYMENT_STATE_MACHINE_.toString());
-        tenantKey.append(pluginName);
-        tenantKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-        tenantKey.append(internalContext.getTenantRecordId());
-        return tenantKey.toString();
+    private TenantCacheKey getCacheKeyName(final String pluginName, final InternalTenantContext internalContext) {
+        ConcurrentMap<String, TenantCacheKey> tenantCacheKeys = cacheKeys.get(internalContext.getTenantRecordId());
+        if (tenantCacheKeys == null) {
+            cacheKeys.putIfAbsent(internalContext.getTenantRecordId(), new ConcurrentHashMap<String, TenantCacheKey>());
+            tenantCacheKeys = cacheKeys.get(internalContext.getTenantRecordId());
+        }
+
+        TenantCacheKey cacheKey = tenantCacheKeys.get(pluginName);
+        if (cacheKey == null) {
+            cacheKey = new TenantCacheKey(TenantKey.PLUGIN_PAYMENT_STATE_MACHINE_.toString() + pluginName, internalContext.getTenantRecordId());
+            tenantCacheKeys.putIfAbsent(pluginName, cacheKey);
+        }
+        return cacheKey;
     }
 
     @Override
     public void clearPaymentStateMachineConfig(final String pluginName, final InternalTenantContext tenantContext) {
         if (!InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID.equals(tenantContext.getTenantRecordId()) && cacheController != null) {
-            final String key = getCacheKeyName(pluginName, tenantContext);
+            final TenantCacheKey key = getCacheKeyName(pluginName, tenantContext);
             cacheController.remove(key);
         }
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.caching;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.payment.api.PaymentMethodPlugin;
+import org.killbill.billing.util.config.definition.PaymentConfig;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Short-lived cache of the payment method details returned by the payment plugins (getPaymentMethodDetail).
+ * <p/>
+ * Details are grouped per (tenant, account), so that all the payment methods of an account can be invalidated at once.
+ * Entries are invalidated when the payment methods of the account are modified through Kill Bill (refresh, deletion, new default),
+ * and otherwise expire after a configurable TTL (counted from the first details cached for the account), which bounds the staleness
+ * for changes made directly in the plugin or gateway (or on another node).
+ */
+public class PaymentMethodPluginInfoCache {
+
+    private final boolean isEnabled;
+    private final Cache<AccountCacheKey, ConcurrentMap<UUID, PaymentMethodPlugin>> paymentMethodPlugins;
+
+    @Inject
+    public PaymentMethodPluginInfoCache(final PaymentConfig paymentConfig) {
+        this.isEnabled = paymentConfig.getPaymentMethodPluginInfoCacheTTL().getMillis() > 0;
+        this.paymentMethodPlugins = CacheBuilder.newBuilder()
+                                                .maximumSize(paymentConfig.getPaymentMethodPluginInfoCacheMaxSize())
+                                                .expireAfterWrite(paymentConfig.getPaymentMethodPluginInfoCacheTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                                .build();
+    }
+
+    @Nullable
+    public PaymentMethodPlugin getIfPresent(final UUID accountId, final UUID paymentMethodId, final InternalTenantContext context) {
+        if (!isEnabled) {
+            return null;
+        }
+        final ConcurrentMap<UUID, PaymentMethodPlugin> accountPaymentMethodPlugins = paymentMethodPlugins.getIfPresent(new AccountCacheKey(context.getTenantRecordId(), accountId));
+        return accountPaymentMethodPlugins == null ? null : accountPaymentMethodPlugins.get(paymentMethodId);
+    }
+
+    public void put(final UUID accountId, final UUID paymentMethodId, @Nullable final PaymentMethodPlugin paymentMethodPlugin, final InternalTenantContext context) {
+        if (!isEnabled || paymentMethodPlugin == null) {
+            return;
+        }
+
+        final AccountCacheKey cacheKey = new AccountCacheKey(context.getTenantRecordId(), accountId);
+        ConcurrentMap<UUID, PaymentMethodPlugin> accountPaymentMethodPlugins = paymentMethodPlugins.getIfPresent(cacheKey);
+        if (accountPaymentMethodPlugins == null) {
+            final ConcurrentMap<UUID, PaymentMethodPlugin> newAccountPaymentMethodPlugins = new ConcurrentHashMap<UUID, PaymentMethodPlugin>();
+            accountPaymentMethodPlugins = MoreObjects.firstNonNull(paymentMethodPlugins.asMap().putIfAbsent(cacheKey, newAccountPaymentMethodPlugins), newAccountPaymentMethodPlugins);
+        }
+        accountPaymentMethodPlugins.put(paymentMethodId, paymentMethodPlugin);
+    }
+
+    public void invalidate(final UUID accountId, final UUID paymentMethodId, final InternalTenantContext context) {
+        final ConcurrentMap<UUID, PaymentMethodPlugin> accountPaymentMethodPlugins = paymentMethodPlugins.getIfPresent(new AccountCacheKey(context.getTenantRecordId(), accountId));
+        if (accountPaymentMethodPlugins != null) {
+            accountPaymentMethodPlugins.remove(paymentMethodId);
+        }
+    }
+
+    // The details of all payment methods may change at once (e.g. default flag)
+    public void invalidateAll(final UUID accountId, final InternalTenantContext context) {
+        paymentMethodPlugins.invalidate(new AccountCacheKey(context.getTenantRecordId(), accountId));
+    }
+
+    private static final class AccountCacheKey {
+
+        private final Long tenantRecordId;
+        private final UUID accountId;
+
+        private AccountCacheKey(final Long tenantRecordId, final UUID accountId) {
+            this.tenantRecordId = tenantRecordId;
+            this.accountId = accountId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final AccountCacheKey that = (AccountCacheKey) o;
+            return Objects.equal(tenantRecordId, that.tenantRecordId) &&
+                   Objects.equal(accountId, that.accountId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantRecordId, accountId);
+        }
+    }
+}
@@ -17,7 +17,6 @@
 
 package org.killbill.billing.payment.caching;
 
-import org.killbill.automaton.StateMachineConfig;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.payment.api.PaymentApiException;
 
@@ -25,7 +24,7 @@ public interface StateMachineConfigCache {
 
     public void loadDefaultPaymentStateMachineConfig(String url) throws PaymentApiException;
 
-    public StateMachineConfig getPaymentStateMachineConfig(String pluginName, InternalTenantContext tenantContext) throws PaymentApiException;
+    public CompiledStateMachineConfig getPaymentStateMachineConfig(String pluginName, InternalTenantContext tenantContext) throws PaymentApiException;
 
     public void clearPaymentStateMachineConfig(String pluginName, InternalTenantContext tenantContext);
 }
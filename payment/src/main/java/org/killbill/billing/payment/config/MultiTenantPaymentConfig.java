@@ -125,6 +125,20 @@ public class MultiTenantPaymentConfig extends MultiTenantConfigBase implements P
         return getPluginFailureRetryMaxAttempts();
     }
 
+    @Override
+    public TimeSpan getRetryJitter() {
+        return staticConfig.getRetryJitter();
+    }
+
+    @Override
+    public TimeSpan getRetryJitter(@Param("dummy") final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("getRetryJitter", tenantContext);
+        if (result != null) {
+            return new TimeSpan(result);
+        }
+        return getRetryJitter();
+    }
+
     @Override
     public List<String> getPaymentControlPluginNames() {
         return staticConfig.getPaymentControlPluginNames();
@@ -164,6 +178,21 @@ public class MultiTenantPaymentConfig extends MultiTenantConfigBase implements P
         return staticConfig.getPaymentPluginThreadNb();
     }
 
+    @Override
+    public TimeSpan getPaymentMethodPluginInfoCacheTTL() {
+        return staticConfig.getPaymentMethodPluginInfoCacheTTL();
+    }
+
+    @Override
+    public int getPaymentMethodPluginInfoCacheMaxSize() {
+        return staticConfig.getPaymentMethodPluginInfoCacheMaxSize();
+    }
+
+    @Override
+    public int getPaymentMethodPluginInfoMaxConcurrentCalls() {
+        return staticConfig.getPaymentMethodPluginInfoMaxConcurrentCalls();
+    }
+
     @Override
     public int getMaxGlobalLockRetries() {
         return staticConfig.getMaxGlobalLockRetries();
@@ -79,6 +79,11 @@ public class PaymentExecutors {
         return janitorExecutorService;
     }
 
+    public boolean isPluginExecutorThread() {
+        final ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
+        return threadGroup != null && PAYMENT_PLUGIN_TH_GROUP_NAME.equals(threadGroup.getName());
+    }
+
     private ThreadPoolExecutor createPluginExecutorService() {
         final int minThreadNb = DEFAULT_MIN_PLUGIN_THREADS < paymentConfig.getPaymentPluginThreadNb() ? DEFAULT_MIN_PLUGIN_THREADS : paymentConfig.getPaymentPluginThreadNb();
         return new WithProfilingThreadPoolExecutor(minThreadNb,
@@ -21,9 +21,14 @@ package org.killbill.billing.payment.core;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
 
@@ -39,6 +44,7 @@ import org.killbill.billing.payment.api.PaymentApiException;
 import org.killbill.billing.payment.api.PaymentMethod;
 import org.killbill.billing.payment.api.PaymentMethodPlugin;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.caching.PaymentMethodPluginInfoCache;
 import org.killbill.billing.payment.dao.PaymentDao;
 import org.killbill.billing.payment.dao.PaymentMethodModelDao;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher;
@@ -69,6 +75,7 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
@@ -82,8 +89,10 @@ public class PaymentMethodProcessor extends ProcessorBase {
     private static final Logger log = LoggerFactory.getLogger(PaymentMethodProcessor.class);
 
     private final PluginDispatcher<UUID> uuidPluginNotificationDispatcher;
+    private final PluginDispatcher<PaymentMethodPlugin> paymentMethodPluginDispatcher;
 
     private final PaymentConfig paymentConfig;
+    private final PaymentMethodPluginInfoCache paymentMethodPluginInfoCache;
 
     @Inject
     public PaymentMethodProcessor(final PaymentPluginServiceRegistration paymentPluginServiceRegistration,
@@ -94,12 +103,15 @@ public class PaymentMethodProcessor extends ProcessorBase {
                                   final GlobalLocker locker,
                                   final PaymentConfig paymentConfig,
                                   final PaymentExecutors executors,
+                                  final PaymentMethodPluginInfoCache paymentMethodPluginInfoCache,
                                   final InternalCallContextFactory internalCallContextFactory,
                                   final Clock clock) {
         super(paymentPluginServiceRegistration, accountInternalApi, paymentDao, tagUserApi, locker, internalCallContextFactory, invoiceApi, clock);
         final long paymentPluginTimeoutSec = TimeUnit.SECONDS.convert(paymentConfig.getPaymentPluginTimeout().getPeriod(), paymentConfig.getPaymentPluginTimeout().getUnit());
         this.paymentConfig = paymentConfig;
         this.uuidPluginNotificationDispatcher = new PluginDispatcher<UUID>(paymentPluginTimeoutSec, executors);
+        this.paymentMethodPluginDispatcher = new PluginDispatcher<PaymentMethodPlugin>(paymentPluginTimeoutSec, executors);
+        this.paymentMethodPluginInfoCache = paymentMethodPluginInfoCache;
     }
 
     public UUID addPaymentMethod(final String paymentMethodExternalKey, final String paymentPluginServiceName, final Account account,
@@ -224,12 +236,7 @@ public class PaymentMethodProcessor extends ProcessorBase {
     private PaymentMethod buildDefaultPaymentMethod(final PaymentMethodModelDao paymentMethodModelDao, final boolean withPluginInfo, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext context) throws PaymentApiException {
         final PaymentMethodPlugin paymentMethodPlugin;
         if (withPluginInfo) {
-            try {
-                final PaymentPluginApi pluginApi = getPaymentPluginApi(paymentMethodModelDao.getPluginName());
-                paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
-            } catch (final PaymentPluginApiException e) {
-                throw new PaymentApiException(e, ErrorCode.PAYMENT_GET_PAYMENT_METHODS, paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId());
-            }
+            paymentMethodPlugin = getPaymentMethodPlugin(paymentMethodModelDao, properties, tenantContext, context);
         } else {
             paymentMethodPlugin = null;
         }
@@ -237,6 +244,90 @@ public class PaymentMethodProcessor extends ProcessorBase {
         return new DefaultPaymentMethod(paymentMethodModelDao, paymentMethodPlugin);
     }
 
+    private PaymentMethodPlugin getPaymentMethodPlugin(final PaymentMethodModelDao paymentMethodModelDao, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext context) throws PaymentApiException {
+        final PaymentMethodPlugin cachedPaymentMethodPlugin = getCachedPaymentMethodPlugin(paymentMethodModelDao, properties, context);
+        if (cachedPaymentMethodPlugin != null) {
+            return cachedPaymentMethodPlugin;
+        }
+
+        try {
+            final PaymentPluginApi pluginApi = getPaymentPluginApi(paymentMethodModelDao.getPluginName());
+            final PaymentMethodPlugin paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
+            cachePaymentMethodPlugin(paymentMethodModelDao, properties, paymentMethodPlugin, context);
+            return paymentMethodPlugin;
+        } catch (final PaymentPluginApiException e) {
+            throw new PaymentApiException(e, ErrorCode.PAYMENT_GET_PAYMENT_METHODS, paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId());
+        }
+    }
+
+    // The plugin details may depend on the plugin properties: only cache the default view
+    private PaymentMethodPlugin getCachedPaymentMethodPlugin(final PaymentMethodModelDao paymentMethodModelDao, final Iterable<PluginProperty> properties, final InternalTenantContext context) {
+        if (!Iterables.isEmpty(properties)) {
+            return null;
+        }
+        return paymentMethodPluginInfoCache.getIfPresent(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), context);
+    }
+
+    private void cachePaymentMethodPlugin(final PaymentMethodModelDao paymentMethodModelDao, final Iterable<PluginProperty> properties, @Nullable final PaymentMethodPlugin paymentMethodPlugin, final InternalTenantContext context) {
+        if (!Iterables.isEmpty(properties)) {
+            return;
+        }
+        paymentMethodPluginInfoCache.put(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), paymentMethodPlugin, context);
+    }
+
+    // Retrieve the plugin details of all the payment methods not in the cache in parallel (using the plugin executor)
+    private Map<UUID, PaymentMethodPlugin> getPaymentMethodPlugins(final Collection<PaymentMethodModelDao> paymentMethodModels, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext context) throws PaymentApiException {
+        final Map<UUID, PaymentMethodPlugin> result = new HashMap<UUID, PaymentMethodPlugin>();
+
+        final List<PaymentMethodModelDao> paymentMethodsToFetch = new ArrayList<PaymentMethodModelDao>();
+        for (final PaymentMethodModelDao paymentMethodModel : paymentMethodModels) {
+            final PaymentMethodPlugin cachedPaymentMethodPlugin = getCachedPaymentMethodPlugin(paymentMethodModel, properties, context);
+            if (cachedPaymentMethodPlugin != null) {
+                result.put(paymentMethodModel.getId(), cachedPaymentMethodPlugin);
+            } else {
+                paymentMethodsToFetch.add(paymentMethodModel);
+            }
+        }
+
+        if (paymentMethodsToFetch.size() == 1) {
+            // Not worth a dispatch
+            final PaymentMethodModelDao paymentMethodModel = paymentMethodsToFetch.get(0);
+            result.put(paymentMethodModel.getId(), getPaymentMethodPlugin(paymentMethodModel, properties, tenantContext, context));
+        } else if (paymentMethodsToFetch.size() > 1) {
+            final List<Callable<PluginDispatcherReturnType<PaymentMethodPlugin>>> tasks = new ArrayList<Callable<PluginDispatcherReturnType<PaymentMethodPlugin>>>(paymentMethodsToFetch.size());
+            for (final PaymentMethodModelDao paymentMethodModel : paymentMethodsToFetch) {
+                tasks.add(new Callable<PluginDispatcherReturnType<PaymentMethodPlugin>>() {
+                    @Override
+                    public PluginDispatcherReturnType<PaymentMethodPlugin> call() throws PaymentApiException {
+                        return PluginDispatcher.createPluginDispatcherReturnType(getPaymentMethodPlugin(paymentMethodModel, properties, tenantContext, context));
+                    }
+                });
+            }
+
+            final List<PaymentMethodPlugin> paymentMethodPlugins;
+            try {
+                paymentMethodPlugins = paymentMethodPluginDispatcher.dispatchAllWithTimeout(tasks, paymentConfig.getPaymentMethodPluginInfoMaxConcurrentCalls());
+            } catch (final TimeoutException e) {
+                final String errorMessage = String.format("Call TIMEOUT while retrieving the payment methods for accountRecordId='%s'", context.getAccountRecordId());
+                log.warn(errorMessage);
+                throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_TIMEOUT, paymentMethodsToFetch.get(0).getAccountId(), errorMessage);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, MoreObjects.firstNonNull(e.getMessage(), ""));
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof PaymentApiException) {
+                    throw (PaymentApiException) e.getCause();
+                }
+                throw new PaymentApiException(e.getCause(), ErrorCode.PAYMENT_INTERNAL_ERROR, MoreObjects.firstNonNull(e.getMessage(), ""));
+            }
+
+            for (int i = 0; i < paymentMethodsToFetch.size(); i++) {
+                result.put(paymentMethodsToFetch.get(i).getId(), paymentMethodPlugins.get(i));
+            }
+        }
+        return result;
+    }
+
     public Pagination<PaymentMethod> getPaymentMethods(final Long offset, final Long limit, final boolean withPluginInfo, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext internalTenantContext) {
         return getEntityPaginationFromPlugins(true,
                                               getAvailablePlugins(),
@@ -268,7 +359,11 @@ public class PaymentMethodProcessor extends ProcessorBase {
                                            PaymentMethodPlugin paymentMethodPlugin = null;
                                            if (pluginApi != null) {
                                                try {
-                                                   paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
+                                                   paymentMethodPlugin = getCachedPaymentMethodPlugin(paymentMethodModelDao, properties, internalTenantContext);
+                                                   if (paymentMethodPlugin == null) {
+                                                       paymentMethodPlugin = pluginApi.getPaymentMethodDetail(paymentMethodModelDao.getAccountId(), paymentMethodModelDao.getId(), properties, tenantContext);
+                                                       cachePaymentMethodPlugin(paymentMethodModelDao, properties, paymentMethodPlugin, internalTenantContext);
+                                                   }
                                                } catch (final PaymentPluginApiException e) {
                                                    if (e.getCause() == null) {
                                                        log.warn("Error retrieving paymentMethodId='{}', plugin='{}', errorMessage='{}', errorType='{}'", paymentMethodModelDao.getId(), pluginName, e.getErrorMessage(), e.getErrorType());
@@ -387,9 +482,13 @@ public class PaymentMethodProcessor extends ProcessorBase {
 
     private List<PaymentMethod> getPaymentMethodInternal(final Collection<PaymentMethodModelDao> paymentMethodModels, final boolean withPluginInfo, final Iterable<PluginProperty> properties, final TenantContext tenantContext, final InternalTenantContext context)
             throws PaymentApiException {
+        final Map<UUID, PaymentMethodPlugin> paymentMethodPlugins = withPluginInfo ?
+                                                                    getPaymentMethodPlugins(paymentMethodModels, properties, tenantContext, context) :
+                                                                    ImmutableMap.<UUID, PaymentMethodPlugin>of();
+
         final List<PaymentMethod> result = new ArrayList<PaymentMethod>(paymentMethodModels.size());
         for (final PaymentMethodModelDao paymentMethodModel : paymentMethodModels) {
-            final PaymentMethod pm = buildDefaultPaymentMethod(paymentMethodModel, withPluginInfo, properties, tenantContext, context);
+            final PaymentMethod pm = new DefaultPaymentMethod(paymentMethodModel, paymentMethodPlugins.get(paymentMethodModel.getId()));
             result.add(pm);
         }
         return result;
@@ -424,6 +523,7 @@ public class PaymentMethodProcessor extends ProcessorBase {
                         final PaymentPluginApi pluginApi = getPaymentProviderPlugin(paymentMethodId, false, context);
                         pluginApi.deletePaymentMethod(account.getId(), paymentMethodId, properties, callContext);
                         paymentDao.deletedPaymentMethod(paymentMethodId, context);
+                        paymentMethodPluginInfoCache.invalidate(account.getId(), paymentMethodId, context);
                         return PluginDispatcher.createPluginDispatcherReturnType(null);
                     } catch (final PaymentPluginApiException e) {
                         throw new PaymentApiException(ErrorCode.PAYMENT_DEL_PAYMENT_METHOD, account.getId(), e.getErrorMessage());
@@ -455,6 +555,8 @@ public class PaymentMethodProcessor extends ProcessorBase {
 
                         pluginApi.setDefaultPaymentMethod(account.getId(), paymentMethodId, properties, callContext);
                         accountInternalApi.updatePaymentMethod(account.getId(), paymentMethodId, context);
+                        // The default flag of the previous default payment method changes as well
+                        paymentMethodPluginInfoCache.invalidateAll(account.getId(), context);
                         return PluginDispatcher.createPluginDispatcherReturnType(null);
                     } catch (final PaymentPluginApiException e) {
                         throw new PaymentApiException(ErrorCode.PAYMENT_UPD_PAYMENT_METHOD, account.getId(), e.getErrorMessage());
@@ -530,6 +632,8 @@ public class PaymentMethodProcessor extends ProcessorBase {
                         pluginApi.resetPaymentMethods(account.getId(), pluginPmsWithId, properties, callContext);
                     } catch (final PaymentPluginApiException e) {
                         throw new PaymentApiException(ErrorCode.PAYMENT_REFRESH_PAYMENT_METHOD, account.getId(), e.getErrorMessage());
+                    } finally {
+                        paymentMethodPluginInfoCache.invalidateAll(account.getId(), context);
                     }
                     try {
                         updateDefaultPaymentMethodIfNeeded(pluginName, account, defaultPaymentMethodId, context);
@@ -62,6 +62,10 @@ public class PaymentAutomatonDAOHelper {
     private String pluginName = null;
     private PaymentPluginApi paymentPluginApi = null;
 
+    // Fetched at most once per run (until we update them)
+    private PaymentModelDao paymentModelDao = null;
+    private List<PaymentTransactionModelDao> paymentTransactionModelDaos = null;
+
     // Used to build new payments and transactions
     public PaymentAutomatonDAOHelper(final PaymentStateContext paymentStateContext,
                                      final DateTime utcNow, final PaymentDao paymentDao,
@@ -91,7 +95,7 @@ public class PaymentAutomatonDAOHelper {
             paymentTransactionModelDao = paymentAndTransactionModelDao.getPaymentTransactionModelDao();
 
         } else {
-            existingTransactions = paymentDao.getTransactionsForPayment(paymentStateContext.getPaymentId(), internalCallContext);
+            existingTransactions = getTransactionsForPayment();
             if (existingTransactions.isEmpty()) {
                 throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_SUCCESS_PAYMENT, paymentStateContext.getPaymentId());
             }
@@ -105,6 +109,9 @@ public class PaymentAutomatonDAOHelper {
             final PaymentTransactionModelDao newPaymentTransactionModelDao = buildNewPaymentTransactionModelDao(paymentStateContext.getPaymentId());
             paymentTransactionModelDao = paymentDao.updatePaymentWithNewTransaction(paymentStateContext.getPaymentId(), newPaymentTransactionModelDao, internalCallContext);
         }
+        paymentModelDao = null;
+        paymentTransactionModelDaos = null;
+
         // Update the context
         paymentStateContext.setPaymentTransactionModelDao(paymentTransactionModelDao);
         paymentStateContext.setOnLeavingStateExistingTransactions(existingTransactions);
@@ -145,6 +152,9 @@ public class PaymentAutomatonDAOHelper {
                                                                                                                                gatewayErrorCode,
                                                                                                                                gatewayErrorMsg,
                                                                                                                                internalCallContext);
+        paymentModelDao = paymentAndTransactionModelDao.getPaymentModelDao();
+        paymentTransactionModelDaos = null;
+
         // Update the context
         paymentStateContext.setPaymentModelDao(paymentAndTransactionModelDao.getPaymentModelDao());
         paymentStateContext.setPaymentTransactionModelDao(paymentAndTransactionModelDao.getPaymentTransactionModelDao());
@@ -167,14 +177,31 @@ public class PaymentAutomatonDAOHelper {
     }
 
     public PaymentModelDao getPayment() throws PaymentApiException {
-        final PaymentModelDao paymentModelDao;
-        paymentModelDao = paymentDao.getPayment(paymentStateContext.getPaymentId(), internalCallContext);
-        if (paymentModelDao == null) {
+        if (paymentModelDao != null) {
+            return paymentModelDao;
+        }
+
+        final PaymentModelDao result = paymentDao.getPayment(paymentStateContext.getPaymentId(), internalCallContext);
+        if (result == null) {
             throw new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT, paymentStateContext.getPaymentId());
         }
+        paymentModelDao = result;
         return paymentModelDao;
     }
 
+    public List<PaymentTransactionModelDao> getTransactionsForPayment() {
+        if (paymentTransactionModelDaos == null) {
+            paymentTransactionModelDaos = paymentDao.getTransactionsForPayment(paymentStateContext.getPaymentId(), internalCallContext);
+        }
+        return paymentTransactionModelDaos;
+    }
+
+    // Used by the caller when it has the latest state already (e.g. after a Janitor run)
+    public void setPaymentAndTransactions(final PaymentModelDao paymentModelDao, final Iterable<PaymentTransactionModelDao> paymentTransactionModelDaos) {
+        this.paymentModelDao = paymentModelDao;
+        this.paymentTransactionModelDaos = ImmutableList.<PaymentTransactionModelDao>copyOf(paymentTransactionModelDaos);
+    }
+
     public PersistentBus getEventBus() {
         return eventBus;
     }
@@ -17,6 +17,9 @@
 
 package org.killbill.billing.payment.core.sm;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -27,6 +30,8 @@ import org.killbill.automaton.StateMachine;
 import org.killbill.automaton.StateMachineConfig;
 import org.killbill.billing.payment.glue.PaymentModule;
 
+import com.google.common.collect.ImmutableMap;
+
 public class PaymentControlStateMachineHelper {
 
     /**
@@ -42,6 +47,7 @@ public class PaymentControlStateMachineHelper {
     private final Operation operation;
     private final State initialState;
     private final State retriedState;
+    private final Map<String, State> statesByName;
 
     @Inject
     public PaymentControlStateMachineHelper(@Named(PaymentModule.STATE_MACHINE_RETRY) final StateMachineConfig retryStateMachineConfig) throws MissingEntryException {
@@ -50,10 +56,17 @@ public class PaymentControlStateMachineHelper {
         this.operation = stateMachine.getOperation(RETRY_OPERATION_NAME);
         this.initialState = stateMachine.getState(INIT_STATE_NAME);
         this.retriedState = stateMachine.getState(RETRIED_STATE_NAME);
+
+        final Map<String, State> statesByName = new HashMap<String, State>();
+        for (final State state : stateMachine.getStates()) {
+            statesByName.put(state.getName(), state);
+        }
+        this.statesByName = ImmutableMap.<String, State>copyOf(statesByName);
     }
 
     public State getState(final String stateName) throws MissingEntryException {
-        return stateMachine.getState(stateName);
+        final State state = statesByName.get(stateName);
+        return state != null ? state : stateMachine.getState(stateName);
     }
 
     public Operation getOperation() {
@@ -26,6 +26,7 @@ import org.killbill.automaton.StateMachineConfig;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.payment.api.PaymentApiException;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.caching.CompiledStateMachineConfig;
 import org.killbill.billing.payment.caching.StateMachineConfigCache;
 
 /**
@@ -200,7 +201,7 @@ public class PaymentStateMachineHelper {
         }
     }
 
-    public StateMachineConfig getStateMachineConfig(final String pluginName, final InternalCallContext internalCallContext) throws PaymentApiException {
+    public CompiledStateMachineConfig getStateMachineConfig(final String pluginName, final InternalCallContext internalCallContext) throws PaymentApiException {
         return stateMachineConfigCache.getPaymentStateMachineConfig(pluginName, internalCallContext);
     }
 
@@ -37,6 +37,7 @@ import org.killbill.billing.control.plugin.api.PaymentControlContext;
 import org.killbill.billing.control.plugin.api.PaymentControlPluginApi;
 import org.killbill.billing.control.plugin.api.PriorPaymentControlResult;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
+import org.killbill.billing.payment.api.Payment;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.retry.DefaultFailureCallResult;
@@ -233,11 +234,53 @@ public class ControlPluginRunner {
                                                                      final List<String> paymentControlPluginNames,
                                                                      final Iterable<PluginProperty> pluginProperties,
                                                                      final CallContext callContext) {
+        return executePluginOnFailureCalls(account,
+                                           paymentMethodId,
+                                           paymentAttemptId,
+                                           paymentId,
+                                           null,
+                                           paymentExternalKey,
+                                           transactionId,
+                                           paymentTransactionExternalKey,
+                                           paymentApiType,
+                                           transactionType,
+                                           hppType,
+                                           amount,
+                                           currency,
+                                           processedAmount,
+                                           processedCurrency,
+                                           isApiPayment,
+                                           paymentControlPluginNames,
+                                           pluginProperties,
+                                           callContext);
+    }
+
+    // The payment, when known, is exposed to the (internal) control plugins so they don't have to fetch it again
+    public OnFailurePaymentControlResult executePluginOnFailureCalls(final Account account,
+                                                                     final UUID paymentMethodId,
+                                                                     final UUID paymentAttemptId,
+                                                                     final UUID paymentId,
+                                                                     @Nullable final Payment payment,
+                                                                     final String paymentExternalKey,
+                                                                     final UUID transactionId,
+                                                                     final String paymentTransactionExternalKey,
+                                                                     final PaymentApiType paymentApiType,
+                                                                     final TransactionType transactionType,
+                                                                     final HPPType hppType,
+                                                                     final BigDecimal amount,
+                                                                     final Currency currency,
+                                                                     final BigDecimal processedAmount,
+                                                                     final Currency processedCurrency,
+                                                                     final boolean isApiPayment,
+                                                                     final List<String> paymentControlPluginNames,
+                                                                     final Iterable<PluginProperty> pluginProperties,
+                                                                     final CallContext callContext) {
 
         final PaymentControlContext inputPaymentControlContext = new DefaultPaymentControlContext(account,
                                                                                                   paymentMethodId,
                                                                                                   paymentAttemptId,
                                                                                                   paymentId,
+                                                                                                  payment,
                                                                                                   paymentExternalKey,
                                                                                                   transactionId,
                                                                                                   paymentTransactionExternalKey,
@@ -302,6 +345,7 @@ public class ControlPluginRunner {
         private final BigDecimal processedAmount;
         private final Currency processedCurrency;
         private final boolean isApiPayment;
+        private final Payment payment;
 
         public DefaultPaymentControlContext(final Account account,
                                             final UUID paymentMethodId,
@@ -319,6 +363,27 @@ public class ControlPluginRunner {
                                             @Nullable final Currency processedCurrency,
                                             final boolean isApiPayment,
                                             final CallContext callContext) {
+            this(account, paymentMethodId, attemptId, paymentId, null, paymentExternalKey, transactionId, transactionExternalKey, paymentApiType, transactionType,
+                 hppType, amount, currency, processedAmount, processedCurrency, isApiPayment, callContext);
+        }
+
+        public DefaultPaymentControlContext(final Account account,
+                                            final UUID paymentMethodId,
+                                            final UUID attemptId,
+                                            @Nullable final UUID paymentId,
+                                            @Nullable final Payment payment,
+                                            final String paymentExternalKey,
+                                            @Nullable final UUID transactionId,
+                                            final String transactionExternalKey,
+                                            final PaymentApiType paymentApiType,
+                                            final TransactionType transactionType,
+                                            final HPPType hppType,
+                                            final BigDecimal amount,
+                                            final Currency currency,
+                                            @Nullable final BigDecimal processedAmount,
+                                            @Nullable final Currency processedCurrency,
+                                            final boolean isApiPayment,
+                                            final CallContext callContext) {
             super(callContext.getTenantId(), callContext.getUserName(), callContext.getCallOrigin(), callContext.getUserType(), callContext.getReasonCode(), callContext.getComments(), callContext.getUserToken(), callContext.getCreatedDate(), callContext.getUpdatedDate());
             this.account = account;
             this.paymentMethodId = paymentMethodId;
@@ -335,6 +400,7 @@ public class ControlPluginRunner {
             this.processedAmount = processedAmount;
             this.processedCurrency = processedCurrency;
             this.isApiPayment = isApiPayment;
+            this.payment = payment;
         }
 
         @Override
@@ -411,6 +477,12 @@ public class ControlPluginRunner {
             return transactionId;
         }
 
+        // Payment (with all its transactions) as of the operation, if known
+        @Nullable
+        public Payment getPayment() {
+            return payment;
+        }
+
         @Override
         public String toString() {
             return "DefaultPaymentControlContext{" +
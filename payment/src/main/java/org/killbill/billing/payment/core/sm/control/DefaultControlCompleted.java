@@ -25,7 +25,6 @@ import org.killbill.automaton.OperationResult;
 import org.killbill.automaton.State;
 import org.killbill.automaton.State.EnteringStateCallback;
 import org.killbill.automaton.State.LeavingStateCallback;
-import org.killbill.billing.ObjectType;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.core.sm.PluginControlPaymentAutomatonRunner;
 import org.killbill.billing.payment.api.TransactionStatus;
@@ -70,8 +69,7 @@ public class DefaultControlCompleted implements EnteringStateCallback {
                                                                                            paymentStateContext.getInternalCallContext());
 
         if (retriedState.getName().equals(state.getName()) && !isUnknownTransaction()) {
-            retryServiceScheduler.scheduleRetry(ObjectType.PAYMENT_ATTEMPT, attempt.getId(), attempt.getId(), attempt.getTenantRecordId(),
-                                                paymentStateContext.getPaymentControlPluginNames(), paymentStateContext.getRetryDate());
+            retryServiceScheduler.scheduleRetry(attempt.getId(), paymentStateContext.getPaymentControlPluginNames(), paymentStateContext.getRetryDate(), paymentStateContext.getInternalCallContext());
         }
     }
 
@@ -125,6 +125,7 @@ public abstract class OperationControlCallback extends OperationCallbackBase<Pay
                                                                                                                 paymentStateContext.getPaymentMethodId(),
                                                                                                                 paymentStateControlContext.getAttemptId(),
                                                                                                                 result.getId(),
+                                                                                                                result,
                                                                                                                 result.getExternalKey(),
                                                                                                                 transaction.getId(),
                                                                                                                 paymentStateContext.getPaymentTransactionExternalKey(),
@@ -232,6 +233,7 @@ public abstract class OperationControlCallback extends OperationCallbackBase<Pay
                                                                                                      paymentControlContext.getPaymentMethodId(),
                                                                                                      paymentStateControlContext.getAttemptId(),
                                                                                                      paymentControlContext.getPaymentId(),
+                                                                                                     ((PaymentStateControlContext) paymentStateContext).getResult(),
                                                                                                      paymentControlContext.getPaymentExternalKey(),
                                                                                                      paymentControlContext.getTransactionId(),
                                                                                                      paymentControlContext.getTransactionExternalKey(),
@@ -46,7 +46,7 @@ public class ChargebackInitiated extends PaymentLeavingStateCallback {
         // Sanity: chargeback reversals can only happen after a successful chargeback
         if (OperationResult.FAILURE.equals(paymentStateContext.getOverridePluginOperationResult())) {
             final List<PaymentTransactionModelDao> paymentTransactionsForCurrentPayment = paymentStateContext.getPaymentId() != null ?
-                                                                                          daoHelper.getPaymentDao().getTransactionsForPayment(paymentStateContext.getPaymentId(), paymentStateContext.getInternalCallContext()) :
+                                                                                          daoHelper.getTransactionsForPayment() :
                                                                                           ImmutableList.<PaymentTransactionModelDao>of();
             final Iterable<PaymentTransactionModelDao> existingPaymentTransactionsForTransactionIdOrKey = filterExistingPaymentTransactionsForTransactionIdOrKey(paymentTransactionsForCurrentPayment, paymentStateContext.getTransactionId(), paymentStateContext.getPaymentTransactionExternalKey());
 
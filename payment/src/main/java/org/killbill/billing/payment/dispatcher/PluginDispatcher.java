@@ -18,6 +18,8 @@
 
 package org.killbill.billing.payment.dispatcher;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -34,6 +36,7 @@ import org.killbill.commons.request.Request;
 import org.slf4j.MDC;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 
 public class PluginDispatcher<ReturnType> {
 
@@ -55,7 +58,50 @@ public class PluginDispatcher<ReturnType> {
     @VisibleForTesting
     ReturnType dispatchWithTimeout(final Callable<PluginDispatcherReturnType<ReturnType>> task, final long timeout, final TimeUnit unit)
             throws TimeoutException, ExecutionException, InterruptedException {
+        final Future<PluginDispatcherReturnType<ReturnType>> future = submit(task);
+        return getReturnType(future, timeout, unit);
+    }
+
+    // Run the tasks in parallel, with at most maxConcurrentTasks of them in flight, and return their results (in order)
+    public List<ReturnType> dispatchAllWithTimeout(final List<Callable<PluginDispatcherReturnType<ReturnType>>> tasks, final int maxConcurrentTasks)
+            throws TimeoutException, ExecutionException, InterruptedException {
+        final List<ReturnType> result = new ArrayList<ReturnType>(tasks.size());
+        if (paymentExecutors.isPluginExecutorThread()) {
+            // Don't wait on the (bounded) plugin executor from one of its own threads
+            for (final Callable<PluginDispatcherReturnType<ReturnType>> task : tasks) {
+                try {
+                    result.add(task.call().getReturnType());
+                } catch (final Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+            return result;
+        }
+
+        for (final List<Callable<PluginDispatcherReturnType<ReturnType>>> batch : Lists.partition(tasks, Math.max(1, maxConcurrentTasks))) {
+            final List<Future<PluginDispatcherReturnType<ReturnType>>> futures = new ArrayList<Future<PluginDispatcherReturnType<ReturnType>>>(batch.size());
+            for (final Callable<PluginDispatcherReturnType<ReturnType>> task : batch) {
+                futures.add(submit(task));
+            }
 
+            boolean success = false;
+            try {
+                for (final Future<PluginDispatcherReturnType<ReturnType>> future : futures) {
+                    result.add(getReturnType(future, timeoutSeconds, DEFAULT_PLUGIN_TIMEOUT_UNIT));
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    for (final Future<PluginDispatcherReturnType<ReturnType>> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Future<PluginDispatcherReturnType<ReturnType>> submit(final Callable<PluginDispatcherReturnType<ReturnType>> task) {
         final ExecutorService pluginExecutor = paymentExecutors.getPluginExecutorService();
 
         // Wrap existing callable to keep the original requestId
@@ -66,7 +112,11 @@ public class PluginDispatcher<ReturnType> {
                                                                                                                      MDC.getCopyOfContextMap(),
                                                                                                                      task);
 
-        final Future<PluginDispatcherReturnType<ReturnType>> future = pluginExecutor.submit(callableWithRequestData);
+        return pluginExecutor.submit(callableWithRequestData);
+    }
+
+    private ReturnType getReturnType(final Future<PluginDispatcherReturnType<ReturnType>> future, final long timeout, final TimeUnit unit)
+            throws TimeoutException, ExecutionException, InterruptedException {
         final PluginDispatcherReturnType<ReturnType> pluginDispatcherResult = future.get(timeout, unit);
 
         if (pluginDispatcherResult instanceof WithProfilingPluginDispatcherReturnType) {
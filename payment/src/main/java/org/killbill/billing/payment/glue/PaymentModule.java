@@ -18,6 +18,8 @@
 
 package org.killbill.billing.payment.glue;
 
+import java.util.Random;
+
 import javax.inject.Provider;
 
 import org.killbill.automaton.DefaultStateMachineConfig;
@@ -34,6 +36,7 @@ import org.killbill.billing.payment.api.PaymentService;
 import org.killbill.billing.payment.bus.PaymentBusEventHandler;
 import org.killbill.billing.payment.config.MultiTenantPaymentConfig;
 import org.killbill.billing.payment.caching.EhCacheStateMachineConfigCache;
+import org.killbill.billing.payment.caching.PaymentMethodPluginInfoCache;
 import org.killbill.billing.payment.caching.StateMachineConfigCache;
 import org.killbill.billing.payment.caching.StateMachineConfigCacheInvalidationCallback;
 import org.killbill.billing.payment.core.PaymentExecutors;
@@ -57,6 +60,7 @@ import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.payment.retry.BaseRetryService.RetryServiceScheduler;
 import org.killbill.billing.payment.retry.DefaultRetryService;
 import org.killbill.billing.payment.retry.DefaultRetryService.DefaultRetryServiceScheduler;
+import org.killbill.billing.payment.retry.RetryPlanner;
 import org.killbill.billing.payment.retry.RetryService;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.util.config.definition.PaymentConfig;
@@ -77,6 +81,8 @@ public class PaymentModule extends KillBillModule {
 
     public static final String RETRYABLE_NAMED = "Retryable";
 
+    public static final String RETRY_JITTER_NAMED = "RetryJitter";
+
     public static final String STATE_MACHINE_RETRY = "RetryStateMachine";
 
     @VisibleForTesting
@@ -109,6 +115,8 @@ public class PaymentModule extends KillBillModule {
 
         bind(DefaultRetryServiceScheduler.class).asEagerSingleton();
         bind(RetryServiceScheduler.class).annotatedWith(Names.named(RETRYABLE_NAMED)).to(DefaultRetryServiceScheduler.class);
+        bind(Random.class).annotatedWith(Names.named(RETRY_JITTER_NAMED)).toInstance(new Random());
+        bind(RetryPlanner.class).asEagerSingleton();
     }
 
     protected void installStateMachines() {
@@ -136,6 +144,7 @@ public class PaymentModule extends KillBillModule {
         bind(PluginControlPaymentProcessor.class).asEagerSingleton();
         bind(PaymentGatewayProcessor.class).asEagerSingleton();
         bind(PaymentMethodProcessor.class).asEagerSingleton();
+        bind(PaymentMethodPluginInfoCache.class).asEagerSingleton();
     }
 
     @Override
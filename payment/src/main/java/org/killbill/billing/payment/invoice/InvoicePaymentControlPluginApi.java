@@ -18,8 +18,9 @@
 package org.killbill.billing.payment.invoice;
 
 import java.math.BigDecimal;
-import java.util.Collection;
-import java.util.Collections;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -47,39 +48,41 @@ import org.killbill.billing.control.plugin.api.PriorPaymentControlResult;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.invoice.api.InvoiceInternalApi.IncompletePaymentAttemptResolver;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoicePayment;
-import org.killbill.billing.invoice.api.InvoicePaymentType;
 import org.killbill.billing.invoice.api.InvoiceStatus;
+import org.killbill.billing.payment.api.DefaultPaymentTransaction;
+import org.killbill.billing.payment.api.Payment;
 import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentTransaction;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.core.sm.control.ControlPluginRunner.DefaultPaymentControlContext;
 import org.killbill.billing.payment.dao.PaymentDao;
 import org.killbill.billing.payment.dao.PaymentModelDao;
 import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
 import org.killbill.billing.payment.glue.PaymentModule;
 import org.killbill.billing.payment.invoice.dao.InvoicePaymentControlDao;
+import org.killbill.billing.payment.invoice.dao.InvoicePaymentControlDao.AutoPayOffEntriesCallback;
 import org.killbill.billing.payment.invoice.dao.PluginAutoPayOffModelDao;
 import org.killbill.billing.payment.retry.BaseRetryService.RetryServiceScheduler;
 import org.killbill.billing.payment.retry.DefaultFailureCallResult;
 import org.killbill.billing.payment.retry.DefaultOnSuccessPaymentControlResult;
 import org.killbill.billing.payment.retry.DefaultPriorPaymentControlResult;
-import org.killbill.billing.util.api.TagUserApi;
-import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.payment.retry.RetryPlanner;
+import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.config.definition.PaymentConfig;
-import org.killbill.billing.util.tag.ControlTagType;
-import org.killbill.billing.util.tag.Tag;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -97,10 +100,11 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
 
     private final PaymentConfig paymentConfig;
     private final InvoiceInternalApi invoiceApi;
-    private final TagUserApi tagApi;
+    private final TagInternalApi tagApi;
     private final PaymentDao paymentDao;
     private final InvoicePaymentControlDao controlDao;
     private final RetryServiceScheduler retryServiceScheduler;
+    private final RetryPlanner retryPlanner;
     private final InternalCallContextFactory internalCallContextFactory;
     private final Clock clock;
     private final AccountInternalApi accountApi;
@@ -109,9 +113,10 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
 
     @Inject
     public InvoicePaymentControlPluginApi(final PaymentConfig paymentConfig,
-                                          final InvoiceInternalApi invoiceApi, final TagUserApi tagApi,
+                                          final InvoiceInternalApi invoiceApi, final TagInternalApi tagApi,
                                           final PaymentDao paymentDao, final InvoicePaymentControlDao invoicePaymentControlDao,
                                           @Named(PaymentModule.RETRYABLE_NAMED) final RetryServiceScheduler retryServiceScheduler,
+                                          final RetryPlanner retryPlanner,
                                           final InternalCallContextFactory internalCallContextFactory, final Clock clock,
                                           final AccountInternalApi accountApi) {
         this.paymentConfig = paymentConfig;
@@ -120,6 +125,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         this.paymentDao = paymentDao;
         this.controlDao = invoicePaymentControlDao;
         this.retryServiceScheduler = retryServiceScheduler;
+        this.retryPlanner = retryPlanner;
         this.internalCallContextFactory = internalCallContextFactory;
         this.clock = clock;
         this.accountApi = accountApi;
@@ -273,7 +279,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
                     log.error("InvoicePaymentControlPluginApi onFailureCall failed ton update invoice for attemptId = " + paymentControlContext.getAttemptPaymentId() + ", transactionType  = " + transactionType, e);
                 }
 
-                nextRetryDate = computeNextRetryDate(paymentControlContext.getPaymentExternalKey(), paymentControlContext.isApiPayment(), internalContext);
+                nextRetryDate = computeNextRetryDate(paymentControlContext, internalContext);
                 break;
             case CREDIT:
             case REFUND:
@@ -294,12 +300,20 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
     }
 
     public void process_AUTO_PAY_OFF_removal(final UUID accountId, final InternalCallContext internalCallContext) {
-        final List<PluginAutoPayOffModelDao> entries = controlDao.getAutoPayOffEntry(accountId);
-        for (final PluginAutoPayOffModelDao cur : entries) {
-            // TODO In theory we should pass not only PLUGIN_NAME, but also all the plugin list associated which the original call
-            retryServiceScheduler.scheduleRetry(ObjectType.ACCOUNT, accountId, cur.getAttemptId(), internalCallContext.getTenantRecordId(), ImmutableList.<String>of(PLUGIN_NAME), clock.getUTCNow());
-        }
-        controlDao.removeAutoPayOffEntry(accountId);
+        controlDao.processAndRemoveAutoPayOffEntries(accountId, new AutoPayOffEntriesCallback() {
+            @Override
+            public void process(final List<PluginAutoPayOffModelDao> entries, final Connection connection) {
+                final Map<UUID, DateTime> timeOfRetryByAttemptId = new LinkedHashMap<UUID, DateTime>();
+                for (final PluginAutoPayOffModelDao cur : entries) {
+                    timeOfRetryByAttemptId.put(cur.getAttemptId(), retryPlanner.addJitter(clock.getUTCNow(), internalCallContext));
+                }
+                // TODO In theory we should pass not only PLUGIN_NAME, but also all the plugin list associated which the original call
+                if (!retryServiceScheduler.scheduleRetriesFromTransaction(connection, timeOfRetryByAttemptId, ImmutableList.<String>of(PLUGIN_NAME), internalCallContext)) {
+                    // Roll back: the entries stay active (and the retries already recorded are discarded) instead of being lost
+                    throw new IllegalStateException(String.format("Failed to schedule the retries for the AUTO_PAY_OFF entries of accountId='%s'", accountId));
+                }
+            }
+        });
     }
 
     private UUID getInvoiceId(final Iterable<PluginProperty> pluginProperties) throws PaymentControlApiException {
@@ -344,7 +358,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
                 return new DefaultPriorPaymentControlResult(true);
             }
 
-            if (!isAborted && insert_AUTO_PAY_OFF_ifRequired(paymentControlPluginContext, requestedAmount)) {
+            if (!isAborted && insert_AUTO_PAY_OFF_ifRequired(paymentControlPluginContext, requestedAmount, internalContext)) {
                 return new DefaultPriorPaymentControlResult(true);
             }
 
@@ -365,7 +379,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
                                                     paymentControlPluginContext.getCurrency(),
                                                     paymentControlPluginContext.getCurrency(),
                                                     // Likely to be null, but we don't care as we use the transactionExternalKey
-                                                    // to match the operation in the checkForIncompleteInvoicePaymentAndRepair logic below
+                                                    // to match the operation in the findSuccessfulPaymentTransaction logic below
                                                     paymentControlPluginContext.getPaymentId(),
                                                     paymentControlPluginContext.getTransactionExternalKey(),
                                                     paymentControlPluginContext.getCreatedDate(),
@@ -484,161 +498,94 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         throw new PaymentControlApiException(String.format("Unable to find invoice item for id %s", itemId), new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_EXCEPTION, "Invalid plugin properties"));
     }
 
-    private DateTime computeNextRetryDate(final String paymentExternalKey, final boolean isApiAPayment, final InternalCallContext internalContext) {
+    private DateTime computeNextRetryDate(final PaymentControlContext paymentControlContext, final InternalCallContext internalContext) {
 
         // Don't retry call that come from API.
-        if (isApiAPayment) {
+        if (paymentControlContext.isApiPayment()) {
             return null;
         }
 
-        final List<PaymentTransactionModelDao> purchasedTransactions = getPurchasedTransactions(paymentExternalKey, internalContext);
-        if (purchasedTransactions.size() == 0) {
-            return null;
-        }
-        final PaymentTransactionModelDao lastTransaction = purchasedTransactions.get(purchasedTransactions.size() - 1);
-        switch (lastTransaction.getTransactionStatus()) {
-            case PAYMENT_FAILURE:
-                return getNextRetryDateForPaymentFailure(purchasedTransactions, internalContext);
-
-            case PLUGIN_FAILURE:
-                return getNextRetryDateForPluginFailure(purchasedTransactions, internalContext);
-
-            case UNKNOWN:
-            default:
-                return null;
-        }
+        return retryPlanner.computeNextRetryDate(getPurchaseTransactionStatuses(paymentControlContext, internalContext), internalContext);
     }
 
-    private DateTime getNextRetryDateForPaymentFailure(final List<PaymentTransactionModelDao> purchasedTransactions, final InternalCallContext internalContext) {
+    private List<TransactionStatus> getPurchaseTransactionStatuses(final PaymentControlContext paymentControlContext, final InternalCallContext internalContext) {
+        final List<TransactionStatus> result = new ArrayList<TransactionStatus>();
 
-        DateTime result = null;
-        final List<Integer> retryDays = paymentConfig.getPaymentFailureRetryDays(internalContext);
-        final int attemptsInState = getNumberAttemptsInState(purchasedTransactions, TransactionStatus.PAYMENT_FAILURE);
-        final int retryCount = (attemptsInState - 1) >= 0 ? (attemptsInState - 1) : 0;
-        if (retryCount < retryDays.size()) {
-            final int retryInDays;
-            final DateTime nextRetryDate = clock.getUTCNow();
-            try {
-                retryInDays = retryDays.get(retryCount);
-                result = nextRetryDate.plusDays(retryInDays);
-                log.debug("Next retryDate={}, retryInDays={}, retryCount={}, now={}", result, retryInDays, retryCount, clock.getUTCNow());
-            } catch (final NumberFormatException ex) {
-                log.error("Could not get retry day for retry count {}", retryCount);
+        // The payment state machine hands us the payment it just updated, no need to go back to the database
+        final Payment payment = paymentControlContext instanceof DefaultPaymentControlContext ? ((DefaultPaymentControlContext) paymentControlContext).getPayment() : null;
+        if (payment != null) {
+            for (final PaymentTransaction transaction : payment.getTransactions()) {
+                if (transaction.getTransactionType() == TransactionType.PURCHASE) {
+                    result.add(transaction.getTransactionStatus());
+                }
             }
+            return result;
         }
-        return result;
-    }
-
-    private DateTime getNextRetryDateForPluginFailure(final List<PaymentTransactionModelDao> purchasedTransactions, final InternalCallContext internalContext) {
 
-        DateTime result = null;
-        final int attemptsInState = getNumberAttemptsInState(purchasedTransactions, TransactionStatus.PLUGIN_FAILURE);
-        final int retryAttempt = (attemptsInState - 1) >= 0 ? (attemptsInState - 1) : 0;
-
-        if (retryAttempt < paymentConfig.getPluginFailureRetryMaxAttempts(internalContext)) {
-            int nbSec = paymentConfig.getPluginFailureInitialRetryInSec(internalContext);
-            int remainingAttempts = retryAttempt;
-            while (--remainingAttempts > 0) {
-                nbSec = nbSec * paymentConfig.getPluginFailureRetryMultiplier(internalContext);
+        final UUID paymentId;
+        if (paymentControlContext.getPaymentId() != null) {
+            paymentId = paymentControlContext.getPaymentId();
+        } else {
+            final PaymentModelDao paymentModelDao = paymentDao.getPaymentByExternalKey(paymentControlContext.getPaymentExternalKey(), internalContext);
+            if (paymentModelDao == null) {
+                return result;
+            }
+            paymentId = paymentModelDao.getId();
+        }
+        for (final PaymentTransactionModelDao transaction : paymentDao.getTransactionsForPayment(paymentId, internalContext)) {
+            if (transaction.getTransactionType() == TransactionType.PURCHASE) {
+                result.add(transaction.getTransactionStatus());
             }
-            result = clock.getUTCNow().plusSeconds(nbSec);
-            log.debug("Next retryDate={}, retryAttempt={}, now={}", result, retryAttempt, clock.getUTCNow());
         }
         return result;
     }
 
-    private int getNumberAttemptsInState(final Collection<PaymentTransactionModelDao> allTransactions, final TransactionStatus... statuses) {
-        if (allTransactions == null || allTransactions.size() == 0) {
-            return 0;
-        }
-        return Collections2.filter(allTransactions, new Predicate<PaymentTransactionModelDao>() {
+    private Invoice getAndSanitizeInvoice(final UUID invoiceId, final InternalCallContext context) throws InvoiceApiException {
+        // CBA rebalancing and retrieval of the invoice happen in a single invoice transaction, the payment lookup below runs outside of it
+        return invoiceApi.getAndSanitizeInvoiceForPayment(invoiceId, new IncompletePaymentAttemptResolver() {
             @Override
-            public boolean apply(final PaymentTransactionModelDao input) {
-                for (final TransactionStatus cur : statuses) {
-                    if (input.getTransactionStatus() == cur) {
-                        return true;
-                    }
-                }
-                return false;
+            public PaymentTransaction getSuccessfulPaymentTransaction(final InvoicePayment incompletePaymentAttempt) {
+                return findSuccessfulPaymentTransaction(incompletePaymentAttempt, context);
             }
-        }).size();
+        }, context);
     }
 
-    private List<PaymentTransactionModelDao> getPurchasedTransactions(final String paymentExternalKey, final InternalCallContext internalContext) {
-        final PaymentModelDao payment = paymentDao.getPaymentByExternalKey(paymentExternalKey, internalContext);
-        if (payment == null) {
-            return Collections.emptyList();
-        }
-        final List<PaymentTransactionModelDao> transactions = paymentDao.getTransactionsForPayment(payment.getId(), internalContext);
-        if (transactions == null || transactions.size() == 0) {
-            return Collections.emptyList();
-        }
-        return ImmutableList.copyOf(Iterables.filter(transactions, new Predicate<PaymentTransactionModelDao>() {
+    private PaymentTransaction findSuccessfulPaymentTransaction(final InvoicePayment incompleteInvoicePayment, final InternalCallContext internalContext) {
+        // Verify the state of the payment transaction matching that (incomplete) ATTEMPT
+        final String transactionExternalKey = incompleteInvoicePayment.getPaymentCookieId();
+        final List<PaymentTransactionModelDao> transactions = paymentDao.getPaymentTransactionsByExternalKey(transactionExternalKey, internalContext);
+        final PaymentTransactionModelDao successfulTransaction = Iterables.tryFind(transactions, new Predicate<PaymentTransactionModelDao>() {
             @Override
             public boolean apply(final PaymentTransactionModelDao input) {
-                return input.getTransactionType() == TransactionType.PURCHASE;
-            }
-        }));
-    }
-
-    private Invoice getAndSanitizeInvoice(final UUID invoiceId, final InternalCallContext context) throws InvoiceApiException {
-        final Invoice invoicePriorRebalancing = invoiceApi.getInvoiceById(invoiceId, context);
-        invoiceApi.consumeExistingCBAOnAccountWithUnpaidInvoices(invoicePriorRebalancing.getAccountId(), context);
-        final Invoice invoice = invoiceApi.getInvoiceById(invoiceId, context);
-
-        if (checkForIncompleteInvoicePaymentAndRepair(invoice, context)) {
-            // Fetch new repaired 'invoice'
-            return invoiceApi.getInvoiceById(invoiceId, context);
-        } else {
-            return invoice;
-        }
-    }
-
-    private boolean checkForIncompleteInvoicePaymentAndRepair(final Invoice invoice, final InternalCallContext internalContext) throws InvoiceApiException {
-
-        final List<InvoicePayment> invoicePayments = invoice.getPayments();
-
-        // Look for ATTEMPT matching that invoiceId that are not successful and extract matching paymentTransaction
-        final InvoicePayment incompleteInvoicePayment = Iterables.tryFind(invoicePayments, new Predicate<InvoicePayment>() {
-            @Override
-            public boolean apply(final InvoicePayment input) {
-                return input.getType() == InvoicePaymentType.ATTEMPT && !input.isSuccess();
+                //
+                // In reality this is more tricky because the matching transaction could be an UNKNOWN or PENDING (unsupported by the plugin) state
+                // In case of UNKNOWN, we don't know what to do: fixing it could result in not paying, and not fixing it could result in double payment
+                // Current code ignores it, which means we might end up in doing a double payment in that very edgy scenario, and customer would have to request a refund.
+                //
+                return input.getTransactionStatus() == TransactionStatus.SUCCESS;
             }
         }).orNull();
 
-        // If such (incomplete) paymentTransaction exists, verify the state of the payment transaction
-        if (incompleteInvoicePayment != null) {
-            final String transactionExternalKey = incompleteInvoicePayment.getPaymentCookieId();
-            final List<PaymentTransactionModelDao> transactions = paymentDao.getPaymentTransactionsByExternalKey(transactionExternalKey, internalContext);
-            final PaymentTransactionModelDao successfulTransaction = Iterables.tryFind(transactions, new Predicate<PaymentTransactionModelDao>() {
-                @Override
-                public boolean apply(final PaymentTransactionModelDao input) {
-                    //
-                    // In reality this is more tricky because the matching transaction could be an UNKNOWN or PENDING (unsupported by the plugin) state
-                    // In case of UNKNOWN, we don't know what to do: fixing it could result in not paying, and not fixing it could result in double payment
-                    // Current code ignores it, which means we might end up in doing a double payment in that very edgy scenario, and customer would have to request a refund.
-                    //
-                    return input.getTransactionStatus() == TransactionStatus.SUCCESS;
-                }
-            }).orNull();
-
-            if (successfulTransaction != null) {
-                log.info(String.format("Detected an incomplete invoicePayment row for invoiceId='%s' and transactionExternalKey='%s', will correct status", invoice.getId(), successfulTransaction.getTransactionExternalKey()));
-
-                invoiceApi.recordPaymentAttemptCompletion(invoice.getId(),
-                                                          successfulTransaction.getAmount(),
-                                                          successfulTransaction.getCurrency(),
-                                                          successfulTransaction.getProcessedCurrency(),
-                                                          successfulTransaction.getPaymentId(),
-                                                          successfulTransaction.getTransactionExternalKey(),
-                                                          successfulTransaction.getCreatedDate(),
-                                                          true,
-                                                          internalContext);
-                return true;
-
-            }
+        if (successfulTransaction == null) {
+            return null;
         }
-        return false;
+
+        return new DefaultPaymentTransaction(successfulTransaction.getId(),
+                                             successfulTransaction.getAttemptId(),
+                                             successfulTransaction.getTransactionExternalKey(),
+                                             successfulTransaction.getCreatedDate(),
+                                             successfulTransaction.getUpdatedDate(),
+                                             successfulTransaction.getPaymentId(),
+                                             successfulTransaction.getTransactionType(),
+                                             successfulTransaction.getEffectiveDate(),
+                                             successfulTransaction.getTransactionStatus(),
+                                             successfulTransaction.getAmount(),
+                                             successfulTransaction.getCurrency(),
+                                             successfulTransaction.getProcessedAmount(),
+                                             successfulTransaction.getProcessedCurrency(),
+                                             successfulTransaction.getGatewayErrorCode(),
+                                             successfulTransaction.getGatewayErrorMsg(),
+                                             null);
     }
 
     private BigDecimal validateAndComputePaymentAmount(final Invoice invoice, @Nullable final BigDecimal inputAmount, final boolean isApiPayment) {
@@ -660,8 +607,8 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         }
     }
 
-    private boolean insert_AUTO_PAY_OFF_ifRequired(final PaymentControlContext paymentControlContext, final BigDecimal computedAmount) {
-        if (paymentControlContext.isApiPayment() || !isAccountAutoPayOff(paymentControlContext.getAccountId(), paymentControlContext)) {
+    private boolean insert_AUTO_PAY_OFF_ifRequired(final PaymentControlContext paymentControlContext, final BigDecimal computedAmount, final InternalCallContext internalContext) {
+        if (paymentControlContext.isApiPayment() || !isAccountAutoPayOff(paymentControlContext.getAccountId(), internalContext)) {
             return false;
         }
         final PluginAutoPayOffModelDao data = new PluginAutoPayOffModelDao(paymentControlContext.getAttemptPaymentId(), paymentControlContext.getPaymentExternalKey(), paymentControlContext.getTransactionExternalKey(),
@@ -672,13 +619,7 @@ public final class InvoicePaymentControlPluginApi implements PaymentControlPlugi
         return true;
     }
 
-    private boolean isAccountAutoPayOff(final UUID accountId, final CallContext callContext) {
-        final List<Tag> accountTags = tagApi.getTagsForAccount(accountId, false, callContext);
-        return ControlTagType.isAutoPayOff(Collections2.transform(accountTags, new Function<Tag, UUID>() {
-            @Override
-            public UUID apply(final Tag tag) {
-                return tag.getTagDefinitionId();
-            }
-        }));
+    private boolean isAccountAutoPayOff(final UUID accountId, final InternalCallContext internalContext) {
+        return ControlTagBits.isAutoPayOff(tagApi.getControlTags(accountId, ObjectType.ACCOUNT, internalContext));
     }
 }
@@ -18,6 +18,7 @@
 package org.killbill.billing.payment.invoice.dao;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -32,6 +33,8 @@ import org.joda.time.DateTimeZone;
 import org.killbill.billing.catalog.api.Currency;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
 import org.skife.jdbi.v2.tweak.HandleCallback;
 
 public class InvoicePaymentControlDao {
@@ -64,26 +67,7 @@ public class InvoicePaymentControlDao {
         return dbi.withHandle(new HandleCallback<List<PluginAutoPayOffModelDao>>() {
             @Override
             public List<PluginAutoPayOffModelDao> withHandle(final Handle handle) throws Exception {
-                final List<Map<String, Object>> queryResult = handle.select("select * from _invoice_payment_control_plugin_auto_pay_off where account_id = ? and is_active", accountId.toString());
-                final List<PluginAutoPayOffModelDao> result = new ArrayList<PluginAutoPayOffModelDao>(queryResult.size());
-                for (final Map<String, Object> row : queryResult) {
-
-                    final PluginAutoPayOffModelDao entry = new PluginAutoPayOffModelDao(Long.valueOf(row.get("record_id").toString()),
-                                                                                        UUID.fromString((String) row.get("attempt_id")),
-                                                                                        (String) row.get("payment_external_key"),
-                                                                                        (String) row.get("transaction_external_key"),
-                                                                                        UUID.fromString((String) row.get("account_id")),
-                                                                                        (String) row.get("plugin_name"),
-                                                                                        row.get("payment_id") != null ? UUID.fromString((String) row.get("payment_id")) : null,
-                                                                                        UUID.fromString((String) row.get("payment_method_id")),
-                                                                                        (BigDecimal) row.get("amount"),
-                                                                                        Currency.valueOf((String) row.get("currency")),
-                                                                                        (String) row.get("created_by"),
-                                                                                        getDateTime(row.get("created_date")));
-                    result.add(entry);
-
-                }
-                return result;
+                return getAutoPayOffEntry(handle, accountId);
             }
         });
     }
@@ -92,14 +76,61 @@ public class InvoicePaymentControlDao {
         dbi.withHandle(new HandleCallback<Void>() {
             @Override
             public Void withHandle(final Handle handle) throws Exception {
-                handle.execute("update _invoice_payment_control_plugin_auto_pay_off set is_active = false where account_id = ?", accountId.toString());
+                removeAutoPayOffEntry(handle, accountId);
+                return null;
+            }
+        });
+    }
+
+    // Hand the active entries over to the callback and deactivate them, in a single transaction
+    public void processAndRemoveAutoPayOffEntries(final UUID accountId, final AutoPayOffEntriesCallback callback) {
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final List<PluginAutoPayOffModelDao> entries = getAutoPayOffEntry(handle, accountId);
+                if (!entries.isEmpty()) {
+                    callback.process(entries, handle.getConnection());
+                    removeAutoPayOffEntry(handle, accountId);
+                }
                 return null;
             }
         });
     }
 
+    private List<PluginAutoPayOffModelDao> getAutoPayOffEntry(final Handle handle, final UUID accountId) throws SQLException {
+        final List<Map<String, Object>> queryResult = handle.select("select * from _invoice_payment_control_plugin_auto_pay_off where account_id = ? and is_active", accountId.toString());
+        final List<PluginAutoPayOffModelDao> result = new ArrayList<PluginAutoPayOffModelDao>(queryResult.size());
+        for (final Map<String, Object> row : queryResult) {
+
+            final PluginAutoPayOffModelDao entry = new PluginAutoPayOffModelDao(Long.valueOf(row.get("record_id").toString()),
+                                                                                UUID.fromString((String) row.get("attempt_id")),
+                                                                                (String) row.get("payment_external_key"),
+                                                                                (String) row.get("transaction_external_key"),
+                                                                                UUID.fromString((String) row.get("account_id")),
+                                                                                (String) row.get("plugin_name"),
+                                                                                row.get("payment_id") != null ? UUID.fromString((String) row.get("payment_id")) : null,
+                                                                                UUID.fromString((String) row.get("payment_method_id")),
+                                                                                (BigDecimal) row.get("amount"),
+                                                                                Currency.valueOf((String) row.get("currency")),
+                                                                                (String) row.get("created_by"),
+                                                                                getDateTime(row.get("created_date")));
+            result.add(entry);
+
+        }
+        return result;
+    }
+
+    private void removeAutoPayOffEntry(final Handle handle, final UUID accountId) {
+        handle.execute("update _invoice_payment_control_plugin_auto_pay_off set is_active = false where account_id = ?", accountId.toString());
+    }
+
     protected DateTime getDateTime(final Object timestamp) throws SQLException {
         final Timestamp resultStamp = (Timestamp) timestamp;
         return new DateTime(resultStamp).toDateTime(DateTimeZone.UTC);
     }
+
+    public interface AutoPayOffEntriesCallback {
+
+        void process(List<PluginAutoPayOffModelDao> entries, Connection connection) throws Exception;
+    }
 }
@@ -19,9 +19,14 @@
 package org.killbill.billing.payment.retry;
 
 import java.io.IOException;
+import java.sql.Connection;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -39,6 +44,7 @@ import org.killbill.notificationq.api.NotificationQueueService.NotificationQueue
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 
 public abstract class BaseRetryService implements RetryService {
@@ -109,26 +115,47 @@ public abstract class BaseRetryService implements RetryService {
             return scheduleRetryInternal(objectType, objectId, attemptId, tenantRecordId, paymentControlPluginNames, timeOfRetry, null);
         }
 
+        // Use the caller context (account and tenant record ids) instead of looking it up again from the object id
+        public boolean scheduleRetry(final UUID attemptId, final List<String> paymentControlPluginNames, final DateTime timeOfRetry, final InternalCallContext context) {
+            return recordRetries(null, ImmutableMap.<UUID, DateTime>of(attemptId, timeOfRetry), paymentControlPluginNames, context);
+        }
+
+        // Record all the retries for the account at once, as part of the caller's transaction
+        public boolean scheduleRetriesFromTransaction(final Connection connection, final Map<UUID, DateTime> timeOfRetryByAttemptId, final List<String> paymentControlPluginNames, final InternalCallContext context) {
+            return recordRetries(connection, timeOfRetryByAttemptId, paymentControlPluginNames, context);
+        }
+
         private boolean scheduleRetryInternal(final ObjectType objectType, final UUID objectId, final UUID attemptId, final Long tenantRecordId, final List<String> paymentControlPluginNames, final DateTime timeOfRetry, final EntitySqlDaoWrapperFactory transactionalDao) {
             final InternalCallContext context = createCallContextFromPaymentId(objectType, objectId, tenantRecordId);
+            final Connection connection = transactionalDao == null ? null : transactionalDao.getHandle().getConnection();
+            return recordRetries(connection, ImmutableMap.<UUID, DateTime>of(attemptId, timeOfRetry), paymentControlPluginNames, context);
+        }
 
+        private boolean recordRetries(@Nullable final Connection connection, final Map<UUID, DateTime> timeOfRetryByAttemptId, final List<String> paymentControlPluginNames, final InternalCallContext context) {
+            final NotificationQueue retryQueue;
             try {
-                final NotificationQueue retryQueue = notificationQueueService.getNotificationQueue(DefaultPaymentService.SERVICE_NAME, getQueueName());
-                final NotificationEvent key = new PaymentRetryNotificationKey(attemptId, paymentControlPluginNames);
-                if (retryQueue != null) {
-                    log.debug("Scheduling retry timeOfRetry={}, key={}", timeOfRetry, key);
-                    if (transactionalDao == null) {
-                        retryQueue.recordFutureNotification(timeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
-                    } else {
-                        retryQueue.recordFutureNotificationFromTransaction(transactionalDao.getHandle().getConnection(), timeOfRetry, key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
-                    }
-                }
+                retryQueue = notificationQueueService.getNotificationQueue(DefaultPaymentService.SERVICE_NAME, getQueueName());
             } catch (final NoSuchNotificationQueue e) {
                 log.error("Failed to retrieve notification queue='{}', service='{}'", getQueueName(), DefaultPaymentService.SERVICE_NAME);
                 return false;
-            } catch (final IOException e) {
-                log.error("Failed to serialize notificationQueue event for objectId='{}'", objectId);
-                return false;
+            }
+            if (retryQueue == null) {
+                return true;
+            }
+
+            for (final Entry<UUID, DateTime> entry : timeOfRetryByAttemptId.entrySet()) {
+                final NotificationEvent key = new PaymentRetryNotificationKey(entry.getKey(), paymentControlPluginNames);
+                log.debug("Scheduling retry timeOfRetry={}, key={}", entry.getValue(), key);
+                try {
+                    if (connection == null) {
+                        retryQueue.recordFutureNotification(entry.getValue(), key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
+                    } else {
+                        retryQueue.recordFutureNotificationFromTransaction(connection, entry.getValue(), key, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
+                    }
+                } catch (final IOException e) {
+                    log.error("Failed to serialize notificationQueue event for attemptId='{}'", entry.getKey());
+                    return false;
+                }
             }
             return true;
         }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.retry;
+
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.glue.PaymentModule;
+import org.killbill.billing.util.config.definition.PaymentConfig;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//
+// Computes when a failed payment should be retried. The attempt counts are derived from the (PURCHASE) transactions the caller
+// already has at hand, and the computed dates are spread by a random jitter (org.killbill.payment.retry.jitter) so that payments failing
+// together (e.g. during a gateway outage) don't all come back at the exact same time.
+//
+public class RetryPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPlanner.class);
+
+    private final PaymentConfig paymentConfig;
+    private final Clock clock;
+    private final Random random;
+
+    @Inject
+    public RetryPlanner(final PaymentConfig paymentConfig, final Clock clock, @Named(PaymentModule.RETRY_JITTER_NAMED) final Random random) {
+        this.paymentConfig = paymentConfig;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    // Statuses of the PURCHASE transactions for the payment, ordered by creation date
+    @Nullable
+    public DateTime computeNextRetryDate(final List<TransactionStatus> purchaseTransactionStatuses, final InternalTenantContext context) {
+        if (purchaseTransactionStatuses.isEmpty()) {
+            return null;
+        }
+
+        int paymentFailures = 0;
+        int pluginFailures = 0;
+        for (final TransactionStatus transactionStatus : purchaseTransactionStatuses) {
+            if (transactionStatus == TransactionStatus.PAYMENT_FAILURE) {
+                paymentFailures++;
+            } else if (transactionStatus == TransactionStatus.PLUGIN_FAILURE) {
+                pluginFailures++;
+            }
+        }
+
+        final DateTime nextRetryDate;
+        switch (purchaseTransactionStatuses.get(purchaseTransactionStatuses.size() - 1)) {
+            case PAYMENT_FAILURE:
+                nextRetryDate = getNextRetryDateForPaymentFailure(paymentFailures, context);
+                break;
+
+            case PLUGIN_FAILURE:
+                nextRetryDate = getNextRetryDateForPluginFailure(pluginFailures, context);
+                break;
+
+            case UNKNOWN:
+            default:
+                nextRetryDate = null;
+        }
+        return nextRetryDate == null ? null : addJitter(nextRetryDate, context);
+    }
+
+    public DateTime addJitter(final DateTime retryDate, final InternalTenantContext context) {
+        final long maxJitterMillis = paymentConfig.getRetryJitter(context).getMillis();
+        if (maxJitterMillis <= 0) {
+            return retryDate;
+        }
+        return retryDate.plus((long) (random.nextDouble() * maxJitterMillis));
+    }
+
+    private DateTime getNextRetryDateForPaymentFailure(final int attemptsInState, final InternalTenantContext context) {
+        DateTime result = null;
+        final List<Integer> retryDays = paymentConfig.getPaymentFailureRetryDays(context);
+        final int retryCount = (attemptsInState - 1) >= 0 ? (attemptsInState - 1) : 0;
+        if (retryCount < retryDays.size()) {
+            final int retryInDays = retryDays.get(retryCount);
+            result = clock.getUTCNow().plusDays(retryInDays);
+            log.debug("Next retryDate={}, retryInDays={}, retryCount={}, now={}", result, retryInDays, retryCount, clock.getUTCNow());
+        }
+        return result;
+    }
+
+    private DateTime getNextRetryDateForPluginFailure(final int attemptsInState, final InternalTenantContext context) {
+        DateTime result = null;
+        final int retryAttempt = (attemptsInState - 1) >= 0 ? (attemptsInState - 1) : 0;
+        if (retryAttempt < paymentConfig.getPluginFailureRetryMaxAttempts(context)) {
+            int nbSec = paymentConfig.getPluginFailureInitialRetryInSec(context);
+            int remainingAttempts = retryAttempt;
+            while (--remainingAttempts > 0) {
+                nbSec = nbSec * paymentConfig.getPluginFailureRetryMultiplier(context);
+            }
+            result = clock.getUTCNow().plusSeconds(nbSec);
+            log.debug("Next retryDate={}, retryAttempt={}, now={}", result, retryAttempt, clock.getUTCNow());
+        }
+        return result;
+    }
+}
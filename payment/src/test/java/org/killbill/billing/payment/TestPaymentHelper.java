@@ -36,6 +36,7 @@ import org.killbill.billing.events.InvoiceCreationInternalEvent;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.invoice.api.InvoiceInternalApi.IncompletePaymentAttemptResolver;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.mock.MockAccountBuilder;
 import org.killbill.billing.payment.api.PaymentApi;
@@ -118,6 +119,7 @@ public class TestPaymentHelper {
         }
 
         Mockito.when(invoiceApi.getInvoiceById(Mockito.eq(invoice.getId()), Mockito.<InternalTenantContext>any())).thenReturn(invoice);
+        Mockito.when(invoiceApi.getAndSanitizeInvoiceForPayment(Mockito.eq(invoice.getId()), Mockito.<IncompletePaymentAttemptResolver>any(), Mockito.<InternalCallContext>any())).thenReturn(invoice);
         Mockito.when(invoiceApi.getInvoiceForPaymentId(Mockito.<UUID>any(), Mockito.<InternalCallContext>any())).thenReturn(invoice);
 
         final InvoiceCreationInternalEvent event = new MockInvoiceCreationEvent(invoice.getId(), invoice.getAccountId(),
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.awaitility.Duration;
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.control.plugin.api.PaymentApiType;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.payment.api.DefaultPayment;
+import org.killbill.billing.payment.api.DefaultPaymentTransaction;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentAttempt;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.core.sm.control.ControlPluginRunner.DefaultPaymentControlContext;
+import org.killbill.billing.payment.dao.PaymentAttemptModelDao;
+import org.killbill.billing.payment.glue.PaymentModule;
+import org.killbill.billing.payment.glue.TestPaymentModuleNoDB;
+import org.killbill.billing.payment.invoice.InvoicePaymentControlPluginApi;
+import org.killbill.billing.payment.invoice.dao.InvoicePaymentControlDao;
+import org.killbill.billing.payment.invoice.dao.InvoicePaymentControlDao.AutoPayOffEntriesCallback;
+import org.killbill.billing.payment.invoice.dao.PluginAutoPayOffModelDao;
+import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
+import org.killbill.billing.payment.retry.BaseRetryService.RetryServiceScheduler;
+import org.killbill.billing.payment.retry.RetryPlanner;
+import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.tag.TagInternalApi;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+import com.google.inject.util.Modules;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Awaitility.setDefaultPollInterval;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestRetryServiceWithJitter extends PaymentTestSuiteNoDB {
+
+    private static final int TIMEOUT = 10;
+    private static final int RETRY_JITTER_MINUTES = 60;
+    private static final int NB_OUTAGE_PAYMENTS = 20;
+
+    @Inject
+    private InvoicePaymentControlPluginApi invoicePaymentControlPluginApi;
+    @Inject
+    private TagInternalApi tagInternalApi;
+    @Inject
+    private RetryPlanner retryPlanner;
+    @Inject
+    @Named(PaymentModule.RETRYABLE_NAMED)
+    private RetryServiceScheduler retryServiceScheduler;
+
+    private MockPaymentProviderPlugin mockPaymentProviderPlugin;
+
+    @Override
+    protected KillbillConfigSource getConfigSource() {
+        return getConfigSource("/payment.properties",
+                               ImmutableMap.<String, String>of("org.killbill.payment.provider.default", MockPaymentProviderPlugin.PLUGIN_NAME,
+                                                               "killbill.payment.engine.events.off", "false",
+                                                               "org.killbill.payment.retry.days", "2,4,6",
+                                                               "org.killbill.payment.retry.jitter", RETRY_JITTER_MINUTES + "m"));
+    }
+
+    @Override
+    @BeforeClass(groups = "fast")
+    protected void beforeClass() throws Exception {
+        // Deterministic jitter: the retries of NB_OUTAGE_PAYMENTS consecutive failures are evenly spread over the jitter window
+        final Injector injector = Guice.createInjector(Modules.override(new TestPaymentModuleNoDB(configSource, getClock())).with(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Random.class).annotatedWith(Names.named(PaymentModule.RETRY_JITTER_NAMED)).toInstance(new EvenlySpreadRandom(NB_OUTAGE_PAYMENTS));
+            }
+        }));
+        injector.injectMembers(this);
+    }
+
+    @Override
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+
+        setDefaultPollInterval(Duration.ONE_HUNDRED_MILLISECONDS);
+
+        mockPaymentProviderPlugin = (MockPaymentProviderPlugin) registry.getServiceForName(MockPaymentProviderPlugin.PLUGIN_NAME);
+        mockPaymentProviderPlugin.clear();
+        retryService.initialize();
+        retryService.start();
+    }
+
+    @Override
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        super.afterMethod();
+        retryService.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testRetriesAreSpreadAfterOutage() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final BigDecimal amount = new BigDecimal("10.00");
+
+        // All payments fail at the same time (gateway outage)
+        final List<String> paymentExternalKeys = new ArrayList<String>();
+        for (int i = 0; i < NB_OUTAGE_PAYMENTS; i++) {
+            final Invoice invoice = testHelper.createTestInvoice(account, clock.getUTCToday(), Currency.USD);
+            invoice.addInvoiceItem(new MockRecurringInvoiceItem(invoice.getId(),
+                                                                account.getId(),
+                                                                UUID.randomUUID(),
+                                                                UUID.randomUUID(),
+                                                                "test plan", "test phase", null,
+                                                                clock.getUTCToday(),
+                                                                clock.getUTCToday().plusMonths(1),
+                                                                amount,
+                                                                new BigDecimal("1.0"),
+                                                                Currency.USD));
+            mockPaymentProviderPlugin.makeNextPaymentFailWithError();
+            final String paymentExternalKey = UUID.randomUUID().toString();
+            pluginControlPaymentProcessor.createPurchase(false, account, account.getPaymentMethodId(), null, amount, Currency.USD, paymentExternalKey, UUID.randomUUID().toString(),
+                                                         createPropertiesForInvoice(invoice), ImmutableList.<String>of(InvoicePaymentControlPluginApi.PLUGIN_NAME), callContext, internalCallContext);
+            paymentExternalKeys.add(paymentExternalKey);
+        }
+
+        // Half way through the jitter window, exactly half of the retries are due
+        clock.addDays(paymentConfig.getPaymentFailureRetryDays(internalCallContext).get(0));
+        clock.addDeltaFromReality(RETRY_JITTER_MINUTES * 60 * 1000L / 2);
+        await().atMost(TIMEOUT, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getNbSuccessfulPayments(paymentExternalKeys) == NB_OUTAGE_PAYMENTS / 2;
+            }
+        });
+
+        // Once the jitter window has passed, every payment has been retried
+        clock.addDeltaFromReality(RETRY_JITTER_MINUTES * 60 * 1000L / 2 + 1000L);
+        await().atMost(TIMEOUT, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return getNbSuccessfulPayments(paymentExternalKeys) == NB_OUTAGE_PAYMENTS;
+            }
+        });
+    }
+
+    @Test(groups = "fast")
+    public void testRetryAttemptsAreCountedFromPaymentInContext() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final Invoice invoice = testHelper.createTestInvoice(account, clock.getUTCToday(), Currency.USD);
+        final List<Integer> retryDays = paymentConfig.getPaymentFailureRetryDays(internalCallContext);
+
+        // The payments below are unknown to the PaymentDao: the failed attempts can only be counted from the payment in the context
+        for (int nbFailures = 1; nbFailures <= retryDays.size(); nbFailures++) {
+            final DateTime retryDate = clock.getUTCNow().plusDays(retryDays.get(nbFailures - 1));
+            final DateTime nextRetryDate = invoicePaymentControlPluginApi.onFailureCall(createFailedPurchaseContext(account, nbFailures), createPropertiesForInvoice(invoice)).getNextRetryDate();
+            assertNotNull(nextRetryDate);
+            assertTrue(nextRetryDate.compareTo(retryDate) >= 0);
+            assertTrue(nextRetryDate.compareTo(retryDate.plusMinutes(RETRY_JITTER_MINUTES)) <= 0);
+        }
+
+        // No retry left
+        assertNull(invoicePaymentControlPluginApi.onFailureCall(createFailedPurchaseContext(account, retryDays.size() + 1), createPropertiesForInvoice(invoice)).getNextRetryDate());
+    }
+
+    @Test(groups = "fast")
+    public void testAutoPayOffRetriesAreScheduledWithEntriesRemoval() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final List<PluginAutoPayOffModelDao> entries = createAutoPayOffEntries(account, 5);
+        final AtomicBoolean entriesRemoved = new AtomicBoolean(false);
+        final RetryServiceScheduler retryServiceSchedulerSpy = Mockito.spy(retryServiceScheduler);
+        final InvoicePaymentControlPluginApi plugin = createPluginForAutoPayOffEntries(entries, entriesRemoved, retryServiceSchedulerSpy);
+
+        final DateTime now = clock.getUTCNow();
+        plugin.process_AUTO_PAY_OFF_removal(account.getId(), internalCallContext);
+        assertTrue(entriesRemoved.get());
+
+        // All the retries were recorded on the retry queue at once, as part of the transaction removing the entries, and spread by the jitter
+        final ArgumentCaptor<Map> timeOfRetryByAttemptId = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(retryServiceSchedulerSpy, Mockito.times(1)).scheduleRetriesFromTransaction(Mockito.<Connection>any(), timeOfRetryByAttemptId.capture(), Mockito.<List<String>>any(), Mockito.<InternalCallContext>any());
+        assertEquals(timeOfRetryByAttemptId.getValue().size(), entries.size());
+        for (final PluginAutoPayOffModelDao entry : entries) {
+            final DateTime timeOfRetry = (DateTime) timeOfRetryByAttemptId.getValue().get(entry.getAttemptId());
+            assertTrue(timeOfRetry.compareTo(now) >= 0);
+            assertTrue(timeOfRetry.compareTo(now.plusMinutes(RETRY_JITTER_MINUTES)) <= 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAutoPayOffEntriesAreKeptWhenRetriesCannotBeScheduled() throws Exception {
+        final Account account = testHelper.createTestAccount("yiyi.gmail.com", true);
+        final AtomicBoolean entriesRemoved = new AtomicBoolean(false);
+        final InvoicePaymentControlPluginApi plugin = createPluginForAutoPayOffEntries(createAutoPayOffEntries(account, 5), entriesRemoved, retryServiceScheduler);
+
+        // The retry queue is gone: the transaction must be rolled back so that the entries are processed again later
+        retryService.stop();
+        try {
+            plugin.process_AUTO_PAY_OFF_removal(account.getId(), internalCallContext);
+            fail("process_AUTO_PAY_OFF_removal should fail when the retries can't be scheduled");
+        } catch (final IllegalStateException e) {
+            assertFalse(entriesRemoved.get());
+        } finally {
+            retryService.initialize();
+            retryService.start();
+        }
+    }
+
+    private int getNbSuccessfulPayments(final Iterable<String> paymentExternalKeys) {
+        int result = 0;
+        for (final String paymentExternalKey : paymentExternalKeys) {
+            for (final PaymentAttemptModelDao attempt : paymentDao.getPaymentAttempts(paymentExternalKey, internalCallContext)) {
+                if ("SUCCESS".equals(attempt.getStateName())) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    private DefaultPaymentControlContext createFailedPurchaseContext(final Account account, final int nbFailures) {
+        final UUID paymentId = UUID.randomUUID();
+        final UUID attemptId = UUID.randomUUID();
+        final DateTime now = clock.getUTCNow();
+        final BigDecimal amount = new BigDecimal("10.00");
+        final List<PaymentTransaction> transactions = new ArrayList<PaymentTransaction>();
+        for (int i = 0; i < nbFailures; i++) {
+            transactions.add(new DefaultPaymentTransaction(UUID.randomUUID(), attemptId, UUID.randomUUID().toString(), now, now, paymentId, TransactionType.PURCHASE, now,
+                                                           TransactionStatus.PAYMENT_FAILURE, amount, Currency.USD, BigDecimal.ZERO, Currency.USD, null, null, null));
+        }
+        final PaymentTransaction lastTransaction = transactions.get(transactions.size() - 1);
+        final Payment payment = new DefaultPayment(paymentId, now, now, account.getId(), account.getPaymentMethodId(), 1, UUID.randomUUID().toString(), transactions, ImmutableList.<PaymentAttempt>of());
+        return new DefaultPaymentControlContext(account, account.getPaymentMethodId(), attemptId, paymentId, payment, payment.getExternalKey(), lastTransaction.getId(), lastTransaction.getExternalKey(),
+                                                PaymentApiType.PAYMENT_TRANSACTION, TransactionType.PURCHASE, null, amount, Currency.USD, null, null, false, callContext);
+    }
+
+    private List<PluginAutoPayOffModelDao> createAutoPayOffEntries(final Account account, final int nbEntries) {
+        final List<PluginAutoPayOffModelDao> entries = new ArrayList<PluginAutoPayOffModelDao>();
+        for (int i = 0; i < nbEntries; i++) {
+            entries.add(new PluginAutoPayOffModelDao(UUID.randomUUID(), UUID.randomUUID().toString(), UUID.randomUUID().toString(), account.getId(), InvoicePaymentControlPluginApi.PLUGIN_NAME,
+                                                     null, account.getPaymentMethodId(), new BigDecimal("10.00"), Currency.USD, "test", clock.getUTCNow()));
+        }
+        return entries;
+    }
+
+    // Mimics the transaction of InvoicePaymentControlDao#processAndRemoveAutoPayOffEntries: the entries are only removed if the callback succeeds
+    private InvoicePaymentControlPluginApi createPluginForAutoPayOffEntries(final List<PluginAutoPayOffModelDao> entries, final AtomicBoolean entriesRemoved, final RetryServiceScheduler scheduler) {
+        final InvoicePaymentControlDao controlDao = Mockito.mock(InvoicePaymentControlDao.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final AutoPayOffEntriesCallback callback = (AutoPayOffEntriesCallback) invocation.getArguments()[1];
+                callback.process(entries, Mockito.mock(Connection.class));
+                entriesRemoved.set(true);
+                return null;
+            }
+        }).when(controlDao).processAndRemoveAutoPayOffEntries(Mockito.<UUID>any(), Mockito.<AutoPayOffEntriesCallback>any());
+
+        return new InvoicePaymentControlPluginApi(paymentConfig, invoiceApi, tagInternalApi, paymentDao, controlDao, scheduler, retryPlanner, internalCallContextFactory, clock, accountInternalApi);
+    }
+
+    private List<PluginProperty> createPropertiesForInvoice(final Invoice invoice) {
+        final List<PluginProperty> result = new ArrayList<PluginProperty>();
+        result.add(new PluginProperty(InvoicePaymentControlPluginApi.PROP_IPCD_INVOICE_ID, invoice.getId().toString(), false));
+        return result;
+    }
+
+    // Cycles through the middle of nbSlots equal slices of [0, 1): any nbSlots consecutive draws have exactly half of their values below 0.5
+    private static final class EvenlySpreadRandom extends Random {
+
+        private final int nbSlots;
+        private int nextSlot = 0;
+
+        private EvenlySpreadRandom(final int nbSlots) {
+            this.nbSlots = nbSlots;
+        }
+
+        @Override
+        public synchronized double nextDouble() {
+            final double result = (nextSlot + 0.5) / nbSlots;
+            nextSlot = (nextSlot + 1) % nbSlots;
+            return result;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.payment.core;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,15 +27,28 @@ import org.killbill.billing.payment.PaymentTestSuiteNoDB;
 import org.killbill.billing.payment.api.PaymentMethod;
 import org.killbill.billing.payment.api.PaymentMethodPlugin;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.provider.DefaultNoOpPaymentMethodPlugin;
 import org.killbill.billing.payment.provider.ExternalPaymentProviderPlugin;
+import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
+import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 public class TestPaymentMethodProcessorNoDB extends PaymentTestSuiteNoDB {
 
+    @Override
+    protected KillbillConfigSource getConfigSource() {
+        return getConfigSource("/payment.properties",
+                               ImmutableMap.<String, String>of("org.killbill.payment.provider.default", MockPaymentProviderPlugin.PLUGIN_NAME,
+                                                               "killbill.payment.engine.events.off", "false",
+                                                               "org.killbill.payment.method.pluginInfo.maxConcurrentCalls", "2")
+                              );
+    }
+
     @Test(groups = "fast")
     public void testPaymentMethodExternalKeySetByPluginIfNonSpecified() throws Exception {
         final Account account = Mockito.mock(Account.class);
@@ -81,4 +95,50 @@ public class TestPaymentMethodProcessorNoDB extends PaymentTestSuiteNoDB {
             Assert.assertEquals(foundPaymentMethods.get(0).getId(), externalPaymentMethodId);
         }
     }
+
+    @Test(groups = "fast")
+    public void testPaymentMethodPluginInfoCache() throws Exception {
+        final Account account = testHelper.createTestAccount("foo@bar.com", false);
+        final MockPaymentProviderPlugin mockPaymentProviderPlugin = (MockPaymentProviderPlugin) registry.getServiceForName(MockPaymentProviderPlugin.PLUGIN_NAME);
+        final Iterable<PluginProperty> properties = ImmutableList.<PluginProperty>of();
+
+        final List<UUID> paymentMethodIds = new ArrayList<UUID>();
+        for (int i = 0; i < 5; i++) {
+            final PaymentMethodPlugin paymentMethodPlugin = new DefaultNoOpPaymentMethodPlugin(UUID.randomUUID().toString(), false, null);
+            paymentMethodIds.add(paymentMethodProcessor.addPaymentMethod(UUID.randomUUID().toString(), MockPaymentProviderPlugin.PLUGIN_NAME, account, false, paymentMethodPlugin, properties, callContext, internalCallContext));
+        }
+
+        // The details of the payment methods are retrieved in parallel from the plugin, at most maxConcurrentCalls (2) at a time
+        final int initialPaymentMethodDetailCalls = mockPaymentProviderPlugin.getPaymentMethodDetailCalls();
+        mockPaymentProviderPlugin.makePaymentMethodDetailWaitSomeMilliseconds(200);
+        try {
+            final List<PaymentMethod> paymentMethods = paymentMethodProcessor.getPaymentMethods(true, properties, callContext, internalCallContext);
+            Assert.assertEquals(paymentMethods.size(), 5);
+            for (final PaymentMethod paymentMethod : paymentMethods) {
+                Assert.assertEquals(paymentMethod.getPluginDetail().getKbPaymentMethodId(), paymentMethod.getId());
+            }
+        } finally {
+            mockPaymentProviderPlugin.makePaymentMethodDetailWaitSomeMilliseconds(0);
+        }
+        Assert.assertEquals(mockPaymentProviderPlugin.getPaymentMethodDetailCalls(), initialPaymentMethodDetailCalls + 5);
+        Assert.assertEquals(mockPaymentProviderPlugin.getMaxConcurrentPaymentMethodDetailCalls(), 2);
+
+        // The details are now cached: the plugin isn't called again
+        Assert.assertEquals(paymentMethodProcessor.getPaymentMethods(true, properties, callContext, internalCallContext).size(), 5);
+        Assert.assertEquals(mockPaymentProviderPlugin.getPaymentMethodDetailCalls(), initialPaymentMethodDetailCalls + 5);
+
+        // Remove a payment method behind Kill Bill's back: its details are still cached
+        final UUID paymentMethodId = paymentMethodIds.get(0);
+        mockPaymentProviderPlugin.deletePaymentMethod(account.getId(), paymentMethodId, properties, callContext);
+        Assert.assertNotNull(paymentMethodProcessor.getPaymentMethodById(paymentMethodId, false, true, properties, callContext, internalCallContext).getPluginDetail());
+
+        // ...unless plugin properties are specified
+        final Iterable<PluginProperty> nonEmptyProperties = ImmutableList.<PluginProperty>of(new PluginProperty("foo", "bar", false));
+        Assert.assertNull(paymentMethodProcessor.getPaymentMethodById(paymentMethodId, false, true, nonEmptyProperties, callContext, internalCallContext).getPluginDetail());
+
+        // Changing the default payment method invalidates the details for the account
+        paymentMethodProcessor.setDefaultPaymentMethod(account, paymentMethodIds.get(1), properties, callContext, internalCallContext);
+        Assert.assertNull(paymentMethodProcessor.getPaymentMethodById(paymentMethodId, false, true, properties, callContext, internalCallContext).getPluginDetail());
+        Assert.assertNotNull(paymentMethodProcessor.getPaymentMethodById(paymentMethodIds.get(1), false, true, properties, callContext, internalCallContext).getPluginDetail());
+    }
 }
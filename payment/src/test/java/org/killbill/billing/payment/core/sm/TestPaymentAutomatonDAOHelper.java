@@ -19,9 +19,12 @@ package org.killbill.billing.payment.core.sm;
 
 import java.math.BigDecimal;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
+import org.killbill.billing.DaoCallCounter;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.catalog.api.Currency;
@@ -96,6 +99,36 @@ public class TestPaymentAutomatonDAOHelper extends PaymentTestSuiteWithEmbeddedD
         Assert.assertEquals(paymentStateContext.getPaymentTransactionModelDao().getGatewayErrorMsg(), paymentInfoPlugin.getGatewayError());
     }
 
+    @Test(groups = "slow", description = "Verify the payment and its transactions are fetched once per run, until the helper writes them")
+    public void testPaymentAndTransactionsAreFetchedOncePerRun() throws Exception {
+        final PaymentAutomatonDAOHelper creationDAOHelper = createDAOHelper(null, paymentExternalKey, paymentTransactionExternalKey, amount, currency);
+        creationDAOHelper.createNewPaymentTransaction();
+        final UUID paymentId = creationDAOHelper.getPayment().getId();
+
+        final PaymentAutomatonDAOHelper daoHelper = createDAOHelper(paymentId, paymentExternalKey, UUID.randomUUID().toString(), amount, currency);
+        final AtomicInteger expectedNbTransactions = new AtomicInteger(1);
+        final Callable<Void> lookups = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Assert.assertEquals(daoHelper.getPayment().getId(), paymentId);
+                Assert.assertEquals(daoHelper.getTransactionsForPayment().size(), expectedNbTransactions.get());
+                return null;
+            }
+        };
+
+        final int firstLookupsDaoCalls = DaoCallCounter.countDaoCalls(lookups);
+        Assert.assertTrue(firstLookupsDaoCalls > 0);
+        // Memoized
+        Assert.assertEquals(DaoCallCounter.countDaoCalls(lookups), 0);
+        Assert.assertEquals(DaoCallCounter.countDaoCalls(lookups), 0);
+
+        // New transaction: the helper needs to observe its own write
+        daoHelper.createNewPaymentTransaction();
+        expectedNbTransactions.set(2);
+        Assert.assertEquals(DaoCallCounter.countDaoCalls(lookups), firstLookupsDaoCalls);
+        Assert.assertEquals(DaoCallCounter.countDaoCalls(lookups), 0);
+    }
+
     @Test(groups = "slow")
     public void testNoPaymentMethod() throws Exception {
         final PaymentAutomatonDAOHelper daoHelper = createDAOHelper(UUID.randomUUID(), paymentExternalKey, paymentTransactionExternalKey, amount, currency);
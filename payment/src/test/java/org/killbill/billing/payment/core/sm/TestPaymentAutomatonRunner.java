@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.sm;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestPaymentAutomatonRunner extends PaymentTestSuiteNoDB {
+
+    private static final int NB_WARMUP_PURCHASES = 200;
+    private static final int NB_PURCHASES = 1000;
+
+    @Test(groups = "fast", description = "Allocation rate of PURCHASE calls going through the state machine, against the mock payment plugin")
+    public void testPurchaseAllocationRate() throws Exception {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Thread allocation accounting isn't supported by this JVM");
+        }
+        final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        final Account account = testHelper.createTestAccount("automaton@example.com", true);
+
+        doPurchases(account, NB_WARMUP_PURCHASES);
+
+        // Plugin calls are dispatched to the payment executors, so we account for all threads
+        final long allocatedBytesBefore = getTotalAllocatedBytes(allocationMXBean);
+        final long startNanos = System.nanoTime();
+        doPurchases(account, NB_PURCHASES);
+        final long durationNanos = System.nanoTime() - startNanos;
+        final long allocatedBytes = getTotalAllocatedBytes(allocationMXBean) - allocatedBytesBefore;
+
+        log.info("{} purchases: {} bytes/purchase, {} purchases/s", NB_PURCHASES, allocatedBytes / NB_PURCHASES, (long) (NB_PURCHASES / (durationNanos / 1000000000.0)));
+    }
+
+    private void doPurchases(final Account account, final int nbPurchases) throws Exception {
+        for (int i = 0; i < nbPurchases; i++) {
+            final Payment payment = paymentApi.createPurchase(account, account.getPaymentMethodId(), null, BigDecimal.TEN, account.getCurrency(),
+                                                              UUID.randomUUID().toString(), UUID.randomUUID().toString(), ImmutableList.<PluginProperty>of(), callContext);
+            Assert.assertEquals(payment.getTransactions().get(0).getTransactionStatus(), TransactionStatus.SUCCESS);
+        }
+    }
+
+    private long getTotalAllocatedBytes(final com.sun.management.ThreadMXBean allocationMXBean) {
+        long total = 0;
+        for (final long allocatedBytes : allocationMXBean.getThreadAllocatedBytes(allocationMXBean.getAllThreadIds())) {
+            // -1 for threads which died in the meantime
+            if (allocatedBytes > 0) {
+                total += allocatedBytes;
+            }
+        }
+        return total;
+    }
+}
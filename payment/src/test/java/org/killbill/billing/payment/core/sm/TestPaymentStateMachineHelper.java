@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.sm;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.killbill.automaton.DefaultStateMachineConfig;
+import org.killbill.automaton.Operation;
+import org.killbill.automaton.Operation.OperationCallback;
+import org.killbill.automaton.OperationException;
+import org.killbill.automaton.OperationResult;
+import org.killbill.automaton.State;
+import org.killbill.automaton.State.EnteringStateCallback;
+import org.killbill.automaton.State.LeavingStateCallback;
+import org.killbill.automaton.StateMachineConfig;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.caching.CompiledStateMachineConfig;
+import org.killbill.billing.payment.glue.PaymentModule;
+import org.killbill.billing.payment.provider.MockPaymentProviderPlugin;
+import org.killbill.xmlloader.XMLLoader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Resources;
+
+public class TestPaymentStateMachineHelper extends PaymentTestSuiteNoDB {
+
+    private static final int NB_TRANSITIONS = 100;
+    private static final int NB_BENCHMARK_TRANSITIONS = 200000;
+
+    @Test(groups = "fast")
+    public void testCompiledLookups() throws Exception {
+        final DefaultStateMachineConfig stateMachineConfig = XMLLoader.getObjectFromString(Resources.getResource(PaymentModule.DEFAULT_STATE_MACHINE_PAYMENT_XML).toExternalForm(), DefaultStateMachineConfig.class);
+        final CompiledStateMachineConfig compiledStateMachineConfig = new CompiledStateMachineConfig(stateMachineConfig);
+
+        for (final String stateName : PaymentStateMachineHelper.STATE_NAMES) {
+            Assert.assertEquals(compiledStateMachineConfig.getStateMachineForState(stateName), stateMachineConfig.getStateMachineForState(stateName));
+            Assert.assertEquals(compiledStateMachineConfig.getState(stateName), stateMachineConfig.getStateMachineForState(stateName).getState(stateName));
+        }
+        for (final TransactionType transactionType : TransactionType.values()) {
+            Assert.assertEquals(paymentSMHelper.getOperationForTransaction(compiledStateMachineConfig, transactionType),
+                                paymentSMHelper.getOperationForTransaction(stateMachineConfig, transactionType));
+        }
+    }
+
+    @Test(groups = "fast", description = "Verify PURCHASE transitions reach the same state with and without the compiled lookup tables")
+    public void testPurchaseTransitions() throws Exception {
+        final DefaultStateMachineConfig stateMachineConfig = XMLLoader.getObjectFromString(Resources.getResource(PaymentModule.DEFAULT_STATE_MACHINE_PAYMENT_XML).toExternalForm(), DefaultStateMachineConfig.class);
+        final CompiledStateMachineConfig compiledStateMachineConfig = paymentSMHelper.getStateMachineConfig(MockPaymentProviderPlugin.PLUGIN_NAME, internalCallContext);
+
+        final AtomicReference<State> enteredState = new AtomicReference<State>();
+        final EnteringStateCallback enteringStateCallback = createEnteringStateCallback(enteredState);
+
+        runPurchases(stateMachineConfig, NB_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+        Assert.assertEquals(enteredState.get().getName(), paymentSMHelper.getSuccessfulStateForTransaction(TransactionType.PURCHASE));
+        enteredState.set(null);
+
+        runPurchases(compiledStateMachineConfig, NB_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+        Assert.assertEquals(enteredState.get().getName(), paymentSMHelper.getSuccessfulStateForTransaction(TransactionType.PURCHASE));
+    }
+
+    // Micro-benchmark of the PURCHASE transitions, with and without the compiled lookup tables. Numbers are only logged as they
+    // depend on the JVM and hardware.
+    @Test(groups = "fast")
+    public void testPurchaseTransitionsThroughput() throws Exception {
+        final DefaultStateMachineConfig stateMachineConfig = XMLLoader.getObjectFromString(Resources.getResource(PaymentModule.DEFAULT_STATE_MACHINE_PAYMENT_XML).toExternalForm(), DefaultStateMachineConfig.class);
+        final CompiledStateMachineConfig compiledStateMachineConfig = paymentSMHelper.getStateMachineConfig(MockPaymentProviderPlugin.PLUGIN_NAME, internalCallContext);
+
+        final AtomicReference<State> enteredState = new AtomicReference<State>();
+        final EnteringStateCallback enteringStateCallback = createEnteringStateCallback(enteredState);
+
+        // Warm-up
+        runPurchases(stateMachineConfig, NB_BENCHMARK_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+        runPurchases(compiledStateMachineConfig, NB_BENCHMARK_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+
+        final long rawNanos = runPurchases(stateMachineConfig, NB_BENCHMARK_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+        final long compiledNanos = runPurchases(compiledStateMachineConfig, NB_BENCHMARK_TRANSITIONS, OPERATION_CALLBACK, LEAVING_STATE_CALLBACK, enteringStateCallback);
+        Assert.assertEquals(enteredState.get().getName(), paymentSMHelper.getSuccessfulStateForTransaction(TransactionType.PURCHASE));
+
+        log.info("PURCHASE transitions: DefaultStateMachineConfig={} transitions/ms, CompiledStateMachineConfig={} transitions/ms",
+                 NB_BENCHMARK_TRANSITIONS * 1000000L / Math.max(rawNanos, 1L), NB_BENCHMARK_TRANSITIONS * 1000000L / Math.max(compiledNanos, 1L));
+    }
+
+    private static final OperationCallback OPERATION_CALLBACK = new OperationCallback() {
+        @Override
+        public OperationResult doOperationCallback() throws OperationException {
+            return OperationResult.SUCCESS;
+        }
+    };
+
+    private static final LeavingStateCallback LEAVING_STATE_CALLBACK = new LeavingStateCallback() {
+        @Override
+        public void leavingState(final State oldState) throws OperationException {
+        }
+    };
+
+    private EnteringStateCallback createEnteringStateCallback(final AtomicReference<State> enteredState) {
+        return new EnteringStateCallback() {
+            @Override
+            public void enteringState(final State newState, final OperationCallback operationCallback, final OperationResult operationResult, final LeavingStateCallback leavingStateCallback) {
+                enteredState.set(newState);
+            }
+        };
+    }
+
+    // Same lookups as PaymentAutomatonRunner#runStateMachineOperation, returns the elapsed time in nanoseconds
+    private long runPurchases(final StateMachineConfig stateMachineConfig,
+                              final int nbTransitions,
+                              final OperationCallback operationCallback,
+                              final LeavingStateCallback leavingStateCallback,
+                              final EnteringStateCallback enteringStateCallback) throws Exception {
+        final String initialStateName = paymentSMHelper.getInitStateNameForTransaction();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < nbTransitions; i++) {
+            final State initialState = stateMachineConfig instanceof CompiledStateMachineConfig ?
+                                       ((CompiledStateMachineConfig) stateMachineConfig).getState(initialStateName) :
+                                       stateMachineConfig.getStateMachineForState(initialStateName).getState(initialStateName);
+            final Operation operation = paymentSMHelper.getOperationForTransaction(stateMachineConfig, TransactionType.PURCHASE);
+            initialState.runOperation(operation, operationCallback, enteringStateCallback, leavingStateCallback);
+        }
+        return System.nanoTime() - startNanos;
+    }
+}
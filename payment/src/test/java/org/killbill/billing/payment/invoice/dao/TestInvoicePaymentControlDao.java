@@ -18,16 +18,21 @@
 package org.killbill.billing.payment.invoice.dao;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.PaymentTestSuiteWithEmbeddedDB;
+import org.killbill.billing.payment.invoice.dao.InvoicePaymentControlDao.AutoPayOffEntriesCallback;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
 
 public class TestInvoicePaymentControlDao extends PaymentTestSuiteWithEmbeddedDB {
 
@@ -99,4 +104,61 @@ public class TestInvoicePaymentControlDao extends PaymentTestSuiteWithEmbeddedDB
         final List<PluginAutoPayOffModelDao> entries = dao.getAutoPayOffEntry(UUID.randomUUID());
         assertEquals(entries.size(), 0);
     }
+
+    @Test(groups = "slow")
+    public void testProcessAndRemoveAutoPayOffEntries() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID methodId = UUID.randomUUID();
+        final BigDecimal amount = new BigDecimal("13.33");
+        final DateTime utcNow = clock.getUTCNow();
+        dao.insertAutoPayOff(new PluginAutoPayOffModelDao(UUID.randomUUID(), "key1", "tkey1", accountId, "XXX", UUID.randomUUID(), methodId, amount, Currency.USD, "lulu", utcNow));
+        dao.insertAutoPayOff(new PluginAutoPayOffModelDao(UUID.randomUUID(), "key2", "tkey2", accountId, "XXX", UUID.randomUUID(), methodId, amount, Currency.USD, "lulu", utcNow));
+
+        final List<PluginAutoPayOffModelDao> processedEntries = new ArrayList<PluginAutoPayOffModelDao>();
+        dao.processAndRemoveAutoPayOffEntries(accountId, new AutoPayOffEntriesCallback() {
+            @Override
+            public void process(final List<PluginAutoPayOffModelDao> entries, final Connection connection) {
+                assertNotNull(connection);
+                processedEntries.addAll(entries);
+            }
+        });
+        assertEquals(processedEntries.size(), 2);
+        assertEquals(dao.getAutoPayOffEntry(accountId).size(), 0);
+
+        // Nothing left to process
+        processedEntries.clear();
+        dao.processAndRemoveAutoPayOffEntries(accountId, new AutoPayOffEntriesCallback() {
+            @Override
+            public void process(final List<PluginAutoPayOffModelDao> entries, final Connection connection) {
+                processedEntries.addAll(entries);
+            }
+        });
+        assertEquals(processedEntries.size(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testProcessAndRemoveAutoPayOffEntriesIsRolledBackOnFailure() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID methodId = UUID.randomUUID();
+        final BigDecimal amount = new BigDecimal("13.33");
+        final DateTime utcNow = clock.getUTCNow();
+        dao.insertAutoPayOff(new PluginAutoPayOffModelDao(UUID.randomUUID(), "key1", "tkey1", accountId, "XXX", UUID.randomUUID(), methodId, amount, Currency.USD, "lulu", utcNow));
+        dao.insertAutoPayOff(new PluginAutoPayOffModelDao(UUID.randomUUID(), "key2", "tkey2", accountId, "XXX", UUID.randomUUID(), methodId, amount, Currency.USD, "lulu", utcNow));
+
+        // E.g. the retries couldn't be scheduled
+        try {
+            dao.processAndRemoveAutoPayOffEntries(accountId, new AutoPayOffEntriesCallback() {
+                @Override
+                public void process(final List<PluginAutoPayOffModelDao> entries, final Connection connection) {
+                    throw new IllegalStateException("Failed to schedule the retries");
+                }
+            });
+            fail("processAndRemoveAutoPayOffEntries should propagate the callback failure");
+        } catch (final RuntimeException e) {
+            // Expected
+        }
+
+        // The entries are still active and will be processed next time
+        assertEquals(dao.getAutoPayOffEntry(accountId).size(), 2);
+    }
 }
@@ -75,6 +75,10 @@ public class MockPaymentProviderPlugin implements PaymentPluginApi {
     private final AtomicBoolean makeAllPaymentsFailWithError = new AtomicBoolean(false);
     private final AtomicBoolean makeNextPaymentPending = new AtomicBoolean(false);
     private final AtomicInteger makePluginWaitSomeMilliseconds = new AtomicInteger(0);
+    private final AtomicInteger makePaymentMethodDetailWaitSomeMilliseconds = new AtomicInteger(0);
+    private final AtomicInteger paymentMethodDetailCalls = new AtomicInteger(0);
+    private final AtomicInteger concurrentPaymentMethodDetailCalls = new AtomicInteger(0);
+    private final AtomicInteger maxConcurrentPaymentMethodDetailCalls = new AtomicInteger(0);
     private final AtomicReference<BigDecimal> overrideNextProcessedAmount = new AtomicReference<BigDecimal>();
     private final AtomicReference<Currency> overrideNextProcessedCurrency = new AtomicReference<Currency>();
 
@@ -203,6 +207,9 @@ public class MockPaymentProviderPlugin implements PaymentPluginApi {
         makeNextPaymentFailWithCancellation.set(false);
         makeNextPaymentPending.set(false);
         makePluginWaitSomeMilliseconds.set(0);
+        makePaymentMethodDetailWaitSomeMilliseconds.set(0);
+        paymentMethodDetailCalls.set(0);
+        maxConcurrentPaymentMethodDetailCalls.set(0);
         overrideNextProcessedAmount.set(null);
         paymentMethods.clear();
         payments.clear();
@@ -234,6 +241,18 @@ public class MockPaymentProviderPlugin implements PaymentPluginApi {
         makePluginWaitSomeMilliseconds.set(milliseconds);
     }
 
+    public void makePaymentMethodDetailWaitSomeMilliseconds(final int milliseconds) {
+        makePaymentMethodDetailWaitSomeMilliseconds.set(milliseconds);
+    }
+
+    public int getPaymentMethodDetailCalls() {
+        return paymentMethodDetailCalls.get();
+    }
+
+    public int getMaxConcurrentPaymentMethodDetailCalls() {
+        return maxConcurrentPaymentMethodDetailCalls.get();
+    }
+
     public void overrideNextProcessedAmount(final BigDecimal amount) {
         overrideNextProcessedAmount.set(amount);
     }
@@ -330,7 +349,27 @@ public class MockPaymentProviderPlugin implements PaymentPluginApi {
 
     @Override
     public PaymentMethodPlugin getPaymentMethodDetail(final UUID kbAccountId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
-        return paymentMethods.get(kbPaymentMethodId.toString());
+        paymentMethodDetailCalls.incrementAndGet();
+        final int concurrentCalls = concurrentPaymentMethodDetailCalls.incrementAndGet();
+        try {
+            int maxConcurrentCalls = maxConcurrentPaymentMethodDetailCalls.get();
+            while (concurrentCalls > maxConcurrentCalls && !maxConcurrentPaymentMethodDetailCalls.compareAndSet(maxConcurrentCalls, concurrentCalls)) {
+                maxConcurrentCalls = maxConcurrentPaymentMethodDetailCalls.get();
+            }
+
+            if (makePaymentMethodDetailWaitSomeMilliseconds.get() > 0) {
+                try {
+                    Thread.sleep(makePaymentMethodDetailWaitSomeMilliseconds.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PaymentPluginApiException("An Interruption occurred while the Thread was sleeping.", e);
+                }
+            }
+
+            return paymentMethods.get(kbPaymentMethodId.toString());
+        } finally {
+            concurrentPaymentMethodDetailCalls.decrementAndGet();
+        }
     }
 
     @Override
@@ -59,6 +59,31 @@ public class MultiTenantNotificationConfig extends MultiTenantConfigBase impleme
         return getPushNotificationsRetries();
     }
 
+    @Override
+    public TimeSpan getPushNotificationsTimeout() {
+        return staticConfig.getPushNotificationsTimeout();
+    }
+
+    @Override
+    public int getPushNotificationsQueueCapacity() {
+        return staticConfig.getPushNotificationsQueueCapacity();
+    }
+
+    @Override
+    public int getPushNotificationsMaxInFlight() {
+        return staticConfig.getPushNotificationsMaxInFlight();
+    }
+
+    @Override
+    public int getPushNotificationsBatchSize() {
+        return staticConfig.getPushNotificationsBatchSize();
+    }
+
+    @Override
+    public TimeSpan getPushNotificationsCallbacksCacheTTL() {
+        return staticConfig.getPushNotificationsCallbacksCacheTTL();
+    }
+
     @Override
     protected Class<? extends KillbillConfig> getConfigClass() {
         return NotificationConfig.class;
@@ -62,6 +62,7 @@ import org.killbill.billing.server.config.MultiTenantNotificationConfig;
 import org.killbill.billing.server.filters.ResponseCorsFilter;
 import org.killbill.billing.server.notifications.PushNotificationListener;
 import org.killbill.billing.server.notifications.PushNotificationRetryService;
+import org.killbill.billing.server.security.TenantCredentialsCache;
 import org.killbill.billing.subscription.glue.DefaultSubscriptionModule;
 import org.killbill.billing.tenant.glue.DefaultTenantModule;
 import org.killbill.billing.usage.glue.UsageModule;
@@ -215,6 +216,8 @@ public class KillbillServerModule extends KillbillPlatformModule {
     protected void configureFilters() {
         bind(ResponseCorsFilter.class).asEagerSingleton();
         bind(MDCInsertingServletFilter.class).asEagerSingleton();
+        // Eagerly created, to register its tenant broadcast invalidation callbacks before the services are started
+        bind(TenantCredentialsCache.class).asEagerSingleton();
     }
 
     protected void configurePushNotification() {
@@ -19,11 +19,22 @@
 package org.killbill.billing.server.notifications;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.joda.time.DateTime;
@@ -31,8 +42,11 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.jaxrs.json.NotificationJson;
 import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
 import org.killbill.billing.server.DefaultServerService;
 import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.util.callcontext.CallContextFactory;
@@ -40,6 +54,7 @@ import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.config.definition.NotificationConfig;
 import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
@@ -47,20 +62,30 @@ import org.skife.config.TimeSpan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ning.http.client.AsyncCompletionHandler;
-import com.ning.http.client.AsyncHttpClient;
-import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
-import com.ning.http.client.AsyncHttpClientConfig;
-import com.ning.http.client.ListenableFuture;
-import com.ning.http.client.Response;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
 
+/**
+ * Dispatches push notifications without ever blocking the bus (or the retry queue) threads on the callbacks:
+ * notifications are appended to a bounded queue per (tenant, callback url), drained by non-blocking POSTs
+ * over pooled keep-alive connections, and failures are handed to the PushNotificationRetryService queue.
+ * <p/>
+ * Before a notification is accepted in memory, its next retry is recorded in the retry queue (a guard), so that
+ * a crash doesn't lose what hasn't been sent yet: guards recorded by this listener are skipped when they fire
+ * (the notification was either delivered or rescheduled on failure), while guards recorded by a previous run
+ * (or by another node) are resent. Delivery is therefore at-least-once.
+ */
 public class PushNotificationListener {
 
     private static final Logger log = LoggerFactory.getLogger(PushNotificationListener.class);
@@ -70,8 +95,6 @@ public class PushNotificationListener {
     @VisibleForTesting
     public static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
 
-    private static final int TIMEOUT_NOTIFICATION = 15; // 15 seconds
-
     private final TenantUserApi tenantApi;
     private final CallContextFactory contextFactory;
     private final AsyncHttpClient httpClient;
@@ -80,12 +103,23 @@ public class PushNotificationListener {
     private final InternalCallContextFactory internalCallContextFactory;
     private final Clock clock;
     private final NotificationConfig notificationConfig;
+    // Retries are recorded in the database: keep that work off the bus and HTTP I/O threads
+    private final ExecutorService retryExecutor;
+    private final ConcurrentMap<CallbackQueueKey, CallbackQueue> callbackQueues = new ConcurrentHashMap<CallbackQueueKey, CallbackQueue>();
+    private final Cache<UUID, List<String>> callbacksCache;
+    // Guard tokens are tagged with this listener instance (most significant bits) to recognize our own guards
+    private final long guardTokenPrefix = UUID.randomUUID().getMostSignificantBits();
+    private final AtomicLong guardTokenCounter = new AtomicLong();
 
     @Inject
-    public PushNotificationListener(final ObjectMapper mapper, final TenantUserApi tenantApi, final CallContextFactory contextFactory,
-                                    final NotificationQueueService notificationQueueService, final InternalCallContextFactory internalCallContextFactory,
-                                    final Clock clock, final NotificationConfig notificationConfig) {
-        this.httpClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTimeout(TIMEOUT_NOTIFICATION * 1000).build());
+    public PushNotificationListener(final ObjectMapper mapper, final TenantUserApi tenantApi, final TenantInternalApi tenantInternalApi,
+                                    final CallContextFactory contextFactory, final NotificationQueueService notificationQueueService,
+                                    final InternalCallContextFactory internalCallContextFactory, final Clock clock, final NotificationConfig notificationConfig) {
+        final int timeoutMs = (int) notificationConfig.getPushNotificationsTimeout().getMillis();
+        this.httpClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTimeout(timeoutMs)
+                                                                                 .setAllowPoolingConnections(true)
+                                                                                 .setAllowPoolingSslConnections(true)
+                                                                                 .build());
         this.tenantApi = tenantApi;
         this.contextFactory = contextFactory;
         this.mapper = mapper;
@@ -93,14 +127,30 @@ public class PushNotificationListener {
         this.internalCallContextFactory = internalCallContextFactory;
         this.clock = clock;
         this.notificationConfig = notificationConfig;
+        this.retryExecutor = Executors.newSingleThreadExecutor("PushNotificationRetries");
+        this.callbacksCache = CacheBuilder.newBuilder()
+                                          .expireAfterWrite(notificationConfig.getPushNotificationsCallbacksCacheTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                          .build();
+
+        // Changes made on other nodes
+        tenantInternalApi.initializeCacheInvalidationCallback(TenantKey.PUSH_NOTIFICATION_CB, new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                callbacksCache.invalidate(internalCallContextFactory.createTenantContext(tenantContext).getTenantId());
+            }
+        });
     }
 
     @AllowConcurrentEvents
     @Subscribe
     public void triggerPushNotifications(final ExtBusEvent event) {
-        final TenantContext context = contextFactory.createTenantContext(event.getTenantId());
+        if (isPushNotificationCallbackChange(event)) {
+            // Changes made on this node: make sure the new callbacks are notified of the change itself
+            callbacksCache.invalidate(event.getTenantId());
+        }
+
         try {
-            final List<String> callbacks = getCallbacksForTenant(context);
+            final List<String> callbacks = getCallbacksForTenant(event.getTenantId());
             if (callbacks.isEmpty()) {
                 // Optimization - see https://github.com/killbill/killbill/issues/297
                 return;
@@ -114,50 +164,24 @@ public class PushNotificationListener {
     }
 
     public void shutdown() {
+        // What hasn't been sent yet is covered by its guard, which will be resent on restart
         httpClient.close();
+        retryExecutor.shutdown();
     }
 
     private void dispatchCallback(final UUID tenantId, final ExtBusEvent event, final Iterable<String> callbacks) throws IOException {
         final NotificationJson notification = new NotificationJson(event);
         final String body = mapper.writeValueAsString(notification);
         for (final String cur : callbacks) {
-            doPost(tenantId, cur, body, notification, TIMEOUT_NOTIFICATION, 0);
+            enqueue(tenantId, cur, new PendingNotification(notification, body, 0));
         }
     }
 
-    private boolean doPost(final UUID tenantId, final String url, final String body, final NotificationJson notification,
-                           final int timeoutSec, final int attemptRetryNumber) {
-        final BoundRequestBuilder builder = httpClient.preparePost(url);
-        builder.setBody(body == null ? "{}" : body);
-        builder.addHeader(HTTP_HEADER_CONTENT_TYPE, CONTENT_TYPE_JSON);
-
-        final Response response;
-        try {
-            final ListenableFuture<Response> futureStatus =
-                    builder.execute(new AsyncCompletionHandler<Response>() {
-                        @Override
-                        public Response onCompleted(final Response response) throws Exception {
-                            return response;
-                        }
-                    });
-            response = futureStatus.get(timeoutSec, TimeUnit.SECONDS);
-        } catch (final TimeoutException toe) {
-            saveRetryPushNotificationInQueue(tenantId, url, notification, attemptRetryNumber);
-            return false;
-        } catch (final Exception e) {
-            log.warn("Failed to push notification url='{}', tenantId='{}'", url, tenantId, e);
-            return false;
-        }
-
-        if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
-            return true;
-        } else {
-            saveRetryPushNotificationInQueue(tenantId, url, notification, attemptRetryNumber);
-            return false;
+    public void resendPushNotification(final PushNotificationKey key, @Nullable final UUID userToken) throws JsonProcessingException {
+        if (userToken != null && userToken.getMostSignificantBits() == guardTokenPrefix) {
+            // Our own guard: the notification has been delivered already, or its failure has been rescheduled
+            return;
         }
-    }
-
-    public void resendPushNotification(final PushNotificationKey key) throws JsonProcessingException {
 
         final NotificationJson notification = new NotificationJson(key.getEventType() != null ? key.getEventType().toString() : null,
                                                                    key.getAccountId() != null ? key.getAccountId().toString() : null,
@@ -165,10 +189,105 @@ public class PushNotificationListener {
                                                                    key.getObjectId() != null ? key.getObjectId().toString() : null,
                                                                    key.getMetaData());
         final String body = mapper.writeValueAsString(notification);
-        doPost(key.getTenantId(), key.getUrl(), body, notification, TIMEOUT_NOTIFICATION, key.getAttemptNumber());
+        enqueue(key.getTenantId(), key.getUrl(), new PendingNotification(notification, body, key.getAttemptNumber()));
+    }
+
+    // Called from the bus (or the retry queue) thread: everything recorded here is persisted before the event is acked
+    private void enqueue(final UUID tenantId, final String url, final PendingNotification pendingNotification) {
+        final CallbackQueueKey callbackQueueKey = new CallbackQueueKey(tenantId, url);
+        CallbackQueue callbackQueue = callbackQueues.get(callbackQueueKey);
+        if (callbackQueue == null) {
+            final CallbackQueue newCallbackQueue = new CallbackQueue(tenantId, url);
+            callbackQueue = MoreObjects.firstNonNull(callbackQueues.putIfAbsent(callbackQueueKey, newCallbackQueue), newCallbackQueue);
+        }
+
+        if (!callbackQueue.pendingNotifications.offer(pendingNotification)) {
+            log.warn("Push notification queue full for url='{}', tenantId='{}', scheduling a retry", url, tenantId);
+            saveRetryPushNotificationInQueue(tenantId, url, pendingNotification.notification, pendingNotification.attemptRetryNumber, null);
+            return;
+        }
+
+        try {
+            final UUID guardToken = new UUID(guardTokenPrefix, guardTokenCounter.incrementAndGet());
+            saveRetryPushNotificationInQueue(tenantId, url, pendingNotification.notification, pendingNotification.attemptRetryNumber, guardToken);
+        } finally {
+            callbackQueue.drain();
+        }
     }
 
-    private void saveRetryPushNotificationInQueue(final UUID tenantId, final String url, final NotificationJson notificationJson, final int attemptRetryNumber) {
+    private void doPost(final CallbackQueue callbackQueue, final List<PendingNotification> batch) {
+        final String body;
+        if (batch.size() == 1) {
+            body = batch.get(0).body;
+        } else {
+            final StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(batch.get(i).body);
+            }
+            body = builder.append(']').toString();
+        }
+
+        // The client may both notify the handler and throw (e.g. once closed): release the in-flight slot only once
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        try {
+            httpClient.preparePost(callbackQueue.url)
+                      .setBody(body == null ? "{}" : body)
+                      .addHeader(HTTP_HEADER_CONTENT_TYPE, CONTENT_TYPE_JSON)
+                      .execute(new AsyncCompletionHandler<Response>() {
+                          @Override
+                          public Response onCompleted(final Response response) throws Exception {
+                              try {
+                                  if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+                                      scheduleRetries(callbackQueue, batch);
+                                  }
+                              } finally {
+                                  callbackQueue.onPostCompleted(completed);
+                              }
+                              return response;
+                          }
+
+                          @Override
+                          public void onThrowable(final Throwable t) {
+                              try {
+                                  if (t instanceof TimeoutException) {
+                                      scheduleRetries(callbackQueue, batch);
+                                  } else {
+                                      log.warn("Failed to push notification url='{}', tenantId='{}'", callbackQueue.url, callbackQueue.tenantId, t);
+                                  }
+                              } finally {
+                                  callbackQueue.onPostCompleted(completed);
+                              }
+                          }
+                      });
+        } catch (final RuntimeException e) {
+            log.warn("Failed to push notification url='{}', tenantId='{}'", callbackQueue.url, callbackQueue.tenantId, e);
+            callbackQueue.onPostCompleted(completed);
+        }
+    }
+
+    private void scheduleRetries(final CallbackQueue callbackQueue, final Iterable<PendingNotification> batch) {
+        for (final PendingNotification pendingNotification : batch) {
+            scheduleRetry(callbackQueue.tenantId, callbackQueue.url, pendingNotification);
+        }
+    }
+
+    private void scheduleRetry(final UUID tenantId, final String url, final PendingNotification pendingNotification) {
+        try {
+            retryExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    saveRetryPushNotificationInQueue(tenantId, url, pendingNotification.notification, pendingNotification.attemptRetryNumber, null);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            log.warn("Failed to schedule push notification retry url='{}', tenantId='{}'", url, tenantId, e);
+        }
+    }
+
+    private void saveRetryPushNotificationInQueue(final UUID tenantId, final String url, final NotificationJson notificationJson, final int attemptRetryNumber, @Nullable final UUID guardToken) {
         final PushNotificationKey key = new PushNotificationKey(tenantId,
                                                                 notificationJson.getAccountId() != null ? UUID.fromString(notificationJson.getAccountId()) : null,
                                                                 notificationJson.getEventType(),
@@ -182,7 +301,10 @@ public class PushNotificationListener {
         final DateTime nextNotificationTime = getNextNotificationTime(key.getAttemptNumber(), internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext));
 
         if (nextNotificationTime == null) {
-            log.warn("Max attempt number reached for push notification url='{}', tenantId='{}'", key.getUrl(), key.getTenantId());
+            // Last attempt: there is nothing to guard it with
+            if (guardToken == null) {
+                log.warn("Max attempt number reached for push notification url='{}', tenantId='{}'", key.getUrl(), key.getTenantId());
+            }
             return;
         }
         log.debug("Push notification is scheduled to send at {} for url='{}', tenantId='{}'", nextNotificationTime, key.getUrl(), key.getTenantId());
@@ -191,7 +313,7 @@ public class PushNotificationListener {
         final Long tenantRecordId = internalCallContextFactory.getRecordIdFromObject(key.getTenantId(), ObjectType.TENANT, tenantContext);
         try {
             final NotificationQueue notificationQueue = notificationQueueService.getNotificationQueue(DefaultServerService.SERVER_SERVICE, PushNotificationRetryService.QUEUE_NAME);
-            notificationQueue.recordFutureNotification(nextNotificationTime, key, null, MoreObjects.firstNonNull(accountRecordId, new Long(0)), tenantRecordId);
+            notificationQueue.recordFutureNotification(nextNotificationTime, key, guardToken, MoreObjects.firstNonNull(accountRecordId, new Long(0)), tenantRecordId);
         } catch (NoSuchNotificationQueue noSuchNotificationQueue) {
             log.error("Failed to push notification url='{}', tenantId='{}'", key.getUrl(), key.getTenantId(), noSuchNotificationQueue);
         } catch (IOException e) {
@@ -209,7 +331,104 @@ public class PushNotificationListener {
         return clock.getUTCNow().plusMillis((int) nextDelay.getMillis());
     }
 
-    private List<String> getCallbacksForTenant(final TenantContext context) throws TenantApiException {
-        return tenantApi.getTenantValuesForKey(TenantKey.PUSH_NOTIFICATION_CB.toString(), context);
+    private List<String> getCallbacksForTenant(final UUID tenantId) throws TenantApiException {
+        List<String> callbacks = callbacksCache.getIfPresent(tenantId);
+        if (callbacks == null) {
+            final TenantContext context = contextFactory.createTenantContext(tenantId);
+            callbacks = tenantApi.getTenantValuesForKey(TenantKey.PUSH_NOTIFICATION_CB.toString(), context);
+            callbacksCache.put(tenantId, callbacks);
+        }
+        return callbacks;
+    }
+
+    private boolean isPushNotificationCallbackChange(final ExtBusEvent event) {
+        return (event.getEventType() == ExtBusEventType.TENANT_CONFIG_CHANGE || event.getEventType() == ExtBusEventType.TENANT_CONFIG_DELETION) &&
+               TenantKey.PUSH_NOTIFICATION_CB.toString().equals(event.getMetaData());
+    }
+
+    private static final class PendingNotification {
+
+        private final NotificationJson notification;
+        private final String body;
+        private final int attemptRetryNumber;
+
+        private PendingNotification(final NotificationJson notification, final String body, final int attemptRetryNumber) {
+            this.notification = notification;
+            this.body = body;
+            this.attemptRetryNumber = attemptRetryNumber;
+        }
+    }
+
+    private static final class CallbackQueueKey {
+
+        private final UUID tenantId;
+        private final String url;
+
+        private CallbackQueueKey(final UUID tenantId, final String url) {
+            this.tenantId = tenantId;
+            this.url = url;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CallbackQueueKey that = (CallbackQueueKey) o;
+            return Objects.equal(tenantId, that.tenantId) && Objects.equal(url, that.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantId, url);
+        }
+    }
+
+    private final class CallbackQueue {
+
+        private final UUID tenantId;
+        private final String url;
+        private final BlockingQueue<PendingNotification> pendingNotifications;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private CallbackQueue(final UUID tenantId, final String url) {
+            this.tenantId = tenantId;
+            this.url = url;
+            this.pendingNotifications = new LinkedBlockingQueue<PendingNotification>(notificationConfig.getPushNotificationsQueueCapacity());
+        }
+
+        // Both producers and completion handlers re-check the queue after updating their own state, so no notification is left behind
+        private void drain() {
+            final int maxInFlight = Math.max(1, notificationConfig.getPushNotificationsMaxInFlight());
+            final int batchSize = Math.max(1, notificationConfig.getPushNotificationsBatchSize());
+            while (!pendingNotifications.isEmpty()) {
+                final int current = inFlight.get();
+                if (current >= maxInFlight) {
+                    return;
+                }
+                if (!inFlight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+
+                final List<PendingNotification> batch = new ArrayList<PendingNotification>(batchSize);
+                pendingNotifications.drainTo(batch, batchSize);
+                if (batch.isEmpty()) {
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                doPost(this, batch);
+            }
+        }
+
+        private void onPostCompleted(final AtomicBoolean completed) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            drain();
+        }
     }
 }
@@ -67,7 +67,7 @@ public class PushNotificationRetryService {
                                                                               }
                                                                               final PushNotificationKey key = (PushNotificationKey) notificationKey;
                                                                               try {
-                                                                                  pushNotificationListener.resendPushNotification(key);
+                                                                                  pushNotificationListener.resendPushNotification(key, userToken);
                                                                               } catch (JsonProcessingException e) {
                                                                                   log.error("Failed to push notification url='{}', tenantId='{}'", key.getUrl(), key.getTenantId(), e);
                                                                               }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.security;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.tenant.api.Tenant;
+import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.definition.SecurityConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of verified tenant credentials, used by the TenantFilter to resolve an api key to its tenant
+ * (and tenant record id) in a single lookup, without going through Shiro (and its hash iterations) on every request.
+ * <p/>
+ * Api secrets are never kept in memory: only a keyed hash (HMAC-SHA256, with a random key generated at startup) of a
+ * secret which has been successfully verified is stored. Failed attempts are never cached.
+ * Entries for a tenant are dropped whenever a tenant broadcast event is received for that tenant.
+ */
+@Singleton
+public class TenantCredentialsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantCredentialsCache.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final TenantUserApi tenantUserApi;
+    private final CallContextFactory callContextFactory;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final SecretKeySpec hmacKey;
+    private final Cache<String, TenantCredentials> credentialsByApiKey;
+
+    @Inject
+    public TenantCredentialsCache(final TenantUserApi tenantUserApi,
+                                  final TenantInternalApi tenantInternalApi,
+                                  final CallContextFactory callContextFactory,
+                                  final InternalCallContextFactory internalCallContextFactory,
+                                  final SecurityConfig securityConfig) {
+        this.tenantUserApi = tenantUserApi;
+        this.callContextFactory = callContextFactory;
+        this.internalCallContextFactory = internalCallContextFactory;
+
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.hmacKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+
+        this.credentialsByApiKey = CacheBuilder.newBuilder()
+                                               .maximumSize(securityConfig.getTenantCredentialsCacheMaxSize())
+                                               .expireAfterWrite(securityConfig.getTenantCredentialsCacheTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                               .build();
+
+        // Tenant credentials aren't stored in the tenant_kvs, so we don't know which broadcast key would be used to signal a change:
+        // be conservative and drop the entries for the tenant on any broadcast event (these are rare)
+        final CacheInvalidationCallback cacheInvalidationCallback = new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                invalidate(tenantContext.getTenantRecordId());
+            }
+        };
+        for (final TenantKey tenantKey : TenantKey.values()) {
+            tenantInternalApi.initializeCacheInvalidationCallback(tenantKey, cacheInvalidationCallback);
+        }
+    }
+
+    /**
+     * @return the cached credentials if the api key and secret match previously verified credentials, null otherwise
+     */
+    @Nullable
+    public TenantCredentials getVerifiedCredentials(final String apiKey, final String apiSecret) {
+        final TenantCredentials credentials = credentialsByApiKey.getIfPresent(apiKey);
+        if (credentials == null || !credentials.matches(computeSecretHash(apiKey, apiSecret))) {
+            return null;
+        }
+        return credentials;
+    }
+
+    /**
+     * Must only be invoked once the api key and secret have been verified (e.g. by the KillbillJdbcTenantRealm)
+     */
+    public TenantCredentials addVerifiedCredentials(final String apiKey, final String apiSecret) throws TenantApiException {
+        final Tenant tenant = tenantUserApi.getTenantByApiKey(apiKey);
+        final Long tenantRecordId = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(callContextFactory.createTenantContext(tenant.getId()))
+                                                              .getTenantRecordId();
+
+        final TenantCredentials credentials = new TenantCredentials(tenant, tenantRecordId, computeSecretHash(apiKey, apiSecret));
+        credentialsByApiKey.put(apiKey, credentials);
+        return credentials;
+    }
+
+    public void invalidate(final Long tenantRecordId) {
+        final Iterator<TenantCredentials> iterator = credentialsByApiKey.asMap().values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getTenantRecordId().equals(tenantRecordId)) {
+                log.info("Invalidating cached credentials for tenantRecordId='{}'", tenantRecordId);
+                iterator.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        credentialsByApiKey.invalidateAll();
+    }
+
+    private byte[] computeSecretHash(final String apiKey, final String apiSecret) {
+        try {
+            // Mac instances aren't thread-safe
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            mac.update(apiKey.getBytes(UTF_8));
+            // Separator, to avoid ambiguities between the key and the secret
+            mac.update((byte) 0);
+            return mac.doFinal(apiSecret.getBytes(UTF_8));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class TenantCredentials {
+
+        private final Tenant tenant;
+        private final Long tenantRecordId;
+        private final byte[] secretHash;
+
+        private TenantCredentials(final Tenant tenant, final Long tenantRecordId, final byte[] secretHash) {
+            this.tenant = tenant;
+            this.tenantRecordId = tenantRecordId;
+            this.secretHash = secretHash;
+        }
+
+        public Tenant getTenant() {
+            return tenant;
+        }
+
+        public Long getTenantRecordId() {
+            return tenantRecordId;
+        }
+
+        private boolean matches(final byte[] otherSecretHash) {
+            // Constant time comparison
+            return MessageDigest.isEqual(secretHash, otherSecretHash);
+        }
+    }
+}
@@ -39,9 +39,8 @@ import org.apache.shiro.realm.Realm;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.server.listeners.KillbillGuiceListener;
-import org.killbill.billing.tenant.api.Tenant;
+import org.killbill.billing.server.security.TenantCredentialsCache.TenantCredentials;
 import org.killbill.billing.tenant.api.TenantApiException;
-import org.killbill.billing.tenant.api.TenantUserApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,9 +57,9 @@ public class TenantFilter implements Filter {
     @Inject
     protected Context context;
     @Inject
-    protected TenantUserApi tenantUserApi;
-    @Inject
     protected KillbillJdbcTenantRealm killbillJdbcTenantRealm;
+    @Inject
+    protected TenantCredentialsCache tenantCredentialsCache;
 
     private ModularRealmAuthenticator modularRealmAuthenticator;
 
@@ -89,29 +88,36 @@ public class TenantFilter implements Filter {
             return;
         }
 
-        // Verify the apiKey/apiSecret combo
-        final AuthenticationToken token = new UsernamePasswordToken(apiKey, apiSecret);
-        try {
-            modularRealmAuthenticator.authenticate(token);
-        } catch (final AuthenticationException e) {
-            final String errorMessage = e.getLocalizedMessage();
-            handleAuthenticationError(errorMessage, chain, request, response);
-            return;
+        TenantCredentials credentials = tenantCredentialsCache.getVerifiedCredentials(apiKey, apiSecret);
+        if (credentials == null) {
+            // Verify the apiKey/apiSecret combo
+            final AuthenticationToken token = new UsernamePasswordToken(apiKey, apiSecret);
+            try {
+                modularRealmAuthenticator.authenticate(token);
+            } catch (final AuthenticationException e) {
+                final String errorMessage = e.getLocalizedMessage();
+                handleAuthenticationError(errorMessage, chain, request, response);
+                return;
+            }
+
+            try {
+                // Load the tenant (apiKey is unique across tenants) and remember the verified credentials
+                credentials = tenantCredentialsCache.addVerifiedCredentials(apiKey, apiSecret);
+            } catch (final TenantApiException e) {
+                // Should never happen since Shiro validated the credentials?
+                log.error("Couldn't find the tenant? - should never happen!", e);
+                return;
+            }
         }
 
-        try {
-            // Load the tenant in the request object (apiKey is unique across tenants)
-            final Tenant tenant = tenantUserApi.getTenantByApiKey(apiKey);
-            request.setAttribute(TENANT, tenant);
+        // Load the tenant in the request object
+        request.setAttribute(TENANT, credentials.getTenant());
+        request.setAttribute(JaxrsResource.TENANT_RECORD_ID, credentials.getTenantRecordId());
 
-            // Create a dummy context, to set the MDC very early for LoggingFilter
-            context.createContext(request);
+        // Create a dummy context, to set the MDC very early for LoggingFilter
+        context.createContext(request);
 
-            chain.doFilter(request, response);
-        } catch (final TenantApiException e) {
-            // Should never happen since Shiro validated the credentials?
-            log.error("Couldn't find the tenant? - should never happen!", e);
-        }
+        chain.doFilter(request, response);
     }
 
     private void handleAuthenticationError(final String errorMessage, final FilterChain chain, final ServletRequest request, final ServletResponse response) throws IOException, ServletException {
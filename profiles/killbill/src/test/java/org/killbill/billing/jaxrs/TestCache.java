@@ -36,6 +36,8 @@ import org.killbill.billing.client.model.Tenant;
 import org.killbill.billing.overdue.api.OverdueConfig;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.TenantCacheKey;
 import org.killbill.billing.util.config.tenant.PerTenantConfig;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -51,7 +53,7 @@ public class TestCache extends TestJaxrsBase {
     @Test(groups = "slow", description = "Can Invalidate (clear) a Cache by name")
     public void testInvalidateCacheByName() throws Exception {
         // get Ehcache item with name "record-id"
-        final CacheController<String, Long> cache = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
+        final CacheController<IdCacheKey, Long> cache = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
         // verify that it is not null and has one stored key (the default tenant created for all integration tests)
         assertNotNull(cache);
         Assert.assertEquals(cache.size(), 1);
@@ -66,7 +68,7 @@ public class TestCache extends TestJaxrsBase {
     @Test(groups = "slow", description = "Can Invalidate (clear) all available Caches")
     public void testInvalidateAllCaches() throws Exception {
         // get Ehcache item with name "record-id"
-        final CacheController<String, Long> cache = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
+        final CacheController<IdCacheKey, Long> cache = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
         // verify that it is not null and has one stored key (the default tenant created for all integration tests)
         assertNotNull(cache);
         Assert.assertEquals(cache.size(), 1);
@@ -83,13 +85,13 @@ public class TestCache extends TestJaxrsBase {
         final Account input = createAccountNoPMBundleAndSubscription();
 
         // get all caches per account level
-        final CacheController<String, Long> accountRecordIdCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
+        final CacheController<IdCacheKey, Long> accountRecordIdCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
         final CacheController<Long, ImmutableAccountData> accountImmutableCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_IMMUTABLE);
         final CacheController<UUID, Integer> accountBcdCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_BCD);
 
         // verify that they are not null and have the accountId stored as a key (the account created before)
-        assertTrue(accountRecordIdCache.isKeyInCache(input.getAccountId().toString()));
-        final Long accountRecordId = accountRecordIdCache.get(input.getAccountId().toString(), null);
+        assertTrue(accountRecordIdCache.isKeyInCache(IdCacheKey.of(input.getAccountId())));
+        final Long accountRecordId = accountRecordIdCache.get(IdCacheKey.of(input.getAccountId()), null);
         assertTrue(accountImmutableCache.isKeyInCache(accountRecordId));
         assertTrue(accountBcdCache.isKeyInCache(input.getAccountId()));
 
@@ -97,7 +99,7 @@ public class TestCache extends TestJaxrsBase {
         killBillClient.invalidateCacheByAccount(input.getAccountId().toString(), requestOptions);
 
         // verify that now the caches don't have the accountId key stored
-        Assert.assertFalse(accountRecordIdCache.isKeyInCache(input.getAccountId().toString()));
+        Assert.assertFalse(accountRecordIdCache.isKeyInCache(IdCacheKey.of(input.getAccountId())));
         Assert.assertFalse(accountImmutableCache.isKeyInCache(accountRecordId));
         Assert.assertFalse(accountBcdCache.isKeyInCache(input.getAccountId()));
     }
@@ -130,21 +132,21 @@ public class TestCache extends TestJaxrsBase {
         createAccountWithPMBundleAndSubscriptionAndWaitForFirstInvoiceWithInputOptions(inputOptions);
 
         // get all caches per tenant level
-        final CacheController<String, Long> tenantRecordIdCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
-        final CacheController<String, StateMachineConfig> tenantPaymentStateMachineConfigCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_PAYMENT_STATE_MACHINE_CONFIG);
+        final CacheController<IdCacheKey, Long> tenantRecordIdCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
+        final CacheController<TenantCacheKey, StateMachineConfig> tenantPaymentStateMachineConfigCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_PAYMENT_STATE_MACHINE_CONFIG);
         final CacheController<String, org.killbill.billing.tenant.api.Tenant> tenantCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT);
-        final CacheController<String, String> tenantKvCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
+        final CacheController<TenantCacheKey, String> tenantKvCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
         final CacheController<Long, PerTenantConfig> tenantConfigCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CONFIG);
         final CacheController<Long, OverdueConfig> tenantOverdueConfigCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_OVERDUE_CONFIG);
         final CacheController<Long, Catalog> tenantCatalogCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CATALOG);
 
         // verify that they are not null and have the expected tenant information
-        assertTrue(tenantRecordIdCache.isKeyInCache(currentTenant.getTenantId().toString()));
-        final Long tenantRecordId = tenantRecordIdCache.get(currentTenant.getTenantId().toString(), null);
+        assertTrue(tenantRecordIdCache.isKeyInCache(IdCacheKey.of(currentTenant.getTenantId())));
+        final Long tenantRecordId = tenantRecordIdCache.get(IdCacheKey.of(currentTenant.getTenantId()), null);
 
-        assertTrue(hasKeysByTenantRecordId(tenantPaymentStateMachineConfigCache, tenantRecordId.toString()));
+        assertTrue(hasKeysByTenantRecordId(tenantPaymentStateMachineConfigCache, tenantRecordId));
         assertTrue(tenantCache.isKeyInCache(testApiKey));
-        assertTrue(hasKeysByTenantRecordId(tenantKvCache, tenantRecordId.toString()));
+        assertTrue(hasKeysByTenantRecordId(tenantKvCache, tenantRecordId));
         assertTrue(tenantConfigCache.isKeyInCache(tenantRecordId));
         assertTrue(tenantOverdueConfigCache.isKeyInCache(tenantRecordId));
         assertTrue(tenantCatalogCache.isKeyInCache(tenantRecordId));
@@ -153,18 +155,18 @@ public class TestCache extends TestJaxrsBase {
         killBillClient.invalidateCacheByTenant(inputOptions);
 
         // verify that now the caches don't have the previous values
-        assertFalse(tenantRecordIdCache.isKeyInCache(currentTenant.getTenantId().toString()));
-        assertFalse(hasKeysByTenantRecordId(tenantPaymentStateMachineConfigCache, tenantRecordId.toString()));
+        assertFalse(tenantRecordIdCache.isKeyInCache(IdCacheKey.of(currentTenant.getTenantId())));
+        assertFalse(hasKeysByTenantRecordId(tenantPaymentStateMachineConfigCache, tenantRecordId));
         assertFalse(tenantCache.isKeyInCache(testApiKey));
-        assertFalse(hasKeysByTenantRecordId(tenantKvCache, tenantRecordId.toString()));
+        assertFalse(hasKeysByTenantRecordId(tenantKvCache, tenantRecordId));
         assertFalse(tenantConfigCache.isKeyInCache(tenantRecordId));
         assertFalse(tenantOverdueConfigCache.isKeyInCache(tenantRecordId));
         assertFalse(tenantCatalogCache.isKeyInCache(tenantRecordId));
     }
 
-    private boolean hasKeysByTenantRecordId(final CacheController<String, ?> tenantCache, final String tenantRecordId) {
-        for (final String key : tenantCache.getKeys()) {
-            if (key.endsWith("::" + tenantRecordId)) {
+    private boolean hasKeysByTenantRecordId(final CacheController<TenantCacheKey, ?> tenantCache, final Long tenantRecordId) {
+        for (final TenantCacheKey key : tenantCache.getKeys()) {
+            if (key.getTenantRecordId() == tenantRecordId) {
                 return true;
             }
         }
@@ -80,6 +80,9 @@ public class TestPushNotification extends TestJaxrsBase {
     private volatile int expectedNbCalls = 1;
     private volatile boolean forceToFail = false;
     private volatile int failedResponseStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    private volatile long callbackDelayMs = 0;
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+    private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
 
     @Override
     @BeforeMethod(groups = "slow")
@@ -89,6 +92,8 @@ public class TestPushNotification extends TestJaxrsBase {
         resetCallbackStatusProperties();
         callbackServer.startServer();
         this.expectedNbCalls = 1;
+        this.callbackDelayMs = 0;
+        this.maxConcurrentCalls.set(0);
     }
 
     @AfterMethod(groups = "slow")
@@ -146,6 +151,55 @@ public class TestPushNotification extends TestJaxrsBase {
         unregisterTenantForCallback(callback);
     }
 
+    @Test(groups = "slow", description = "Notifications to a callback are sent one at a time")
+    public void testPushNotificationsAreSentOneAtATime() throws Exception {
+        final String callback = registerTenantForCallback();
+
+        // Slow callback, to give concurrent POSTs a chance to overlap
+        this.callbackDelayMs = 200;
+
+        // set expected number of calls
+        // 1st: was "eventType":"TENANT_CONFIG_CHANGE"
+        // 2nd to 6th: are "eventType":"ACCOUNT_CREATION"
+        this.expectedNbCalls = 6;
+
+        for (int i = 0; i < 5; i++) {
+            createAccount();
+        }
+
+        assertAllCallbacksCompleted();
+        Assert.assertFalse(callbackCompletedWithError);
+        Assert.assertEquals(maxConcurrentCalls.get(), 1);
+
+        unregisterTenantForCallback(callback);
+    }
+
+    @Test(groups = "slow", description = "Delivered notifications aren't resent when the retry recorded before sending them fires")
+    public void testPushNotificationIsNotResentOnceDelivered() throws Exception {
+        final String callback = registerTenantForCallback();
+
+        // set expected number of calls
+        // 1st: was "eventType":"TENANT_CONFIG_CHANGE"
+        // 2nd: is "eventType":"ACCOUNT_CREATION"
+        this.expectedNbCalls = 2;
+
+        createAccount();
+
+        assertAllCallbacksCompleted();
+        Assert.assertFalse(callbackCompletedWithError);
+
+        resetCallbackStatusProperties();
+        this.expectedNbCalls = 3;
+
+        // move clock 15 minutes (+10s for flakiness): the 1st retry was recorded before the notification was sent
+        clock.addDeltaFromReality(910000);
+
+        Assert.assertFalse(waitForCallbacksToComplete());
+        Assert.assertFalse(callbackCompletedWithError);
+
+        unregisterTenantForCallback(callback);
+    }
+
     @Test(groups = "slow", description = "https://github.com/killbill/killbill/issues/726")
     public void testVerify726Backport() throws Exception {
         // Record an event without the metadata field
@@ -414,6 +468,25 @@ public class TestPushNotification extends TestJaxrsBase {
 
         @Override
         protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+            final int concurrent = test.concurrentCalls.incrementAndGet();
+            try {
+                int max = test.maxConcurrentCalls.get();
+                while (concurrent > max && !test.maxConcurrentCalls.compareAndSet(max, concurrent)) {
+                    max = test.maxConcurrentCalls.get();
+                }
+                if (test.callbackDelayMs > 0) {
+                    Thread.sleep(test.callbackDelayMs);
+                }
+                handleCallback(request, response);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            } finally {
+                test.concurrentCalls.decrementAndGet();
+            }
+        }
+
+        private void handleCallback(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
             final int current = receivedCalls.incrementAndGet();
             final String body = CharStreams.toString(new InputStreamReader(request.getInputStream(), "UTF-8"));
 
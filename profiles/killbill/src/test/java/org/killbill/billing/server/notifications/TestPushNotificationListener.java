@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.notifications;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.awaitility.Awaitility;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.jaxrs.json.NotificationJson;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.server.DefaultServerService;
+import org.killbill.billing.server.log.ServerTestSuiteNoDB;
+import org.killbill.billing.tenant.api.TenantInternalApi;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.NotificationConfig;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+
+public class TestPushNotificationListener extends ServerTestSuiteNoDB {
+
+    private static final int SERVER_PORT = 8089;
+    private static final String CALLBACK_URL = "http://127.0.0.1:" + SERVER_PORT + "/callmeback";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private UUID tenantId;
+    private NotificationQueue retryQueue;
+    private NotificationConfig notificationConfig;
+    private CallbackServlet callbackServlet;
+    private Server server;
+    private PushNotificationListener pushNotificationListener;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        if (hasFailed()) {
+            return;
+        }
+
+        tenantId = UUID.randomUUID();
+
+        final TenantContext tenantContext = Mockito.mock(TenantContext.class);
+        Mockito.when(tenantContext.getTenantId()).thenReturn(tenantId);
+        final CallContextFactory contextFactory = Mockito.mock(CallContextFactory.class);
+        Mockito.when(contextFactory.createTenantContext(Mockito.<UUID>any())).thenReturn(tenantContext);
+
+        final TenantUserApi tenantUserApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantUserApi.getTenantValuesForKey(Mockito.anyString(), Mockito.<TenantContext>any())).thenReturn(ImmutableList.<String>of(CALLBACK_URL));
+
+        retryQueue = Mockito.mock(NotificationQueue.class);
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.getNotificationQueue(DefaultServerService.SERVER_SERVICE, PushNotificationRetryService.QUEUE_NAME)).thenReturn(retryQueue);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(Mockito.<TenantContext>any())).thenReturn(internalCallContext);
+        Mockito.when(internalCallContextFactory.getRecordIdFromObject(Mockito.<UUID>any(), Mockito.<ObjectType>any(), Mockito.<TenantContext>any())).thenReturn(1L);
+
+        notificationConfig = Mockito.mock(NotificationConfig.class);
+        Mockito.when(notificationConfig.getPushNotificationsTimeout()).thenReturn(new TimeSpan("10s"));
+        Mockito.when(notificationConfig.getPushNotificationsQueueCapacity()).thenReturn(1000);
+        Mockito.when(notificationConfig.getPushNotificationsMaxInFlight()).thenReturn(1);
+        Mockito.when(notificationConfig.getPushNotificationsBatchSize()).thenReturn(1);
+        Mockito.when(notificationConfig.getPushNotificationsCallbacksCacheTTL()).thenReturn(new TimeSpan("5m"));
+        Mockito.when(notificationConfig.getPushNotificationsRetries(Mockito.<InternalTenantContext>any())).thenReturn(ImmutableList.<TimeSpan>of(new TimeSpan("15m"), new TimeSpan("1h")));
+
+        callbackServlet = new CallbackServlet();
+        server = new Server(SERVER_PORT);
+        final ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(callbackServlet), "/callmeback");
+        server.setHandler(context);
+        server.start();
+
+        pushNotificationListener = new PushNotificationListener(mapper, tenantUserApi, Mockito.mock(TenantInternalApi.class), contextFactory,
+                                                                notificationQueueService, internalCallContextFactory, clock, notificationConfig);
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        callbackServlet.release();
+        pushNotificationListener.shutdown();
+        server.stop();
+    }
+
+    @Test(groups = "fast", description = "Notifications to a callback are sent one at a time, in the order they were received")
+    public void testNotificationsAreSentInOrder() throws Exception {
+        callbackServlet.delayMs = 20;
+
+        final List<String> objectIds = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            objectIds.add(triggerPushNotification().toString());
+        }
+
+        awaitCallbacks(10);
+        Assert.assertEquals(callbackServlet.receivedObjectIds, objectIds);
+        Assert.assertEquals(callbackServlet.maxConcurrentCalls.get(), 1);
+
+        // Each notification was guarded by its first retry before being queued
+        final ArgumentCaptor<NotificationEvent> keys = ArgumentCaptor.forClass(NotificationEvent.class);
+        final ArgumentCaptor<UUID> guardTokens = ArgumentCaptor.forClass(UUID.class);
+        Mockito.verify(retryQueue, Mockito.times(10)).recordFutureNotification(Mockito.<DateTime>any(), keys.capture(), guardTokens.capture(), Mockito.anyLong(), Mockito.anyLong());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(guardTokens.getAllValues().get(i));
+            Assert.assertEquals(((PushNotificationKey) keys.getAllValues().get(i)).getObjectId().toString(), objectIds.get(i));
+            Assert.assertEquals(((PushNotificationKey) keys.getAllValues().get(i)).getAttemptNumber(), (Integer) 1);
+        }
+    }
+
+    @Test(groups = "fast", description = "Notifications which don't fit in the callback queue are handed to the retry queue")
+    public void testOverflowIsHandedToTheRetryQueue() throws Exception {
+        Mockito.when(notificationConfig.getPushNotificationsQueueCapacity()).thenReturn(2);
+        callbackServlet.block();
+
+        // The first one is in flight, the next two are queued and the last two overflow
+        final List<UUID> objectIds = new ArrayList<UUID>();
+        for (int i = 0; i < 5; i++) {
+            objectIds.add(triggerPushNotification());
+        }
+
+        final ArgumentCaptor<NotificationEvent> keys = ArgumentCaptor.forClass(NotificationEvent.class);
+        Mockito.verify(retryQueue, Mockito.times(2)).recordFutureNotification(Mockito.<DateTime>any(), keys.capture(), Mockito.<UUID>eq(null), Mockito.anyLong(), Mockito.anyLong());
+        Assert.assertEquals(((PushNotificationKey) keys.getAllValues().get(0)).getObjectId(), objectIds.get(3));
+        Assert.assertEquals(((PushNotificationKey) keys.getAllValues().get(1)).getObjectId(), objectIds.get(4));
+
+        callbackServlet.release();
+        awaitCallbacks(3);
+        Assert.assertEquals(callbackServlet.receivedObjectIds, ImmutableList.<String>of(objectIds.get(0).toString(), objectIds.get(1).toString(), objectIds.get(2).toString()));
+    }
+
+    @Test(groups = "fast", description = "Failed notifications are retried, guards are only resent when recorded by another listener")
+    public void testRetries() throws Exception {
+        callbackServlet.failedResponseStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+        final UUID objectId = triggerPushNotification();
+        awaitCallbacks(1);
+
+        // The guard, then the retry of the failed POST
+        final ArgumentCaptor<NotificationEvent> keys = ArgumentCaptor.forClass(NotificationEvent.class);
+        final ArgumentCaptor<UUID> guardTokens = ArgumentCaptor.forClass(UUID.class);
+        Mockito.verify(retryQueue, Mockito.timeout(5000).times(2)).recordFutureNotification(Mockito.<DateTime>any(), keys.capture(), guardTokens.capture(), Mockito.anyLong(), Mockito.anyLong());
+        Assert.assertNotNull(guardTokens.getAllValues().get(0));
+        Assert.assertNull(guardTokens.getAllValues().get(1));
+        final PushNotificationKey retryKey = (PushNotificationKey) keys.getAllValues().get(1);
+        Assert.assertEquals(retryKey.getObjectId(), objectId);
+        Assert.assertEquals(retryKey.getAttemptNumber(), (Integer) 1);
+
+        callbackServlet.failedResponseStatus = null;
+
+        // Our own guard is skipped (callbacks are sent in order: the new notification would otherwise come second)
+        final PushNotificationKey guardKey = (PushNotificationKey) keys.getAllValues().get(0);
+        pushNotificationListener.resendPushNotification(guardKey, guardTokens.getAllValues().get(0));
+        final UUID otherObjectId = triggerPushNotification();
+        awaitCallbacks(2);
+        Assert.assertEquals(callbackServlet.receivedObjectIds, ImmutableList.<String>of(objectId.toString(), otherObjectId.toString()));
+
+        // The retry is resent
+        pushNotificationListener.resendPushNotification(retryKey, null);
+        awaitCallbacks(3);
+
+        // A guard recorded by another listener (e.g. before a restart) is resent
+        pushNotificationListener.resendPushNotification(guardKey, UUID.randomUUID());
+        awaitCallbacks(4);
+        Assert.assertEquals(callbackServlet.receivedObjectIds, ImmutableList.<String>of(objectId.toString(), otherObjectId.toString(), objectId.toString(), objectId.toString()));
+    }
+
+    private UUID triggerPushNotification() {
+        final UUID accountId = UUID.randomUUID();
+        final ExtBusEvent event = Mockito.mock(ExtBusEvent.class);
+        Mockito.when(event.getEventType()).thenReturn(ExtBusEventType.ACCOUNT_CREATION);
+        Mockito.when(event.getObjectType()).thenReturn(ObjectType.ACCOUNT);
+        Mockito.when(event.getObjectId()).thenReturn(accountId);
+        Mockito.when(event.getAccountId()).thenReturn(accountId);
+        Mockito.when(event.getTenantId()).thenReturn(tenantId);
+        pushNotificationListener.triggerPushNotifications(event);
+        return accountId;
+    }
+
+    private void awaitCallbacks(final int nbCalls) {
+        Awaitility.await()
+                  .atMost(10, TimeUnit.SECONDS)
+                  .until(new Callable<Boolean>() {
+                      @Override
+                      public Boolean call() {
+                          return callbackServlet.receivedObjectIds.size() >= nbCalls;
+                      }
+                  });
+        Assert.assertEquals(callbackServlet.receivedObjectIds.size(), nbCalls);
+    }
+
+    private final class CallbackServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 2871519628307735287L;
+
+        private final List<String> receivedObjectIds = new CopyOnWriteArrayList<String>();
+        private final AtomicInteger concurrentCalls = new AtomicInteger();
+        private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+
+        private volatile long delayMs = 0;
+        private volatile Integer failedResponseStatus = null;
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        private void block() {
+            latch = new CountDownLatch(1);
+        }
+
+        private void release() {
+            latch.countDown();
+        }
+
+        @Override
+        protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            final int current = concurrentCalls.incrementAndGet();
+            try {
+                int max = maxConcurrentCalls.get();
+                while (current > max && !maxConcurrentCalls.compareAndSet(max, current)) {
+                    max = maxConcurrentCalls.get();
+                }
+
+                latch.await();
+                Thread.sleep(delayMs);
+
+                final String body = CharStreams.toString(new InputStreamReader(request.getInputStream(), "UTF-8"));
+                receivedObjectIds.add(mapper.readValue(body, NotificationJson.class).getObjectId());
+                response.setStatus(failedResponseStatus != null ? failedResponseStatus : HttpServletResponse.SC_OK);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+        }
+    }
+}
@@ -80,4 +80,32 @@ public class TestTenantFilter extends TestJaxrsBase {
         loginTenant(apiKeyTenant1, apiSecretTenant1);
         Assert.assertNull(killBillClient.getAccount(account2.getExternalKey()));
     }
+
+    @Test(groups = "slow")
+    public void testWrongSecretIsRejectedOnceCredentialsAreCached() throws Exception {
+        final String apiKeyTenant = "jean";
+        final String apiSecretTenant = "jeanIsAlsoFr3nch";
+        loginTenant(apiKeyTenant, apiSecretTenant);
+        final Tenant tenant = new Tenant();
+        tenant.setApiKey(apiKeyTenant);
+        tenant.setApiSecret(apiSecretTenant);
+        killBillClient.createTenant(tenant, createdBy, reason, comment);
+
+        // Credentials are now verified (and cached)
+        final Account account = createAccount();
+        Assert.assertEquals(killBillClient.getAccount(account.getExternalKey()), account);
+        Assert.assertEquals(killBillClient.getAccount(account.getExternalKey()), account);
+
+        // Same api key, wrong secret
+        loginTenant(apiKeyTenant, apiSecretTenant + "!");
+        try {
+            killBillClient.getAccount(account.getExternalKey());
+            Assert.fail();
+        } catch (final KillBillClientException e) {
+            Assert.assertEquals(e.getResponse().getStatusCode(), Status.UNAUTHORIZED.getStatusCode());
+        }
+
+        loginTenant(apiKeyTenant, apiSecretTenant);
+        Assert.assertEquals(killBillClient.getAccount(account.getExternalKey()), account);
+    }
 }
@@ -25,6 +25,7 @@ import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.TenantCacheKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,7 +33,7 @@ public class TenantCacheInvalidationCallback implements CacheInvalidationCallbac
 
     private final Logger log = LoggerFactory.getLogger(TenantCacheInvalidationCallback.class);
 
-    private final CacheController<String, String> tenantKVCache;
+    private final CacheController<TenantCacheKey, String> tenantKVCache;
 
     @Inject
     public TenantCacheInvalidationCallback(final CacheControllerDispatcher cacheControllerDispatcher) {
@@ -47,9 +48,7 @@ public class TenantCacheInvalidationCallback implements CacheInvalidationCallbac
         if (cookie instanceof String) {
             keyBuilder.append((String) cookie);
         }
-        keyBuilder.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-        keyBuilder.append(tenantContext.getTenantRecordId());
-        final String key = keyBuilder.toString();
+        final TenantCacheKey key = new TenantCacheKey(keyBuilder.toString(), tenantContext.getTenantRecordId());
 
         log.info("Invalidate cache for tenant {} and key {} ", tenantContext.getTenantRecordId(), key);
         tenantKVCache.remove(key);
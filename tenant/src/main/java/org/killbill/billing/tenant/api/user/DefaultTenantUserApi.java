@@ -41,6 +41,7 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.TenantCacheKey;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
@@ -71,7 +72,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
     private final TenantDao tenantDao;
     private final InternalCallContextFactory internalCallContextFactory;
-    private final CacheController<String, String> tenantKVCache;
+    private final CacheController<TenantCacheKey, String> tenantKVCache;
     private final CacheController<String, Tenant> tenantCache;
 
 
@@ -132,7 +133,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
     public void addTenantKeyValue(final String key, final String value, final CallContext context) throws TenantApiException {
         // Invalidate tenantKVCache after we store (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
-        final String tenantKey = getCacheKeyName(key, internalContext);
+        final TenantCacheKey tenantKey = getCacheKeyName(key, internalContext);
         tenantDao.addTenantKeyValue(key, value, isSingleValueKey(key), internalContext);
         tenantKVCache.remove(tenantKey);
     }
@@ -141,7 +142,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
     public void updateTenantKeyValue(final String key, final String value, final CallContext context) throws TenantApiException {
         // Invalidate tenantKVCache after we store (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
-        final String tenantKey = getCacheKeyName(key, internalContext);
+        final TenantCacheKey tenantKey = getCacheKeyName(key, internalContext);
         tenantDao.updateTenantLastKeyValue(key, value, internalContext);
         tenantKVCache.remove(tenantKey);
     }
@@ -150,7 +151,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
     public void deleteTenantKey(final String key, final CallContext context) throws TenantApiException {
         // Invalidate tenantKVCache after we delete (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
-        final String tenantKey = getCacheKeyName(key, internalContext);
+        final TenantCacheKey tenantKey = getCacheKeyName(key, internalContext);
         tenantDao.deleteTenantKey(key, internalContext);
         tenantKVCache.remove(tenantKey);
     }
@@ -171,7 +172,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
 
     private List<String> getCachedTenantValuesForKey(final String key, final InternalTenantContext internalContext) {
-        final String tenantKey = getCacheKeyName(key, internalContext);
+        final TenantCacheKey tenantKey = getCacheKeyName(key, internalContext);
         final Object cachedTenantValues = tenantKVCache.get(tenantKey, new CacheLoaderArgument(ObjectType.TENANT_KVS));
         if (cachedTenantValues == null) {
             return ImmutableList.<String>of();
@@ -181,11 +182,8 @@ public class DefaultTenantUserApi implements TenantUserApi {
         }
     }
 
-    private String getCacheKeyName(final String key, final InternalTenantContext internalContext) {
-        final StringBuilder tenantKey = new StringBuilder(key);
-        tenantKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-        tenantKey.append(internalContext.getTenantRecordId());
-        return tenantKey.toString();
+    private TenantCacheKey getCacheKeyName(final String key, final InternalTenantContext internalContext) {
+        return new TenantCacheKey(key, internalContext.getTenantRecordId());
     }
 
     private boolean isSingleValueKey(final String key) {
@@ -16,7 +16,9 @@
 
 package org.killbill.billing.util.audit.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -35,4 +37,7 @@ public interface AuditDao {
     public DefaultAccountAuditLogsForObjectType getAuditLogsForAccountRecordId(TableName tableName, AuditLevel auditLevel, InternalTenantContext context);
 
     public List<AuditLog> getAuditLogsForId(TableName tableName, UUID objectId, AuditLevel auditLevel, InternalTenantContext context);
+
+    // One IN (...) query per chunk of ids (entity or history table). Objects without audit logs are absent from the result
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(TableName tableName, Collection<UUID> objectIds, AuditLevel auditLevel, InternalTenantContext context);
 }
@@ -18,10 +18,13 @@
 
 package org.killbill.billing.util.audit.dao;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -34,7 +37,10 @@ import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.audit.DefaultAccountAuditLogs;
 import org.killbill.billing.util.audit.DefaultAccountAuditLogsForObjectType;
 import org.killbill.billing.util.audit.DefaultAuditLog;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.IdCacheKey;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.dao.NonEntitySqlDao;
@@ -48,18 +54,28 @@ import org.killbill.clock.Clock;
 import org.skife.jdbi.v2.IDBI;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
 public class DefaultAuditDao implements AuditDao {
 
+    // Maximum number of ids in a single IN (...) clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private final NonEntityDao nonEntityDao;
     private final NonEntitySqlDao nonEntitySqlDao;
+    private final CacheController<IdCacheKey, Long> recordIdCacheController;
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
 
     @Inject
     public DefaultAuditDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao, final InternalCallContextFactory internalCallContextFactory) {
+        this.nonEntityDao = nonEntityDao;
         this.nonEntitySqlDao = dbi.onDemand(NonEntitySqlDao.class);
+        this.recordIdCacheController = cacheControllerDispatcher == null ? null : cacheControllerDispatcher.<IdCacheKey, Long>getCacheController(CacheType.RECORD_ID);
         this.transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory);
     }
 
@@ -212,6 +228,86 @@ public class DefaultAuditDao implements AuditDao {
         return filterAuditLogs(auditLevel, allAuditLogs);
     }
 
+    @Override
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(final TableName tableName, final Collection<UUID> objectIds, final AuditLevel auditLevel, final InternalTenantContext context) {
+        if (objectIds.isEmpty()) {
+            return ImmutableMap.<UUID, List<AuditLog>>of();
+        }
+
+        // Map the record ids the audit_log rows point to (the entity or its history rows) back to the object ids
+        final Map<Long, UUID> auditedRecordIds;
+        final TableName auditedTableName;
+        if (tableName.hasHistoryTable()) {
+            auditedTableName = tableName.getHistoryTableName();
+            auditedRecordIds = getHistoryRecordIdsForIds(tableName, auditedTableName, objectIds, context);
+        } else {
+            auditedTableName = tableName;
+            auditedRecordIds = getRecordIdsForIds(tableName, objectIds);
+        }
+
+        final Map<UUID, List<AuditLog>> result = new HashMap<UUID, List<AuditLog>>();
+        if (auditedRecordIds.isEmpty()) {
+            return result;
+        }
+
+        final List<AuditLogModelDao> auditLogModelDaos = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<AuditLogModelDao>>() {
+            @Override
+            public List<AuditLogModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final EntitySqlDao entitySqlDao = entitySqlDaoWrapperFactory.become(EntitySqlDao.class);
+
+                final List<AuditLogModelDao> auditLogModelDaos = new LinkedList<AuditLogModelDao>();
+                for (final List<Long> chunk : Iterables.partition(auditedRecordIds.keySet(), MAX_IDS_PER_QUERY)) {
+                    auditLogModelDaos.addAll(entitySqlDao.getAuditLogsForTargetRecordIds(auditedTableName.name(), chunk, context));
+                }
+                return auditLogModelDaos;
+            }
+        });
+
+        // Rows are ordered by record_id, so each object sees its audit logs in the same order as getAuditLogsForId
+        for (final AuditLogModelDao auditLogModelDao : auditLogModelDaos) {
+            final UUID objectId = auditedRecordIds.get(auditLogModelDao.getTargetRecordId());
+            if (result.get(objectId) == null) {
+                result.put(objectId, new LinkedList<AuditLog>());
+            }
+            result.get(objectId).add(new DefaultAuditLog(auditLogModelDao, tableName.getObjectType(), objectId));
+        }
+
+        for (final Entry<UUID, List<AuditLog>> entry : result.entrySet()) {
+            entry.setValue(filterAuditLogs(auditLevel, entry.getValue()));
+        }
+        return result;
+    }
+
+    private Map<Long, UUID> getRecordIdsForIds(final TableName tableName, final Collection<UUID> objectIds) {
+        if (tableName.getObjectType() != null) {
+            final Map<UUID, Long> recordIds = nonEntityDao.retrieveRecordIdsFromObjects(objectIds, tableName.getObjectType(), recordIdCacheController);
+
+            final Map<Long, UUID> result = new HashMap<Long, UUID>();
+            for (final Entry<UUID, Long> entry : recordIds.entrySet()) {
+                result.put(entry.getValue(), entry.getKey());
+            }
+            return result;
+        }
+
+        // History tables don't have an ObjectType (and aren't cached)
+        final Map<Long, UUID> result = new HashMap<Long, UUID>();
+        for (final List<UUID> chunk : Iterables.partition(objectIds, MAX_IDS_PER_QUERY)) {
+            result.putAll(RecordIdIdMappings.toMap(nonEntitySqlDao.getRecordIdsFromObjects(Lists.transform(chunk, Functions.toStringFunction()), tableName.getTableName())));
+        }
+        return result;
+    }
+
+    private Map<Long, UUID> getHistoryRecordIdsForIds(final TableName tableName, final TableName historyTableName, final Collection<UUID> objectIds, final InternalTenantContext context) {
+        final Map<Long, UUID> result = new HashMap<Long, UUID>();
+        for (final List<UUID> chunk : Iterables.partition(objectIds, MAX_IDS_PER_QUERY)) {
+            result.putAll(RecordIdIdMappings.toMap(nonEntitySqlDao.getHistoryRecordIdIdMappingsForIds(Lists.transform(chunk, Functions.toStringFunction()),
+                                                                                                      tableName.getTableName(),
+                                                                                                      historyTableName.getTableName(),
+                                                                                                      context)));
+        }
+        return result;
+    }
+
     private List<AuditLog> buildAuditLogsFromModelDao(final List<AuditLogModelDao> auditLogsForAccountRecordId, final ObjectType objectType, final UUID auditedEntityId) {
         return Lists.<AuditLogModelDao, AuditLog>transform(auditLogsForAccountRecordId,
                                                            new Function<AuditLogModelDao, AuditLog>() {
@@ -18,8 +18,6 @@
 
 package org.killbill.billing.util.cache;
 
-import java.util.UUID;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -29,7 +27,7 @@ import org.killbill.billing.util.dao.NonEntityDao;
 import org.skife.jdbi.v2.Handle;
 
 @Singleton
-public class AccountRecordIdCacheLoader extends BaseIdCacheLoader<Long> {
+public class AccountRecordIdCacheLoader extends BaseIdCacheLoader<IdCacheKey, Long> {
 
     private final NonEntityDao nonEntityDao;
 
@@ -45,7 +43,7 @@ public class AccountRecordIdCacheLoader extends BaseIdCacheLoader<Long> {
     }
 
     @Override
-    protected Long doRetrieveOperation(final String rawKey, final ObjectType objectType, final Handle handle) {
-        return nonEntityDao.retrieveAccountRecordIdFromObjectInTransaction(UUID.fromString(rawKey), objectType, null, handle);
+    protected Long doRetrieveOperation(final IdCacheKey key, final ObjectType objectType, final Handle handle) {
+        return nonEntityDao.retrieveAccountRecordIdFromObjectInTransaction(key.getId(), objectType, null, handle);
     }
 }
@@ -20,26 +20,18 @@ package org.killbill.billing.util.cache;
 import org.killbill.billing.ObjectType;
 import org.skife.jdbi.v2.Handle;
 
-public abstract class BaseIdCacheLoader<V> extends BaseCacheLoader<String, V> {
+public abstract class BaseIdCacheLoader<K, V> extends BaseCacheLoader<K, V> {
 
     protected BaseIdCacheLoader() {
         super();
     }
 
-    protected abstract V doRetrieveOperation(final String rawKey, final ObjectType objectType, final Handle handle);
+    protected abstract V doRetrieveOperation(final K key, final ObjectType objectType, final Handle handle);
 
     @Override
-    public V compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
-        final String rawKey;
-        if (getCacheType().isKeyPrefixedWithTableName()) {
-            final String[] parts = key.split(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-            rawKey = parts[1];
-        } else {
-            rawKey = key;
-        }
-
+    public V compute(final K key, final CacheLoaderArgument cacheLoaderArgument) {
         final ObjectType objectType = cacheLoaderArgument.getObjectType();
         final Handle handle = cacheLoaderArgument.getHandle();
-        return doRetrieveOperation(rawKey, objectType, handle);
+        return doRetrieveOperation(key, objectType, handle);
     }
 }
@@ -30,6 +30,7 @@ import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.catalog.api.Plan;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.util.config.tenant.PerTenantConfig;
+import org.killbill.billing.util.tag.ControlTagBits;
 
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD})
@@ -50,67 +51,69 @@ public @interface Cachable {
     String OVERRIDDEN_PLAN_CACHE_NAME = "overridden-plan";
     String ACCOUNT_IMMUTABLE_CACHE_NAME = "account-immutable";
     String ACCOUNT_BCD_CACHE_NAME = "account-bcd";
+    String ACCOUNT_CONTROL_TAGS_CACHE_NAME = "account-control-tags";
 
     CacheType value();
 
     // Make sure both the key and value are Serializable
     enum CacheType {
 
-        /* Mapping from object 'id (UUID as String)' -> object 'recordId (Long)' */
-        RECORD_ID(RECORD_ID_CACHE_NAME, String.class, Long.class, false),
+        /* Mapping from object 'id (IdCacheKey)' -> object 'recordId (Long)' */
+        RECORD_ID(RECORD_ID_CACHE_NAME, IdCacheKey.class, Long.class),
 
-        /* Mapping from object 'id (UUID as String)' -> matching account object 'accountRecordId (Long)' */
-        ACCOUNT_RECORD_ID(ACCOUNT_RECORD_ID_CACHE_NAME, String.class, Long.class, false),
+        /* Mapping from object 'id (IdCacheKey)' -> matching account object 'accountRecordId (Long)' */
+        ACCOUNT_RECORD_ID(ACCOUNT_RECORD_ID_CACHE_NAME, IdCacheKey.class, Long.class),
 
-        /* Mapping from object 'id (UUID as String)' -> matching object 'tenantRecordId (Long)' */
-        TENANT_RECORD_ID(TENANT_RECORD_ID_CACHE_NAME, String.class, Long.class, false),
+        /* Mapping from object 'id (IdCacheKey)' -> matching object 'tenantRecordId (Long)' */
+        TENANT_RECORD_ID(TENANT_RECORD_ID_CACHE_NAME, IdCacheKey.class, Long.class),
 
-        /* Mapping from object 'recordId (Long as String)' -> object 'id (UUID)'  */
-        OBJECT_ID(OBJECT_ID_CACHE_NAME, String.class, UUID.class, true),
+        /* Mapping from object 'tableName and recordId (RecordIdCacheKey)' -> object 'id (UUID)'  */
+        OBJECT_ID(OBJECT_ID_CACHE_NAME, RecordIdCacheKey.class, UUID.class),
 
-        /* Mapping from object 'tableName::targetRecordId' -> matching objects 'List<AuditLogModelDao>' */
-        AUDIT_LOG(AUDIT_LOG_CACHE_NAME, String.class, List.class, true),
+        /* Mapping from object 'tableName and targetRecordId (RecordIdCacheKey)' -> matching objects 'List<AuditLogModelDao>' */
+        AUDIT_LOG(AUDIT_LOG_CACHE_NAME, RecordIdCacheKey.class, List.class),
 
-        /* Mapping from object 'tableName::historyTableName::targetRecordId' -> matching objects 'List<AuditLogModelDao>' */
-        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, String.class, List.class, true),
+        /* Mapping from object 'historyTableName and targetRecordId (RecordIdCacheKey)' -> matching objects 'List<AuditLogModelDao>' */
+        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, RecordIdCacheKey.class, List.class),
 
         /* Tenant catalog cache */
-        TENANT_CATALOG(TENANT_CATALOG_CACHE_NAME, Long.class, Catalog.class, false),
+        TENANT_CATALOG(TENANT_CATALOG_CACHE_NAME, Long.class, Catalog.class),
 
-        /* Tenant payment state machine config cache (String -> SerializableStateMachineConfig) */
-        TENANT_PAYMENT_STATE_MACHINE_CONFIG(TENANT_PAYMENT_STATE_MACHINE_CONFIG_CACHE_NAME, String.class, Object.class, false),
+        /* Tenant payment state machine config cache (TenantCacheKey -> SerializableStateMachineConfig) */
+        TENANT_PAYMENT_STATE_MACHINE_CONFIG(TENANT_PAYMENT_STATE_MACHINE_CONFIG_CACHE_NAME, TenantCacheKey.class, Object.class),
 
         /* Tenant overdue config cache (String -> DefaultOverdueConfig) */
-        TENANT_OVERDUE_CONFIG(TENANT_OVERDUE_CONFIG_CACHE_NAME, Long.class, Object.class, false),
+        TENANT_OVERDUE_CONFIG(TENANT_OVERDUE_CONFIG_CACHE_NAME, Long.class, Object.class),
 
         /* Tenant overdue config cache */
-        TENANT_CONFIG(TENANT_CONFIG_CACHE_NAME, Long.class, PerTenantConfig.class, false),
+        TENANT_CONFIG(TENANT_CONFIG_CACHE_NAME, Long.class, PerTenantConfig.class),
 
         /* Tenant config cache */
-        TENANT_KV(TENANT_KV_CACHE_NAME, String.class, String.class, false),
+        TENANT_KV(TENANT_KV_CACHE_NAME, TenantCacheKey.class, String.class),
 
         /* Tenant cache */
-        TENANT(TENANT_CACHE_NAME, String.class, Tenant.class, false),
+        TENANT(TENANT_CACHE_NAME, String.class, Tenant.class),
 
         /* Overwritten plans  */
-        OVERRIDDEN_PLAN(OVERRIDDEN_PLAN_CACHE_NAME, String.class, Plan.class, false),
+        OVERRIDDEN_PLAN(OVERRIDDEN_PLAN_CACHE_NAME, String.class, Plan.class),
 
         /* Immutable account data config cache */
-        ACCOUNT_IMMUTABLE(ACCOUNT_IMMUTABLE_CACHE_NAME, Long.class, ImmutableAccountData.class, false),
+        ACCOUNT_IMMUTABLE(ACCOUNT_IMMUTABLE_CACHE_NAME, Long.class, ImmutableAccountData.class),
 
         /* Account BCD config cache */
-        ACCOUNT_BCD(ACCOUNT_BCD_CACHE_NAME, UUID.class, Integer.class, false);
+        ACCOUNT_BCD(ACCOUNT_BCD_CACHE_NAME, UUID.class, Integer.class),
+
+        /* Mapping from 'accountRecordId (Long)' -> control tags of all the account objects */
+        ACCOUNT_CONTROL_TAGS(ACCOUNT_CONTROL_TAGS_CACHE_NAME, Long.class, ControlTagBits.class);
 
         private final String cacheName;
         private final Class keyType;
         private final Class valueType;
-        private final boolean isKeyPrefixedWithTableName;
 
-        CacheType(final String cacheName, final Class keyType, final Class valueType, final boolean isKeyPrefixedWithTableName) {
+        CacheType(final String cacheName, final Class keyType, final Class valueType) {
             this.cacheName = cacheName;
             this.keyType = keyType;
             this.valueType = valueType;
-            this.isKeyPrefixedWithTableName = isKeyPrefixedWithTableName;
         }
 
         public String getCacheName() {
@@ -125,8 +128,6 @@ public @interface Cachable {
             return valueType;
         }
 
-        public boolean isKeyPrefixedWithTableName() { return isKeyPrefixedWithTableName; }
-
         public static CacheType findByName(final String input) {
             for (final CacheType cacheType : CacheType.values()) {
                 if (cacheType.cacheName.equals(input)) {
@@ -16,7 +16,9 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
 
@@ -30,6 +32,9 @@ public interface CacheController<K, V> {
 
     V get(K key, CacheLoaderArgument objectType);
 
+    // Cached values for these keys (missing keys are not loaded, and are absent from the result)
+    Map<K, V> getAll(Collection<K> keys);
+
     boolean remove(K key);
 
     void remove(Function<K, Boolean> keyMatcher);
@@ -41,4 +46,6 @@ public interface CacheController<K, V> {
     void removeAll();
 
     CacheType getCacheType();
+
+    CacheStatistics getStatistics();
 }
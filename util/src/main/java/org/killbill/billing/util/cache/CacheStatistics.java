@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+
+// Point-in-time snapshot of the counters maintained by a CacheController
+public class CacheStatistics {
+
+    private final CacheType cacheType;
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long loadFailureCount;
+    private final long coalescedLoadCount;
+    private final long totalLoadTimeNanos;
+    private final int size;
+
+    public CacheStatistics(final CacheType cacheType,
+                           final long hitCount,
+                           final long missCount,
+                           final long loadCount,
+                           final long loadFailureCount,
+                           final long coalescedLoadCount,
+                           final long totalLoadTimeNanos,
+                           final int size) {
+        this.cacheType = cacheType;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.coalescedLoadCount = coalescedLoadCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+        this.size = size;
+    }
+
+    public CacheType getCacheType() {
+        return cacheType;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    // Number of times the cache loader was invoked
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    // Number of misses which waited for a load already in progress for the same key instead of invoking the cache loader
+    public long getCoalescedLoadCount() {
+        return coalescedLoadCount;
+    }
+
+    public long getTotalLoadTimeNanos() {
+        return totalLoadTimeNanos;
+    }
+
+    public double getAverageLoadTimeMillis() {
+        return loadCount == 0 ? 0 : (totalLoadTimeNanos / (double) loadCount) / 1000000.0;
+    }
+
+    public double getHitRatio() {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : hitCount / (double) requestCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CacheStatistics{");
+        sb.append("cacheType=").append(cacheType);
+        sb.append(", hitCount=").append(hitCount);
+        sb.append(", missCount=").append(missCount);
+        sb.append(", loadCount=").append(loadCount);
+        sb.append(", loadFailureCount=").append(loadFailureCount);
+        sb.append(", coalescedLoadCount=").append(coalescedLoadCount);
+        sb.append(", totalLoadTimeNanos=").append(totalLoadTimeNanos);
+        sb.append(", size=").append(size);
+        sb.append('}');
+        return sb.toString();
+    }
+}
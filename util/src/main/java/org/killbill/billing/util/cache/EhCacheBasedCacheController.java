@@ -18,13 +18,29 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.cache.Cache;
 import javax.cache.Cache.Entry;
 
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,9 +56,22 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
     private final Cache<K, V> cache;
     private final BaseCacheLoader<K, V> baseCacheLoader;
 
+    // Loads in progress, to make sure concurrent misses for the same key only hit the loader (i.e. the database) once
+    private final ConcurrentMap<K, FutureTask<V>> loadsInProgress = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong coalescedLoadCount = new AtomicLong();
+    private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+    // Maintained from the Ehcache events (null if those aren't available), to avoid iterating over the cache
+    private final AtomicInteger size;
+
     public EhCacheBasedCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader) {
         this.cache = cache;
         this.baseCacheLoader = baseCacheLoader;
+        this.size = registerSizeListener(cache);
     }
 
     @Override
@@ -68,11 +97,13 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
             return null;
         }
 
-        final V value;
-        if (!isKeyInCache(key)) {
-            value = computeAndCacheValue(key, cacheLoaderArgument);
+        // Single lookup on the hit path (no containsKey): the caches are never configured with a read-through loader
+        V value = cache.get(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
         } else {
-            value = cache.get(key);
+            missCount.incrementAndGet();
+            value = computeAndCacheValue(key, cacheLoaderArgument);
         }
 
         if (value == null || value.equals(BaseCacheLoader.EMPTY_VALUE_PLACEHOLDER)) {
@@ -82,6 +113,25 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
         }
     }
 
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) {
+        final Map<K, V> result = new HashMap<K, V>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        final Set<K> uniqueKeys = new HashSet<K>(keys);
+        for (final Map.Entry<K, V> entry : cache.getAll(uniqueKeys).entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().equals(BaseCacheLoader.EMPTY_VALUE_PLACEHOLDER)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        hitCount.addAndGet(result.size());
+        missCount.addAndGet(uniqueKeys.size() - result.size());
+
+        return result;
+    }
+
     @Override
     public void putIfAbsent(final K key, final V value) {
         cache.putIfAbsent(key, value);
@@ -89,20 +139,15 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
 
     @Override
     public boolean remove(final K key) {
-        if (isKeyInCache(key)) {
-            cache.remove(key);
-            return true;
-        } else {
-            return false;
-        }
+        return cache.remove(key);
     }
 
     @Override
     public void remove(final Function<K, Boolean> keyMatcher) {
         final Set<K> toRemove = new HashSet<K>();
-        for (final Object key : getKeys()) {
-            if (keyMatcher.apply((K) key) == Boolean.TRUE) {
-                toRemove.add((K) key);
+        for (final Entry<K, V> entry : cache) {
+            if (keyMatcher.apply(entry.getKey()) == Boolean.TRUE) {
+                toRemove.add(entry.getKey());
             }
         }
         cache.removeAll(toRemove);
@@ -111,10 +156,18 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
     @Override
     public void removeAll() {
         cache.clear();
+        // clear() doesn't generate any event
+        if (size != null) {
+            size.set(0);
+        }
     }
 
     @Override
     public int size() {
+        if (size != null) {
+            // Can transiently be off when entries are added while the cache is being cleared
+            return Math.max(0, size.get());
+        }
         return Iterables.<Cache.Entry<K, V>>size(cache);
     }
 
@@ -123,23 +176,108 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
         return baseCacheLoader.getCacheType();
     }
 
+    @Override
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(getCacheType(),
+                                   hitCount.get(),
+                                   missCount.get(),
+                                   loadCount.get(),
+                                   loadFailureCount.get(),
+                                   coalescedLoadCount.get(),
+                                   totalLoadTimeNanos.get(),
+                                   size());
+    }
+
     private V computeAndCacheValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
+        final FutureTask<V> newLoad = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() {
+                // A concurrent load may have completed between our miss and the registration of this one
+                final V cachedValue = cache.get(key);
+                if (cachedValue != null) {
+                    return cachedValue;
+                }
+                return loadAndCacheValue(key, cacheLoaderArgument);
+            }
+        });
+
+        FutureTask<V> load = loadsInProgress.putIfAbsent(key, newLoad);
+        if (load == null) {
+            load = newLoad;
+            try {
+                load.run();
+            } finally {
+                loadsInProgress.remove(key, load);
+            }
+        } else {
+            coalescedLoadCount.incrementAndGet();
+        }
+
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private V loadAndCacheValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
         final V value;
+        final long startNanos = System.nanoTime();
         try {
             value = baseCacheLoader.compute(key, cacheLoaderArgument);
         } catch (final Exception e) {
+            loadFailureCount.incrementAndGet();
             // Remove noisy log (might be expected, see https://github.com/killbill/killbill/issues/842)
             //logger.warn("Unable to compute cached value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
             throw new RuntimeException(e);
+        } finally {
+            loadCount.incrementAndGet();
+            totalLoadTimeNanos.addAndGet(System.nanoTime() - startNanos);
         }
 
         if (value == null) {
             return null;
         }
 
-        // Race condition, we may compute it for nothing
+        // Loads for the same key are coalesced, but the entry may still have been put (e.g. putIfAbsent from a DAO) in the meantime
         putIfAbsent(key, value);
 
         return value;
     }
+
+    private static <K, V> AtomicInteger registerSizeListener(final Cache<K, V> cache) {
+        final org.ehcache.Cache<K, V> ehCache;
+        try {
+            ehCache = cache.unwrap(org.ehcache.Cache.class);
+        } catch (final IllegalArgumentException e) {
+            logger.debug("Unable to unwrap cache '{}', size will be computed by iterating over the cache", cache.getName());
+            return null;
+        }
+
+        final AtomicInteger size = new AtomicInteger(Iterables.<Cache.Entry<K, V>>size(cache));
+        // Synchronous, so that size() is accurate as soon as the cache operation returns
+        ehCache.getRuntimeConfiguration().registerCacheEventListener(new CacheEventListener<K, V>() {
+                                                                         @Override
+                                                                         public void onEvent(final CacheEvent<? extends K, ? extends V> event) {
+                                                                             if (event.getType() == EventType.CREATED) {
+                                                                                 size.incrementAndGet();
+                                                                             } else {
+                                                                                 size.decrementAndGet();
+                                                                             }
+                                                                         }
+                                                                     },
+                                                                     EventOrdering.UNORDERED,
+                                                                     EventFiring.SYNCHRONOUS,
+                                                                     EnumSet.<EventType>of(EventType.CREATED, EventType.REMOVED, EventType.EXPIRED, EventType.EVICTED));
+        return size;
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+// Compact cache key for an object id: the UUID is kept as two longs (instead of a 36 characters String) and the hash code is computed once
+public final class IdCacheKey implements Serializable {
+
+    private static final long serialVersionUID = 5387498237403826432L;
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+    private final int hashCode;
+
+    private IdCacheKey(final long mostSignificantBits, final long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+        // Same as UUID#hashCode
+        final long hilo = mostSignificantBits ^ leastSignificantBits;
+        this.hashCode = ((int) (hilo >> 32)) ^ (int) hilo;
+    }
+
+    public static IdCacheKey of(final UUID id) {
+        return new IdCacheKey(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    // Case insensitive
+    public static IdCacheKey of(final String id) {
+        return of(UUID.fromString(id));
+    }
+
+    public UUID getId() {
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final IdCacheKey that = (IdCacheKey) o;
+        return mostSignificantBits == that.mostSignificantBits && leastSignificantBits == that.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return getId().toString();
+    }
+}
@@ -28,7 +28,7 @@ import org.killbill.billing.util.dao.NonEntityDao;
 import org.skife.jdbi.v2.Handle;
 
 @Singleton
-public class ObjectIdCacheLoader extends BaseIdCacheLoader<UUID> {
+public class ObjectIdCacheLoader extends BaseIdCacheLoader<RecordIdCacheKey, UUID> {
 
     private final NonEntityDao nonEntityDao;
 
@@ -44,8 +44,7 @@ public class ObjectIdCacheLoader extends BaseIdCacheLoader<UUID> {
     }
 
     @Override
-    protected UUID doRetrieveOperation(final String rawKey, final ObjectType objectType, final Handle handle) {
-        final Long recordId = Long.valueOf(rawKey);
-        return nonEntityDao.retrieveIdFromObjectInTransaction(recordId, objectType, null, handle);
+    protected UUID doRetrieveOperation(final RecordIdCacheKey key, final ObjectType objectType, final Handle handle) {
+        return nonEntityDao.retrieveIdFromObjectInTransaction(key.getRecordId(), objectType, null, handle);
     }
 }
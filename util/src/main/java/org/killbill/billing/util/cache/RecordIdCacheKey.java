@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.io.Serializable;
+
+import org.killbill.billing.util.dao.TableName;
+
+// Compact cache key for a record id in a given table (replaces the 'tableName::recordId' Strings)
+public final class RecordIdCacheKey implements Serializable {
+
+    private static final long serialVersionUID = -2316409824137823815L;
+
+    private final TableName tableName;
+    private final long recordId;
+    private final int hashCode;
+
+    public RecordIdCacheKey(final TableName tableName, final long recordId) {
+        this.tableName = tableName;
+        this.recordId = recordId;
+        // Don't rely on the identity hash code of the enum, so that the hash is stable across JVMs
+        this.hashCode = 31 * tableName.ordinal() + (int) (recordId ^ (recordId >>> 32));
+    }
+
+    public TableName getTableName() {
+        return tableName;
+    }
+
+    public long getRecordId() {
+        return recordId;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final RecordIdCacheKey that = (RecordIdCacheKey) o;
+        return recordId == that.recordId && tableName == that.tableName;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + recordId;
+    }
+}
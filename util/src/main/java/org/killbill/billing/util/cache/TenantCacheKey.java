@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.io.Serializable;
+
+// Compact cache key for a per-tenant entry (replaces the 'key::tenantRecordId' Strings)
+public final class TenantCacheKey implements Serializable {
+
+    private static final long serialVersionUID = 8294713657202618447L;
+
+    private final String key;
+    private final long tenantRecordId;
+    private final int hashCode;
+
+    public TenantCacheKey(final String key, final long tenantRecordId) {
+        this.key = key;
+        this.tenantRecordId = tenantRecordId;
+        this.hashCode = 31 * key.hashCode() + (int) (tenantRecordId ^ (tenantRecordId >>> 32));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTenantRecordId() {
+        return tenantRecordId;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TenantCacheKey that = (TenantCacheKey) o;
+        return tenantRecordId == that.tenantRecordId && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return key + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + tenantRecordId;
+    }
+}
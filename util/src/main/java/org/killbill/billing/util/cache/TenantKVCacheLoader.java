@@ -27,7 +27,7 @@ import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 
 @Singleton
-public class TenantKVCacheLoader extends BaseCacheLoader<String, String> {
+public class TenantKVCacheLoader extends BaseCacheLoader<TenantCacheKey, String> {
 
     private final TenantInternalApi tenantApi;
 
@@ -43,13 +43,9 @@ public class TenantKVCacheLoader extends BaseCacheLoader<String, String> {
     }
 
     @Override
-    public String compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
-        final String[] parts = key.split(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-        final String rawKey = parts[0];
-        final String tenantRecordId = parts[1];
-
-        final InternalTenantContext internalTenantContext = new InternalTenantContext(Long.valueOf(tenantRecordId));
-        final List<String> valuesForKey = tenantApi.getTenantValuesForKey(rawKey, internalTenantContext);
+    public String compute(final TenantCacheKey key, final CacheLoaderArgument cacheLoaderArgument) {
+        final InternalTenantContext internalTenantContext = new InternalTenantContext(key.getTenantRecordId());
+        final List<String> valuesForKey = tenantApi.getTenantValuesForKey(key.getKey(), internalTenantContext);
         if (valuesForKey == null || valuesForKey.isEmpty()) {
             return EMPTY_VALUE_PLACEHOLDER;
         }
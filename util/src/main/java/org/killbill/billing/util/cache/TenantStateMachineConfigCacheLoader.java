@@ -32,7 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Singleton
-public class TenantStateMachineConfigCacheLoader extends BaseCacheLoader<String, Object> {
+public class TenantStateMachineConfigCacheLoader extends BaseCacheLoader<TenantCacheKey, Object> {
 
     private static final Pattern PATTERN = Pattern.compile(TenantKey.PLUGIN_PAYMENT_STATE_MACHINE_.toString() + "(.*)");
     private static final Logger log = LoggerFactory.getLogger(TenantStateMachineConfigCacheLoader.class);
@@ -51,19 +51,17 @@ public class TenantStateMachineConfigCacheLoader extends BaseCacheLoader<String,
     }
 
     @Override
-    public Object compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
-        final String[] parts = key.split(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-        final String rawKey = parts[0];
+    public Object compute(final TenantCacheKey key, final CacheLoaderArgument cacheLoaderArgument) {
+        final String rawKey = key.getKey();
         final Matcher matcher = PATTERN.matcher(rawKey);
         if (!matcher.matches()) {
             throw new IllegalArgumentException("Unexpected key " + rawKey);
         }
         final String pluginName = matcher.group(1);
-        final String tenantRecordId = parts[1];
 
         final LoaderCallback callback = (LoaderCallback) cacheLoaderArgument.getArgs()[0];
 
-        final InternalTenantContext internalTenantContext = new InternalTenantContext(Long.valueOf(tenantRecordId));
+        final InternalTenantContext internalTenantContext = new InternalTenantContext(key.getTenantRecordId());
         final String stateMachineConfigXML = tenantApi.getPluginPaymentStateMachineConfig(pluginName, internalTenantContext);
         if (stateMachineConfigXML == null) {
             return null;
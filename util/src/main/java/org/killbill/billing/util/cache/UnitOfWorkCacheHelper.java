@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.callcontext.UnitOfWorkCache;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+
+//
+// Helper on top of the UnitOfWorkCache attached to each internal context: only immutable (or versioned) lookups
+// should go through it, since entries are only dropped when the context goes away or when explicitly invalidated.
+//
+public class UnitOfWorkCacheHelper {
+
+    public static final String ACCOUNT_ID_BY_RECORD_ID = "account-id-by-record-id";
+    public static final String ACCOUNT_BCD = "account-bcd";
+    public static final String CATALOG = "catalog";
+    public static final String IMMUTABLE_ACCOUNT = "immutable-account";
+    public static final String IMMUTABLE_ACCOUNT_BY_RECORD_ID = "immutable-account-by-record-id";
+
+    private UnitOfWorkCacheHelper() {
+    }
+
+    public interface UnitOfWorkLoader<T, E extends Throwable> {
+
+        public T load() throws E;
+    }
+
+    public static <T, E extends Throwable> T getOrLoad(final String namespace,
+                                                       final Object id,
+                                                       @Nullable final InternalTenantContext context,
+                                                       final UnitOfWorkLoader<T, E> loader) throws E {
+        if (context == null || id == null) {
+            return loader.load();
+        }
+
+        final UnitOfWorkCache unitOfWorkCache = context.getUnitOfWorkCache();
+        final T cached = (T) unitOfWorkCache.get(namespace, id);
+        if (cached != null) {
+            // Record the hit in the per-thread profiling data (no-op unless DAO_DETAILS profiling was requested)
+            final Profiling<T, RuntimeException> prof = new Profiling<T, RuntimeException>();
+            return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, "UnitOfWork (type = " + namespace + ") cache hit", new WithProfilingCallback<T, RuntimeException>() {
+                @Override
+                public T execute() {
+                    return cached;
+                }
+            });
+        }
+
+        final T value = loader.load();
+        if (value != null) {
+            unitOfWorkCache.put(namespace, id, value);
+        }
+        return value;
+    }
+
+    public static void invalidate(final String namespace, final Object id, @Nullable final InternalTenantContext context) {
+        if (context != null && id != null) {
+            context.getUnitOfWorkCache().invalidate(namespace, id);
+        }
+    }
+
+    public static void invalidateAll(final String namespace, @Nullable final InternalTenantContext context) {
+        if (context != null) {
+            context.getUnitOfWorkCache().invalidateAll(namespace);
+        }
+    }
+}
@@ -35,6 +35,8 @@ import org.killbill.billing.util.account.AccountDateTimeUtils;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.dao.TimeZoneAwareEntity;
 import org.killbill.clock.Clock;
@@ -55,10 +57,10 @@ public class InternalCallContextFactory {
     private final ImmutableAccountInternalApi accountInternalApi;
     private final Clock clock;
     private final NonEntityDao nonEntityDao;
-    private final CacheController<String, UUID> objectIdCacheController;
-    private final CacheController<String, Long> recordIdCacheController;
-    private final CacheController<String, Long> accountRecordIdCacheController;
-    private final CacheController<String, Long> tenantRecordIdCacheController;
+    private final CacheController<RecordIdCacheKey, UUID> objectIdCacheController;
+    private final CacheController<IdCacheKey, Long> recordIdCacheController;
+    private final CacheController<IdCacheKey, Long> accountRecordIdCacheController;
+    private final CacheController<IdCacheKey, Long> tenantRecordIdCacheController;
 
     @Inject
     public InternalCallContextFactory(@Nullable final ImmutableAccountInternalApi accountInternalApi,
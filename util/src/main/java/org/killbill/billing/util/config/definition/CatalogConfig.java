@@ -27,4 +27,9 @@ public interface CatalogConfig extends KillbillConfig {
     @Default("SpyCarBasic.xml")
     @Description("Default Catalog location, either in the classpath or in the filesystem. For multi-tenancy, one should use APIs to load per-tenant catalog")
     String getCatalogURI();
+
+    @Config("org.killbill.catalog.validation.cache.maxSize")
+    @Default("1000")
+    @Description("Maximum number of catalog version content hashes remembered as already validated, so reloads can skip validation (0 to disable)")
+    int getValidationCacheMaxSize();
 }
@@ -20,6 +20,7 @@ package org.killbill.billing.util.config.definition;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface CurrencyConfig extends KillbillConfig {
 
@@ -27,4 +28,24 @@ public interface CurrencyConfig extends KillbillConfig {
     @Default("killbill-currency-plugin")
     @Description("Default currency provider to use")
     public String getDefaultCurrencyProvider();
+
+    @Config("org.killbill.currency.cache.maxSize")
+    @Default("1000")
+    @Description("Maximum number of currency conversions (per base currency and date bucket) to cache")
+    public int getConversionCacheMaxSize();
+
+    @Config("org.killbill.currency.cache.bucket")
+    @Default("1d")
+    @Description("Granularity of the conversion dates: conversions are cached, and rates retrieved from the plugin, at the start of the bucket")
+    public TimeSpan getConversionCacheBucket();
+
+    @Config("org.killbill.currency.cache.ttl")
+    @Default("1h")
+    @Description("How long to cache currency conversions")
+    public TimeSpan getConversionCacheTTL();
+
+    @Config("org.killbill.currency.cache.negativeTTL")
+    @Default("5m")
+    @Description("How long to cache the absence of rates (e.g. unsupported base currency)")
+    public TimeSpan getConversionCacheNegativeTTL();
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config.definition;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface GlobalLockerConfig extends KillbillConfig {
+
+    @Config("org.killbill.locker.lease.grace")
+    @Default("0s")
+    @Description("How long a node keeps holding a global lock after its last local release, so it can be re-acquired without a database round-trip (0 to release immediately)")
+    public TimeSpan getLeaseGracePeriod();
+
+    @Config("org.killbill.locker.lease.localWaitPerTry")
+    @Default("100ms")
+    @Description("How long to wait, per retry, for a global lock held by another thread of the same node")
+    public TimeSpan getLocalWaitPerTry();
+
+    @Config("org.killbill.locker.readWriteSeparation")
+    @Default("false")
+    @Description("Whether read-only operations (e.g. invoice dry runs) can skip the global lock instead of waiting for writers")
+    public boolean isReadWriteSeparationEnabled();
+}
@@ -38,4 +38,29 @@ public interface NotificationConfig extends KillbillConfig {
     @Description("Delay before which unresolved push notifications should be retried")
     List<TimeSpan> getPushNotificationsRetries(@Param("dummy") final InternalTenantContext tenantContext);
 
+    @Config("org.killbill.billing.server.notifications.timeout")
+    @Default("15s")
+    @Description("Timeout for a single push notification POST")
+    TimeSpan getPushNotificationsTimeout();
+
+    @Config("org.killbill.billing.server.notifications.queueCapacity")
+    @Default("1000")
+    @Description("Maximum number of push notifications pending per tenant and callback url (overflow is handed to the retry queue)")
+    int getPushNotificationsQueueCapacity();
+
+    @Config("org.killbill.billing.server.notifications.maxInFlight")
+    @Default("1")
+    @Description("Maximum number of concurrent POSTs per tenant and callback url (above 1, notifications may be received out of order)")
+    int getPushNotificationsMaxInFlight();
+
+    @Config("org.killbill.billing.server.notifications.batchSize")
+    @Default("1")
+    @Description("Maximum number of push notifications sent as a JSON array in a single POST (1 disables batching)")
+    int getPushNotificationsBatchSize();
+
+    @Config("org.killbill.billing.server.notifications.callbacksCacheTTL")
+    @Default("5m")
+    @Description("How long the push notification callbacks of a tenant are cached (entries are also invalidated on changes)")
+    TimeSpan getPushNotificationsCallbacksCacheTTL();
+
 }
\ No newline at end of file
@@ -89,6 +89,16 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Specify the max number of attempts before retrying a payment that failed due to a plugin failure (gateway is down, transient error, ...)")
     int getPluginFailureRetryMaxAttempts(@Param("dummy") final InternalTenantContext tenantContext);
 
+    @Config("org.killbill.payment.retry.jitter")
+    @Default("0s")
+    @Description("Maximum random delay added to each scheduled payment retry, to spread retries after mass failures (e.g. gateway outage)")
+    TimeSpan getRetryJitter();
+
+    @Config("org.killbill.payment.retry.jitter")
+    @Default("0s")
+    @Description("Maximum random delay added to each scheduled payment retry, to spread retries after mass failures (e.g. gateway outage)")
+    TimeSpan getRetryJitter(@Param("dummy") final InternalTenantContext tenantContext);
+
     @Config("org.killbill.payment.invoice.plugin")
     @Default("")
     @Description("Default payment control plugin names")
@@ -125,6 +135,21 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Number of threads for plugin executor dispatcher")
     int getPaymentPluginThreadNb();
 
+    @Config("org.killbill.payment.method.pluginInfo.cache.ttl")
+    @Default("10s")
+    @Description("Maximum amount of time the payment method details returned by the plugins are cached (0 disables the cache)")
+    TimeSpan getPaymentMethodPluginInfoCacheTTL();
+
+    @Config("org.killbill.payment.method.pluginInfo.cache.maxSize")
+    @Default("10000")
+    @Description("Maximum number of accounts whose payment method details are cached")
+    int getPaymentMethodPluginInfoCacheMaxSize();
+
+    @Config("org.killbill.payment.method.pluginInfo.maxConcurrentCalls")
+    @Default("10")
+    @Description("Maximum number of concurrent plugin calls when retrieving the details of several payment methods")
+    int getPaymentMethodPluginInfoMaxConcurrentCalls();
+
     @Config("org.killbill.payment.globalLock.retries")
     @Default("50")
     @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
@@ -21,6 +21,7 @@ import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.DefaultNull;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface SecurityConfig extends KillbillConfig {
 
@@ -34,6 +35,26 @@ public interface SecurityConfig extends KillbillConfig {
     @Description("Sets the number of times submitted credentials will be hashed before comparing to the credentials stored in the system")
     public Integer getShiroNbHashIterations();
 
+    @Config("org.killbill.security.tenantCredentialsCacheMaxSize")
+    @Default("10000")
+    @Description("Maximum number of api keys for which verified tenant credentials are cached (0 to disable)")
+    public int getTenantCredentialsCacheMaxSize();
+
+    @Config("org.killbill.security.tenantCredentialsCacheTTL")
+    @Default("1h")
+    @Description("How long verified tenant credentials are cached before being checked again against the database")
+    public TimeSpan getTenantCredentialsCacheTTL();
+
+    @Config("org.killbill.security.permissionsCacheMaxSize")
+    @Default("10000")
+    @Description("Maximum number of granted permission decisions (per subject) to cache (0 to disable)")
+    public int getPermissionsCacheMaxSize();
+
+    @Config("org.killbill.security.permissionsCacheTTL")
+    @Default("5s")
+    @Description("How long granted permission decisions are cached before being checked again against the realms")
+    public TimeSpan getPermissionsCacheTTL();
+
     // LDAP Realm
 
     @Config("org.killbill.security.ldap.userDnTemplate")
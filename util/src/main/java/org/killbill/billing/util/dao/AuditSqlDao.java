@@ -18,6 +18,7 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import org.killbill.commons.jdbi.binder.SmartBindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -68,6 +70,12 @@ public interface AuditSqlDao {
                                                                 @CachableKey(2) @Bind("targetRecordId") final long targetRecordId,
                                                                 @SmartBindBean final InternalTenantContext context);
 
+    // Not cached: used to fetch the audit logs of many objects (or history rows) at once
+    @SqlQuery
+    public List<AuditLogModelDao> getAuditLogsForTargetRecordIds(@Bind("tableName") final String tableName,
+                                                                 @BindIn("targetRecordIds") final Collection<Long> targetRecordIds,
+                                                                 @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     @Cachable(CacheType.AUDIT_LOG_VIA_HISTORY)
     public List<AuditLogModelDao> getAuditLogsViaHistoryForTargetRecordId(@CachableKey(1) @Bind("tableName") final String historyTableName, /* Uppercased - used to find entries in audit_log table */
@@ -18,6 +18,13 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -25,7 +32,8 @@ import javax.inject.Inject;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.util.cache.CacheController;
-import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.commons.profiling.Profiling;
@@ -35,27 +43,42 @@ import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.sqlobject.SqlObjectBuilder;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 public class DefaultNonEntityDao implements NonEntityDao {
 
+    // Maximum number of ids in a single IN (...) clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private static final Function<UUID, IdCacheKey> ID_CACHE_KEY_FUNCTION = new Function<UUID, IdCacheKey>() {
+        @Override
+        public IdCacheKey apply(final UUID input) {
+            return IdCacheKey.of(input);
+        }
+    };
+
     private final NonEntitySqlDao nonEntitySqlDao;
-    private final WithCaching<String, Long> withCachingObjectId;
-    private final WithCaching<String, UUID> withCachingRecordId;
+    private final WithCaching<IdCacheKey, Long> withCachingObjectId;
+    private final WithCaching<RecordIdCacheKey, UUID> withCachingRecordId;
 
     @Inject
     public DefaultNonEntityDao(final IDBI dbi) {
         this.nonEntitySqlDao = dbi.onDemand(NonEntitySqlDao.class);
-        this.withCachingObjectId = new WithCaching<String, Long>();
-        this.withCachingRecordId = new WithCaching<String, UUID>();
+        this.withCachingObjectId = new WithCaching<IdCacheKey, Long>();
+        this.withCachingRecordId = new WithCaching<RecordIdCacheKey, UUID>();
     }
 
     @Override
-    public Long retrieveRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+    public Long retrieveRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache) {
         return retrieveRecordIdFromObjectInTransaction(objectId, objectType, cache, null);
     }
 
-    public Long retrieveRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache, @Nullable final Handle handle) {
+    public Long retrieveRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache, @Nullable final Handle handle) {
         if (objectId == null) {
             return null;
         }
@@ -69,16 +92,29 @@ public class DefaultNonEntityDao implements NonEntityDao {
                 final NonEntitySqlDao inTransactionNonEntitySqlDao = handle == null ? nonEntitySqlDao : SqlObjectBuilder.attach(handle, NonEntitySqlDao.class);
                 return inTransactionNonEntitySqlDao.getRecordIdFromObject(objectId.toString(), tableName.getTableName());
             }
-        }, objectId.toString(), objectType, tableName, cache);
+        }, IdCacheKey.of(objectId), objectType, cache);
     }
 
     @Override
-    public Long retrieveAccountRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        return withBulkCaching(new BulkOperationRetrieval<UUID, Long>() {
+            @Override
+            public Map<UUID, Long> doRetrieve(final List<UUID> objectIds) {
+                return RecordIdIdMappings.toReverseMap(nonEntitySqlDao.getRecordIdsFromObjects(Lists.transform(objectIds, Functions.toStringFunction()), tableName.getTableName()));
+            }
+        }, objectIds, ID_CACHE_KEY_FUNCTION, objectType, cache);
+    }
+
+    @Override
+    public Long retrieveAccountRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache) {
         return retrieveAccountRecordIdFromObjectInTransaction(objectId, objectType, cache, null);
     }
 
     @Override
-    public Long retrieveAccountRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache, @Nullable final Handle handle) {
+    public Long retrieveAccountRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache, @Nullable final Handle handle) {
         final TableName tableName = TableName.fromObjectType(objectType);
         Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
 
@@ -101,16 +137,44 @@ public class DefaultNonEntityDao implements NonEntityDao {
                         return inTransactionNonEntitySqlDao.getAccountRecordIdFromObjectOtherThanAccount(objectIdOrNull, tableName.getTableName());
                 }
             }
-        }, objectIdOrNull, objectType, tableName, cache);
+        }, objectId != null ? IdCacheKey.of(objectId) : null, objectType, cache);
     }
 
     @Override
-    public Long retrieveTenantRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+    public Map<UUID, Long> retrieveAccountRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        switch (tableName) {
+            case TENANT:
+            case TAG_DEFINITIONS:
+            case TAG_DEFINITION_HISTORY:
+                return ImmutableMap.<UUID, Long>of();
+            default:
+                break;
+        }
+
+        return withBulkCaching(new BulkOperationRetrieval<UUID, Long>() {
+            @Override
+            public Map<UUID, Long> doRetrieve(final List<UUID> objectIds) {
+                final List<String> ids = Lists.transform(objectIds, Functions.toStringFunction());
+                if (tableName == TableName.ACCOUNT) {
+                    return RecordIdIdMappings.toReverseMap(nonEntitySqlDao.getRecordIdsFromObjects(ids, tableName.getTableName()));
+                } else {
+                    // record_id is the account_record_id here
+                    return RecordIdIdMappings.toReverseMap(nonEntitySqlDao.getAccountRecordIdsFromObjectsOtherThanAccount(ids, tableName.getTableName()));
+                }
+            }
+        }, objectIds, ID_CACHE_KEY_FUNCTION, objectType, cache);
+    }
+
+    @Override
+    public Long retrieveTenantRecordIdFromObject(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache) {
         return retrieveTenantRecordIdFromObjectInTransaction(objectId, objectType, cache, null);
     }
 
     @Override
-    public Long retrieveTenantRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<String, Long> cache, @Nullable final Handle handle) {
+    public Long retrieveTenantRecordIdFromObjectInTransaction(@Nullable final UUID objectId, final ObjectType objectType, @Nullable final CacheController<IdCacheKey, Long> cache, @Nullable final Handle handle) {
         final TableName tableName = TableName.fromObjectType(objectType);
         Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
 
@@ -130,16 +194,16 @@ public class DefaultNonEntityDao implements NonEntityDao {
                 }
 
             }
-        }, objectIdOrNull, objectType, tableName, cache);
+        }, objectId != null ? IdCacheKey.of(objectId) : null, objectType, cache);
     }
 
     @Override
-    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType, @Nullable final CacheController<String, UUID> cache) {
+    public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType, @Nullable final CacheController<RecordIdCacheKey, UUID> cache) {
         return retrieveIdFromObjectInTransaction(recordId, objectType, cache, null);
     }
 
     @Override
-    public UUID retrieveIdFromObjectInTransaction(final Long recordId, final ObjectType objectType, @Nullable final CacheController<String, UUID> cache, @Nullable final Handle handle) {
+    public UUID retrieveIdFromObjectInTransaction(final Long recordId, final ObjectType objectType, @Nullable final CacheController<RecordIdCacheKey, UUID> cache, @Nullable final Handle handle) {
         if (objectType == ObjectType.TENANT && InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID.equals(recordId)) {
             return null;
         }
@@ -153,7 +217,34 @@ public class DefaultNonEntityDao implements NonEntityDao {
                 final NonEntitySqlDao inTransactionNonEntitySqlDao = handle == null ? nonEntitySqlDao : SqlObjectBuilder.attach(handle, NonEntitySqlDao.class);
                 return inTransactionNonEntitySqlDao.getIdFromObject(recordId, tableName.getTableName());
             }
-        }, String.valueOf(recordId), objectType, tableName, cache);
+        }, recordId != null ? new RecordIdCacheKey(tableName, recordId) : null, objectType, cache);
+    }
+
+    @Override
+    public Map<Long, UUID> retrieveIdsFromObjects(final Collection<Long> recordIds, final ObjectType objectType, @Nullable final CacheController<RecordIdCacheKey, UUID> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        final Collection<Long> filteredRecordIds;
+        if (objectType == ObjectType.TENANT && recordIds.contains(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID)) {
+            filteredRecordIds = new LinkedHashSet<Long>(recordIds);
+            filteredRecordIds.remove(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID);
+        } else {
+            filteredRecordIds = recordIds;
+        }
+
+        return withBulkCaching(new BulkOperationRetrieval<Long, UUID>() {
+            @Override
+            public Map<Long, UUID> doRetrieve(final List<Long> recordIds) {
+                return RecordIdIdMappings.toMap(nonEntitySqlDao.getIdsFromObjects(recordIds, tableName.getTableName()));
+            }
+
+        }, filteredRecordIds, new Function<Long, RecordIdCacheKey>() {
+            @Override
+            public RecordIdCacheKey apply(final Long input) {
+                return new RecordIdCacheKey(tableName, input);
+            }
+        }, objectType, cache);
     }
 
     @Override
@@ -172,19 +263,79 @@ public class DefaultNonEntityDao implements NonEntityDao {
         public TypeOut doRetrieve(final ObjectType objectType);
     }
 
+    private interface BulkOperationRetrieval<TypeIn, TypeOut> {
+
+        public Map<TypeIn, TypeOut> doRetrieve(final List<TypeIn> inputs);
+    }
+
+    // Inputs which cannot be resolved are absent from the returned map
+    private <TypeIn, TypeKey, TypeOut> Map<TypeIn, TypeOut> withBulkCaching(final BulkOperationRetrieval<TypeIn, TypeOut> op,
+                                                                            final Collection<TypeIn> inputs,
+                                                                            final Function<TypeIn, TypeKey> keyFunction,
+                                                                            final ObjectType objectType,
+                                                                            @Nullable final CacheController<TypeKey, TypeOut> cache) {
+        final Map<TypeIn, TypeOut> result = new HashMap<TypeIn, TypeOut>();
+
+        final Set<TypeIn> misses = new LinkedHashSet<TypeIn>();
+        for (final TypeIn input : inputs) {
+            if (input != null) {
+                misses.add(input);
+            }
+        }
+
+        final Map<TypeIn, TypeKey> keys = new HashMap<TypeIn, TypeKey>();
+        if (cache != null && !misses.isEmpty()) {
+            for (final TypeIn input : misses) {
+                keys.put(input, keyFunction.apply(input));
+            }
+
+            final Map<TypeKey, TypeOut> cachedValues = cache.getAll(keys.values());
+            final Iterator<TypeIn> iterator = misses.iterator();
+            while (iterator.hasNext()) {
+                final TypeIn input = iterator.next();
+                final TypeOut cachedValue = cachedValues.get(keys.get(input));
+                if (cachedValue != null) {
+                    result.put(input, cachedValue);
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        final Profiling<Void, RuntimeException> prof = new Profiling<Void, RuntimeException>();
+        prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, "NonEntityDao (type = " + objectType + ") bulk cache miss", new WithProfilingCallback<Void, RuntimeException>() {
+            @Override
+            public Void execute() throws RuntimeException {
+                // One query per chunk of ids, rather than one per id
+                for (final List<TypeIn> chunk : Iterables.partition(misses, MAX_IDS_PER_QUERY)) {
+                    final Map<TypeIn, TypeOut> retrieved = op.doRetrieve(chunk);
+                    result.putAll(retrieved);
+                    if (cache != null) {
+                        for (final Map.Entry<TypeIn, TypeOut> entry : retrieved.entrySet()) {
+                            cache.putIfAbsent(keys.get(entry.getKey()), entry.getValue());
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+
+        return result;
+    }
+
     // 'cache' will be null for the CacheLoader classes -- or if cache is not configured.
     private class WithCaching<TypeIn, TypeOut> {
 
-        private TypeOut withCaching(final OperationRetrieval<TypeOut> op, @Nullable final TypeIn objectOrRecordId, final ObjectType objectType, final TableName tableName, @Nullable final CacheController<TypeIn, TypeOut> cache) {
+        private TypeOut withCaching(final OperationRetrieval<TypeOut> op, @Nullable final TypeIn key, final ObjectType objectType, @Nullable final CacheController<TypeIn, TypeOut> cache) {
 
             final Profiling<TypeOut, RuntimeException> prof = new Profiling<TypeOut, RuntimeException>();
-            if (objectOrRecordId == null) {
+            if (key == null) {
                 return null;
             }
             if (cache != null) {
-                final TypeIn key = (cache.getCacheType().isKeyPrefixedWithTableName()) ?
-                                   (TypeIn) (tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + objectOrRecordId.toString()) :
-                                   objectOrRecordId;
                 return cache.get(key, new CacheLoaderArgument(objectType));
             }
             final TypeOut result;
@@ -46,4 +46,12 @@ public class RecordIdIdMappings {
         }
         return result;
     }
+
+    public static Map<UUID, Long> toReverseMap(final Iterable<RecordIdIdMappings> mappings) {
+        final Map<UUID, Long> result = new LinkedHashMap<UUID, Long>();
+        for (final RecordIdIdMappings mapping : mappings) {
+            result.put(mapping.getId(), mapping.getRecordId());
+        }
+        return result;
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.email.templates;
 
+import java.io.Writer;
 import java.util.Map;
 
 import com.samskivert.mustache.Mustache;
@@ -23,9 +24,27 @@ import com.samskivert.mustache.Template;
 
 public class MustacheTemplateEngine implements TemplateEngine {
 
+    // Immutable and thread-safe
+    private final Mustache.Compiler compiler = Mustache.compiler().nullValue("");
+
     @Override
     public String executeTemplateText(final String templateText, final Map<String, Object> data) {
-        final Template template = Mustache.compiler().nullValue("").compile(templateText);
-        return template.execute(data);
+        return compileTemplate(templateText).execute(data);
+    }
+
+    @Override
+    public CompiledTemplate compileTemplate(final String templateText) {
+        final Template template = compiler.compile(templateText);
+        return new CompiledTemplate() {
+            @Override
+            public String execute(final Map<String, Object> data) {
+                return template.execute(data);
+            }
+
+            @Override
+            public void execute(final Map<String, Object> data, final Writer writer) {
+                template.execute(data, writer);
+            }
+        };
     }
 }
@@ -22,4 +22,6 @@ public interface TemplateEngine {
 
     public String executeTemplateText(final String templateText, final Map<String, Object> data);
 
+    public CompiledTemplate compileTemplate(final String templateText);
+
 }
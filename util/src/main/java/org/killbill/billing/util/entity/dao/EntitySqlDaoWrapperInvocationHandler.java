@@ -46,6 +46,8 @@ import org.killbill.billing.util.cache.CachableKey;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.EntityAudit;
 import org.killbill.billing.util.dao.EntityHistoryModelDao;
@@ -71,7 +73,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
 /**
@@ -243,7 +244,7 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
             }
 
             // Build the Cache key
-            final String cacheKey = buildCacheKey(keyPieces);
+            final Object cacheKey = buildCacheKey(cacheType, keyPieces);
 
             final InternalTenantContext internalTenantContext = (InternalTenantContext) Iterables.find(ImmutableList.copyOf(args), new Predicate<Object>() {
                 @Override
@@ -355,29 +356,25 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
     }
 
     public static void populateCaches(final CacheControllerDispatcher cacheControllerDispatcher, final EntityModelDao model) {
-        final CacheController<String, Long> cacheRecordId = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
-        cacheRecordId.putIfAbsent(getKey(model.getId().toString(), CacheType.RECORD_ID, model.getTableName()), model.getRecordId());
+        final IdCacheKey idKey = IdCacheKey.of(model.getId());
 
-        final CacheController<String, UUID> cacheObjectId = cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID);
-        cacheObjectId.putIfAbsent(getKey(model.getRecordId().toString(), CacheType.OBJECT_ID, model.getTableName()), model.getId());
+        final CacheController<IdCacheKey, Long> cacheRecordId = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
+        cacheRecordId.putIfAbsent(idKey, model.getRecordId());
+
+        final CacheController<RecordIdCacheKey, UUID> cacheObjectId = cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID);
+        cacheObjectId.putIfAbsent(new RecordIdCacheKey(model.getTableName(), model.getRecordId()), model.getId());
 
         if (model.getTenantRecordId() != null) {
-            final CacheController<String, Long> cacheTenantRecordId = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
-            cacheTenantRecordId.putIfAbsent(getKey(model.getId().toString(), CacheType.TENANT_RECORD_ID, model.getTableName()), model.getTenantRecordId());
+            final CacheController<IdCacheKey, Long> cacheTenantRecordId = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
+            cacheTenantRecordId.putIfAbsent(idKey, model.getTenantRecordId());
         }
 
         if (model.getAccountRecordId() != null) {
-            final CacheController<String, Long> cacheAccountRecordId = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
-            cacheAccountRecordId.putIfAbsent(getKey(model.getId().toString(), CacheType.ACCOUNT_RECORD_ID, model.getTableName()), model.getAccountRecordId());
+            final CacheController<IdCacheKey, Long> cacheAccountRecordId = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
+            cacheAccountRecordId.putIfAbsent(idKey, model.getAccountRecordId());
         }
     }
 
-    private static String getKey(final String rawKey, final CacheType cacheType, final TableName tableName) {
-        return cacheType.isKeyPrefixedWithTableName() ?
-               tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + rawKey :
-               rawKey;
-    }
-
     private M updateHistoryAndAudit(final String entityId, @Nullable final M deletedEntity, final ChangeType changeType, final InternalCallContext context) throws Throwable {
         final Object reHydratedEntity = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("history/audit", null), new WithProfilingCallback<Object, Throwable>() {
             @Override
@@ -504,20 +501,34 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         // We need to invalidate the caches. There is a small window of doom here where caches will be stale.
         // TODO Knowledge on how the key is constructed is also in AuditSqlDao
         if (tableName.getHistoryTableName() != null) {
-            final CacheController<String, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG_VIA_HISTORY);
+            final CacheController<RecordIdCacheKey, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG_VIA_HISTORY);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName.getHistoryTableName(), 1, tableName.getHistoryTableName(), 2, entityRecordId));
-                cacheController.remove(key);
+                cacheController.remove(new RecordIdCacheKey(tableName.getHistoryTableName(), entityRecordId));
             }
         } else {
-            final CacheController<String, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG);
+            final CacheController<RecordIdCacheKey, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName, 1, entityRecordId));
-                cacheController.remove(key);
+                cacheController.remove(new RecordIdCacheKey(tableName, entityRecordId));
             }
         }
     }
 
+    private Object buildCacheKey(final CacheType cacheType, final Map<Integer, Object> keyPieces) {
+        switch (cacheType) {
+            case RECORD_ID:
+                // getRecordId(id, context)
+                return IdCacheKey.of(String.valueOf(keyPieces.get(0)));
+            case AUDIT_LOG:
+                // getAuditLogsForTargetRecordId(tableName, targetRecordId, context)
+                return new RecordIdCacheKey(TableName.valueOf(String.valueOf(keyPieces.get(0)).toUpperCase()), (Long) keyPieces.get(1));
+            case AUDIT_LOG_VIA_HISTORY:
+                // getAuditLogsViaHistoryForTargetRecordId(historyTableName, actualHistoryTableName, targetRecordId, context)
+                return new RecordIdCacheKey(TableName.valueOf(String.valueOf(keyPieces.get(0)).toUpperCase()), (Long) keyPieces.get(2));
+            default:
+                return buildCacheKey(keyPieces);
+        }
+    }
+
     private String buildCacheKey(final Map<Integer, Object> keyPieces) {
         final StringBuilder cacheKey = new StringBuilder();
         for (int i = 0; i < keyPieces.size(); i++) {
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.export.dao;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.killbill.billing.util.api.ColumnInfo;
+import org.killbill.billing.util.api.DatabaseExportOutputStream;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compact binary alternative to {@link CSVExportOutputStream}.
+ * <p/>
+ * Format (big-endian, see {@link DataOutputStream}):
+ * <pre>
+ * stream := MAGIC VERSION table*
+ * table  := TABLE_MARKER tableName:utf nbColumns:int (columnName:utf dataType:utf)* row*
+ * row    := ROW_MARKER value{nbColumns}
+ * value  := type:byte payload
+ * </pre>
+ * Like for the CSV format, tables without any row for the account are omitted. Use {@link BinaryExportReader} to read it back.
+ */
+public class BinaryExportOutputStream extends OutputStream implements DatabaseExportOutputStream {
+
+    static final int MAGIC = 0x4B424558; // KBEX
+    static final byte VERSION = 1;
+
+    static final byte TABLE_MARKER = 'T';
+    static final byte ROW_MARKER = 'R';
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_INT = 2;
+    static final byte TYPE_LONG = 3;
+    static final byte TYPE_BIG_INTEGER = 4;
+    static final byte TYPE_DECIMAL = 5;
+    static final byte TYPE_DOUBLE = 6;
+    static final byte TYPE_BOOLEAN = 7;
+    static final byte TYPE_BYTES = 8;
+    static final byte TYPE_TIMESTAMP = 9;
+    static final byte TYPE_SQL_DATE = 10;
+    static final byte TYPE_DATE = 11;
+
+    private final DataOutputStream delegate;
+
+    private boolean shouldWriteMagic = true;
+    private String currentTableName;
+    private String[] currentColumnNames;
+    private String[] currentDataTypes;
+    private boolean shouldWriteTableHeader = false;
+
+    public BinaryExportOutputStream(final OutputStream delegate) {
+        this.delegate = new DataOutputStream(delegate);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        delegate.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        delegate.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void newTable(final String tableName, final List<ColumnInfo> columnsForTable) {
+        currentTableName = tableName;
+        currentColumnNames = new String[columnsForTable.size()];
+        currentDataTypes = new String[columnsForTable.size()];
+        for (int i = 0; i < columnsForTable.size(); i++) {
+            currentColumnNames[i] = columnsForTable.get(i).getColumnName();
+            currentDataTypes[i] = columnsForTable.get(i).getDataType();
+        }
+        shouldWriteTableHeader = true;
+    }
+
+    @Override
+    public void write(final Map<String, Object> row) throws IOException {
+        if (shouldWriteMagic) {
+            delegate.writeInt(MAGIC);
+            delegate.writeByte(VERSION);
+            shouldWriteMagic = false;
+        }
+
+        if (shouldWriteTableHeader) {
+            delegate.writeByte(TABLE_MARKER);
+            delegate.writeUTF(currentTableName);
+            delegate.writeInt(currentColumnNames.length);
+            for (int i = 0; i < currentColumnNames.length; i++) {
+                delegate.writeUTF(currentColumnNames[i]);
+                delegate.writeUTF(currentDataTypes[i] == null ? "" : currentDataTypes[i]);
+            }
+            shouldWriteTableHeader = false;
+        }
+
+        delegate.writeByte(ROW_MARKER);
+        for (final String columnName : currentColumnNames) {
+            writeValue(row.get(columnName));
+        }
+    }
+
+    private void writeValue(final Object value) throws IOException {
+        if (value == null) {
+            delegate.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            delegate.writeByte(TYPE_INT);
+            delegate.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            delegate.writeByte(TYPE_LONG);
+            delegate.writeLong((Long) value);
+        } else if (value instanceof BigInteger) {
+            delegate.writeByte(TYPE_BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof BigDecimal) {
+            delegate.writeByte(TYPE_DECIMAL);
+            delegate.writeUTF(((BigDecimal) value).toString());
+        } else if (value instanceof Double || value instanceof Float) {
+            delegate.writeByte(TYPE_DOUBLE);
+            delegate.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            delegate.writeByte(TYPE_BOOLEAN);
+            delegate.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            delegate.writeByte(TYPE_BYTES);
+            writeBytes((byte[]) value);
+        } else if (value instanceof Timestamp) {
+            delegate.writeByte(TYPE_TIMESTAMP);
+            delegate.writeLong(((Timestamp) value).getTime());
+            delegate.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            delegate.writeByte(TYPE_SQL_DATE);
+            delegate.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Date) {
+            delegate.writeByte(TYPE_DATE);
+            delegate.writeLong(((Date) value).getTime());
+        } else {
+            // Strings, but also any other type (e.g. java.sql.Time)
+            delegate.writeByte(TYPE_STRING);
+            writeBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+    }
+
+    // writeUTF is limited to 64KB
+    private void writeBytes(final byte[] bytes) throws IOException {
+        delegate.writeInt(bytes.length);
+        delegate.write(bytes);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.export.dao;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.killbill.billing.util.api.ColumnInfo;
+import org.killbill.billing.util.api.DatabaseExportOutputStream;
+import org.killbill.billing.util.validation.DefaultColumnInfo;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+import static org.killbill.billing.util.export.dao.BinaryExportOutputStream.MAGIC;
+import static org.killbill.billing.util.export.dao.BinaryExportOutputStream.ROW_MARKER;
+import static org.killbill.billing.util.export.dao.BinaryExportOutputStream.TABLE_MARKER;
+import static org.killbill.billing.util.export.dao.BinaryExportOutputStream.VERSION;
+
+/**
+ * Reads back a stream produced by {@link BinaryExportOutputStream} and replays it to another {@link DatabaseExportOutputStream}
+ * (e.g. to convert it to CSV).
+ */
+public class BinaryExportReader {
+
+    private final DataInputStream in;
+
+    public BinaryExportReader(final InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    public void replay(final DatabaseExportOutputStream out) throws IOException {
+        final int magic;
+        try {
+            magic = in.readInt();
+        } catch (final EOFException e) {
+            // Empty export
+            return;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary export stream");
+        }
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary export version " + version);
+        }
+
+        String[] columnNames = null;
+        while (true) {
+            final int marker = in.read();
+            if (marker == -1) {
+                return;
+            } else if (marker == TABLE_MARKER) {
+                final String tableName = in.readUTF();
+                final int nbColumns = in.readInt();
+                final List<ColumnInfo> columns = new ArrayList<ColumnInfo>(nbColumns);
+                columnNames = new String[nbColumns];
+                for (int i = 0; i < nbColumns; i++) {
+                    columnNames[i] = in.readUTF();
+                    final String dataType = Strings.emptyToNull(in.readUTF());
+                    columns.add(new DefaultColumnInfo(tableName, columnNames[i], null, null, true, null, dataType));
+                }
+                out.newTable(tableName, columns);
+            } else if (marker == ROW_MARKER && columnNames != null) {
+                final Map<String, Object> row = new LinkedHashMap<String, Object>();
+                for (final String columnName : columnNames) {
+                    row.put(columnName, readValue());
+                }
+                out.write(row);
+            } else {
+                throw new IOException("Corrupted binary export stream, unexpected marker " + marker);
+            }
+        }
+    }
+
+    private Object readValue() throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case BinaryExportOutputStream.TYPE_NULL:
+                return null;
+            case BinaryExportOutputStream.TYPE_STRING:
+                return new String(readBytes(), Charsets.UTF_8);
+            case BinaryExportOutputStream.TYPE_INT:
+                return in.readInt();
+            case BinaryExportOutputStream.TYPE_LONG:
+                return in.readLong();
+            case BinaryExportOutputStream.TYPE_BIG_INTEGER:
+                return new BigInteger(readBytes());
+            case BinaryExportOutputStream.TYPE_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case BinaryExportOutputStream.TYPE_DOUBLE:
+                return in.readDouble();
+            case BinaryExportOutputStream.TYPE_BOOLEAN:
+                return in.readBoolean();
+            case BinaryExportOutputStream.TYPE_BYTES:
+                return readBytes();
+            case BinaryExportOutputStream.TYPE_TIMESTAMP:
+                final Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case BinaryExportOutputStream.TYPE_SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case BinaryExportOutputStream.TYPE_DATE:
+                return new Date(in.readLong());
+            default:
+                throw new IOException("Corrupted binary export stream, unexpected type " + type);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
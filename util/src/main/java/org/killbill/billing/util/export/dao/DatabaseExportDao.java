@@ -16,8 +16,13 @@
 
 package org.killbill.billing.util.export.dao;
 
+import java.io.IOException;
 import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,11 +38,18 @@ import org.killbill.billing.util.validation.dao.DatabaseSchemaDao;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.ResultIterator;
-import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 @Singleton
 public class DatabaseExportDao {
 
+    // Hint for the driver to stream rows instead of loading entire tables in memory (for MySQL, this requires useCursorFetch=true)
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
     private final DatabaseSchemaDao databaseSchemaDao;
     private final IDBI dbi;
 
@@ -87,24 +99,28 @@ public class DatabaseExportDao {
             return;
         }
 
-        final List<ColumnInfo> columnsForTable = new ArrayList<ColumnInfo>();
-        // The list of columns is ordered by table name first
-        String lastSeenTableName = columns.get(0).getTableName();
-        for (final ColumnInfo column : columns) {
-            if (!column.getTableName().equals(lastSeenTableName)) {
-                exportDataForAccountAndTable(out, columnsForTable, context);
-                lastSeenTableName = column.getTableName();
-                columnsForTable.clear();
+        // Export all tables from a single connection and transaction, to get a consistent snapshot of the account data
+        dbi.inTransaction(TransactionIsolationLevel.REPEATABLE_READ, new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final List<ColumnInfo> columnsForTable = new ArrayList<ColumnInfo>();
+                // The list of columns is ordered by table name first
+                String lastSeenTableName = columns.get(0).getTableName();
+                for (final ColumnInfo column : columns) {
+                    if (!column.getTableName().equals(lastSeenTableName)) {
+                        exportDataForAccountAndTable(out, columnsForTable, handle, context);
+                        lastSeenTableName = column.getTableName();
+                        columnsForTable.clear();
+                    }
+                    columnsForTable.add(column);
+                }
+                exportDataForAccountAndTable(out, columnsForTable, handle, context);
+                return null;
             }
-            columnsForTable.add(column);
-        }
-        exportDataForAccountAndTable(out, columnsForTable, context);
+        });
     }
 
-
-    private void exportDataForAccountAndTable(final DatabaseExportOutputStream out, final List<ColumnInfo> columnsForTable, final InternalTenantContext context) {
-
-
+    private void exportDataForAccountAndTable(final DatabaseExportOutputStream out, final List<ColumnInfo> columnsForTable, final Handle handle, final InternalTenantContext context) throws IOException {
         TableType tableType = TableType.OTHER;
         final String tableName = columnsForTable.get(0).getTableName();
 
@@ -151,34 +167,50 @@ public class DatabaseExportDao {
         // Notify the stream that we're about to write data for a different table
         out.newTable(tableName, columnsForTable);
 
-        dbi.withHandle(new HandleCallback<Void>() {
-            @Override
-            public Void withHandle(final Handle handle) throws Exception {
-                final ResultIterator<Map<String, Object>> iterator = handle.createQuery(queryBuilder.toString())
-                                                                           .bind("accountRecordId", context.getAccountRecordId())
-                                                                           .bind("tenantRecordId", context.getTenantRecordId())
-                                                                           .iterator();
-                try {
-                    while (iterator.hasNext()) {
-                        final Map<String, Object> row = iterator.next();
-
-                        for (final String k : row.keySet()) {
-                            final Object value = row.get(k);
-                            // For h2, transform a JdbcBlob into a byte[]
-                            // See also LowerToCamelBeanMapper
-                            if (value instanceof Blob) {
-                                final Blob blob = (Blob) value;
-                                row.put(k, blob.getBytes(0, (int) blob.length()));
-                            }
-                        }
-
-                        out.write(row);
-                    }
-                } finally {
-                    iterator.close();
+        final ResultIterator<Map<String, Object>> iterator = handle.createQuery(queryBuilder.toString())
+                                                                   .bind("accountRecordId", context.getAccountRecordId())
+                                                                   .bind("tenantRecordId", context.getTenantRecordId())
+                                                                   .setFetchSize(EXPORT_FETCH_SIZE)
+                                                                   .map(new ExportRowMapper())
+                                                                   .iterator();
+        try {
+            // Rows are written as they are read
+            while (iterator.hasNext()) {
+                out.write(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    // Similar to the default JDBI mapper (lower case column names), but looks up the result set metadata only once per table
+    private static final class ExportRowMapper implements ResultSetMapper<Map<String, Object>> {
+
+        private String[] columnNames;
+
+        @Override
+        public Map<String, Object> map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            if (columnNames == null) {
+                final ResultSetMetaData metaData = r.getMetaData();
+                columnNames = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columnNames.length; i++) {
+                    final String label = metaData.getColumnLabel(i + 1);
+                    columnNames[i] = (label != null ? label : metaData.getColumnName(i + 1)).toLowerCase();
                 }
-                return null;
             }
-        });
+
+            final Map<String, Object> row = new LinkedHashMap<String, Object>(2 * columnNames.length);
+            for (int i = 0; i < columnNames.length; i++) {
+                Object value = r.getObject(i + 1);
+                // For h2, transform a JdbcBlob into a byte[]
+                // See also LowerToCamelBeanMapper
+                if (value instanceof Blob) {
+                    final Blob blob = (Blob) value;
+                    value = blob.getBytes(0, (int) blob.length());
+                }
+                row.put(columnNames[i], value);
+            }
+            return row;
+        }
     }
 }
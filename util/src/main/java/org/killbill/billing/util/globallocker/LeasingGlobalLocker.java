@@ -0,0 +1,409 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.globallocker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.util.config.definition.GlobalLockerConfig;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.LockFailedException;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+//
+// Lease layer on top of the (database backed) GlobalLocker:
+//
+// - all the threads of the node contending for the same lock are serialized locally, so only one of them goes to the database
+// - as with the underlying locker, the lock is reentrant for the same request (including across threads)
+// - after the last local release, the node can keep holding the global lock for a grace period: if it is re-acquired
+//   during that time (e.g. invoice generation right after a payment for the same account), no database round-trip is needed
+// - read-only callers can optionally skip the lock altogether (see lockForReadWithNumberOfTries)
+//
+public class LeasingGlobalLocker implements GlobalLocker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasingGlobalLocker.class);
+
+    private static final String METRIC_PREFIX = "locker";
+
+    private static final GlobalLock NO_OP_LOCK = new GlobalLock() {
+        @Override
+        public void release() {
+        }
+    };
+
+    private final GlobalLocker delegate;
+    private final long graceMillis;
+    private final long localWaitPerTryMillis;
+    private final boolean readWriteSeparation;
+    private final MetricRegistry metricRegistry;
+
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<String, Lease>();
+    private final ConcurrentMap<String, LockMetrics> metricsPerService = new ConcurrentHashMap<String, LockMetrics>();
+    private final ScheduledExecutorService leaseExpirer;
+
+    public LeasingGlobalLocker(final GlobalLocker delegate, final GlobalLockerConfig config, final MetricRegistry metricRegistry) {
+        this.delegate = delegate;
+        this.graceMillis = config.getLeaseGracePeriod().getMillis();
+        this.localWaitPerTryMillis = config.getLocalWaitPerTry().getMillis();
+        this.readWriteSeparation = config.isReadWriteSeparationEnabled();
+        this.metricRegistry = metricRegistry;
+        this.leaseExpirer = graceMillis > 0 ? createLeaseExpirer() : null;
+    }
+
+    @Override
+    public GlobalLock lockWithNumberOfTries(final String service, final String lockKey, final int retry) throws LockFailedException {
+        final LockMetrics metrics = getMetrics(service);
+        final String lockName = getLockName(service, lockKey);
+        final Object owner = getCurrentOwner();
+        // A single budget of retry tries is spent across the local wait and the database acquisition
+        final long startMillis = System.currentTimeMillis();
+        final long deadline = startMillis + retry * localWaitPerTryMillis;
+
+        while (true) {
+            Lease lease = leases.get(lockName);
+            if (lease == null) {
+                final Lease newLease = new Lease(lockName);
+                lease = leases.putIfAbsent(lockName, newLease);
+                if (lease == null) {
+                    lease = newLease;
+                }
+            }
+
+            synchronized (lease) {
+                if (isBusy(lease, owner)) {
+                    metrics.contended.mark();
+                    final Timer.Context waitContext = metrics.waitTime.time();
+                    try {
+                        while (isBusy(lease, owner) && !lease.retired) {
+                            final long remainingMillis = deadline - System.currentTimeMillis();
+                            if (remainingMillis <= 0) {
+                                metrics.failed.mark();
+                                logger.warn("Failed to acquire lock {} for service {}: held by another thread of this node", lockKey, service);
+                                throw new LockFailedException();
+                            }
+                            lease.wait(remainingMillis);
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        metrics.failed.mark();
+                        throw new LockFailedException(e);
+                    } finally {
+                        waitContext.stop();
+                    }
+                }
+
+                if (lease.retired) {
+                    // The lease expired while we were waiting, start over with a new one
+                    continue;
+                }
+
+                if (owner.equals(lease.owner)) {
+                    lease.nbHolds++;
+                    metrics.reentrant.mark();
+                    return new LeasedLock(lease);
+                }
+
+                lease.owner = owner;
+                lease.nbHolds = 1;
+                metrics.acquired.mark();
+                if (lease.globalLock != null) {
+                    // Still held by this node from a previous acquisition
+                    metrics.leaseReused.mark();
+                    return new LeasedLock(lease);
+                }
+                lease.isAcquiring = true;
+            }
+
+            // The local owner is set: other threads of this node will wait for us, while we go to the database
+            final GlobalLock globalLock;
+            try {
+                globalLock = lockGlobally(service, lockKey, getRemainingTries(retry, startMillis));
+            } catch (final LockFailedException e) {
+                metrics.failed.mark();
+                abandon(lease);
+                throw e;
+            } catch (final RuntimeException e) {
+                metrics.failed.mark();
+                abandon(lease);
+                throw e;
+            }
+
+            synchronized (lease) {
+                lease.globalLock = globalLock;
+                lease.isAcquiring = false;
+                lease.notifyAll();
+            }
+            return new LeasedLock(lease);
+        }
+    }
+
+    //
+    // Read-only callers (e.g. invoice dry runs) only need to see committed state, which the lock doesn't provide anyways.
+    // When read/write separation is enabled, they don't take the lock and therefore never wait for, nor block, the writers.
+    // Otherwise, this is the same as lockWithNumberOfTries.
+    //
+    public GlobalLock lockForReadWithNumberOfTries(final String service, final String lockKey, final int retry) throws LockFailedException {
+        if (!readWriteSeparation) {
+            return lockWithNumberOfTries(service, lockKey, retry);
+        }
+
+        getMetrics(service).read.mark();
+        return NO_OP_LOCK;
+    }
+
+    @Override
+    public boolean isFree(final String service, final String lockKey) {
+        final Lease lease = leases.get(getLockName(service, lockKey));
+        if (lease != null) {
+            synchronized (lease) {
+                if (lease.owner != null || lease.globalLock != null) {
+                    // Also not free during the grace period, as this node still holds the database lock
+                    return false;
+                }
+            }
+        }
+
+        final RequestData requestData = resetRequestData();
+        try {
+            return delegate.isFree(service, lockKey);
+        } finally {
+            restoreRequestData(requestData);
+        }
+    }
+
+    public GlobalLocker getDelegate() {
+        return delegate;
+    }
+
+    private GlobalLock lockGlobally(final String service, final String lockKey, final int retry) throws LockFailedException {
+        // Reentrancy is handled by the lease: make sure the underlying lock isn't tied to the request, so it can be released
+        // by any thread (e.g. once the grace period expires)
+        final RequestData requestData = resetRequestData();
+        try {
+            return delegate.lockWithNumberOfTries(service, lockKey, retry);
+        } finally {
+            restoreRequestData(requestData);
+        }
+    }
+
+    // Tries left for the database once the local wait is over (always at least one, as the wait may have been cut short by a release)
+    private int getRemainingTries(final int retry, final long startMillis) {
+        if (localWaitPerTryMillis <= 0) {
+            return retry;
+        }
+        final long triesSpentLocally = (System.currentTimeMillis() - startMillis) / localWaitPerTryMillis;
+        return (int) Math.max(1, retry - triesSpentLocally);
+    }
+
+    private void releaseGlobally(final Lease lease) {
+        final GlobalLock globalLock = lease.globalLock;
+        lease.globalLock = null;
+        if (globalLock == null) {
+            return;
+        }
+
+        final RequestData requestData = resetRequestData();
+        try {
+            globalLock.release();
+        } catch (final RuntimeException e) {
+            logger.warn("Failed to release lock {}", lease.lockName, e);
+        } finally {
+            restoreRequestData(requestData);
+        }
+    }
+
+    private void release(final Lease lease) {
+        synchronized (lease) {
+            if (--lease.nbHolds > 0) {
+                return;
+            }
+
+            lease.owner = null;
+            lease.lastReleasedMillis = System.currentTimeMillis();
+            if (leaseExpirer != null && lease.globalLock != null) {
+                if (!lease.isExpiryScheduled) {
+                    scheduleExpiry(lease, graceMillis);
+                }
+            } else {
+                releaseGlobally(lease);
+                retire(lease);
+            }
+            lease.notifyAll();
+        }
+    }
+
+    private void abandon(final Lease lease) {
+        synchronized (lease) {
+            lease.isAcquiring = false;
+            lease.owner = null;
+            lease.nbHolds = 0;
+            if (lease.globalLock == null) {
+                retire(lease);
+            }
+            lease.notifyAll();
+        }
+    }
+
+    private void scheduleExpiry(final Lease lease, final long delayMillis) {
+        lease.isExpiryScheduled = true;
+        leaseExpirer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lease) {
+                    lease.isExpiryScheduled = false;
+                    if (lease.owner != null || lease.globalLock == null) {
+                        // Re-acquired: the next release will schedule a new expiry
+                        return;
+                    }
+
+                    final long remainingMillis = lease.lastReleasedMillis + graceMillis - System.currentTimeMillis();
+                    if (remainingMillis > 0) {
+                        scheduleExpiry(lease, remainingMillis);
+                        return;
+                    }
+
+                    releaseGlobally(lease);
+                    retire(lease);
+                    lease.notifyAll();
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void retire(final Lease lease) {
+        lease.retired = true;
+        leases.remove(lease.lockName, lease);
+    }
+
+    // Whether the caller has to wait: the lease is owned by another request, or the global lock is being acquired
+    private static boolean isBusy(final Lease lease, final Object owner) {
+        return lease.isAcquiring || (lease.owner != null && !owner.equals(lease.owner));
+    }
+
+    private LockMetrics getMetrics(final String service) {
+        LockMetrics metrics = metricsPerService.get(service);
+        if (metrics == null) {
+            metricsPerService.putIfAbsent(service, new LockMetrics(metricRegistry, service));
+            metrics = metricsPerService.get(service);
+        }
+        return metrics;
+    }
+
+    private static Object getCurrentOwner() {
+        final RequestData requestData = Request.getPerThreadRequestData();
+        // Without request data, the lock isn't reentrant (same behavior as the underlying locker)
+        return requestData != null && requestData.getRequestId() != null ? requestData.getRequestId() : new Object();
+    }
+
+    private static RequestData resetRequestData() {
+        final RequestData requestData = Request.getPerThreadRequestData();
+        if (requestData != null) {
+            Request.resetPerThreadRequestData();
+        }
+        return requestData;
+    }
+
+    private static void restoreRequestData(final RequestData requestData) {
+        if (requestData != null) {
+            Request.setPerThreadRequestData(requestData);
+        }
+    }
+
+    private static String getLockName(final String service, final String lockKey) {
+        return service + "-" + lockKey;
+    }
+
+    private static ScheduledExecutorService createLeaseExpirer() {
+        return new ScheduledThreadPoolExecutor(1,
+                                               new ThreadFactory() {
+
+                                                   @Override
+                                                   public Thread newThread(final Runnable r) {
+                                                       final Thread th = new Thread(r, "GlobalLockLeaseExpirer");
+                                                       // Don't prevent the JVM from shutting down, the locks are released with the connections
+                                                       th.setDaemon(true);
+                                                       return th;
+                                                   }
+                                               });
+    }
+
+    private final class LeasedLock implements GlobalLock {
+
+        private final Lease lease;
+
+        private LeasedLock(final Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public void release() {
+            LeasingGlobalLocker.this.release(lease);
+        }
+    }
+
+    // All fields are guarded by the lease monitor
+    private static final class Lease {
+
+        private final String lockName;
+
+        private Object owner;
+        private int nbHolds;
+        private GlobalLock globalLock;
+        private boolean isAcquiring;
+        private long lastReleasedMillis;
+        private boolean isExpiryScheduled;
+        private boolean retired;
+
+        private Lease(final String lockName) {
+            this.lockName = lockName;
+        }
+    }
+
+    private static final class LockMetrics {
+
+        private final Meter acquired;
+        private final Meter reentrant;
+        private final Meter leaseReused;
+        private final Meter contended;
+        private final Meter failed;
+        private final Meter read;
+        private final Timer waitTime;
+
+        private LockMetrics(final MetricRegistry metricRegistry, final String service) {
+            this.acquired = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "acquired"));
+            this.reentrant = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "reentrant"));
+            this.leaseReused = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "leaseReused"));
+            this.contended = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "contended"));
+            this.failed = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "failed"));
+            this.read = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, service, "read"));
+            this.waitTime = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, service, "wait"));
+        }
+    }
+}
@@ -18,8 +18,10 @@
 
 package org.killbill.billing.util.glue;
 
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.util.api.AuditUserApi;
+import org.killbill.billing.util.audit.DefaultAuditInternalApi;
 import org.killbill.billing.util.audit.api.DefaultAuditUserApi;
 import org.killbill.billing.util.audit.dao.AuditDao;
 import org.killbill.billing.util.audit.dao.DefaultAuditDao;
@@ -38,9 +40,14 @@ public class AuditModule extends KillBillModule {
         bind(AuditUserApi.class).to(DefaultAuditUserApi.class).asEagerSingleton();
     }
 
+    protected void installInternalApi() {
+        bind(AuditInternalApi.class).to(DefaultAuditInternalApi.class).asEagerSingleton();
+    }
+
     @Override
     protected void configure() {
         installDaos();
         installUserApi();
+        installInternalApi();
     }
 }
@@ -19,8 +19,15 @@
 package org.killbill.billing.util.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.config.definition.GlobalLockerConfig;
+import org.killbill.billing.util.globallocker.LeasingGlobalLocker;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.commons.locker.memory.MemoryGlobalLocker;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 
 public class MemoryGlobalLockerModule extends KillBillModule {
 
@@ -28,8 +35,15 @@ public class MemoryGlobalLockerModule extends KillBillModule {
         super(configSource);
     }
 
+    @Provides
+    @Singleton
+    protected GlobalLocker provideGlobalLocker(final GlobalLockerConfig globalLockerConfig, final MetricRegistry metricRegistry) {
+        return new LeasingGlobalLocker(new MemoryGlobalLocker(), globalLockerConfig, metricRegistry);
+    }
+
     @Override
     protected void configure() {
-        bind(GlobalLocker.class).to(MemoryGlobalLocker.class).asEagerSingleton();
+        final GlobalLockerConfig globalLockerConfig = new ConfigurationObjectFactory(skifeConfigSource).build(GlobalLockerConfig.class);
+        bind(GlobalLockerConfig.class).toInstance(globalLockerConfig);
     }
 }
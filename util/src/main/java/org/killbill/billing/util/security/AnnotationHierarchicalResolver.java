@@ -18,16 +18,20 @@ package org.killbill.billing.util.security;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.shiro.aop.AnnotationResolver;
 import org.apache.shiro.aop.MethodInvocation;
 
+import com.google.common.base.Optional;
+
 public class AnnotationHierarchicalResolver implements AnnotationResolver {
 
-    private final Map<String, Annotation> methodToAnnotation = new HashMap<String, Annotation>();
+    // Lock-free lookups on the invocation path: annotation class -> method -> annotation (absent if the method isn't annotated)
+    private final ConcurrentMap<Class<? extends Annotation>, ConcurrentMap<Method, Optional<Annotation>>> methodToAnnotation = new ConcurrentHashMap<Class<? extends Annotation>, ConcurrentMap<Method, Optional<Annotation>>>();
 
     @Override
     public Annotation getAnnotation(final MethodInvocation mi, final Class<? extends Annotation> clazz) {
@@ -35,18 +39,19 @@ public class AnnotationHierarchicalResolver implements AnnotationResolver {
     }
 
     public Annotation getAnnotationFromMethod(final Method method, final Class<? extends Annotation> clazz) {
-        final String key = method.toString();
-        Annotation annotation = methodToAnnotation.get(key);
+        ConcurrentMap<Method, Optional<Annotation>> annotationsForClass = methodToAnnotation.get(clazz);
+        if (annotationsForClass == null) {
+            methodToAnnotation.putIfAbsent(clazz, new ConcurrentHashMap<Method, Optional<Annotation>>());
+            annotationsForClass = methodToAnnotation.get(clazz);
+        }
+
+        Optional<Annotation> annotation = annotationsForClass.get(method);
         if (annotation == null) {
-            synchronized (methodToAnnotation) {
-                annotation = methodToAnnotation.get(key);
-                if (annotation == null) {
-                    annotation = findAnnotation(method, clazz);
-                    methodToAnnotation.put(key, annotation);
-                }
-            }
+            // The resolution is idempotent, no need to prevent concurrent computations
+            annotation = Optional.<Annotation>fromNullable(findAnnotation(method, clazz));
+            annotationsForClass.put(method, annotation);
         }
-        return annotation;
+        return annotation.orNull();
     }
 
     // The following comes from spring-core (AnnotationUtils) to handle annotations on interfaces
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -44,6 +45,7 @@ import org.killbill.billing.security.SecurityApiException;
 import org.killbill.billing.security.api.SecurityApi;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.SecurityConfig;
 import org.killbill.billing.util.security.shiro.dao.RolesPermissionsModelDao;
 import org.killbill.billing.util.security.shiro.dao.UserDao;
 import org.killbill.billing.util.security.shiro.dao.UserRolesModelDao;
@@ -51,9 +53,12 @@ import org.killbill.billing.util.security.shiro.realm.KillBillJdbcRealm;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -64,10 +69,17 @@ public class DefaultSecurityApi implements SecurityApi {
     private static final String[] allPermissions = new String[Permission.values().length];
 
     private final UserDao userDao;
+    // Only granted decisions are cached: denied ones go through Shiro each time to get the right AuthorizationException.
+    // Entries are invalidated locally when roles or permissions change (other nodes rely on the TTL)
+    private final Cache<PermissionsDecisionKey, Boolean> grantedPermissionsCache;
 
     @Inject
-    public DefaultSecurityApi(final UserDao userDao) {
+    public DefaultSecurityApi(final UserDao userDao, final SecurityConfig securityConfig) {
         this.userDao = userDao;
+        this.grantedPermissionsCache = CacheBuilder.newBuilder()
+                                                   .maximumSize(securityConfig.getPermissionsCacheMaxSize())
+                                                   .expireAfterWrite(securityConfig.getPermissionsCacheTTL().getMillis(), TimeUnit.MILLISECONDS)
+                                                   .build();
     }
 
     @Override
@@ -139,10 +151,16 @@ public class DefaultSecurityApi implements SecurityApi {
 
     @Override
     public void checkCurrentUserPermissions(final List<Permission> permissions, final Logical logical, final TenantContext context) throws SecurityApiException {
+        final Subject subject = SecurityUtils.getSubject();
+        final Object principal = subject.getPrincipal();
+        final PermissionsDecisionKey cacheKey = principal == null ? null : new PermissionsDecisionKey(principal, permissions, logical);
+        if (cacheKey != null && grantedPermissionsCache.getIfPresent(cacheKey) != null) {
+            return;
+        }
+
         final String[] permissionsString = Lists.<Permission, String>transform(permissions, Functions.toStringFunction()).toArray(new String[permissions.size()]);
 
         try {
-            final Subject subject = SecurityUtils.getSubject();
             if (permissionsString.length == 1) {
                 subject.checkPermission(permissionsString[0]);
             } else if (Logical.AND.equals(logical)) {
@@ -164,11 +182,16 @@ public class DefaultSecurityApi implements SecurityApi {
         } catch (final AuthorizationException e) {
             throw new SecurityApiException(e, ErrorCode.SECURITY_NOT_ENOUGH_PERMISSIONS);
         }
+
+        if (cacheKey != null) {
+            grantedPermissionsCache.put(cacheKey, Boolean.TRUE);
+        }
     }
 
     @Override
     public void addUserRoles(final String username, final String password, final List<String> roles, final CallContext callContext) throws SecurityApiException {
         userDao.insertUser(username, password, roles, callContext.getUserName());
+        invalidatePermissionsCache(username);
     }
 
     @Override
@@ -180,11 +203,13 @@ public class DefaultSecurityApi implements SecurityApi {
     public void updateUserRoles(final String username, final List<String> roles, final CallContext callContext) throws SecurityApiException {
         userDao.updateUserRoles(username, roles, callContext.getUserName());
         invalidateJDBCAuthorizationCache(username);
+        invalidatePermissionsCache(username);
     }
 
     @Override
     public void invalidateUser(final String username, final CallContext callContext) throws SecurityApiException {
         userDao.invalidateUser(username, callContext.getUserName());
+        invalidatePermissionsCache(username);
     }
 
     @Override
@@ -203,6 +228,8 @@ public class DefaultSecurityApi implements SecurityApi {
     public void addRoleDefinition(final String role, final List<String> permissions, final CallContext callContext) throws SecurityApiException {
         final List<String> sanitizedPermissions = sanitizeAndValidatePermissions(permissions);
         userDao.addRoleDefinition(role, sanitizedPermissions, callContext.getUserName());
+        // Users may already reference that role
+        grantedPermissionsCache.invalidateAll();
     }
 
     @Override
@@ -310,4 +337,44 @@ public class DefaultSecurityApi implements SecurityApi {
             killBillJdbcRealm.clearCachedAuthorizationInfo(principals);
         }
     }
+
+    private void invalidatePermissionsCache(final String username) {
+        for (final PermissionsDecisionKey cacheKey : grantedPermissionsCache.asMap().keySet()) {
+            if (username.equals(cacheKey.principal.toString())) {
+                grantedPermissionsCache.invalidate(cacheKey);
+            }
+        }
+    }
+
+    private static final class PermissionsDecisionKey {
+
+        private final Object principal;
+        private final List<Permission> permissions;
+        private final Logical logical;
+
+        private PermissionsDecisionKey(final Object principal, final List<Permission> permissions, final Logical logical) {
+            this.principal = principal;
+            this.permissions = permissions;
+            this.logical = logical;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final PermissionsDecisionKey that = (PermissionsDecisionKey) o;
+            return principal.equals(that.principal) &&
+                   permissions.equals(that.permissions) &&
+                   logical == that.logical;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(principal, permissions, logical);
+        }
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.tag;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.util.tag.dao.SystemTags;
+import org.killbill.billing.util.tag.dao.TagModelDao;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Control (and system) tags of all the objects of an account, stored as one bitset per object.
+ * <p/>
+ * Instances are immutable and cached per account (see CacheType.ACCOUNT_CONTROL_TAGS).
+ */
+public class ControlTagBits implements Serializable {
+
+    private static final long serialVersionUID = 4087625309145368925L;
+
+    private static final Map<UUID, Long> BITS_BY_TAG_DEFINITION_ID;
+    private static final long AUTO_PAY_OFF_MASK;
+    private static final long AUTO_INVOICING_OFF_MASK;
+
+    static {
+        final Map<UUID, Long> bitsByTagDefinitionId = new HashMap<UUID, Long>();
+        long autoPayOffMask = 0L;
+        long autoInvoicingOffMask = 0L;
+        for (final ControlTagType controlTagType : ControlTagType.values()) {
+            final long bit = 1L << controlTagType.ordinal();
+            bitsByTagDefinitionId.put(controlTagType.getId(), bit);
+            if (controlTagType.getAutoPaymentOff()) {
+                autoPayOffMask |= bit;
+            }
+            if (controlTagType.getAutoInvoicingOff()) {
+                autoInvoicingOffMask |= bit;
+            }
+        }
+        // System tags are stored after the control tags
+        bitsByTagDefinitionId.put(SystemTags.PARK_TAG_DEFINITION_ID, 1L << ControlTagType.values().length);
+
+        BITS_BY_TAG_DEFINITION_ID = ImmutableMap.<UUID, Long>copyOf(bitsByTagDefinitionId);
+        AUTO_PAY_OFF_MASK = autoPayOffMask;
+        AUTO_INVOICING_OFF_MASK = autoInvoicingOffMask;
+    }
+
+    private final Map<UUID, Long> bitsByObjectId;
+
+    public ControlTagBits(final Iterable<TagModelDao> tags) {
+        final Map<UUID, Long> tmp = new HashMap<UUID, Long>();
+        for (final TagModelDao tag : tags) {
+            final long bit = toBit(tag.getTagDefinitionId());
+            if (bit == 0L) {
+                continue;
+            }
+            final Long existingBits = tmp.get(tag.getObjectId());
+            tmp.put(tag.getObjectId(), existingBits == null ? bit : existingBits | bit);
+        }
+        this.bitsByObjectId = ImmutableMap.<UUID, Long>copyOf(tmp);
+    }
+
+    public long getBits(final UUID objectId) {
+        final Long bits = bitsByObjectId.get(objectId);
+        return bits == null ? 0L : bits;
+    }
+
+    // 0 for user tags
+    public static long toBit(final UUID tagDefinitionId) {
+        final Long bit = BITS_BY_TAG_DEFINITION_ID.get(tagDefinitionId);
+        return bit == null ? 0L : bit;
+    }
+
+    public static boolean isControlOrSystemTag(final UUID tagDefinitionId) {
+        return BITS_BY_TAG_DEFINITION_ID.containsKey(tagDefinitionId);
+    }
+
+    public static boolean isSet(final long bits, final ControlTagType controlTagType) {
+        return isSet(bits, controlTagType.getId());
+    }
+
+    public static boolean isSet(final long bits, final UUID tagDefinitionId) {
+        final long bit = toBit(tagDefinitionId);
+        return bit != 0L && (bits & bit) != 0L;
+    }
+
+    // See ControlTagType#isAutoPayOff
+    public static boolean isAutoPayOff(final long bits) {
+        return (bits & AUTO_PAY_OFF_MASK) != 0L;
+    }
+
+    // See ControlTagType#isAutoInvoicingOff
+    public static boolean isAutoInvoicingOff(final long bits) {
+        return (bits & AUTO_INVOICING_OFF_MASK) != 0L;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ControlTagBits{");
+        sb.append("bitsByObjectId=").append(bitsByObjectId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
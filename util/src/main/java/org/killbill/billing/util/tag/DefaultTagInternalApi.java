@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.tag;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -70,6 +71,16 @@ public class DefaultTagInternalApi implements TagInternalApi {
         return toTagList(tagDao.getTagsForAccountType(objectType, includedDeleted, internalTenantContext));
     }
 
+    @Override
+    public List<Tag> getTagsForAccountRecordIds(final Collection<Long> accountRecordIds, final ObjectType objectType, final InternalTenantContext context) {
+        return toTagList(tagDao.getTagsForAccountRecordIds(accountRecordIds, objectType, context));
+    }
+
+    @Override
+    public long getControlTags(final UUID objectId, final ObjectType objectType, final InternalTenantContext context) {
+        return tagDao.getControlTagBits(objectId, objectType, context);
+    }
+
     @Override
     public void addTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, final InternalCallContext context)
             throws TagApiException {
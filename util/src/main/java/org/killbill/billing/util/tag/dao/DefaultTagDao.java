@@ -18,6 +18,7 @@
 
 package org.killbill.billing.util.tag.dao;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
@@ -38,7 +39,11 @@ import org.killbill.clock.Clock;
 import org.killbill.billing.events.TagInternalEvent;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.AccountControlTagsCacheLoader;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationSqlDaoHelper.PaginationIteratorBuilder;
@@ -47,6 +52,7 @@ import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.api.user.TagEventBuilder;
@@ -63,6 +69,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
 
     private final TagEventBuilder tagEventBuilder;
     private final PersistentBus bus;
+    private final CacheController<Long, ControlTagBits> controlTagsCacheController;
 
     @Inject
     public DefaultTagDao(final IDBI dbi, final TagEventBuilder tagEventBuilder, final PersistentBus bus, final Clock clock,
@@ -70,6 +77,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controllerDispatcher, nonEntityDao, internalCallContextFactory), TagSqlDao.class);
         this.tagEventBuilder = tagEventBuilder;
         this.bus = bus;
+        this.controlTagsCacheController = controllerDispatcher.getCacheController(CacheType.ACCOUNT_CONTROL_TAGS);
     }
 
     @Override
@@ -113,6 +121,58 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
         });
     }
 
+    @Override
+    public List<TagModelDao> getTagsForAccountRecordIds(final Collection<Long> accountRecordIds, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        if (accountRecordIds.isEmpty()) {
+            return ImmutableList.<TagModelDao>of();
+        }
+
+        final List<TagModelDao> allTags = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<TagModelDao>>() {
+            @Override
+            public List<TagModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TagSqlDao.class).getByAccountRecordIds(accountRecordIds, internalTenantContext);
+            }
+        });
+        return ImmutableList.<TagModelDao>copyOf(Collections2.filter(allTags, new Predicate<TagModelDao>() {
+            @Override
+            public boolean apply(final TagModelDao input) {
+                return input.getObjectType() == objectType;
+            }
+        }));
+    }
+
+    @Override
+    public long getControlTagBits(final UUID objectId, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        if (internalTenantContext.getAccountRecordId() == null || controlTagsCacheController == null) {
+            return new ControlTagBits(getTagsForObject(objectId, objectType, false, internalTenantContext)).getBits(objectId);
+        }
+
+        final ControlTagBits controlTagBits = controlTagsCacheController.get(internalTenantContext.getAccountRecordId(), createControlTagsCacheLoaderArgument(internalTenantContext));
+        return controlTagBits == null ? 0L : controlTagBits.getBits(objectId);
+    }
+
+    private CacheLoaderArgument createControlTagsCacheLoaderArgument(final InternalTenantContext context) {
+        final AccountControlTagsCacheLoader.LoaderCallback loaderCallback = new AccountControlTagsCacheLoader.LoaderCallback() {
+            @Override
+            public ControlTagBits loadControlTags(final Long accountRecordId, final InternalTenantContext context) {
+                // All the tags of the account are loaded at once, so that subsequent lookups (bundles, invoices, ...) are cached too
+                return new ControlTagBits(getTagsForAccount(false, context));
+            }
+        };
+        final Object[] args = new Object[1];
+        args[0] = loaderCallback;
+        final ObjectType irrelevant = null;
+        return new CacheLoaderArgument(irrelevant, args, context);
+    }
+
+    private void invalidateControlTagsCache(final UUID tagDefinitionId, final InternalCallContext context) {
+        if (controlTagsCacheController != null &&
+            context.getAccountRecordId() != null &&
+            ControlTagBits.isControlOrSystemTag(tagDefinitionId)) {
+            controlTagsCacheController.remove(context.getAccountRecordId());
+        }
+    }
+
     @Override
     protected void postBusEventFromTransaction(final TagModelDao tag, final TagModelDao savedTag, final ChangeType changeType,
                                                final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalCallContext context)
@@ -121,6 +181,10 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
         final TagInternalEvent tagEvent;
         final TagDefinitionModelDao tagDefinition = getTagDefinitionFromTransaction(tag.getTagDefinitionId(), entitySqlDaoWrapperFactory, context);
         final boolean isControlTag = ControlTagType.getTypeFromId(tagDefinition.getId()) != null;
+
+        // Invalidate within the transaction (and again once committed, see create and deleteTag)
+        invalidateControlTagsCache(tag.getTagDefinitionId(), context);
+
         switch (changeType) {
             case INSERT:
                 tagEvent = (isControlTag) ?
@@ -182,6 +246,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
     @Override
     public void create(final TagModelDao entity, final InternalCallContext context) throws TagApiException {
         transactionalSqlDao.execute(TagApiException.class, getCreateEntitySqlDaoTransactionWrapper(entity, context));
+        invalidateControlTagsCache(entity.getTagDefinitionId(), context);
     }
 
     @Override
@@ -212,6 +277,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
                 return null;
             }
         });
+        invalidateControlTagsCache(tagDefinitionId, context);
 
     }
 
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.tag.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -38,4 +39,10 @@ public interface TagDao extends EntityDao<TagModelDao, Tag, TagApiException> {
     List<TagModelDao> getTagsForAccountType(ObjectType objectType, boolean includedDeleted, InternalTenantContext internalTenantContext);
 
     List<TagModelDao> getTagsForAccount(boolean includedDeleted, InternalTenantContext internalTenantContext);
+
+    // Active tags of the given type, across several accounts (used by the bulk overdue evaluation)
+    List<TagModelDao> getTagsForAccountRecordIds(Collection<Long> accountRecordIds, ObjectType objectType, InternalTenantContext internalTenantContext);
+
+    // Bitset of the control and system tags set on that object (see ControlTagBits)
+    long getControlTagBits(UUID objectId, ObjectType objectType, InternalTenantContext internalTenantContext);
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing;
+
+import java.util.concurrent.Callable;
+
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.ProfilingData;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+
+// Counts the DAO calls made by the current thread, using the per-thread profiling data
+public class DaoCallCounter {
+
+    private DaoCallCounter() {}
+
+    public static int countDaoCalls(final Callable<Void> callable) throws Exception {
+        Profiling.setPerThreadProfilingData(ProfilingFeatureType.DAO.name());
+        try {
+            callable.call();
+
+            int daoCalls = 0;
+            for (final ProfilingData.ProfilingDataItem item : Profiling.getPerThreadProfilingData().getRawData()) {
+                if (item.getLineType() == ProfilingData.LogLineType.START) {
+                    daoCalls++;
+                }
+            }
+            return daoCalls;
+        } finally {
+            Profiling.resetPerThreadProfilingData();
+        }
+    }
+}
@@ -73,6 +73,7 @@ public class MutableInternalCallContext extends InternalCallContext {
 
     public void setAccountRecordId(final Long accountRecordId) {
         this.accountRecordId = accountRecordId;
+        getUnitOfWorkCache().invalidateAll();
     }
 
     @Override
@@ -82,6 +83,7 @@ public class MutableInternalCallContext extends InternalCallContext {
 
     public void setTenantRecordId(final Long tenantRecordId) {
         this.tenantRecordId = tenantRecordId;
+        getUnitOfWorkCache().invalidateAll();
     }
 
     @Override
@@ -124,6 +126,7 @@ public class MutableInternalCallContext extends InternalCallContext {
         this.updatedDate = updatedDate;
     }
 
+    // Each test method is its own unit of work
     public void reset() {
         setAccountRecordId(initialAccountRecordId);
         setTenantRecordId(initialTenantRecordId);
@@ -28,6 +28,7 @@ import org.killbill.billing.GuicyKillbillTestSuiteNoDB;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.account.api.ImmutableAccountInternalApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.security.Permission;
 import org.killbill.billing.security.api.SecurityApi;
 import org.killbill.billing.util.api.AuditUserApi;
@@ -63,6 +64,8 @@ public class UtilTestSuiteNoDB extends GuicyKillbillTestSuiteNoDB {
     @Inject
     protected AuditUserApi auditUserApi;
     @Inject
+    protected AuditInternalApi auditInternalApi;
+    @Inject
     protected SecurityApi securityApi;
     @Inject
     protected KillBillJndiLdapRealm killBillJndiLdapRealm;
@@ -32,6 +32,7 @@ import org.killbill.billing.util.customfield.api.DefaultCustomFieldUserApi;
 import org.killbill.billing.util.customfield.dao.CustomFieldDao;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.export.dao.DatabaseExportDao;
+import org.killbill.billing.util.globallocker.LeasingGlobalLocker;
 import org.killbill.billing.util.glue.TestUtilModuleWithEmbeddedDB;
 import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.billing.util.tag.api.DefaultTagUserApi;
@@ -104,12 +105,14 @@ public abstract class UtilTestSuiteWithEmbeddedDB extends GuicyKillbillTestSuite
         final Injector g = Guice.createInjector(Stage.PRODUCTION, new TestUtilModuleWithEmbeddedDB(configSource));
         g.injectMembers(this);
 
+        Assert.assertTrue(locker instanceof LeasingGlobalLocker);
+        final GlobalLocker delegateLocker = ((LeasingGlobalLocker) locker).getDelegate();
         if (DBEngine.MYSQL.equals(helper.getDBEngine())) {
-            Assert.assertTrue(locker instanceof MySqlGlobalLocker);
+            Assert.assertTrue(delegateLocker instanceof MySqlGlobalLocker);
         } else if (DBEngine.POSTGRESQL.equals(helper.getDBEngine())) {
-            Assert.assertTrue(locker instanceof PostgreSQLGlobalLocker);
+            Assert.assertTrue(delegateLocker instanceof PostgreSQLGlobalLocker);
         } else {
-            Assert.assertTrue(locker instanceof MemoryGlobalLocker);
+            Assert.assertTrue(delegateLocker instanceof MemoryGlobalLocker);
         }
         Assert.assertTrue(locker.isFree("a", "b"));
     }
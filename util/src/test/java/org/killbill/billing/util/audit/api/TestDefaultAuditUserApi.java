@@ -17,6 +17,7 @@
 package org.killbill.billing.util.audit.api;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.testng.Assert;
@@ -69,4 +70,27 @@ public class TestDefaultAuditUserApi extends AuditLogsTestBase {
             }
         }
     }
+
+    @Test(groups = "fast")
+    public void testForObjects() throws Exception {
+        final UUID unknownObjectId = UUID.randomUUID();
+        final List<UUID> allObjectIds = ImmutableList.<UUID>builder().addAll(objectIds).add(unknownObjectId).build();
+
+        for (final ObjectType objectType : ObjectType.values()) {
+            for (final AuditLevel level : AuditLevel.values()) {
+                final Map<UUID, List<AuditLog>> auditLogsByObjectId = auditInternalApi.getAuditLogs(allObjectIds, objectType, level, internalCallContext);
+                if (AuditLevel.NONE.equals(level) || TableName.fromObjectType(objectType) == null) {
+                    Assert.assertTrue(auditLogsByObjectId.isEmpty());
+                    continue;
+                }
+
+                // Same audit logs as the per object lookup
+                Assert.assertEquals(auditLogsByObjectId.size(), objectIds.size());
+                Assert.assertNull(auditLogsByObjectId.get(unknownObjectId));
+                for (final UUID objectId : objectIds) {
+                    Assert.assertEquals(auditLogsByObjectId.get(objectId), auditUserApi.getAuditLogs(objectId, objectType, level, callContext));
+                }
+            }
+        }
+    }
 }
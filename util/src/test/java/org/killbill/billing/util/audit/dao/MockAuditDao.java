@@ -17,6 +17,7 @@
 package org.killbill.billing.util.audit.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,4 +82,20 @@ public class MockAuditDao implements AuditDao {
             return allAuditLogs;
         }
     }
+
+    @Override
+    public Map<UUID, List<AuditLog>> getAuditLogsForIds(final TableName tableName, final Collection<UUID> objectIds, final AuditLevel auditLevel, final InternalTenantContext context) {
+        final Map<UUID, List<AuditLog>> result = new HashMap<UUID, List<AuditLog>>();
+        final Map<UUID, List<AuditLog>> auditLogsForTableName = auditLogsForTables.get(tableName);
+        if (auditLogsForTableName == null) {
+            return result;
+        }
+
+        for (final UUID objectId : objectIds) {
+            if (auditLogsForTableName.get(objectId) != null) {
+                result.put(objectId, getAuditLogsForId(tableName, objectId, auditLevel, context));
+            }
+        }
+        return result;
+    }
 }
@@ -17,6 +17,7 @@
 package org.killbill.billing.util.audit.dao;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -39,6 +40,8 @@ import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
 import org.killbill.billing.util.tag.dao.TagModelDao;
 
+import com.google.common.collect.ImmutableList;
+
 public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
 
     private TagModelDao tag;
@@ -55,6 +58,9 @@ public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
         for (final AuditLevel level : AuditLevel.values()) {
             final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.TAG_HISTORY, UUID.fromString(tagHistoryString), level, internalCallContext);
             verifyAuditLogsForTag(auditLogs, level);
+
+            final Map<UUID, List<AuditLog>> auditLogsForIds = auditDao.getAuditLogsForIds(TableName.TAG_HISTORY, ImmutableList.<UUID>of(UUID.fromString(tagHistoryString)), level, internalCallContext);
+            verifyAuditLogsForTag(auditLogsForIds.get(UUID.fromString(tagHistoryString)), level);
         }
     }
 
@@ -74,6 +80,40 @@ public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testRetrieveAuditsForIds() throws Exception {
+        addTag();
+        final TagModelDao firstTag = tag;
+        addTag();
+        final TagModelDao secondTag = tag;
+
+        final UUID unknownTagId = UUID.randomUUID();
+        for (final AuditLevel level : AuditLevel.values()) {
+            final Map<UUID, List<AuditLog>> auditLogs = auditDao.getAuditLogsForIds(TableName.TAG, ImmutableList.<UUID>of(firstTag.getId(), secondTag.getId(), unknownTagId), level, internalCallContext);
+            Assert.assertNull(auditLogs.get(unknownTagId));
+            verifyAuditLogsForTag(auditLogs.get(firstTag.getId()), level);
+            verifyAuditLogsForTag(auditLogs.get(secondTag.getId()), level);
+        }
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        tagDao.deleteTag(firstTag.getObjectId(), firstTag.getObjectType(), firstTag.getTagDefinitionId(), internalCallContext);
+        assertListenerStatus();
+
+        // Same entries, in the same order, as the per object lookup
+        final Map<UUID, List<AuditLog>> auditLogs = auditDao.getAuditLogsForIds(TableName.TAG, ImmutableList.<UUID>of(firstTag.getId(), secondTag.getId()), AuditLevel.FULL, internalCallContext);
+        Assert.assertEquals(auditLogs.size(), 2);
+        Assert.assertEquals(auditLogs.get(firstTag.getId()).size(), 2);
+        Assert.assertEquals(auditLogs.get(firstTag.getId()).get(0).getChangeType(), ChangeType.INSERT);
+        Assert.assertEquals(auditLogs.get(firstTag.getId()).get(1).getChangeType(), ChangeType.DELETE);
+        Assert.assertEquals(auditLogs.get(firstTag.getId()).get(1).getAuditedEntityId(), firstTag.getId());
+        Assert.assertEquals(auditLogs.get(firstTag.getId()), auditDao.getAuditLogsForId(TableName.TAG, firstTag.getId(), AuditLevel.FULL, internalCallContext));
+        verifyAuditLogsForTag(auditLogs.get(secondTag.getId()), AuditLevel.FULL);
+
+        // Only the initial INSERT is kept
+        final Map<UUID, List<AuditLog>> minimalAuditLogs = auditDao.getAuditLogsForIds(TableName.TAG, ImmutableList.<UUID>of(firstTag.getId()), AuditLevel.MINIMAL, internalCallContext);
+        verifyAuditLogsForTag(minimalAuditLogs.get(firstTag.getId()), AuditLevel.MINIMAL);
+    }
+
     @Test(groups = "slow")
     public void testVerifyAuditCachesAreCleared() throws Exception {
         addTag();
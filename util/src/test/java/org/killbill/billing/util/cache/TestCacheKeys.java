@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.dao.TableName;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCacheKeys extends UtilTestSuiteNoDB {
+
+    private static final int NB_ENTRIES = 1000;
+    private static final int NB_BENCHMARK_ENTRIES = 100000;
+    private static final int NB_LOOKUP_ROUNDS = 10;
+
+    @Test(groups = "fast")
+    public void testIdCacheKey() {
+        final UUID id = UUID.randomUUID();
+        final IdCacheKey key = IdCacheKey.of(id);
+
+        Assert.assertEquals(key.getId(), id);
+        Assert.assertEquals(key.hashCode(), id.hashCode());
+        Assert.assertEquals(key.toString(), id.toString());
+        Assert.assertEquals(IdCacheKey.of(id.toString().toUpperCase()), key);
+        Assert.assertNotEquals(IdCacheKey.of(UUID.randomUUID()), key);
+    }
+
+    @Test(groups = "fast")
+    public void testRecordIdCacheKey() {
+        final RecordIdCacheKey key = new RecordIdCacheKey(TableName.ACCOUNT, 12L);
+
+        Assert.assertEquals(key.getTableName(), TableName.ACCOUNT);
+        Assert.assertEquals(key.getRecordId(), 12L);
+        Assert.assertEquals(new RecordIdCacheKey(TableName.ACCOUNT, 12L), key);
+        Assert.assertEquals(new RecordIdCacheKey(TableName.ACCOUNT, 12L).hashCode(), key.hashCode());
+        Assert.assertNotEquals(new RecordIdCacheKey(TableName.ACCOUNT, 13L), key);
+        Assert.assertNotEquals(new RecordIdCacheKey(TableName.INVOICES, 12L), key);
+    }
+
+    @Test(groups = "fast")
+    public void testTenantCacheKey() {
+        final TenantCacheKey key = new TenantCacheKey("PUSH_NOTIFICATION_CB", 3L);
+
+        Assert.assertEquals(key.getKey(), "PUSH_NOTIFICATION_CB");
+        Assert.assertEquals(key.getTenantRecordId(), 3L);
+        Assert.assertEquals(new TenantCacheKey("PUSH_NOTIFICATION_CB", 3L), key);
+        Assert.assertEquals(new TenantCacheKey("PUSH_NOTIFICATION_CB", 3L).hashCode(), key.hashCode());
+        Assert.assertNotEquals(new TenantCacheKey("PUSH_NOTIFICATION_CB", 4L), key);
+        Assert.assertNotEquals(new TenantCacheKey("PER_TENANT_CONFIG", 3L), key);
+    }
+
+    @Test(groups = "fast", description = "Verify keys built independently from the same ids resolve the same map entries")
+    public void testKeysAsMapKeys() {
+        final List<UUID> ids = new ArrayList<UUID>(NB_ENTRIES);
+        final Map<IdCacheKey, Long> idKeys = new HashMap<IdCacheKey, Long>();
+        final Map<RecordIdCacheKey, UUID> recordIdKeys = new HashMap<RecordIdCacheKey, UUID>();
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            final UUID id = UUID.randomUUID();
+            ids.add(id);
+            idKeys.put(IdCacheKey.of(id), (long) i);
+            recordIdKeys.put(new RecordIdCacheKey(TableName.ACCOUNT, (long) i), id);
+        }
+        Assert.assertEquals(idKeys.size(), NB_ENTRIES);
+        Assert.assertEquals(recordIdKeys.size(), NB_ENTRIES);
+
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            final UUID id = ids.get(i);
+            final IdCacheKey fromString = IdCacheKey.of(id.toString());
+            Assert.assertEquals(fromString.hashCode(), IdCacheKey.of(id).hashCode());
+            Assert.assertEquals(idKeys.get(fromString), Long.valueOf(i));
+            Assert.assertEquals(recordIdKeys.get(new RecordIdCacheKey(TableName.ACCOUNT, (long) i)), id);
+            Assert.assertNull(recordIdKeys.get(new RecordIdCacheKey(TableName.INVOICES, (long) i)));
+        }
+    }
+
+    // Micro-benchmark comparing the previous "::" String keys with the typed keys: lookups are done with freshly built keys,
+    // as the cache callers do. Numbers are only logged as they depend on the JVM and hardware.
+    @Test(groups = "fast")
+    public void testLookupThroughputAndFootprint() {
+        final List<UUID> ids = new ArrayList<UUID>(NB_BENCHMARK_ENTRIES);
+        for (int i = 0; i < NB_BENCHMARK_ENTRIES; i++) {
+            ids.add(UUID.randomUUID());
+        }
+
+        benchmark("String keys (id)", new KeyBuilder<String>() {
+            @Override
+            public String build(final int i) {
+                return ids.get(i).toString();
+            }
+        });
+        benchmark("IdCacheKey keys", new KeyBuilder<IdCacheKey>() {
+            @Override
+            public IdCacheKey build(final int i) {
+                return IdCacheKey.of(ids.get(i));
+            }
+        });
+
+        benchmark("String keys (tableName::recordId)", new KeyBuilder<String>() {
+            @Override
+            public String build(final int i) {
+                return TableName.ACCOUNT + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + i;
+            }
+        });
+        benchmark("RecordIdCacheKey keys", new KeyBuilder<RecordIdCacheKey>() {
+            @Override
+            public RecordIdCacheKey build(final int i) {
+                return new RecordIdCacheKey(TableName.ACCOUNT, (long) i);
+            }
+        });
+
+        benchmark("String keys (key::tenantRecordId)", new KeyBuilder<String>() {
+            @Override
+            public String build(final int i) {
+                return "PER_TENANT_CONFIG" + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + i;
+            }
+        });
+        benchmark("TenantCacheKey keys", new KeyBuilder<TenantCacheKey>() {
+            @Override
+            public TenantCacheKey build(final int i) {
+                return new TenantCacheKey("PER_TENANT_CONFIG", (long) i);
+            }
+        });
+    }
+
+    private <K> void benchmark(final String description, final KeyBuilder<K> keyBuilder) {
+        final long heapBefore = usedHeap();
+        final Map<K, Long> entries = new HashMap<K, Long>(2 * NB_BENCHMARK_ENTRIES);
+        for (int i = 0; i < NB_BENCHMARK_ENTRIES; i++) {
+            entries.put(keyBuilder.build(i), (long) i);
+        }
+        final long bytesPerEntry = (usedHeap() - heapBefore) / NB_BENCHMARK_ENTRIES;
+
+        // Warm-up round, not measured
+        for (int i = 0; i < NB_BENCHMARK_ENTRIES; i++) {
+            Assert.assertNotNull(entries.get(keyBuilder.build(i)));
+        }
+
+        final long start = System.nanoTime();
+        for (int round = 0; round < NB_LOOKUP_ROUNDS; round++) {
+            for (int i = 0; i < NB_BENCHMARK_ENTRIES; i++) {
+                Assert.assertNotNull(entries.get(keyBuilder.build(i)));
+            }
+        }
+        final long durationNanos = System.nanoTime() - start;
+
+        final long nbLookups = (long) NB_BENCHMARK_ENTRIES * NB_LOOKUP_ROUNDS;
+        log.info("{}: {} lookups/ms, ~{} bytes/entry", description, nbLookups * 1000000L / Math.max(durationNanos, 1L), bytesPerEntry);
+        Assert.assertEquals(entries.size(), NB_BENCHMARK_ENTRIES);
+    }
+
+    private long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface KeyBuilder<K> {
+
+        K build(int i);
+    }
+}
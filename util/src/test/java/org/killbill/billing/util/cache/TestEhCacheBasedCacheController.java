@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+import javax.inject.Inject;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEhCacheBasedCacheController extends UtilTestSuiteNoDB {
+
+    private static final int NB_THREADS = 32;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private String cacheName;
+    private Cache<String, Long> cache;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        cacheName = "test-" + UUID.randomUUID();
+        cache = cacheManager.createCache(cacheName, new MutableConfiguration<String, Long>().setTypes(String.class, Long.class)
+                                                                                         .setStoreByValue(false));
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        cacheManager.destroyCache(cacheName);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        final CountDownLatch loaderStarted = new CountDownLatch(1);
+        final CountDownLatch allCallersStarted = new CountDownLatch(NB_THREADS);
+        final CountingCacheLoader cacheLoader = new CountingCacheLoader() {
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                loaderStarted.countDown();
+                try {
+                    // Keep the load in progress until all callers have missed
+                    allCallersStarted.await(10, TimeUnit.SECONDS);
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.compute(key, cacheLoaderArgument);
+            }
+        };
+        final EhCacheBasedCacheController<String, Long> cacheController = new EhCacheBasedCacheController<String, Long>(cache, cacheLoader);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            final ImmutableList.Builder<Future<Long>> futures = ImmutableList.<Future<Long>>builder();
+            for (int i = 0; i < NB_THREADS; i++) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        allCallersStarted.countDown();
+                        return cacheController.get("key", new CacheLoaderArgument(null));
+                    }
+                }));
+            }
+
+            for (final Future<Long> future : futures.build()) {
+                Assert.assertEquals(future.get(10, TimeUnit.SECONDS), (Long) 1L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(cacheLoader.getNbCalls(), 1);
+
+        final CacheStatistics statistics = cacheController.getStatistics();
+        Assert.assertEquals(statistics.getLoadCount(), 1);
+        Assert.assertEquals(statistics.getHitCount() + statistics.getMissCount(), NB_THREADS);
+        Assert.assertEquals(statistics.getSize(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testFailedLoadIsNotCached() throws Exception {
+        final AtomicInteger nbCalls = new AtomicInteger();
+        final EhCacheBasedCacheController<String, Long> cacheController = new EhCacheBasedCacheController<String, Long>(cache, new CountingCacheLoader() {
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                if (nbCalls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Database unavailable");
+                }
+                return super.compute(key, cacheLoaderArgument);
+            }
+        });
+
+        try {
+            cacheController.get("key", new CacheLoaderArgument(null));
+            Assert.fail();
+        } catch (final RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(cacheController.size(), 0);
+
+        Assert.assertEquals(cacheController.get("key", new CacheLoaderArgument(null)), (Long) 1L);
+        Assert.assertEquals(nbCalls.get(), 2);
+
+        final CacheStatistics statistics = cacheController.getStatistics();
+        Assert.assertEquals(statistics.getLoadCount(), 2);
+        Assert.assertEquals(statistics.getLoadFailureCount(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testStatistics() throws Exception {
+        final CountingCacheLoader cacheLoader = new CountingCacheLoader();
+        final EhCacheBasedCacheController<String, Long> cacheController = new EhCacheBasedCacheController<String, Long>(cache, cacheLoader);
+
+        Assert.assertEquals(cacheController.get("key1", new CacheLoaderArgument(null)), (Long) 1L);
+        Assert.assertEquals(cacheController.get("key1", new CacheLoaderArgument(null)), (Long) 1L);
+        Assert.assertEquals(cacheController.get("key2", new CacheLoaderArgument(null)), (Long) 2L);
+        Assert.assertEquals(cacheLoader.getNbCalls(), 2);
+
+        CacheStatistics statistics = cacheController.getStatistics();
+        Assert.assertEquals(statistics.getHitCount(), 1);
+        Assert.assertEquals(statistics.getMissCount(), 2);
+        Assert.assertEquals(statistics.getLoadCount(), 2);
+        Assert.assertEquals(statistics.getSize(), 2);
+
+        Assert.assertTrue(cacheController.remove("key1"));
+        Assert.assertFalse(cacheController.remove("key1"));
+        Assert.assertEquals(cacheController.size(), 1);
+
+        final List<String> keys = cacheController.getKeys();
+        Assert.assertEquals(keys, ImmutableList.<String>of("key2"));
+
+        cacheController.removeAll();
+        statistics = cacheController.getStatistics();
+        Assert.assertEquals(statistics.getSize(), 0);
+    }
+
+    private static class CountingCacheLoader extends BaseCacheLoader<String, Long> {
+
+        private final AtomicInteger nbCalls = new AtomicInteger();
+
+        @Override
+        public CacheType getCacheType() {
+            return CacheType.RECORD_ID;
+        }
+
+        @Override
+        public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+            return (long) nbCalls.incrementAndGet();
+        }
+
+        public int getNbCalls() {
+            return nbCalls.get();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.UnitOfWorkCacheHelper.UnitOfWorkLoader;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.ProfilingData;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestUnitOfWorkCacheHelper extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testMemoizationIsScopedToTheContext() {
+        final AtomicInteger loads = new AtomicInteger();
+        final UnitOfWorkLoader<String, RuntimeException> loader = new UnitOfWorkLoader<String, RuntimeException>() {
+            @Override
+            public String load() {
+                return "value-" + loads.incrementAndGet();
+            }
+        };
+
+        final InternalTenantContext context = new InternalTenantContext(1L);
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader), "value-1");
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader), "value-1");
+        Assert.assertEquals(context.getUnitOfWorkCache().getHits(), 1);
+        Assert.assertEquals(context.getUnitOfWorkCache().getMisses(), 1);
+
+        // Different namespace or id
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("other", 1L, context, loader), "value-2");
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 2L, context, loader), "value-3");
+
+        // Different unit of work
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, new InternalTenantContext(1L), loader), "value-4");
+
+        // Explicit invalidation
+        UnitOfWorkCacheHelper.invalidate("test", 1L, context);
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader), "value-5");
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader), "value-5");
+
+        // No context
+        Assert.assertEquals(UnitOfWorkCacheHelper.getOrLoad("test", 1L, null, loader), "value-6");
+    }
+
+    @Test(groups = "fast")
+    public void testNullValuesAreNotMemoized() {
+        final AtomicInteger loads = new AtomicInteger();
+        final UnitOfWorkLoader<String, RuntimeException> loader = new UnitOfWorkLoader<String, RuntimeException>() {
+            @Override
+            public String load() {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+
+        final InternalTenantContext context = new InternalTenantContext(1L);
+        Assert.assertNull(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader));
+        Assert.assertNull(UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader));
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testHitsAreProfiled() {
+        final UnitOfWorkLoader<String, RuntimeException> loader = new UnitOfWorkLoader<String, RuntimeException>() {
+            @Override
+            public String load() {
+                return "value";
+            }
+        };
+
+        Profiling.setPerThreadProfilingData(ProfilingFeatureType.DAO_DETAILS.name());
+        try {
+            final InternalTenantContext context = new InternalTenantContext(1L);
+            UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader);
+            UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader);
+            UnitOfWorkCacheHelper.getOrLoad("test", 1L, context, loader);
+
+            int hits = 0;
+            final ProfilingData profilingData = Profiling.getPerThreadProfilingData();
+            for (final ProfilingData.ProfilingDataItem item : profilingData.getRawData()) {
+                if (item.getKey().endsWith("UnitOfWork (type = test) cache hit") && item.getLineType() == ProfilingData.LogLineType.START) {
+                    hits++;
+                }
+            }
+            Assert.assertEquals(hits, 2);
+        } finally {
+            Profiling.resetPerThreadProfilingData();
+        }
+    }
+}
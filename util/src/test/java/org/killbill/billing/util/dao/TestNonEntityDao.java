@@ -18,6 +18,7 @@ package org.killbill.billing.util.dao;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -27,6 +28,12 @@ import org.testng.annotations.Test;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.IdCacheKey;
+import org.killbill.billing.util.cache.RecordIdCacheKey;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
 
@@ -91,6 +98,57 @@ public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(resultTenantRecordId, tenantRecordId);
     }
 
+    @Test(groups = "slow")
+    public void testRetrieveRecordIdsFromObjects() throws IOException {
+        insertAccount();
+
+        final UUID unknownAccountId = UUID.randomUUID();
+        final CacheController<IdCacheKey, Long> cache = controlCacheDispatcher.getCacheController(CacheType.RECORD_ID);
+        cache.removeAll();
+
+        final Map<UUID, Long> recordIds = nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId, unknownAccountId), ObjectType.ACCOUNT, cache);
+        Assert.assertEquals(recordIds.size(), 1);
+        Assert.assertEquals(recordIds.get(accountId), accountRecordId);
+
+        // The resolved id has been cached, the unknown one hasn't
+        Assert.assertTrue(cache.isKeyInCache(IdCacheKey.of(accountId)));
+        Assert.assertFalse(cache.isKeyInCache(IdCacheKey.of(unknownAccountId)));
+        Assert.assertEquals(cache.getAll(ImmutableList.<IdCacheKey>of(IdCacheKey.of(accountId), IdCacheKey.of(unknownAccountId))).size(), 1);
+
+        // Served from the cache
+        Assert.assertEquals(nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, cache).get(accountId), accountRecordId);
+        Assert.assertTrue(nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(), ObjectType.ACCOUNT, cache).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testRetrieveAccountRecordIdsFromObjects() throws IOException {
+        insertAccount();
+        insertTag();
+        insertTagDefinition();
+
+        final Map<UUID, Long> accountRecordIdsForAccounts = nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(accountRecordIdsForAccounts.get(accountId), accountRecordId);
+
+        final Map<UUID, Long> accountRecordIdsForTags = nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(tagId, UUID.randomUUID()), ObjectType.TAG, null);
+        Assert.assertEquals(accountRecordIdsForTags.size(), 1);
+        Assert.assertEquals(accountRecordIdsForTags.get(tagId), accountRecordId);
+
+        Assert.assertTrue(nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(tagDefinitionId), ObjectType.TAG_DEFINITION, null).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testRetrieveIdsFromObjects() throws IOException {
+        insertAccount();
+
+        final CacheController<RecordIdCacheKey, UUID> cache = controlCacheDispatcher.getCacheController(CacheType.OBJECT_ID);
+        cache.removeAll();
+
+        final Map<Long, UUID> ids = nonEntityDao.retrieveIdsFromObjects(ImmutableList.<Long>of(accountRecordId, accountRecordId + 1), ObjectType.ACCOUNT, cache);
+        Assert.assertEquals(ids.size(), 1);
+        Assert.assertEquals(ids.get(accountRecordId), accountId);
+        Assert.assertTrue(cache.isKeyInCache(new RecordIdCacheKey(TableName.ACCOUNT, accountRecordId)));
+    }
+
     private void insertAccount() throws IOException {
         dbi.withHandle(new HandleCallback<Void>() {
             @Override
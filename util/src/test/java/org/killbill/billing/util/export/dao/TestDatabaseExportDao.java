@@ -18,7 +18,11 @@
 
 package org.killbill.billing.util.export.dao;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.util.Date;
 import java.util.UUID;
 
@@ -97,6 +101,71 @@ public class TestDatabaseExportDao extends UtilTestSuiteWithEmbeddedDB {
 
     }
 
+    @Test(groups = "slow")
+    public void testExportLargeAccount() throws Exception {
+        final int nbRows = 20000;
+        final String tableName = "test_database_export_dao_large";
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("drop table if exists " + tableName);
+                handle.execute("create table " + tableName + "(record_id serial unique," +
+                               "id varchar(36) not null," +
+                               "amount numeric(15,9) null," +
+                               "blob_column mediumblob," +
+                               "effective_date date," +
+                               "created_date datetime not null," +
+                               "account_record_id bigint /*! unsigned */ not null," +
+                               "tenant_record_id bigint /*! unsigned */ not null default 0," +
+                               "primary key(record_id));");
+
+                final PreparedStatement statement = handle.getConnection().prepareStatement("insert into " + tableName + " (id, amount, blob_column, effective_date, created_date, account_record_id, tenant_record_id) values (?, ?, ?, ?, ?, ?, ?)");
+                try {
+                    for (int i = 0; i < nbRows; i++) {
+                        statement.setString(1, UUID.randomUUID().toString());
+                        statement.setBigDecimal(2, i % 10 == 0 ? null : new BigDecimal(i).movePointLeft(2));
+                        statement.setBytes(3, LZFEncoder.encode(String.valueOf(i).getBytes()));
+                        statement.setDate(4, new java.sql.Date(12421982000L + i * 1000L));
+                        statement.setTimestamp(5, new Timestamp(382910622000L + i * 1000L));
+                        // A few rows belong to another account
+                        statement.setLong(6, i % 100 == 0 ? internalCallContext.getAccountRecordId() + 1 : internalCallContext.getAccountRecordId());
+                        statement.setLong(7, internalCallContext.getTenantRecordId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } finally {
+                    statement.close();
+                }
+                return null;
+            }
+        });
+
+        try {
+            final String csvDump = getDump();
+            final String[] lines = csvDump.split("\n");
+            // Header and rows of the account
+            Assert.assertEquals(lines.length, 1 + nbRows - nbRows / 100);
+            Assert.assertTrue(lines[0].startsWith("-- " + tableName + " record_id|id|amount|blob_column|effective_date|created_date|account_record_id|tenant_record_id"));
+
+            // The binary export, converted back to CSV, should match the CSV export
+            final ByteArrayOutputStream binaryDump = new ByteArrayOutputStream();
+            dao.exportDataForAccount(new BinaryExportOutputStream(binaryDump), internalCallContext);
+            Assert.assertTrue(binaryDump.size() < csvDump.length(), String.format("Binary export is %s bytes, CSV export is %s bytes", binaryDump.size(), csvDump.length()));
+
+            final DatabaseExportOutputStream csvFromBinary = new CSVExportOutputStream(new ByteArrayOutputStream());
+            new BinaryExportReader(new ByteArrayInputStream(binaryDump.toByteArray())).replay(csvFromBinary);
+            Assert.assertEquals(csvFromBinary.toString(), csvDump);
+        } finally {
+            dbi.withHandle(new HandleCallback<Void>() {
+                @Override
+                public Void withHandle(final Handle handle) throws Exception {
+                    handle.execute("drop table " + tableName);
+                    return null;
+                }
+            });
+        }
+    }
+
     private String getDump() {
         final DatabaseExportOutputStream out = new CSVExportOutputStream(new ByteArrayOutputStream());
         dao.exportDataForAccount(out, internalCallContext);
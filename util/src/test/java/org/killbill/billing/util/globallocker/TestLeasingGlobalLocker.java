@@ -0,0 +1,274 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.globallocker;
+
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.config.definition.GlobalLockerConfig;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.LockFailedException;
+import org.killbill.commons.locker.memory.MemoryGlobalLocker;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.skife.config.ConfigurationObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TestLeasingGlobalLocker extends UtilTestSuiteNoDB {
+
+    private static final String SERVICE = LockerType.ACCNT_INV_PAY.toString();
+
+    private CountingGlobalLocker delegate;
+    private MetricRegistry metricRegistry;
+    private ExecutorService executor;
+    private String lockKey;
+
+    @BeforeMethod(groups = "fast")
+    public void setUpLocker() throws Exception {
+        delegate = new CountingGlobalLocker();
+        metricRegistry = new MetricRegistry();
+        executor = Executors.newSingleThreadExecutor();
+        lockKey = UUID.randomUUID().toString();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDownLocker() throws Exception {
+        executor.shutdownNow();
+        Request.resetPerThreadRequestData();
+    }
+
+    @Test(groups = "fast")
+    public void testReentrantForTheSameRequest() throws Exception {
+        final LeasingGlobalLocker locker = createLocker("0s", false);
+
+        final RequestData requestData = new RequestData(UUID.randomUUID().toString());
+        Request.setPerThreadRequestData(requestData);
+        final GlobalLock lock = locker.lockWithNumberOfTries(SERVICE, lockKey, 1);
+
+        // Same request, from another thread (e.g. payment plugin calling back into Kill Bill)
+        final GlobalLock reentrantLock = executor.submit(new Callable<GlobalLock>() {
+            @Override
+            public GlobalLock call() throws Exception {
+                Request.setPerThreadRequestData(requestData);
+                try {
+                    return locker.lockWithNumberOfTries(SERVICE, lockKey, 1);
+                } finally {
+                    Request.resetPerThreadRequestData();
+                }
+            }
+        }).get();
+        Assert.assertEquals(delegate.nbLocks.get(), 1);
+        Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".reentrant").getCount(), 1);
+
+        // Another request has to wait
+        Assert.assertFalse(tryLockFromAnotherThread(locker, new RequestData(UUID.randomUUID().toString())));
+
+        reentrantLock.release();
+        Assert.assertFalse(locker.isFree(SERVICE, lockKey));
+        lock.release();
+        Assert.assertTrue(locker.isFree(SERVICE, lockKey));
+        Assert.assertTrue(delegate.isFree(SERVICE, lockKey));
+    }
+
+    @Test(groups = "fast")
+    public void testNotReentrantWithoutRequestData() throws Exception {
+        final LeasingGlobalLocker locker = createLocker("0s", false);
+
+        final GlobalLock lock = locker.lockWithNumberOfTries(SERVICE, lockKey, 1);
+        try {
+            locker.lockWithNumberOfTries(SERVICE, lockKey, 1);
+            Assert.fail("Lock shouldn't be reentrant without request data");
+        } catch (final LockFailedException e) {
+            Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".contended").getCount(), 1);
+            Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".failed").getCount(), 1);
+        } finally {
+            lock.release();
+        }
+
+        // Contention stays local: the database was only hit once
+        Assert.assertEquals(delegate.nbLocks.get(), 1);
+        Assert.assertTrue(locker.isFree(SERVICE, lockKey));
+    }
+
+    @Test(groups = "fast")
+    public void testLockIsReleasedImmediatelyWithoutGracePeriod() throws Exception {
+        final LeasingGlobalLocker locker = createLocker("0s", false);
+
+        for (int i = 0; i < 10; i++) {
+            locker.lockWithNumberOfTries(SERVICE, lockKey, 1).release();
+            Assert.assertTrue(delegate.isFree(SERVICE, lockKey));
+        }
+        Assert.assertEquals(delegate.nbLocks.get(), 10);
+        Assert.assertEquals(delegate.nbReleases.get(), 10);
+    }
+
+    @Test(groups = "fast")
+    public void testLeaseIsReusedDuringGracePeriod() throws Exception {
+        final LeasingGlobalLocker locker = createLocker("1s", false);
+
+        for (int i = 0; i < 10; i++) {
+            locker.lockWithNumberOfTries(SERVICE, lockKey, 1).release();
+            // Still held in the database by this node
+            Assert.assertFalse(locker.isFree(SERVICE, lockKey));
+            Assert.assertFalse(delegate.isFree(SERVICE, lockKey));
+        }
+        Assert.assertEquals(delegate.nbLocks.get(), 1);
+        Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".acquired").getCount(), 10);
+        Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".leaseReused").getCount(), 9);
+
+        // Other threads of the node use the lease as well
+        Assert.assertTrue(tryLockFromAnotherThread(locker, null));
+        Assert.assertEquals(delegate.nbLocks.get(), 1);
+
+        // The lease expires once the grace period is over
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!delegate.isFree(SERVICE, lockKey) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(delegate.isFree(SERVICE, lockKey));
+        Assert.assertTrue(locker.isFree(SERVICE, lockKey));
+        Assert.assertEquals(delegate.nbReleases.get(), 1);
+
+        locker.lockWithNumberOfTries(SERVICE, lockKey, 1).release();
+        Assert.assertEquals(delegate.nbLocks.get(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testRetriesAreSharedBetweenLocalWaitAndDatabase() throws Exception {
+        final LeasingGlobalLocker locker = createLocker("0s", false);
+
+        locker.lockWithNumberOfTries(SERVICE, lockKey, 5).release();
+        Assert.assertEquals(delegate.lastRetry.get(), 5);
+
+        // Held by another owner on this node for a bit more than two local tries (100ms each)
+        final GlobalLock lock = locker.lockWithNumberOfTries(SERVICE, lockKey, 3);
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Thread.sleep(250);
+                lock.release();
+                return null;
+            }
+        });
+        locker.lockWithNumberOfTries(SERVICE, lockKey, 3).release();
+        // Only the tries left are spent against the database
+        Assert.assertEquals(delegate.lastRetry.get(), 1);
+        Assert.assertEquals(delegate.nbLocks.get(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testReadWriteSeparation() throws Exception {
+        final LeasingGlobalLocker lockerWithoutSeparation = createLocker("0s", false);
+        GlobalLock lock = lockerWithoutSeparation.lockWithNumberOfTries(SERVICE, lockKey, 1);
+        Assert.assertFalse(tryReadLockFromAnotherThread(lockerWithoutSeparation));
+        lock.release();
+
+        final LeasingGlobalLocker lockerWithSeparation = createLocker("0s", true);
+        lock = lockerWithSeparation.lockWithNumberOfTries(SERVICE, lockKey, 1);
+        // Readers don't wait for the writer...
+        Assert.assertTrue(tryReadLockFromAnotherThread(lockerWithSeparation));
+        lock.release();
+
+        // ...nor block it
+        final GlobalLock readLock = lockerWithSeparation.lockForReadWithNumberOfTries(SERVICE, lockKey, 1);
+        Assert.assertTrue(tryLockFromAnotherThread(lockerWithSeparation, null));
+        readLock.release();
+
+        Assert.assertEquals(metricRegistry.meter("locker." + SERVICE + ".read").getCount(), 2);
+    }
+
+    private boolean tryLockFromAnotherThread(final GlobalLocker locker, final RequestData requestData) throws Exception {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (requestData != null) {
+                    Request.setPerThreadRequestData(requestData);
+                }
+                try {
+                    locker.lockWithNumberOfTries(SERVICE, lockKey, 1).release();
+                    return true;
+                } catch (final LockFailedException e) {
+                    return false;
+                } finally {
+                    Request.resetPerThreadRequestData();
+                }
+            }
+        }).get();
+    }
+
+    private boolean tryReadLockFromAnotherThread(final LeasingGlobalLocker locker) throws Exception {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    locker.lockForReadWithNumberOfTries(SERVICE, lockKey, 1).release();
+                    return true;
+                } catch (final LockFailedException e) {
+                    return false;
+                }
+            }
+        }).get();
+    }
+
+    private LeasingGlobalLocker createLocker(final String gracePeriod, final boolean readWriteSeparation) {
+        final Properties properties = new Properties();
+        properties.setProperty("org.killbill.locker.lease.grace", gracePeriod);
+        properties.setProperty("org.killbill.locker.readWriteSeparation", String.valueOf(readWriteSeparation));
+        final GlobalLockerConfig config = new ConfigurationObjectFactory(properties).build(GlobalLockerConfig.class);
+        return new LeasingGlobalLocker(delegate, config, metricRegistry);
+    }
+
+    // In-memory stand-in for the database backed locker
+    private static final class CountingGlobalLocker implements GlobalLocker {
+
+        private final GlobalLocker memoryGlobalLocker = new MemoryGlobalLocker();
+        private final AtomicInteger nbLocks = new AtomicInteger();
+        private final AtomicInteger nbReleases = new AtomicInteger();
+        private final AtomicInteger lastRetry = new AtomicInteger();
+
+        @Override
+        public GlobalLock lockWithNumberOfTries(final String service, final String lockKey, final int retry) throws LockFailedException {
+            lastRetry.set(retry);
+            final GlobalLock lock = memoryGlobalLocker.lockWithNumberOfTries(service, lockKey, retry);
+            nbLocks.incrementAndGet();
+            return new GlobalLock() {
+                @Override
+                public void release() {
+                    nbReleases.incrementAndGet();
+                    lock.release();
+                }
+            };
+        }
+
+        @Override
+        public boolean isFree(final String service, final String lockKey) {
+            return memoryGlobalLocker.isFree(service, lockKey);
+        }
+    }
+}
@@ -19,10 +19,12 @@
 package org.killbill.billing.util.glue;
 
 import org.killbill.billing.GuicyKillbillTestNoDBModule;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.mock.glue.MockGlobalLockerModule;
 import org.killbill.billing.mock.glue.MockNonEntityDaoModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.util.api.AuditUserApi;
+import org.killbill.billing.util.audit.DefaultAuditInternalApi;
 import org.killbill.billing.util.audit.api.DefaultAuditUserApi;
 import org.killbill.billing.util.audit.dao.AuditDao;
 import org.killbill.billing.util.audit.dao.MockAuditDao;
@@ -36,6 +38,7 @@ public class TestUtilModuleNoDB extends TestUtilModule {
     private void installAuditMock() {
         bind(AuditDao.class).toInstance(new MockAuditDao());
         bind(AuditUserApi.class).to(DefaultAuditUserApi.class).asEagerSingleton();
+        bind(AuditInternalApi.class).to(DefaultAuditInternalApi.class).asEagerSingleton();
     }
 
     @Override
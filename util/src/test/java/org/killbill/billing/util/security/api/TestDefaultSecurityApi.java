@@ -18,16 +18,40 @@
 
 package org.killbill.billing.util.security.api;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.testng.Assert;
-import org.testng.annotations.Test;
-
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.SimpleRole;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.realm.SimpleAccountRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.killbill.billing.security.Logical;
 import org.killbill.billing.security.Permission;
+import org.killbill.billing.security.SecurityApiException;
 import org.killbill.billing.security.api.SecurityApi;
 import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.config.definition.SecurityConfig;
+import org.killbill.billing.util.security.shiro.dao.UserDao;
+import org.mockito.Mockito;
+import org.skife.config.ConfigurationObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class TestDefaultSecurityApi extends UtilTestSuiteNoDB {
 
@@ -36,7 +60,7 @@ public class TestDefaultSecurityApi extends UtilTestSuiteNoDB {
         configureShiro();
 
         // We don't want the Guice injected one (it has Shiro disabled)
-        final SecurityApi securityApi = new DefaultSecurityApi(null);
+        final SecurityApi securityApi = new DefaultSecurityApi(null, new ConfigurationObjectFactory(skifeConfigSource).build(SecurityConfig.class));
 
         logout();
         final Set<Permission> anonsPermissions = securityApi.getCurrentUserPermissions(callContext);
@@ -52,4 +76,121 @@ public class TestDefaultSecurityApi extends UtilTestSuiteNoDB {
         Assert.assertEquals(stephanesPermissions.size(), 1);
         Assert.assertTrue(stephanesPermissions.containsAll(ImmutableList.<Permission>of(Permission.PAYMENT_CAN_REFUND)));
     }
+
+    @Test(groups = "fast")
+    public void testGrantedPermissionsAreCached() throws Exception {
+        final CountingRealm realm = new CountingRealm();
+        ThreadContext.unbindSubject();
+        SecurityUtils.setSecurityManager(new DefaultSecurityManager(realm));
+        final SecurityApi securityApi = new DefaultSecurityApi(Mockito.mock(UserDao.class), new ConfigurationObjectFactory(skifeConfigSource).build(SecurityConfig.class));
+
+        try {
+            securityApi.login("pierre", "password");
+            for (int i = 0; i < 10; i++) {
+                securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.INVOICE_CAN_CREDIT), Logical.AND, callContext);
+            }
+            Assert.assertEquals(realm.getNbPermissionChecks(), 1);
+
+            // Denied decisions aren't cached
+            for (int i = 0; i < 2; i++) {
+                try {
+                    securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.PAYMENT_CAN_REFUND), Logical.AND, callContext);
+                    Assert.fail();
+                } catch (final SecurityApiException e) {
+                    // Expected
+                }
+            }
+            Assert.assertEquals(realm.getNbPermissionChecks(), 3);
+
+            // Roles update
+            securityApi.updateUserRoles("pierre", ImmutableList.<String>of("creditor"), callContext);
+            securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.INVOICE_CAN_CREDIT), Logical.AND, callContext);
+            Assert.assertEquals(realm.getNbPermissionChecks(), 4);
+            securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.INVOICE_CAN_CREDIT), Logical.AND, callContext);
+            Assert.assertEquals(realm.getNbPermissionChecks(), 4);
+
+            // New role definition
+            securityApi.addRoleDefinition("refunder", ImmutableList.<String>of(Permission.PAYMENT_CAN_REFUND.toString()), callContext);
+            securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.INVOICE_CAN_CREDIT), Logical.AND, callContext);
+            Assert.assertEquals(realm.getNbPermissionChecks(), 5);
+
+            securityApi.logout();
+        } finally {
+            // Don't leak the subject (bound to our security manager) to other tests
+            ThreadContext.unbindSubject();
+        }
+    }
+
+    // Multi-threaded micro-benchmark of the permission checks, with and without the decision cache. Numbers are only logged
+    // as they depend on the JVM and hardware.
+    @Test(groups = "fast")
+    public void testPermissionChecksThroughput() throws Exception {
+        final Properties noCacheProperties = new Properties();
+        noCacheProperties.put("org.killbill.security.permissionsCacheMaxSize", "0");
+
+        final int nbChecksWithoutCache = runPermissionChecks(new ConfigurationObjectFactory(noCacheProperties).build(SecurityConfig.class), "without cache");
+        final int nbChecksWithCache = runPermissionChecks(new ConfigurationObjectFactory(skifeConfigSource).build(SecurityConfig.class), "with cache");
+        Assert.assertTrue(nbChecksWithCache < nbChecksWithoutCache, String.format("%s realm checks with cache, %s without", nbChecksWithCache, nbChecksWithoutCache));
+    }
+
+    private int runPermissionChecks(final SecurityConfig securityConfig, final String description) throws Exception {
+        final int nbThreads = 8;
+        final int nbChecksPerThread = 20000;
+
+        final CountingRealm realm = new CountingRealm();
+        final DefaultSecurityManager securityManager = new DefaultSecurityManager(realm);
+        final SecurityApi securityApi = new DefaultSecurityApi(Mockito.mock(UserDao.class), securityConfig);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            final long start = System.nanoTime();
+            for (int i = 0; i < nbThreads; i++) {
+                final Subject subject = new Subject.Builder(securityManager).principals(new SimplePrincipalCollection("pierre", realm.getName()))
+                                                                            .authenticated(true)
+                                                                            .buildSubject();
+                futures.add(executor.submit(subject.associateWith(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < nbChecksPerThread; j++) {
+                            securityApi.checkCurrentUserPermissions(ImmutableList.<Permission>of(Permission.INVOICE_CAN_CREDIT, Permission.INVOICE_CAN_ITEM_ADJUST), Logical.AND, callContext);
+                        }
+                        return null;
+                    }
+                })));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+            final long durationNanos = Math.max(System.nanoTime() - start, 1L);
+            log.info("Permission checks {}: {} checks/ms, {} realm checks", description, (long) nbThreads * nbChecksPerThread * 1000000L / durationNanos, realm.getNbPermissionChecks());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return realm.getNbPermissionChecks();
+    }
+
+    private static final class CountingRealm extends SimpleAccountRealm {
+
+        private final AtomicInteger nbPermissionChecks = new AtomicInteger();
+
+        private CountingRealm() {
+            final SimpleRole creditor = new SimpleRole("creditor", ImmutableSet.<org.apache.shiro.authz.Permission>of(new WildcardPermission(Permission.INVOICE_CAN_CREDIT.toString()),
+                                                                                                                        new WildcardPermission(Permission.INVOICE_CAN_ITEM_ADJUST.toString())));
+            add(creditor);
+            addAccount("pierre", "password", creditor.getName());
+            getUser("pierre").addObjectPermissions(creditor.getPermissions());
+        }
+
+        @Override
+        protected AuthorizationInfo doGetAuthorizationInfo(final PrincipalCollection principals) {
+            nbPermissionChecks.incrementAndGet();
+            return super.doGetAuthorizationInfo(principals);
+        }
+
+        public int getNbPermissionChecks() {
+            return nbPermissionChecks.get();
+        }
+    }
 }
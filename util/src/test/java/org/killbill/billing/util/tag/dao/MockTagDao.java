@@ -17,6 +17,7 @@
 package org.killbill.billing.util.tag.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.MockEntityDaoBase;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.Tag;
 
 import com.google.common.base.Predicate;
@@ -96,6 +98,16 @@ public class MockTagDao extends MockEntityDaoBase<TagModelDao, Tag, TagApiExcept
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<TagModelDao> getTagsForAccountRecordIds(final Collection<Long> accountRecordIds, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getControlTagBits(final UUID objectId, final ObjectType objectType, final InternalTenantContext internalTenantContext) {
+        return new ControlTagBits(getTagsForObject(objectId, objectType, false, internalTenantContext)).getBits(objectId);
+    }
+
     public void clear() {
         tagStore.clear();
     }
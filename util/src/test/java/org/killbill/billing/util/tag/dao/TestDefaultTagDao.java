@@ -17,8 +17,10 @@
 package org.killbill.billing.util.tag.dao;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -29,10 +31,17 @@ import org.killbill.billing.api.TestApiListener.NextEvent;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.api.TagDefinitionApiException;
+import org.killbill.billing.util.tag.ControlTagBits;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.DescriptiveTag;
 import org.killbill.billing.util.tag.Tag;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
 
+import com.google.common.collect.ImmutableList;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
 import static org.testng.Assert.assertEquals;
 
 public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
@@ -176,4 +185,97 @@ public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testControlTagBitsCacheInvalidation() throws TagApiException {
+        final UUID accountId = UUID.randomUUID();
+
+        // Warm up the cache
+        Assert.assertEquals(tagDao.getControlTagBits(accountId, ObjectType.ACCOUNT, internalCallContext), 0L);
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag tag = new DescriptiveTag(ControlTagType.AUTO_PAY_OFF.getId(), ObjectType.ACCOUNT, accountId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(tag), internalCallContext);
+        assertListenerStatus();
+
+        final long bits = tagDao.getControlTagBits(accountId, ObjectType.ACCOUNT, internalCallContext);
+        Assert.assertTrue(ControlTagBits.isAutoPayOff(bits));
+        Assert.assertTrue(ControlTagBits.isSet(bits, ControlTagType.AUTO_PAY_OFF));
+        Assert.assertFalse(ControlTagBits.isAutoInvoicingOff(bits));
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        tagDao.deleteTag(accountId, ObjectType.ACCOUNT, ControlTagType.AUTO_PAY_OFF.getId(), internalCallContext);
+        assertListenerStatus();
+
+        Assert.assertEquals(tagDao.getControlTagBits(accountId, ObjectType.ACCOUNT, internalCallContext), 0L);
+    }
+
+    @Test(groups = "slow")
+    public void testGetTagsForAccountRecordIds() throws TagApiException {
+        final Long firstAccountRecordId = internalCallContext.getAccountRecordId();
+        final UUID firstAccountId = UUID.randomUUID();
+        createTag(ControlTagType.AUTO_PAY_OFF, ObjectType.ACCOUNT, firstAccountId);
+        createTag(ControlTagType.WRITTEN_OFF, ObjectType.INVOICE, UUID.randomUUID());
+
+        final Long secondAccountRecordId = firstAccountRecordId + 1;
+        internalCallContext.setAccountRecordId(secondAccountRecordId);
+        final UUID secondAccountId = UUID.randomUUID();
+        createTag(ControlTagType.OVERDUE_ENFORCEMENT_OFF, ObjectType.ACCOUNT, secondAccountId);
+
+        // Not part of the query
+        internalCallContext.setAccountRecordId(secondAccountRecordId + 1);
+        createTag(ControlTagType.AUTO_PAY_OFF, ObjectType.ACCOUNT, UUID.randomUUID());
+
+        // Deleted tags are ignored
+        internalCallContext.setAccountRecordId(secondAccountRecordId);
+        createTag(ControlTagType.AUTO_INVOICING_OFF, ObjectType.ACCOUNT, secondAccountId);
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        tagDao.deleteTag(secondAccountId, ObjectType.ACCOUNT, ControlTagType.AUTO_INVOICING_OFF.getId(), internalCallContext);
+        assertListenerStatus();
+
+        final List<TagModelDao> accountTags = tagDao.getTagsForAccountRecordIds(ImmutableList.<Long>of(firstAccountRecordId, secondAccountRecordId), ObjectType.ACCOUNT, internalCallContext);
+        Assert.assertEquals(accountTags.size(), 2);
+        Assert.assertEquals(accountTags.get(0).getObjectId(), firstAccountId);
+        Assert.assertEquals(accountTags.get(0).getTagDefinitionId(), ControlTagType.AUTO_PAY_OFF.getId());
+        Assert.assertEquals(accountTags.get(1).getObjectId(), secondAccountId);
+        Assert.assertEquals(accountTags.get(1).getTagDefinitionId(), ControlTagType.OVERDUE_ENFORCEMENT_OFF.getId());
+
+        final List<TagModelDao> invoiceTags = tagDao.getTagsForAccountRecordIds(ImmutableList.<Long>of(firstAccountRecordId, secondAccountRecordId), ObjectType.INVOICE, internalCallContext);
+        Assert.assertEquals(invoiceTags.size(), 1);
+        Assert.assertEquals(invoiceTags.get(0).getTagDefinitionId(), ControlTagType.WRITTEN_OFF.getId());
+
+        Assert.assertEquals(tagDao.getTagsForAccountRecordIds(ImmutableList.<Long>of(), ObjectType.ACCOUNT, internalCallContext).size(), 0);
+    }
+
+    private void createTag(final ControlTagType controlTagType, final ObjectType objectType, final UUID objectId) throws TagApiException {
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag tag = new DescriptiveTag(controlTagType.getId(), objectType, objectId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(tag), internalCallContext);
+        assertListenerStatus();
+    }
+
+    @Test(groups = "slow", description = "Control tags added by another node (i.e. without local cache invalidation) are eventually visible")
+    public void testControlTagsFromAnotherNode() throws Exception {
+        final UUID objectId = UUID.randomUUID();
+        Assert.assertEquals(tagDao.getControlTagBits(objectId, ObjectType.ACCOUNT, internalCallContext), 0L);
+
+        // Insert the tag behind the back of this node's cache
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("insert into tags (id, tag_definition_id, object_id, object_type, is_active, created_by, created_date, updated_by, updated_date, account_record_id, tenant_record_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                               UUID.randomUUID().toString(), ControlTagType.AUTO_PAY_OFF.getId().toString(), objectId.toString(), ObjectType.ACCOUNT.toString(), true,
+                               "otherNode", new Date(), "otherNode", new Date(), internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId());
+                return null;
+            }
+        });
+
+        // The cached entry expires (see ehcache.xml)
+        Assert.assertEquals(tagDao.getControlTagBits(objectId, ObjectType.ACCOUNT, internalCallContext), 0L);
+        await().atMost(30, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return ControlTagBits.isAutoPayOff(tagDao.getControlTagBits(objectId, ObjectType.ACCOUNT, internalCallContext));
+            }
+        });
+    }
 }